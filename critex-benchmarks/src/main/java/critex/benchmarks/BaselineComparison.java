@@ -0,0 +1,109 @@
+package critex.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Compares the scores and normalized allocation (bytes per operation, from the GC profiler) of a JMH JSON result
+ * with a stored baseline of the same format. A benchmark regresses when its time or allocation per operation grows by
+ * more than the threshold percentage; benchmarks missing in either file are only reported.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class BaselineComparison {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> PARAMS = new TypeReference<>() {
+    };
+
+    private final Map<String, Score> baseline;
+    private final Map<String, Score> current;
+    private final double threshold;
+
+    public BaselineComparison(Path baseline, Path current, double threshold) throws IOException {
+        this.baseline = read(baseline);
+        this.current = read(current);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Print one line per benchmark and return the regressed ones
+     */
+    public List<String> report(PrintStream out) {
+        List<String> regressions = new ArrayList<>();
+        out.printf("%-90s %14s %14s %8s %12s %12s %8s%n", "Benchmark", "baseline", "current", "change", "base B/op", "B/op", "change");
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                out.printf("%-90s %14s %14.3f %8s%n", entry.getKey(), "-", after.score(), "new");
+                continue;
+            }
+            if (!before.unit().equals(after.unit())) {
+                out.printf("%-90s unit changed from %s to %s%n", entry.getKey(), before.unit(), after.unit());
+                continue;
+            }
+            double timeChange = change(before.score(), after.score());
+            double allocationChange = change(before.allocation(), after.allocation());
+            out.printf("%-90s %14.3f %14.3f %7.1f%% %12.1f %12.1f %7.1f%%%n", entry.getKey(), before.score(), after.score(), timeChange,
+                    before.allocation(), after.allocation(), allocationChange);
+            if (timeChange > threshold || allocationChange > threshold) {
+                regressions.add(entry.getKey());
+            }
+        }
+        baseline.keySet().stream().filter(key -> !current.containsKey(key))
+                .forEach(key -> out.printf("%-90s %14.3f %14s %8s%n", key, baseline.get(key).score(), "-", "missing"));
+        return regressions;
+    }
+
+    /**
+     * Relative change in percent, growth is positive
+     */
+    private static double change(double before, double after) {
+        if (Double.isNaN(before) || Double.isNaN(after) || before == 0) {
+            return 0;
+        }
+        return (after - before) * 100 / before;
+    }
+
+    /**
+     * Scores by benchmark name and parameters, e.g. {@code critex.benchmarks.OperatorBenchmark.predicate [operator=IN]}
+     */
+    private static Map<String, Score> read(Path file) throws IOException {
+        Map<String, Score> scores = new TreeMap<>();
+        for (JsonNode run : MAPPER.readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+            JsonNode params = run.path("params");
+            if (!params.isMissingNode()) {
+                StringJoiner joiner = new StringJoiner(", ", " [", "]");
+                new TreeMap<>(MAPPER.convertValue(params, PARAMS)).forEach((name, value) -> joiner.add(name + "=" + value));
+                key.append(joiner);
+            }
+            JsonNode primary = run.path("primaryMetric");
+            scores.put(key.toString(), new Score(primary.path("score").asDouble(), primary.path("scoreUnit").asText(), allocation(run.path("secondaryMetrics"))));
+        }
+        return scores;
+    }
+
+    /**
+     * Bytes per operation, older JMH versions prefix the profiler metrics with a middle dot
+     */
+    private static double allocation(JsonNode secondaryMetrics) {
+        for (Map.Entry<String, JsonNode> metric : secondaryMetrics.properties()) {
+            if (metric.getKey().endsWith(ALLOCATION)) {
+                return metric.getValue().path("score").asDouble();
+            }
+        }
+        return Double.NaN;
+    }
+
+    private record Score(double score, String unit, double allocation) {
+    }
+}
@@ -0,0 +1,19 @@
+package critex.benchmarks;
+
+import critex.test.entity.Comment;
+import critex.test.repository.CommentRepository;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Spring context of the benchmarks: the entities and repositories of the test module on an embedded H2 database,
+ * without the test module services and web layer so only {@link CommentQueries} runs on the library.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+@SpringBootApplication
+@EntityScan(basePackageClasses = Comment.class)
+@EnableJpaRepositories(basePackageClasses = CommentRepository.class)
+public class BenchmarkApplication {
+}
@@ -0,0 +1,133 @@
+package critex.benchmarks;
+
+import critex.core.query.PathRegistry;
+import critex.test.entity.Comment;
+import critex.test.entity.CommentReply;
+import critex.test.entity.Post;
+import critex.test.entity.User;
+import critex.test.repository.CommentReplyRepository;
+import critex.test.repository.CommentRepository;
+import critex.test.repository.PostRepository;
+import critex.test.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Spring context on a private H2 database seeded with the test module entities, shared by all threads of a benchmark.
+ * Every post gets ten comments and every fifth comment a reply.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    private static final int POSTS_PER_USER = 10;
+    private static final int COMMENTS_PER_POST = 10;
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"1000"})
+    public int posts;
+
+    private ConfigurableApplicationContext context;
+    private List<Long> commentIds;
+    private List<Long> postIds;
+    private List<Long> userIds;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmarks;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=" + BATCH_SIZE,
+                        "--spring.jpa.open-in-view=false",
+                        "--logging.level.root=WARN");
+        seed();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public <B> B bean(Class<B> type) {
+        return context.getBean(type);
+    }
+
+    public CriteriaBuilder criteriaBuilder() {
+        return bean(EntityManagerFactory.class).getCriteriaBuilder();
+    }
+
+    public PathRegistry pathRegistry() {
+        return PathRegistry.of(bean(EntityManagerFactory.class).getMetamodel());
+    }
+
+    public Long randomCommentId() {
+        return commentIds.get(ThreadLocalRandom.current().nextInt(commentIds.size()));
+    }
+
+    public Long randomPostId() {
+        return postIds.get(ThreadLocalRandom.current().nextInt(postIds.size()));
+    }
+
+    public Long randomUserId() {
+        return userIds.get(ThreadLocalRandom.current().nextInt(userIds.size()));
+    }
+
+    private void seed() {
+        TransactionTemplate transaction = new TransactionTemplate(bean(PlatformTransactionManager.class));
+        UserRepository users = bean(UserRepository.class);
+        PostRepository postRepository = bean(PostRepository.class);
+        CommentRepository comments = bean(CommentRepository.class);
+        CommentReplyRepository replies = bean(CommentReplyRepository.class);
+
+        userIds = transaction.execute(status -> {
+            List<User> created = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, posts / POSTS_PER_USER); i++) {
+                created.add(User.builder().username("user" + i).email("user" + i + "@critex.io").build());
+            }
+            return users.saveAll(created).stream().map(User::getId).toList();
+        });
+        postIds = transaction.execute(status -> {
+            List<Post> created = new ArrayList<>();
+            for (int i = 0; i < posts; i++) {
+                created.add(Post.builder().title("post " + i).content("content of post " + i).userId(userIds.get(i % userIds.size())).build());
+            }
+            return postRepository.saveAll(created).stream().map(Post::getId).toList();
+        });
+        commentIds = new ArrayList<>();
+        for (int from = 0; from < postIds.size(); from += BATCH_SIZE / COMMENTS_PER_POST) {
+            int start = from;
+            transaction.executeWithoutResult(status -> {
+                List<Comment> created = new ArrayList<>();
+                for (int i = start; i < Math.min(postIds.size(), start + BATCH_SIZE / COMMENTS_PER_POST); i++) {
+                    for (int j = 0; j < COMMENTS_PER_POST; j++) {
+                        created.add(Comment.builder().content("comment " + j + " on post " + i)
+                                .postId(postIds.get(i)).userId(userIds.get((i + j) % userIds.size())).build());
+                    }
+                }
+                List<Comment> saved = comments.saveAll(created);
+                List<CommentReply> createdReplies = new ArrayList<>();
+                for (int i = 0; i < saved.size(); i += 5) {
+                    createdReplies.add(CommentReply.builder().content("reply to " + saved.get(i).getContent())
+                            .commentId(saved.get(i).getId()).userId(saved.get(i).getUserId()).build());
+                }
+                replies.saveAll(createdReplies);
+                saved.forEach(comment -> commentIds.add(comment.getId()));
+            });
+        }
+    }
+}
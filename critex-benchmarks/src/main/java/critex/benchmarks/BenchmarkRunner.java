@@ -0,0 +1,63 @@
+package critex.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Runs the benchmarks selected by the JMH command line arguments with the GC profiler, writes the JSON result and
+ * compares it with the stored baseline. Exits with 1 when a benchmark regressed.
+ * <ul>
+ *     <li>{@code -Dbenchmarks.baseline} baseline file, default {@code baseline/jmh-baseline.json}</li>
+ *     <li>{@code -Dbenchmarks.result} result file, default {@code target/jmh-result.json}</li>
+ *     <li>{@code -Dbenchmarks.threshold} allowed growth of time or allocation per operation in percent, default 10</li>
+ *     <li>{@code -Dbenchmarks.updateBaseline=true} store the result as the new baseline instead of comparing</li>
+ * </ul>
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        Path baseline = Path.of(System.getProperty("benchmarks.baseline", "baseline/jmh-baseline.json"));
+        Path result = Path.of(System.getProperty("benchmarks.result", "target/jmh-result.json"));
+        double threshold = Double.parseDouble(System.getProperty("benchmarks.threshold", "10"));
+
+        if (result.getParent() != null) {
+            Files.createDirectories(result.getParent());
+        }
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString())
+                .build();
+        new Runner(options).run();
+
+        if (Boolean.getBoolean("benchmarks.updateBaseline")) {
+            if (baseline.getParent() != null) {
+                Files.createDirectories(baseline.getParent());
+            }
+            Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Baseline updated: " + baseline);
+            return;
+        }
+        if (!Files.exists(baseline)) {
+            System.out.println("No baseline at " + baseline + ", run with -Dbenchmarks.updateBaseline=true to store one");
+            return;
+        }
+        List<String> regressions = new BaselineComparison(baseline, result, threshold).report(System.out);
+        if (!regressions.isEmpty()) {
+            System.out.println("Regressed by more than " + threshold + "%: " + regressions);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package critex.benchmarks;
+
+import critex.core.model.ConditionParameter;
+import critex.core.model.ReportCondition;
+import critex.core.query.PathRegistry;
+import critex.core.repo.SpecificationGenerator;
+import critex.test.entity.Comment;
+import jakarta.persistence.criteria.*;
+
+/**
+ * Specification generator of comments which exposes the predicate building steps to the benchmarks
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class CommentPredicates extends SpecificationGenerator<Comment> {
+
+    private final PathRegistry pathRegistry;
+
+    public CommentPredicates(PathRegistry pathRegistry) {
+        this.pathRegistry = pathRegistry;
+    }
+
+    @Override
+    protected PathRegistry getPathRegistry() {
+        return pathRegistry;
+    }
+
+    /**
+     * Normalize the condition and build its predicate, joins and fetches on the root
+     */
+    public Predicate build(ReportCondition condition, Root<Comment> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder) {
+        return toPredicate(condition).toPredicate(root, query, criteriaBuilder);
+    }
+
+    /**
+     * Predicate of a single parameter on an already resolved path
+     */
+    public static Predicate operator(CriteriaBuilder criteriaBuilder, ConditionParameter parameter, Path<?> path) {
+        return getCorrespondingPredicate(criteriaBuilder, parameter, path);
+    }
+}
@@ -0,0 +1,50 @@
+package critex.benchmarks;
+
+import critex.core.model.PageRequestParam;
+import critex.core.model.ReportCondition;
+import critex.core.repo.AbstractService;
+import critex.test.entity.Comment;
+import critex.test.repository.CommentRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Comment service without result, entity or search caches, so every call builds and executes its queries
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+@Service
+public class CommentQueries extends AbstractService<Comment, CommentRepository> {
+
+    public CommentQueries(CommentRepository repository) {
+        super(repository);
+    }
+
+    @Override
+    protected Collection<String> declaredPaths() {
+        return List.of("content", "postId", "userId", "user", "post", "replies");
+    }
+
+    public void usePlanCache(boolean enabled) {
+        setPlanCacheEnabled(enabled);
+    }
+
+    @Transactional(readOnly = true)
+    public Page<Comment> page(ReportCondition condition, PageRequestParam pageRequest) {
+        return findAllPage(condition, pageRequest);
+    }
+
+    @Transactional(readOnly = true)
+    public long countOf(ReportCondition condition) {
+        return count(condition);
+    }
+
+    @Transactional(readOnly = true)
+    public Comment byId(Long id, Collection<String> joins) {
+        return getEntityById(id, joins);
+    }
+}
@@ -0,0 +1,96 @@
+package critex.benchmarks;
+
+import critex.core.model.JoinReport;
+import critex.core.model.ReportCondition;
+import critex.core.model.ReportFilter;
+import critex.core.query.ConditionNormalizer;
+import jakarta.persistence.criteria.JoinType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building {@link ReportCondition} and {@link JoinReport} trees the way services do from their filters, and of
+ * normalizing them before the predicates are built
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConditionTreeBenchmark {
+
+    private ReportCondition flat;
+    private ReportCondition joined;
+
+    @Setup
+    public void setup() {
+        flat = flatCondition();
+        joined = joinedCondition();
+    }
+
+    @Benchmark
+    public ReportCondition buildFlat() {
+        return flatCondition();
+    }
+
+    @Benchmark
+    public ReportCondition buildJoined() {
+        return joinedCondition();
+    }
+
+    @Benchmark
+    public Optional<ReportCondition> normalizeFlat() {
+        return ConditionNormalizer.normalize(flat);
+    }
+
+    @Benchmark
+    public Optional<ReportCondition> normalizeJoined() {
+        return ConditionNormalizer.normalize(joined);
+    }
+
+    /**
+     * Root filters only, with a null value as an unset optional filter field leaves it
+     */
+    static ReportCondition flatCondition() {
+        ReportCondition condition = new ReportCondition();
+        condition.addContainsIgnoreCase("content", "post 4");
+        condition.addEqual("postId", 42L);
+        condition.addEqual("userId", null);
+        condition.addIn("userId", List.of(1L, 2L, 3L));
+        condition.addNumericRange("postId", 10L, 500L);
+        condition.addIsNotEmpty("replies");
+        return condition;
+    }
+
+    /**
+     * Root filters, an or group and nested joins with their own filters
+     */
+    static ReportCondition joinedCondition() {
+        ReportCondition condition = new ReportCondition();
+        condition.addStartsWithIgnoreCase("content", "comment");
+        condition.addGreaterThan("postId", 10L);
+
+        ReportFilter orFilter = new ReportFilter();
+        orFilter.addEqual("userId", 1L);
+        orFilter.addEqual("userId", 2L);
+        condition.setOrFilter(orFilter);
+
+        JoinReport user = JoinReport.of("user", JoinType.INNER);
+        user.filter().addLikeIgnoreCase("username", "user");
+        condition.addJoinReport(user);
+
+        JoinReport post = JoinReport.of("post", JoinType.INNER);
+        post.filter().addNotEqual("title", "draft");
+        JoinReport author = JoinReport.of("user", JoinType.LEFT);
+        author.filter().addIn("id", List.of(1L, 2L, 3L, 4L));
+        post.addJoin(author);
+        condition.addJoinReport(post);
+        return condition;
+    }
+}
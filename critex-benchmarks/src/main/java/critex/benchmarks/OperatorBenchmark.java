@@ -0,0 +1,62 @@
+package critex.benchmarks;
+
+import critex.core.model.ConditionParameter;
+import critex.core.model.Operator;
+import critex.test.entity.Comment;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of every {@link Operator} branch of {@code SpecificationGenerator.getCorrespondingPredicate} on an already
+ * resolved path, each operator with a value of the type its branch expects
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OperatorBenchmark {
+
+    @Param
+    public Operator operator;
+
+    private CriteriaBuilder criteriaBuilder;
+    private ConditionParameter parameter;
+    private Path<?> path;
+
+    @Setup
+    public void setup(BenchmarkDatabase database) {
+        criteriaBuilder = database.criteriaBuilder();
+        parameter = parameter(operator);
+        Root<Comment> root = criteriaBuilder.createQuery(Comment.class).from(Comment.class);
+        path = root.get(parameter.getKey());
+    }
+
+    @Benchmark
+    public Predicate predicate() {
+        return CommentPredicates.operator(criteriaBuilder, parameter, path);
+    }
+
+    private static ConditionParameter parameter(Operator operator) {
+        return switch (operator) {
+            case EQUALS, NOT_EQUALS, GREATER_EQUALS, GREATER_EQUALS_TIME, LESS_EQUALS, LESS_EQUALS_TIME,
+                 GREATER_THAN, GREATER_THAN_TIME, LESS_THAN, LESS_THAN_TIME -> ConditionParameter.of("postId", 42L, operator);
+            case IN, NOT_IN -> ConditionParameter.of("postId", List.of(1L, 2L, 3L, 4L, 5L), operator);
+            case BETWEEN, NOT_BETWEEN -> ConditionParameter.of("postId", new Object[]{10L, 20L}, operator);
+            case NULL, NOT_NULL -> ConditionParameter.of("content", null, operator);
+            case IS_EMPTY, IS_NOT_EMPTY -> ConditionParameter.of("replies", null, operator);
+            case SIZE_EQUALS, SIZE_GREATER_THAN, SIZE_LESS_THAN, SIZE_GREATER_EQUALS, SIZE_LESS_EQUALS ->
+                    ConditionParameter.of("replies", 2, operator);
+            default -> ConditionParameter.of("content", "Post 4", operator);
+        };
+    }
+}
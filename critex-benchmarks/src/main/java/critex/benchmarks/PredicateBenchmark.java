@@ -0,0 +1,59 @@
+package critex.benchmarks;
+
+import critex.core.model.ReportCondition;
+import critex.test.entity.Comment;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@code SpecificationGenerator.toPredicate}: normalizing a condition and building its predicate, joins and
+ * fetches on a new criteria query. {@link #emptyQuery()} measures the criteria query alone.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PredicateBenchmark {
+
+    @Param({"flat", "joined"})
+    public String shape;
+
+    private CriteriaBuilder criteriaBuilder;
+    private CommentPredicates predicates;
+    private ReportCondition condition;
+
+    @Setup
+    public void setup(BenchmarkDatabase database) {
+        criteriaBuilder = database.criteriaBuilder();
+        predicates = new CommentPredicates(database.pathRegistry());
+        condition = "flat".equals(shape) ? ConditionTreeBenchmark.flatCondition() : ConditionTreeBenchmark.joinedCondition();
+    }
+
+    @Benchmark
+    public Root<Comment> emptyQuery() {
+        return criteriaBuilder.createQuery(Comment.class).from(Comment.class);
+    }
+
+    @Benchmark
+    public Predicate toPredicate() {
+        CriteriaQuery<Comment> query = criteriaBuilder.createQuery(Comment.class);
+        Root<Comment> root = query.from(Comment.class);
+        return predicates.build(condition, root, query, criteriaBuilder);
+    }
+
+    @Benchmark
+    public Predicate toCountPredicate() {
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        Root<Comment> root = query.from(Comment.class);
+        return predicates.build(condition, root, query, criteriaBuilder);
+    }
+}
@@ -0,0 +1,69 @@
+package critex.benchmarks;
+
+import critex.core.model.PageRequestParam;
+import critex.core.model.ReportCondition;
+import critex.test.entity.Comment;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end cost of {@code findAllPage}, {@code count} and {@code getEntityById} on the seeded H2 database, with and
+ * without the query plan cache
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryBenchmark {
+
+    private static final List<String> JOINS = List.of("user", "replies");
+
+    @Param({"true", "false"})
+    public boolean planCache;
+
+    private BenchmarkDatabase database;
+    private CommentQueries queries;
+
+    @Setup
+    public void setup(BenchmarkDatabase database) {
+        this.database = database;
+        queries = database.bean(CommentQueries.class);
+        queries.usePlanCache(planCache);
+    }
+
+    @Benchmark
+    public Page<Comment> findAllPageByPost() {
+        ReportCondition condition = new ReportCondition();
+        condition.addEqual("postId", database.randomPostId());
+        condition.addJoinReport("user");
+        return queries.page(condition, PageRequestParam.firstPageSorted("id"));
+    }
+
+    @Benchmark
+    public Page<Comment> findAllPageByContent() {
+        ReportCondition condition = new ReportCondition();
+        condition.addContainsIgnoreCase("content", "post 4");
+        condition.addEqual("userId", database.randomUserId());
+        return queries.page(condition, PageRequestParam.of(0, 20, "id", "desc"));
+    }
+
+    @Benchmark
+    public long count() {
+        ReportCondition condition = new ReportCondition();
+        condition.addEqual("userId", database.randomUserId());
+        condition.addIsNotEmpty("replies");
+        return queries.countOf(condition);
+    }
+
+    @Benchmark
+    public Comment getEntityById() {
+        return queries.byId(database.randomCommentId(), JOINS);
+    }
+}
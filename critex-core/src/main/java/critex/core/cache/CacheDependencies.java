@@ -0,0 +1,34 @@
+package critex.core.cache;
+
+import java.util.Set;
+
+/**
+ * What a cached result depends on: the root properties it filters, joins or sorts by and the joined entity types.
+ * Updates of the root entity only invalidate the result when they change one of these properties,
+ * any change of a joined entity invalidates it.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public record CacheDependencies(Class<?> rootType, Set<String> properties, Set<Class<?>> joinedTypes) {
+
+    public CacheDependencies {
+        properties = Set.copyOf(properties);
+        joinedTypes = Set.copyOf(joinedTypes);
+    }
+
+    /**
+     * Whether a change of the given entity type can affect the result
+     */
+    public boolean dependsOn(Class<?> type) {
+        return rootType.isAssignableFrom(type) || isJoined(type);
+    }
+
+    public boolean isJoined(Class<?> type) {
+        for (Class<?> joinedType : joinedTypes) {
+            if (joinedType.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,276 @@
+package critex.core.cache;
+
+import critex.core.model.EntityCacheOptions;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Entities of one type loaded by id with a set of joins, kept as detached copies of the loaded graph. Every read
+ * returns its own copy, so cached entities can be shared across threads and modified by the caller.
+ * The cache is bounded by entries: a full cache only admits a new entry when its key is requested more often than a
+ * sampled victim (TinyLFU), frequencies are tracked by a {@link FrequencySketch}. Missing ids are cached too.
+ * Committed changes of any entity of a cached graph invalidate it, inserts of a joined collection's element type
+ * invalidate the graphs with such a collection, see {@link EntityChangeListener}.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class EntityCache<T> implements EntityChangeSubscriber {
+
+    private static final Object MISSING = new Object();
+    private static final int SAMPLE_SIZE = 8;
+
+    private final Class<T> entityClass;
+    private final Class<?> idType;
+    private final EntityCacheOptions options;
+    private final EntityCopier copier;
+    private final FrequencySketch sketch;
+    private final ConcurrentMap<Key, Node> nodes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, EntityCopier.JoinTree> joinTrees = new ConcurrentHashMap<>();
+    private final Set<Class<?>> knownTypes = ConcurrentHashMap.newKeySet();
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<EntityCopier.EntityRef, Set<Key>> keysByEntity = new HashMap<>();
+    private final Map<Class<?>, Set<Key>> keysByCollectionType = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private Node[] slots;
+    private int size;
+
+    public EntityCache(Class<T> entityClass, EntityManagerFactory entityManagerFactory, EntityCacheOptions options) {
+        this.entityClass = entityClass;
+        this.idType = entityManagerFactory.getMetamodel().entity(entityClass).getIdType().getJavaType();
+        this.options = options;
+        this.copier = new EntityCopier(entityManagerFactory);
+        this.sketch = new FrequencySketch(options.getMaximumSize());
+        this.slots = new Node[Math.max(1, Math.min(options.getMaximumSize(), 1024))];
+        this.knownTypes.add(entityClass);
+    }
+
+    /**
+     * Copy of the cached entity with the joins, the loader returns the loaded entity or null if the id does not exist
+     */
+    public T get(Object id, Collection<String> joins, Supplier<T> loader) {
+        EntityCopier.JoinTree joinTree = joinTrees.computeIfAbsent(List.copyOf(joins), EntityCopier.JoinTree::of);
+        Key key = new Key(toIdType(id), joinTree.toString());
+        sketch.increment(key);
+        Node node = nodes.get(key);
+        if (node != null && System.nanoTime() - node.expiresAt < 0) {
+            hits.increment();
+            return node.value == MISSING ? null : entityClass.cast(copier.copy(node.value, joinTree));
+        }
+        misses.increment();
+        knownTypes.addAll(copier.joinedTypes(entityClass, joinTree));
+        long loadGeneration = generation.get();
+        T entity = loader.get();
+        if (entity == null) {
+            if (!options.getNegativeTtl().isZero()) {
+                put(new Node(key, MISSING, Set.of(new EntityCopier.EntityRef(entityClass, key.id())), Set.of(),
+                        System.nanoTime() + options.getNegativeTtl().toNanos()), loadGeneration);
+            }
+            return null;
+        }
+        EntityCopier.Copy prototype = copier.copyAndRecord(entity, joinTree);
+        put(new Node(key, prototype.value(), prototype.entities(), prototype.collectionTypes(), System.nanoTime() + options.getTtl().toNanos()),
+                loadGeneration);
+        return entityClass.cast(copier.copy(prototype.value(), joinTree));
+    }
+
+    @Override
+    public void onChange(Change change, Class<?> type, Object id, Predicate<Set<String>> changed,
+                         Function<String, Object> oldState, Function<String, Object> newState) {
+        if (!isKnown(type)) {
+            return;
+        }
+        synchronized (this) {
+            generation.incrementAndGet();
+            Set<Key> affected = new HashSet<>(keysByEntity.getOrDefault(new EntityCopier.EntityRef(type, id), Set.of()));
+            if (change != Change.DELETE) {
+                keysByCollectionType.forEach((elementType, keys) -> {
+                    if (elementType.isAssignableFrom(type)) {
+                        affected.addAll(keys);
+                    }
+                });
+            }
+            affected.forEach(key -> remove(nodes.get(key)));
+        }
+    }
+
+    /**
+     * Drop the entries whose graph contains an entity of the type or a collection of it
+     */
+    @Override
+    public void onBulkChange(Change change, Class<?> type) {
+        if (!isKnown(type)) {
+            return;
+        }
+        synchronized (this) {
+            generation.incrementAndGet();
+            Set<Key> affected = new HashSet<>();
+            keysByEntity.forEach((entity, keys) -> {
+                if (isRelated(entity.type(), type)) {
+                    affected.addAll(keys);
+                }
+            });
+            keysByCollectionType.forEach((elementType, keys) -> {
+                if (isRelated(elementType, type)) {
+                    affected.addAll(keys);
+                }
+            });
+            affected.forEach(key -> remove(nodes.get(key)));
+        }
+    }
+
+    /**
+     * Drop the entries of the id with any joins
+     */
+    public synchronized void evict(Object id) {
+        generation.incrementAndGet();
+        Set<Key> keys = keysByEntity.getOrDefault(new EntityCopier.EntityRef(entityClass, toIdType(id)), Set.of());
+        new ArrayList<>(keys).forEach(key -> remove(nodes.get(key)));
+    }
+
+    public synchronized void clear() {
+        generation.incrementAndGet();
+        nodes.clear();
+        keysByEntity.clear();
+        keysByCollectionType.clear();
+        Arrays.fill(slots, null);
+        size = 0;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Loaded entities which were not admitted because the cache was full of more frequently read entries
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    private synchronized void put(Node node, long loadGeneration) {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+        remove(nodes.get(node.key));
+        if (size >= Math.max(1, options.getMaximumSize())) {
+            Node victim = sampleVictim();
+            if (System.nanoTime() - victim.expiresAt < 0 && sketch.frequency(node.key) <= sketch.frequency(victim.key)) {
+                rejections.increment();
+                return;
+            }
+            remove(victim);
+            evictions.increment();
+        }
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        node.slot = size;
+        slots[size++] = node;
+        nodes.put(node.key, node);
+        node.entities.forEach(entity -> keysByEntity.computeIfAbsent(entity, ignored -> new HashSet<>()).add(node.key));
+        node.collectionTypes.forEach(type -> keysByCollectionType.computeIfAbsent(type, ignored -> new HashSet<>()).add(node.key));
+    }
+
+    /**
+     * Least frequently read of some random entries, an expired entry is taken right away
+     */
+    private Node sampleVictim() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.nanoTime();
+        Node victim = null;
+        int victimFrequency = Integer.MAX_VALUE;
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            Node candidate = slots[random.nextInt(size)];
+            if (now - candidate.expiresAt >= 0) {
+                return candidate;
+            }
+            int frequency = sketch.frequency(candidate.key);
+            if (frequency < victimFrequency) {
+                victim = candidate;
+                victimFrequency = frequency;
+            }
+        }
+        return victim;
+    }
+
+    private void remove(Node node) {
+        if (node == null || !nodes.remove(node.key, node)) {
+            return;
+        }
+        Node last = slots[--size];
+        slots[node.slot] = last;
+        last.slot = node.slot;
+        slots[size] = null;
+        node.entities.forEach(entity -> unindex(keysByEntity, entity, node.key));
+        node.collectionTypes.forEach(type -> unindex(keysByCollectionType, type, node.key));
+    }
+
+    private static <K> void unindex(Map<K, Set<Key>> index, K indexKey, Key key) {
+        Set<Key> keys = index.get(indexKey);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            index.remove(indexKey);
+        }
+    }
+
+    private Object toIdType(Object id) {
+        return idType.isInstance(id) ? id : DefaultConversionService.getSharedInstance().convert(id, idType);
+    }
+
+    private boolean isKnown(Class<?> type) {
+        for (Class<?> knownType : knownTypes) {
+            if (knownType.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRelated(Class<?> first, Class<?> second) {
+        return first.isAssignableFrom(second) || second.isAssignableFrom(first);
+    }
+
+    private record Key(Object id, String joins) {
+    }
+
+    private static final class Node {
+        private final Key key;
+        private final Object value;
+        private final Set<EntityCopier.EntityRef> entities;
+        private final Set<Class<?>> collectionTypes;
+        private final long expiresAt;
+        private int slot;
+
+        private Node(Key key, Object value, Set<EntityCopier.EntityRef> entities, Set<Class<?>> collectionTypes, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.entities = entities;
+            this.collectionTypes = collectionTypes;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package critex.core.cache;
+
+import critex.core.cache.EntityChangeSubscriber.Change;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Hibernate post commit listener which passes the committed changes of entities to the registered caches, views and
+ * search indexes ({@link EntityChangeSubscriber}). Updates carry which properties changed, by their columns, and
+ * changes carry the old and new state of the entity. Failed commits are passed on too, caches may have read the
+ * uncommitted state inside the failed transaction. One listener is registered per session factory.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public final class EntityChangeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private static final Map<SessionFactoryImplementor, EntityChangeListener> LISTENERS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final List<EntityChangeSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<EntityPersister, Map<String, Set<String>>> propertyColumns = new ConcurrentHashMap<>();
+    private final ConcurrentMap<EntityPersister, Map<String, Integer>> propertyIndexes = new ConcurrentHashMap<>();
+
+    private EntityChangeListener() {
+    }
+
+    /**
+     * Pass the committed changes of the session factory to the subscriber
+     */
+    public static void register(EntityManagerFactory entityManagerFactory, EntityChangeSubscriber subscriber) {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        EntityChangeListener listener = LISTENERS.computeIfAbsent(sessionFactory, factory -> {
+            EntityChangeListener created = new EntityChangeListener();
+            EventListenerRegistry registry = factory.getServiceRegistry().requireService(EventListenerRegistry.class);
+            registry.appendListeners(EventType.POST_COMMIT_INSERT, created);
+            registry.appendListeners(EventType.POST_COMMIT_UPDATE, created);
+            registry.appendListeners(EventType.POST_COMMIT_DELETE, created);
+            return created;
+        });
+        listener.subscribers.add(subscriber);
+    }
+
+    public static void unregister(EntityManagerFactory entityManagerFactory, EntityChangeSubscriber subscriber) {
+        EntityChangeListener listener = LISTENERS.get(entityManagerFactory.unwrap(SessionFactoryImplementor.class));
+        if (listener != null) {
+            listener.subscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * Pass a change by a bulk statement, which hibernate does not report as entity events, to the subscribers
+     */
+    public static void publishBulkChange(EntityManagerFactory entityManagerFactory, Change change, Class<?> type) {
+        EntityChangeListener listener = LISTENERS.get(entityManagerFactory.unwrap(SessionFactoryImplementor.class));
+        if (listener != null) {
+            for (EntityChangeSubscriber subscriber : listener.subscribers) {
+                subscriber.onBulkChange(change, type);
+            }
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        publish(Change.INSERT, event.getPersister(), event.getId(), properties -> true, null, event.getState());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        publish(Change.UPDATE, event.getPersister(), event.getId(), changed(event.getPersister(), event.getDirtyProperties()),
+                event.getOldState(), event.getState());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        publish(Change.DELETE, event.getPersister(), event.getId(), properties -> true, event.getDeletedState(), null);
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+        publishFailed(Change.INSERT, event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        publishFailed(Change.UPDATE, event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        publishFailed(Change.DELETE, event.getPersister(), event.getId());
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return !subscribers.isEmpty();
+    }
+
+    private void publish(Change change, EntityPersister persister, Object id, Predicate<Set<String>> changed, Object[] oldState, Object[] newState) {
+        Function<String, Object> oldReader = reader(persister, oldState);
+        Function<String, Object> newReader = reader(persister, newState);
+        for (EntityChangeSubscriber subscriber : subscribers) {
+            subscriber.onChange(change, persister.getMappedClass(), id, changed, oldReader, newReader);
+        }
+    }
+
+    private void publishFailed(Change change, EntityPersister persister, Object id) {
+        for (EntityChangeSubscriber subscriber : subscribers) {
+            subscriber.onChangeFailed(change, persister.getMappedClass(), id);
+        }
+    }
+
+    /**
+     * Property values of an entity state by name, null without a state
+     */
+    private Function<String, Object> reader(EntityPersister persister, Object[] state) {
+        if (state == null) {
+            return null;
+        }
+        Map<String, Integer> indexes = propertyIndexes.computeIfAbsent(persister, key -> {
+            Map<String, Integer> byName = new HashMap<>();
+            String[] names = key.getPropertyNames();
+            for (int i = 0; i < names.length; i++) {
+                byName.put(names[i], i);
+            }
+            return byName;
+        });
+        return property -> {
+            Integer index = indexes.get(property);
+            return index == null ? null : state[index];
+        };
+    }
+
+    /**
+     * Whether a set of properties uses one of the dirty columns, properties sharing a column (e.g. {@code user} and
+     * {@code userId}) are changed together. Unknown dirty properties change everything, the id never changes.
+     */
+    private Predicate<Set<String>> changed(EntityPersister persister, int[] dirtyProperties) {
+        if (dirtyProperties == null || !(persister instanceof AbstractEntityPersister)) {
+            return properties -> true;
+        }
+        Map<String, Set<String>> columns = columnsOf(persister);
+        String[] names = persister.getPropertyNames();
+        Set<String> dirtyColumns = new HashSet<>();
+        for (int index : dirtyProperties) {
+            dirtyColumns.addAll(columns.get(names[index]));
+        }
+        return properties -> {
+            for (String property : properties) {
+                Set<String> propertyColumns = columns.get(property);
+                if (propertyColumns == null || !Collections.disjoint(propertyColumns, dirtyColumns)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private Map<String, Set<String>> columnsOf(EntityPersister persister) {
+        return propertyColumns.computeIfAbsent(persister, key -> {
+            AbstractEntityPersister entityPersister = (AbstractEntityPersister) key;
+            Map<String, Set<String>> byName = new HashMap<>();
+            String[] names = entityPersister.getPropertyNames();
+            for (int i = 0; i < names.length; i++) {
+                Set<String> columns = new HashSet<>();
+                for (String column : entityPersister.getPropertyColumnNames(i)) {
+                    columns.add(column.toLowerCase(Locale.ROOT));
+                }
+                byName.put(names[i], columns);
+            }
+            if (entityPersister.getIdentifierPropertyName() != null) {
+                byName.put(entityPersister.getIdentifierPropertyName(), Set.of());
+            }
+            return byName;
+        });
+    }
+}
@@ -0,0 +1,39 @@
+package critex.core.cache;
+
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Receives the committed changes of entities, see {@link EntityChangeListener}
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public interface EntityChangeSubscriber {
+
+    enum Change {
+        INSERT, UPDATE, DELETE
+    }
+
+    /**
+     * @param changed  tests whether one of the given properties of the entity changed, always true for inserts and deletes
+     * @param oldState property values of the entity before the change by name, null for inserts and when hibernate did
+     *                 not load them, e.g. for merged or deleted detached entities
+     * @param newState property values of the entity after the change by name, null for deletes
+     */
+    void onChange(Change change, Class<?> type, Object id, Predicate<Set<String>> changed,
+                  Function<String, Object> oldState, Function<String, Object> newState);
+
+    /**
+     * Change which failed to commit. Its uncommitted state may have been read inside the failed transaction, so by
+     * default it is passed as a change of all properties with unknown states.
+     */
+    default void onChangeFailed(Change change, Class<?> type, Object id) {
+        onChange(change, type, id, properties -> true, null, null);
+    }
+
+    /**
+     * Change of any number of entities of the type by a bulk statement, which ids and properties changed is not known
+     */
+    void onBulkChange(Change change, Class<?> type);
+}
@@ -0,0 +1,263 @@
+package critex.core.cache;
+
+import critex.core.model.PathUtils;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.metamodel.*;
+import org.hibernate.Hibernate;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Copies loaded entities into detached instances which hold no session and no proxy. Basic and embedded properties
+ * are always copied, associations only along the given {@link JoinTree}. Other associations are null unless they point
+ * back to an entity of the copied graph, which keeps bidirectional references of the graph intact.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+final class EntityCopier {
+
+    private final Metamodel metamodel;
+    private final PersistenceUnitUtil unitUtil;
+    private final ConcurrentMap<Class<?>, ClassPlan> plans = new ConcurrentHashMap<>();
+
+    EntityCopier(EntityManagerFactory entityManagerFactory) {
+        this.metamodel = entityManagerFactory.getMetamodel();
+        this.unitUtil = entityManagerFactory.getPersistenceUnitUtil();
+    }
+
+    /**
+     * Copy of the graph with the entities it contains and the element types of its copied collections
+     */
+    Copy copyAndRecord(Object entity, JoinTree joins) {
+        Set<EntityRef> entities = new HashSet<>();
+        Set<Class<?>> collectionTypes = new HashSet<>();
+        Object copy = copy(Hibernate.unproxy(entity), joins, new IdentityHashMap<>(), new Recorder(entities, collectionTypes));
+        return new Copy(copy, entities, collectionTypes);
+    }
+
+    /**
+     * Copy of a graph built by {@link #copyAndRecord(Object, JoinTree)}
+     */
+    Object copy(Object entity, JoinTree joins) {
+        return copy(entity, joins, new IdentityHashMap<>(), null);
+    }
+
+    /**
+     * Entity types the joins of the entity class can reach
+     */
+    Set<Class<?>> joinedTypes(Class<?> entityClass, JoinTree joins) {
+        Set<Class<?>> types = new HashSet<>();
+        ClassPlan plan = plan(entityClass);
+        joins.children().forEach((name, child) -> plan.properties().stream()
+                .filter(property -> property.name().equals(name) && property.targetType() != null)
+                .forEach(property -> {
+                    types.add(property.targetType());
+                    types.addAll(joinedTypes(property.targetType(), child));
+                }));
+        return types;
+    }
+
+    private Object copy(Object source, JoinTree joins, IdentityHashMap<Object, Object> copies, Recorder recorder) {
+        Object existing = copies.get(source);
+        if (existing != null) {
+            return existing;
+        }
+        ClassPlan plan = plan(source.getClass());
+        Object target = plan.newInstance();
+        copies.put(source, target);
+        if (recorder != null && plan.entity()) {
+            recorder.entities().add(new EntityRef(source.getClass(), unitUtil.getIdentifier(source)));
+        }
+        for (Property property : plan.properties()) {
+            Object value = property.get(source);
+            if (value == null) {
+                continue;
+            }
+            JoinTree child = joins.children().get(property.name());
+            Object copied = switch (property.kind()) {
+                case BASIC -> value;
+                case EMBEDDED -> copy(value, JoinTree.EMPTY, copies, recorder);
+                case ELEMENTS -> Hibernate.isInitialized(value) ? copyCollection(value, element -> element) : null;
+                case TO_ONE -> copyReference(value, child, copies, recorder);
+                case TO_MANY -> {
+                    if (child == null || !Hibernate.isInitialized(value)) {
+                        yield null;
+                    }
+                    if (recorder != null) {
+                        recorder.collectionTypes().add(property.targetType());
+                    }
+                    yield copyCollection(value, element -> copy(Hibernate.unproxy(element), child, copies, recorder));
+                }
+            };
+            property.set(target, copied);
+        }
+        return target;
+    }
+
+    private Object copyReference(Object value, JoinTree child, IdentityHashMap<Object, Object> copies, Recorder recorder) {
+        if (!Hibernate.isInitialized(value)) {
+            return null;
+        }
+        Object entity = Hibernate.unproxy(value);
+        if (child != null) {
+            return copy(entity, child, copies, recorder);
+        }
+        return copies.get(entity);
+    }
+
+    private static Object copyCollection(Object value, UnaryOperator<Object> copyElement) {
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copied = new LinkedHashMap<>();
+            map.forEach((key, element) -> copied.put(key, copyElement.apply(element)));
+            return copied;
+        }
+        Collection<Object> copied;
+        if (value instanceof SortedSet<?> sorted) {
+            @SuppressWarnings("unchecked")
+            Comparator<Object> comparator = (Comparator<Object>) sorted.comparator();
+            copied = new TreeSet<>(comparator);
+        } else {
+            copied = value instanceof Set<?> ? new LinkedHashSet<>() : new ArrayList<>();
+        }
+        for (Object element : (Collection<?>) value) {
+            copied.add(copyElement.apply(element));
+        }
+        return copied;
+    }
+
+    private ClassPlan plan(Class<?> type) {
+        return plans.computeIfAbsent(type, this::compile);
+    }
+
+    private ClassPlan compile(Class<?> type) {
+        ManagedType<?> managedType = metamodel.managedType(type);
+        List<Property> properties = new ArrayList<>();
+        for (Attribute<?, ?> attribute : managedType.getAttributes()) {
+            Field field = field(type, attribute);
+            Property.Kind kind;
+            Class<?> targetType = null;
+            if (attribute instanceof PluralAttribute<?, ?, ?> plural) {
+                kind = attribute.isAssociation() ? Property.Kind.TO_MANY : Property.Kind.ELEMENTS;
+                targetType = attribute.isAssociation() ? plural.getElementType().getJavaType() : null;
+            } else if (attribute.isAssociation()) {
+                kind = Property.Kind.TO_ONE;
+                targetType = attribute.getJavaType();
+            } else if (attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.EMBEDDED) {
+                kind = Property.Kind.EMBEDDED;
+            } else {
+                kind = Property.Kind.BASIC;
+            }
+            properties.add(new Property(attribute.getName(), field, kind, targetType));
+        }
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return new ClassPlan(constructor, List.copyOf(properties), managedType instanceof EntityType<?>);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(type.getSimpleName() + " has no constructor without parameters", e);
+        }
+    }
+
+    private static Field field(Class<?> type, Attribute<?, ?> attribute) {
+        Member member = attribute.getJavaMember();
+        Field field = member instanceof Field javaField ? javaField : null;
+        for (Class<?> current = type; field == null && current != null && current != Object.class; current = current.getSuperclass()) {
+            try {
+                field = current.getDeclaredField(attribute.getName());
+            } catch (NoSuchFieldException e) {
+                // look in the super class
+            }
+        }
+        if (field == null) {
+            throw new IllegalStateException("no field for " + type.getSimpleName() + "." + attribute.getName());
+        }
+        field.setAccessible(true);
+        return field;
+    }
+
+    /**
+     * Tree of dotted join paths, {@code user.posts} joins posts below user
+     */
+    record JoinTree(Map<String, JoinTree> children) {
+
+        static final JoinTree EMPTY = new JoinTree(Map.of());
+
+        static JoinTree of(Collection<String> paths) {
+            Map<String, Object> root = new TreeMap<>();
+            for (String path : paths) {
+                Map<String, Object> node = root;
+                for (String key : PathUtils.split(path)) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> next = (Map<String, Object>) node.computeIfAbsent(key, ignored -> new TreeMap<>());
+                    node = next;
+                }
+            }
+            return of(root);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static JoinTree of(Map<String, Object> node) {
+            Map<String, JoinTree> children = new TreeMap<>();
+            node.forEach((key, child) -> children.put(key, of((Map<String, Object>) child)));
+            return new JoinTree(Collections.unmodifiableMap(children));
+        }
+
+        /**
+         * Canonical form, equal for the same set of paths in any order
+         */
+        @Override
+        public String toString() {
+            return children.toString();
+        }
+    }
+
+    record EntityRef(Class<?> type, Object id) {
+    }
+
+    record Copy(Object value, Set<EntityRef> entities, Set<Class<?>> collectionTypes) {
+    }
+
+    private record Recorder(Set<EntityRef> entities, Set<Class<?>> collectionTypes) {
+    }
+
+    private record ClassPlan(Constructor<?> constructor, List<Property> properties, boolean entity) {
+
+        Object newInstance() {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("can not instantiate " + constructor.getDeclaringClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    private record Property(String name, Field field, Kind kind, Class<?> targetType) {
+
+        enum Kind {
+            BASIC, EMBEDDED, ELEMENTS, TO_ONE, TO_MANY
+        }
+
+        Object get(Object source) {
+            try {
+                return field.get(source);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void set(Object target, Object value) {
+            try {
+                field.set(target, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package critex.core.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate access frequencies of keys (a count-min sketch of 4 bit counters). All counters are halved after
+ * ten times the cache size increments, so the frequencies favour recent accesses. Updates are lock free.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+final class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int DEPTH = 4;
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    FrequencySketch(int maximumSize) {
+        int length = Integer.highestOneBit(Math.max(2, Math.min(maximumSize, 1 << 24)) - 1) << 1;
+        this.table = new AtomicLongArray(length);
+        this.mask = length - 1;
+        this.sampleSize = Math.max(10 * maximumSize, 16);
+    }
+
+    /**
+     * Estimated frequency of the key, from 0 to 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < DEPTH; i++) {
+            int counterHash = rehash(hash, i);
+            long counters = table.get(counterHash & mask);
+            frequency = Math.min(frequency, (int) ((counters >>> offset(counterHash)) & 15));
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int counterHash = rehash(hash, i);
+            added |= incrementAt(counterHash & mask, offset(counterHash));
+        }
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int offset) {
+        long counterMask = 15L << offset;
+        while (true) {
+            long counters = table.get(index);
+            if ((counters & counterMask) == counterMask) {
+                return false;
+            }
+            if (table.compareAndSet(index, counters, counters + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Halve all counters, concurrent increments may be lost which only makes the estimate less exact
+     */
+    private synchronized void reset() {
+        if (additions.get() < sampleSize) {
+            return;
+        }
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, (table.get(i) >>> 1) & RESET_MASK);
+        }
+        additions.set(additions.get() / 2);
+    }
+
+    private static int offset(int counterHash) {
+        return (counterHash >>> 28) << 2;
+    }
+
+    private static int rehash(int hash, int depth) {
+        long rehashed = (hash + depth) * 0x9E3779B97F4A7C15L;
+        rehashed += rehashed >>> 32;
+        return (int) rehashed;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        hash *= 0xac4c1b51;
+        hash ^= hash >>> 15;
+        return hash;
+    }
+}
@@ -0,0 +1,271 @@
+package critex.core.cache;
+
+import critex.core.model.ResultCacheOptions;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Query results kept serialized in direct (off heap) buffers, so cached pages add no objects to the heap
+ * the garbage collector has to trace. Entries expire after their time to live and the least recently used ones are
+ * evicted above the byte budget. Hot entries are reloaded in the background before they expire (refresh ahead).
+ * Committed changes invalidate the entries depending on the changed entity type, see {@link EntityChangeListener}.
+ * A result loaded while a change of one of its entity types commits is returned but not stored, changes of other
+ * entity types do not keep it out of the cache.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class ResultCache implements EntityChangeSubscriber {
+
+    private final ResultCacheOptions options;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Class<?>, Map<String, CacheDependencies>> keysByType = new HashMap<>();
+    private final Map<Class<?>, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final AtomicLong clears = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private long usedBytes;
+
+    public ResultCache(ResultCacheOptions options) {
+        this.options = options;
+    }
+
+    public ResultCacheOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Cached result of the key, or the result of the loader which is stored for the time to live.
+     * The refresher reloads a hot entry in the background, so it must not depend on the calling thread.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(String key, Duration ttl, Supplier<CacheDependencies> dependencies, Supplier<V> loader, Supplier<V> refresher) {
+        long now = System.nanoTime();
+        Entry entry;
+        boolean refresh = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && now - entry.expiresAt >= 0) {
+                remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                entry.hits++;
+                if (options.getRefreshAhead() > 0 && !entry.refreshing && entry.hits >= options.getHotHits() && now - entry.refreshAt >= 0) {
+                    entry.refreshing = true;
+                    refresh = true;
+                }
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return load(key, ttl, dependencies.get(), loader, 0);
+        }
+        hits.increment();
+        if (refresh) {
+            refresh(key, ttl, entry, refresher);
+        }
+        return (V) ResultCodec.decode(entry.data.duplicate());
+    }
+
+    @Override
+    public void onChange(Change change, Class<?> type, Object id, Predicate<Set<String>> changed,
+                         Function<String, Object> oldState, Function<String, Object> newState) {
+        invalidate(type, changed);
+    }
+
+    @Override
+    public void onBulkChange(Change change, Class<?> type) {
+        invalidate(type);
+    }
+
+    /**
+     * Drop all entries depending on the entity type
+     */
+    public void invalidate(Class<?> type) {
+        invalidate(type, properties -> true);
+    }
+
+    /**
+     * Drop the entries joining the entity type, and the entries of the root type using one of the changed properties
+     */
+    synchronized void invalidate(Class<?> type, Predicate<Set<String>> changed) {
+        if (!advance(type)) {
+            return;
+        }
+        List<String> affected = new ArrayList<>();
+        for (Map.Entry<Class<?>, Map<String, CacheDependencies>> indexed : keysByType.entrySet()) {
+            if (!indexed.getKey().isAssignableFrom(type)) {
+                continue;
+            }
+            indexed.getValue().forEach((key, dependencies) -> {
+                if (dependencies.isJoined(type) || changed.test(dependencies.properties())) {
+                    affected.add(key);
+                }
+            });
+        }
+        affected.forEach(this::remove);
+        invalidations.add(affected.size());
+    }
+
+    public synchronized void clear() {
+        clears.incrementAndGet();
+        entries.clear();
+        keysByType.clear();
+        usedBytes = 0;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Off heap bytes of the current entries
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private <V> V load(String key, Duration ttl, CacheDependencies dependencies, Supplier<V> loader, int hitCount) {
+        generations.computeIfAbsent(dependencies.rootType(), ignored -> new AtomicLong());
+        dependencies.joinedTypes().forEach(type -> generations.computeIfAbsent(type, ignored -> new AtomicLong()));
+        long loadGeneration = generation(dependencies);
+        V value = loader.get();
+        byte[] bytes = ResultCodec.encode(value);
+        if (bytes != null && bytes.length <= options.getMaxEntryBytes()) {
+            ByteBuffer data = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+            put(key, new Entry(data, dependencies, ttl, options.getRefreshAhead(), hitCount), loadGeneration);
+        }
+        return value;
+    }
+
+    /**
+     * Sum of the change counters of the entity types the result depends on, it only grows
+     */
+    private long generation(CacheDependencies dependencies) {
+        long sum = clears.get() + generations.get(dependencies.rootType()).get();
+        for (Class<?> type : dependencies.joinedTypes()) {
+            sum += generations.get(type).get();
+        }
+        return sum;
+    }
+
+    /**
+     * Count a change of the entity type for every cached type it is assignable to, false when no result depends on it
+     */
+    private boolean advance(Class<?> type) {
+        boolean known = false;
+        for (Map.Entry<Class<?>, AtomicLong> counter : generations.entrySet()) {
+            if (counter.getKey().isAssignableFrom(type)) {
+                counter.getValue().incrementAndGet();
+                known = true;
+            }
+        }
+        return known;
+    }
+
+    private void refresh(String key, Duration ttl, Entry entry, Supplier<?> refresher) {
+        refreshes.increment();
+        Refresher.EXECUTOR.execute(() -> {
+            try {
+                load(key, ttl, entry.dependencies, refresher, entry.hits);
+            } finally {
+                // a stored reload replaces the entry, a dropped or failed one leaves it to be refreshed again
+                synchronized (this) {
+                    entry.refreshing = false;
+                }
+            }
+        });
+    }
+
+    private synchronized void put(String key, Entry entry, long loadGeneration) {
+        if (generation(entry.dependencies) != loadGeneration) {
+            return;
+        }
+        remove(key);
+        entries.put(key, entry);
+        usedBytes += entry.data.capacity();
+        index(entry.dependencies.rootType(), key, entry.dependencies);
+        entry.dependencies.joinedTypes().forEach(type -> index(type, key, entry.dependencies));
+        while (usedBytes > options.getMaxBytes() && !entries.isEmpty()) {
+            remove(entries.keySet().iterator().next());
+            evictions.increment();
+        }
+    }
+
+    private void index(Class<?> type, String key, CacheDependencies dependencies) {
+        keysByType.computeIfAbsent(type, ignored -> new HashMap<>()).put(key, dependencies);
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        usedBytes -= entry.data.capacity();
+        unindex(entry.dependencies.rootType(), key);
+        entry.dependencies.joinedTypes().forEach(type -> unindex(type, key));
+    }
+
+    private void unindex(Class<?> type, String key) {
+        Map<String, CacheDependencies> keys = keysByType.get(type);
+        if (keys != null && keys.remove(key) != null && keys.isEmpty()) {
+            keysByType.remove(type);
+        }
+    }
+
+    private static final class Entry {
+        private final ByteBuffer data;
+        private final CacheDependencies dependencies;
+        private final long expiresAt;
+        private final long refreshAt;
+        private int hits;
+        private boolean refreshing;
+
+        private Entry(ByteBuffer data, CacheDependencies dependencies, Duration ttl, double refreshAhead, int hits) {
+            long now = System.nanoTime();
+            this.data = data;
+            this.dependencies = dependencies;
+            this.expiresAt = now + ttl.toNanos();
+            this.refreshAt = now + (long) (ttl.toNanos() * refreshAhead);
+            this.hits = hits;
+        }
+    }
+
+    private static final class Refresher {
+        private static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("critex-cache-refresh-", 0).factory());
+    }
+}
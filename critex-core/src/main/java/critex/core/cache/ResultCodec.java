@@ -0,0 +1,85 @@
+package critex.core.cache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary form of cached results. Counts and lists of long ids are written as raw longs,
+ * other results with java serialization. Results which are not serializable are not cached.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+final class ResultCodec {
+
+    private static final byte LONG = 1;
+    private static final byte LONGS = 2;
+    private static final byte SERIALIZED = 3;
+
+    private ResultCodec() {
+    }
+
+    /**
+     * Encoded value, or null if it can not be encoded
+     */
+    static byte[] encode(Object value) {
+        if (value instanceof Long number) {
+            return ByteBuffer.allocate(9).put(LONG).putLong(number).array();
+        }
+        if (value instanceof List<?> list && isLongs(list)) {
+            ByteBuffer buffer = ByteBuffer.allocate(5 + 8 * list.size()).put(LONGS).putInt(list.size());
+            for (Object element : list) {
+                buffer.putLong((Long) element);
+            }
+            return buffer.array();
+        }
+        if (!(value instanceof Serializable)) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        bytes.write(SERIALIZED);
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        } catch (IOException e) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object decode(ByteBuffer buffer) {
+        return switch (buffer.get()) {
+            case LONG -> buffer.getLong();
+            case LONGS -> decodeLongs(buffer);
+            default -> decodeObject(buffer);
+        };
+    }
+
+    private static List<Object> decodeLongs(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        List<Object> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(buffer.getLong());
+        }
+        return values;
+    }
+
+    private static Object decodeObject(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return input.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("corrupt cache entry", e);
+        }
+    }
+
+    private static boolean isLongs(List<?> list) {
+        for (Object element : list) {
+            if (!(element instanceof Long)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+package critex.core.metrics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * SQL of an executed statement with the setter calls which bound its parameters, see {@link ExplainDataSource}
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+record CapturedStatement(String sql, List<Binding> bindings) {
+
+    /**
+     * Bind the same parameters to another statement by replaying the setter calls
+     */
+    void bind(PreparedStatement statement) throws SQLException {
+        for (Binding binding : bindings) {
+            try {
+                binding.setter().invoke(statement, binding.arguments());
+            } catch (IllegalAccessException e) {
+                throw new SQLException(e);
+            } catch (InvocationTargetException e) {
+                throw e.getCause() instanceof SQLException cause ? cause : new SQLException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * One {@code PreparedStatement.setXxx(index, value, ...)} call
+     */
+    record Binding(Method setter, Object[] arguments) {
+    }
+}
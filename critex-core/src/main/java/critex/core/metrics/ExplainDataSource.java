@@ -0,0 +1,134 @@
+package critex.core.metrics;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Data source decorator which lets {@link QueryExplainer} see the statements of an operation with their bound
+ * parameters. A statement prepared on a thread whose operation captures statements records its SQL and parameter
+ * setters and hands them to {@link QueryMetrics} when it is executed; every other statement is the one of the
+ * target data source, so outside those operations a connection only adds a proxy call per method.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class ExplainDataSource implements DataSource {
+
+    private static final ClassLoader CLASS_LOADER = ExplainDataSource.class.getClassLoader();
+
+    private final DataSource target;
+
+    public ExplainDataSource(DataSource target) {
+        this.target = target;
+    }
+
+    public DataSource getTarget() {
+        return target;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(target.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(target.getConnection(username, password));
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return target.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        target.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        target.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return target.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return target.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : target.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || target.isWrapperFor(iface);
+    }
+
+    private static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if (isIdentityMethod(method)) {
+                return identity(proxy, method, args);
+            }
+            Object result = invoke(connection, method, args);
+            if (method.getName().equals("prepareStatement") && result instanceof PreparedStatement statement && QueryMetrics.isCapturing()) {
+                return capture(statement, (String) args[0]);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Statement which records its parameter setters and reports itself to the current operation when executed
+     */
+    private static PreparedStatement capture(PreparedStatement statement, String sql) {
+        Map<Integer, CapturedStatement.Binding> bindings = new TreeMap<>();
+        return (PreparedStatement) Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+            if (isIdentityMethod(method)) {
+                return identity(proxy, method, args);
+            }
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                bindings.put(index, new CapturedStatement.Binding(method, args.clone()));
+            } else if (name.equals("clearParameters")) {
+                bindings.clear();
+            } else if (name.startsWith("execute") && args == null) {
+                QueryMetrics.capture(new CapturedStatement(sql, List.copyOf(bindings.values())));
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    private static boolean isIdentityMethod(Method method) {
+        return method.getDeclaringClass() == Object.class;
+    }
+
+    private static Object identity(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> proxy.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+        };
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package critex.core.metrics;
+
+import org.hibernate.dialect.*;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * How a database explains a statement and how its plan shows a full table scan and a filter on the scanned rows.
+ * Plans are read as lines; a filter belongs to the scan above it until the next plan node starts, without a node
+ * pattern every line is a node of its own.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+enum ExplainDialect {
+
+    /**
+     * {@code EXPLAIN} prints the statement with the chosen index of every table as comment, {@code tableScan} when none
+     */
+    H2(Pattern.compile("\\.tableScan \\*/"), Pattern.compile("^\\s*(WHERE|ON|/\\* WHERE) "), Pattern.compile("^\\s*(FROM|INNER JOIN|LEFT OUTER JOIN|RIGHT OUTER JOIN|JOIN|CROSS JOIN|SELECT|GROUP BY|ORDER BY)\\b")),
+
+    /**
+     * {@code EXPLAIN} prints a tree of nodes starting with {@code ->}, filters of a node follow it on their own lines
+     */
+    POSTGRESQL(Pattern.compile("\\bSeq Scan on "), Pattern.compile("\\bFilter: "), Pattern.compile("->")),
+
+    /**
+     * {@code EXPLAIN} returns one row per table, {@code type=ALL} is a full scan and {@code Using where} its filter
+     */
+    MYSQL(Pattern.compile("\\btype=ALL\\b"), Pattern.compile("Using where"), null),
+
+    /**
+     * {@code EXPLAIN PLAN} and {@code DBMS_XPLAN}, an operation with a predicate is marked with {@code *} before its id.
+     * Oracle does not take bind values for an explain, the placeholders are explained unbound.
+     */
+    ORACLE(Pattern.compile("TABLE ACCESS (STORAGE )?FULL"), Pattern.compile("^\\|\\*"), null),
+
+    /**
+     * {@code SHOWPLAN_TEXT}, one row per operator with its predicate in the same row
+     */
+    SQL_SERVER(Pattern.compile("\\b(Table Scan|Clustered Index Scan)\\("), Pattern.compile("WHERE:\\("), null),
+
+    /**
+     * {@code EXPLAIN} with the usual wording of full scans and filters
+     */
+    GENERIC(Pattern.compile("(?i)\\b(full (table )?scan|seq scan|table ?scan)\\b"), Pattern.compile("(?i)\\b(filter|where)\\b"), null);
+
+    private final Pattern fullScan;
+    private final Pattern filter;
+    private final Pattern node;
+
+    ExplainDialect(Pattern fullScan, Pattern filter, Pattern node) {
+        this.fullScan = fullScan;
+        this.filter = filter;
+        this.node = node;
+    }
+
+    static ExplainDialect of(Dialect dialect) {
+        if (dialect instanceof H2Dialect) {
+            return H2;
+        }
+        if (dialect instanceof PostgreSQLDialect) {
+            return POSTGRESQL;
+        }
+        if (dialect instanceof MySQLDialect) {
+            return MYSQL;
+        }
+        if (dialect instanceof OracleDialect) {
+            return ORACLE;
+        }
+        if (dialect instanceof SQLServerDialect) {
+            return SQL_SERVER;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * Lines of the plan of the statement, bound with its captured parameters
+     */
+    List<String> explain(Connection connection, CapturedStatement statement, int timeoutSeconds) throws SQLException {
+        return switch (this) {
+            case ORACLE -> explainOracle(connection, statement, timeoutSeconds);
+            case SQL_SERVER -> explainSqlServer(connection, statement, timeoutSeconds);
+            default -> {
+                try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + statement.sql())) {
+                    explain.setQueryTimeout(timeoutSeconds);
+                    statement.bind(explain);
+                    yield lines(explain, explain.execute());
+                }
+            }
+        };
+    }
+
+    boolean isFullScan(List<String> plan) {
+        return plan.stream().anyMatch(line -> fullScan.matcher(line).find());
+    }
+
+    /**
+     * Whether a full scan is filtered, by the scan line itself or a line after it which does not start another node
+     */
+    boolean isMissingIndex(List<String> plan) {
+        for (int i = 0; i < plan.size(); i++) {
+            if (!fullScan.matcher(plan.get(i)).find()) {
+                continue;
+            }
+            if (filter.matcher(plan.get(i)).find()) {
+                return true;
+            }
+            for (int j = i + 1; j < plan.size() && !startsNode(plan.get(j)); j++) {
+                if (filter.matcher(plan.get(j)).find()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean startsNode(String line) {
+        return node == null || fullScan.matcher(line).find() || node.matcher(line).find();
+    }
+
+    private static List<String> explainOracle(Connection connection, CapturedStatement statement, int timeoutSeconds) throws SQLException {
+        String id = "critex-" + Integer.toHexString(statement.sql().hashCode());
+        try (Statement explain = connection.createStatement()) {
+            explain.setQueryTimeout(timeoutSeconds);
+            explain.execute("EXPLAIN PLAN SET STATEMENT_ID = '" + id + "' FOR " + numberedParameters(statement.sql()));
+            try {
+                return lines(explain, explain.execute("SELECT PLAN_TABLE_OUTPUT FROM TABLE(DBMS_XPLAN.DISPLAY('PLAN_TABLE', '" + id + "', 'TYPICAL'))"));
+            } finally {
+                explain.execute("DELETE FROM PLAN_TABLE WHERE STATEMENT_ID = '" + id + "'");
+            }
+        }
+    }
+
+    private static List<String> explainSqlServer(Connection connection, CapturedStatement statement, int timeoutSeconds) throws SQLException {
+        try (Statement showPlan = connection.createStatement()) {
+            showPlan.execute("SET SHOWPLAN_TEXT ON");
+            try (PreparedStatement explain = connection.prepareStatement(statement.sql())) {
+                explain.setQueryTimeout(timeoutSeconds);
+                statement.bind(explain);
+                return lines(explain, explain.execute());
+            } finally {
+                showPlan.execute("SET SHOWPLAN_TEXT OFF");
+            }
+        }
+    }
+
+    /**
+     * Rows of all result sets, a row of one column as its lines and wider rows as {@code column=value} pairs
+     */
+    private static List<String> lines(Statement statement, boolean hasResultSet) throws SQLException {
+        List<String> lines = new ArrayList<>();
+        boolean results = hasResultSet;
+        while (results || statement.getUpdateCount() != -1) {
+            if (results) {
+                try (ResultSet resultSet = statement.getResultSet()) {
+                    ResultSetMetaData metaData = resultSet.getMetaData();
+                    while (resultSet.next()) {
+                        if (metaData.getColumnCount() == 1) {
+                            String value = resultSet.getString(1);
+                            lines.addAll(value == null ? List.of() : value.lines().toList());
+                            continue;
+                        }
+                        StringBuilder line = new StringBuilder();
+                        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                            line.append(column == 1 ? "" : " ").append(metaData.getColumnLabel(column)).append('=').append(resultSet.getString(column));
+                        }
+                        lines.add(line.toString());
+                    }
+                }
+            }
+            results = statement.getMoreResults();
+        }
+        return lines;
+    }
+
+    /**
+     * The statement with its {@code ?} placeholders outside of literals numbered as {@code :1}, {@code :2}, ...
+     */
+    static String numberedParameters(String sql) {
+        StringBuilder numbered = new StringBuilder(sql.length() + 16);
+        boolean literal = false;
+        int parameter = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char current = sql.charAt(i);
+            if (current == '\'') {
+                literal = !literal;
+            }
+            if (current == '?' && !literal) {
+                numbered.append(':').append(++parameter);
+            } else {
+                numbered.append(current);
+            }
+        }
+        return numbered.toString();
+    }
+}
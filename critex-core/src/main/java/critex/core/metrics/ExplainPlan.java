@@ -0,0 +1,21 @@
+package critex.core.metrics;
+
+import critex.core.model.ExplainTrigger;
+
+import java.time.Instant;
+
+/**
+ * Plan of one statement of a shape as the database explains it. The SQL keeps its placeholders, the plan was made
+ * with the values the call bound and may print them the way the database does.
+ *
+ * @param durationNanos duration of the call which triggered the explain
+ * @param fullScan      the plan reads a whole table
+ * @param missingIndex  the plan reads a whole table and filters its rows, an index on the filtered columns may help
+ * @param changed       the structure of the plan differs from the previous plan of the statement, numbers ignored
+ * @param error         message of the failed explain, the plan is empty then
+ * @author Ahmad Reza Mokhtari
+ */
+public record ExplainPlan(Instant time, String entity, String operation, String shape, ExplainTrigger trigger,
+                          long durationNanos, String sql, String plan, boolean fullScan, boolean missingIndex,
+                          boolean changed, String error) {
+}
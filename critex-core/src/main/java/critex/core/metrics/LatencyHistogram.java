@@ -0,0 +1,61 @@
+package critex.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free log linear histogram of durations in nanos: every power of two is split in 8 buckets, so a percentile is
+ * reported as the upper bound of its bucket, at most 12.5% above the recorded value
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    void record(long nanos) {
+        counts.incrementAndGet(index(Math.max(1, nanos)));
+    }
+
+    /**
+     * Upper bound of the bucket holding the given fraction of the recorded values, 0 when nothing was recorded
+     */
+    long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length() - 1);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return exponent * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS;
+        int sub = index % SUB_BUCKETS;
+        return (1L << exponent) + ((sub + 1L) << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,217 @@
+package critex.core.metrics;
+
+import critex.core.model.ExplainOptions;
+import critex.core.model.ExplainTrigger;
+import critex.core.query.ConditionShape;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Explains the statements of a condition shape on a background virtual thread: the first time the shape is seen and
+ * again when a call takes longer than {@link ExplainOptions#getSlowThreshold()}, at most once per
+ * {@link ExplainOptions#getMinInterval()}. The statements are captured by {@link ExplainDataSource} with their bound
+ * parameters and explained with the same values on a connection of their own, in the syntax of the database (see
+ * {@link ExplainDialect}). The latest plans of every shape are kept and flagged for full scans and missing indexes.
+ * Explains which find the queue full are dropped and tried again by a later call of the shape.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class QueryExplainer implements AutoCloseable {
+
+    private final String entity;
+    private final ExplainDialect dialect;
+    private final Connections connections;
+    private final ExplainOptions options;
+    private final BlockingQueue<Request> requests;
+    private final ConcurrentMap<String, Long> explainedAt = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<ExplainPlan>> plans = new ConcurrentHashMap<>();
+    private final LongAdder explained = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread worker;
+    private volatile boolean closed;
+
+    public QueryExplainer(String entity, SessionFactoryImplementor sessionFactory, ExplainOptions options) {
+        this(entity, ExplainDialect.of(sessionFactory.getJdbcServices().getDialect()),
+                connections(sessionFactory.getServiceRegistry().requireService(ConnectionProvider.class)), options);
+    }
+
+    QueryExplainer(String entity, ExplainDialect dialect, Connections connections, ExplainOptions options) {
+        this.entity = entity;
+        this.dialect = dialect;
+        this.connections = connections;
+        this.options = options;
+        this.requests = new ArrayBlockingQueue<>(Math.max(1, options.getQueueSize()));
+        this.worker = Thread.ofVirtual().name("critex-explain-" + entity).start(this::run);
+    }
+
+    /**
+     * Latest plans of the statements of every explained shape by shape id
+     */
+    public Map<String, List<ExplainPlan>> getPlans() {
+        return Collections.unmodifiableMap(new TreeMap<>(plans));
+    }
+
+    /**
+     * Latest plans of the statements of the shape, empty when it was not explained yet
+     */
+    public List<ExplainPlan> getPlans(String shapeId) {
+        return plans.getOrDefault(shapeId, List.of());
+    }
+
+    /**
+     * Latest plans which scan a whole table
+     */
+    public List<ExplainPlan> getFullScans() {
+        return plans.values().stream().flatMap(List::stream).filter(ExplainPlan::fullScan).toList();
+    }
+
+    public String getDialect() {
+        return dialect.name();
+    }
+
+    public ExplainOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Statements explained, including the failed explains
+     */
+    public long getExplainedCount() {
+        return explained.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stop the background thread, queued explains are dropped
+     */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+
+    /**
+     * Queue the captured statements of a finished call when its shape is new or the call was slow
+     */
+    void offer(QueryObservationContext context, ConditionShape shape) {
+        List<CapturedStatement> statements = context.getStatements();
+        if (closed || statements == null || statements.isEmpty()) {
+            return;
+        }
+        String shapeId = shape.shapeId();
+        long now = System.nanoTime();
+        Long last = explainedAt.get(shapeId);
+        ExplainTrigger trigger;
+        if (last == null) {
+            if (explainedAt.size() >= options.getMaxShapes() || explainedAt.putIfAbsent(shapeId, now) != null) {
+                return;
+            }
+            trigger = ExplainTrigger.FIRST_SEEN;
+        } else if (context.getDurationNanos() >= options.getSlowThreshold().toNanos()
+                && now - last >= options.getMinInterval().toNanos() && explainedAt.replace(shapeId, last, now)) {
+            trigger = ExplainTrigger.SLOW;
+        } else {
+            return;
+        }
+        Request request = new Request(Instant.now(), context.getOperation(), shapeId, trigger, context.getDurationNanos(), List.copyOf(statements));
+        if (!requests.offer(request)) {
+            dropped.increment();
+            if (trigger == ExplainTrigger.FIRST_SEEN) {
+                explainedAt.remove(shapeId, now);
+            } else {
+                explainedAt.replace(shapeId, now, last);
+            }
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                explain(requests.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void explain(Request request) {
+        List<ExplainPlan> previous = plans.getOrDefault(request.shape(), List.of());
+        Map<String, CapturedStatement> distinct = new LinkedHashMap<>();
+        request.statements().forEach(statement -> distinct.putIfAbsent(statement.sql(), statement));
+        List<ExplainPlan> explainedPlans = new ArrayList<>(distinct.size());
+        for (CapturedStatement statement : distinct.values()) {
+            explainedPlans.add(explain(request, statement, previous));
+            explained.increment();
+        }
+        plans.put(request.shape(), List.copyOf(explainedPlans));
+    }
+
+    private ExplainPlan explain(Request request, CapturedStatement statement, List<ExplainPlan> previous) {
+        List<String> lines;
+        try {
+            Connection connection = connections.open();
+            try {
+                lines = dialect.explain(connection, statement, (int) Math.max(1, options.getTimeout().toSeconds()));
+            } finally {
+                connections.close(connection);
+            }
+        } catch (SQLException | RuntimeException e) {
+            return new ExplainPlan(request.time(), entity, request.operation(), request.shape(), request.trigger(),
+                    request.durationNanos(), statement.sql(), "", false, false, false, String.valueOf(e.getMessage()));
+        }
+        String plan = String.join("\n", lines);
+        boolean changed = previous.stream()
+                .filter(earlier -> earlier.sql().equals(statement.sql()) && earlier.error() == null)
+                .anyMatch(earlier -> !structure(earlier.plan()).equals(structure(plan)));
+        return new ExplainPlan(request.time(), entity, request.operation(), request.shape(), request.trigger(),
+                request.durationNanos(), statement.sql(), plan, dialect.isFullScan(lines), dialect.isMissingIndex(lines), changed, null);
+    }
+
+    /**
+     * The plan without its numbers, so new estimates and costs do not count as a change
+     */
+    static String structure(String plan) {
+        return plan.replaceAll("\\d+(\\.\\d+)?", "#");
+    }
+
+    private static Connections connections(ConnectionProvider provider) {
+        return new Connections() {
+            @Override
+            public Connection open() throws SQLException {
+                return provider.getConnection();
+            }
+
+            @Override
+            public void close(Connection connection) throws SQLException {
+                provider.closeConnection(connection);
+            }
+        };
+    }
+
+    /**
+     * Connections of the explains, the ones of the session factory outside of tests
+     */
+    interface Connections {
+
+        Connection open() throws SQLException;
+
+        void close(Connection connection) throws SQLException;
+    }
+
+    private record Request(Instant time, String operation, String shape, ExplainTrigger trigger, long durationNanos,
+                           List<CapturedStatement> statements) {
+    }
+}
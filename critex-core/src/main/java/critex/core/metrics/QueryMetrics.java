@@ -0,0 +1,292 @@
+package critex.core.metrics;
+
+import critex.core.model.ConditionParameter;
+import critex.core.model.QueryMetricsOptions;
+import critex.core.model.ShapeOrder;
+import critex.core.query.ConditionShape;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.persistence.Query;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Micrometer observations of the operations of one service. Every operation is observed as {@value #OPERATION} and
+ * every statement it executes as {@value #STATEMENT}, both with the low cardinality keys {@code entity},
+ * {@code operation} and {@code shape}; with a meter observation handler they become timers, so the build time of a tag
+ * set is the total of the operation timer minus the total of its statement timer. Rows and statement counts are high
+ * cardinality keys and fields of the {@link QueryObservationContext}.
+ * Operations called by an observed operation on the same thread are part of it and not observed again.
+ * <p>
+ * Independent of the registry every operation adds its duration to the statistics of its operation and shape, which
+ * {@link #topShapes(ShapeOrder, int)} reports, and the calls slower than the slow query threshold are kept in a ring
+ * buffer with their parameters redacted. The statements of an operation carry an SQL comment with the entity, the
+ * operation, the shape id and the calling method, e.g. {@code critex Post.findAllPage shape=5292417c1db8428d
+ * caller=PostService.getAll}, so a statement in the database logs leads back to the code; Hibernate only writes the
+ * comment when {@code hibernate.use_sql_comments} is enabled. With a {@link QueryExplainer} the statements of every
+ * operation are captured and the explainer decides whether to explain them.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class QueryMetrics {
+
+    public static final String OPERATION = "critex.query";
+    public static final String STATEMENT = "critex.query.statement";
+    public static final String OTHER_SHAPE = "other";
+
+    private static final ThreadLocal<QueryObservationContext> CURRENT = new ThreadLocal<>();
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+    private static final String LIBRARY_PACKAGE = "critex.core.";
+
+    private final ObservationRegistry registry;
+    private final String entity;
+    private final QueryMetricsOptions options;
+    private final ConcurrentMap<String, String> shapes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ShapeStatistics> statistics = new ConcurrentHashMap<>();
+    private final SlowQueryLog slowQueries;
+    private volatile QueryExplainer explainer;
+
+    public QueryMetrics(ObservationRegistry registry, String entity, QueryMetricsOptions options) {
+        this.registry = registry;
+        this.entity = entity;
+        this.options = options;
+        this.slowQueries = new SlowQueryLog(options.getSlowQueryLogSize());
+    }
+
+    /**
+     * Run the operation inside an observation and add it to the statistics of its shape
+     */
+    public <V> V observe(String operation, Supplier<ConditionShape> shape, Supplier<V> call, ToIntFunction<? super V> rows) {
+        if (CURRENT.get() != null) {
+            return call.get();
+        }
+        ConditionShape conditionShape = shape.get();
+        String caller = caller();
+        QueryExplainer currentExplainer = explainer;
+        QueryObservationContext context = new QueryObservationContext(this, entity, operation, shapeTag(conditionShape), caller,
+                options.isSqlComments() ? "critex " + entity + "." + operation + " shape=" + conditionShape.shapeId() + " caller=" + caller : null,
+                currentExplainer == null ? null : new ArrayList<>(currentExplainer.getOptions().getMaxStatements()));
+        Observation observation = Observation.createNotStarted(OPERATION, () -> context, registry)
+                .contextualName(entity + " " + operation)
+                .lowCardinalityKeyValue("entity", entity)
+                .lowCardinalityKeyValue("operation", operation)
+                .lowCardinalityKeyValue("shape", context.getShape());
+        context.setObservation(observation);
+        observation.start();
+        CURRENT.set(context);
+        long start = System.nanoTime();
+        Throwable error = null;
+        try (Observation.Scope ignored = observation.openScope()) {
+            V result = call.get();
+            context.setRows(rows.applyAsInt(result));
+            return result;
+        } catch (RuntimeException | Error e) {
+            error = e;
+            observation.error(e);
+            throw e;
+        } finally {
+            CURRENT.remove();
+            context.setDurationNanos(System.nanoTime() - start);
+            record(context, conditionShape, error);
+            if (currentExplainer != null) {
+                currentExplainer.offer(context, conditionShape);
+            }
+            observation.highCardinalityKeyValue("rows", String.valueOf(context.getRows()))
+                    .highCardinalityKeyValue("queries", String.valueOf(context.getQueries()));
+            observation.stop();
+        }
+    }
+
+    /**
+     * Execute a statement of the current operation, counted and timed when the operation is observed
+     */
+    public static <V> V execute(Supplier<V> statement) {
+        QueryObservationContext context = CURRENT.get();
+        if (context == null) {
+            return statement.get();
+        }
+        Observation observation = null;
+        if (context.getMetrics().options.isObserveStatements()) {
+            observation = Observation.createNotStarted(STATEMENT, context.getMetrics().registry)
+                    .parentObservation(context.getObservation())
+                    .lowCardinalityKeyValue("entity", context.getEntity())
+                    .lowCardinalityKeyValue("operation", context.getOperation())
+                    .lowCardinalityKeyValue("shape", context.getShape())
+                    .start();
+        }
+        long start = System.nanoTime();
+        try {
+            return statement.get();
+        } catch (RuntimeException | Error e) {
+            if (observation != null) {
+                observation.error(e);
+            }
+            throw e;
+        } finally {
+            context.addExecution(System.nanoTime() - start);
+            if (observation != null) {
+                observation.stop();
+            }
+        }
+    }
+
+    /**
+     * Whether the operation on this thread captures its statements for the explainer
+     */
+    public static boolean isCapturing() {
+        QueryObservationContext context = CURRENT.get();
+        return context != null && context.getStatements() != null;
+    }
+
+    /**
+     * Add an executed statement to the operation on this thread, up to the max statements of the explainer
+     */
+    static void capture(CapturedStatement statement) {
+        QueryObservationContext context = CURRENT.get();
+        QueryExplainer current = context == null ? null : context.getMetrics().explainer;
+        if (current != null && context.getStatements() != null && context.getStatements().size() < current.getOptions().getMaxStatements()) {
+            context.getStatements().add(statement);
+        }
+    }
+
+    /**
+     * Give the query the SQL comment of the current operation, if any
+     */
+    public static void tag(Query query) {
+        QueryObservationContext context = CURRENT.get();
+        if (context != null && context.getComment() != null) {
+            query.unwrap(org.hibernate.query.Query.class).setComment(context.getComment());
+        }
+    }
+
+    /**
+     * Statistics of the operations and shapes of this service, the largest first in the given order
+     */
+    public List<ShapeReport> topShapes(ShapeOrder order, int limit) {
+        return topShapes(List.of(this), order, limit);
+    }
+
+    /**
+     * Statistics of the operations and shapes of all given services, the largest first in the given order
+     */
+    public static List<ShapeReport> topShapes(Collection<QueryMetrics> metrics, ShapeOrder order, int limit) {
+        Comparator<ShapeReport> comparator = switch (order) {
+            case TOTAL_TIME -> Comparator.comparingLong(ShapeReport::totalNanos);
+            case P99 -> Comparator.comparingLong(ShapeReport::p99Nanos);
+            case CALLS -> Comparator.comparingLong(ShapeReport::calls);
+        };
+        return metrics.stream()
+                .flatMap(each -> each.statistics.values().stream())
+                .map(ShapeStatistics::report)
+                .sorted(comparator.reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * The latest calls slower than the slow query threshold, the newest first
+     */
+    public List<SlowQuery> getSlowQueries() {
+        return slowQueries.entries();
+    }
+
+    /**
+     * Parameters of the shape without their values: key, operator and the type of the value, or the number of values
+     * for collections and ranges
+     */
+    public static List<String> redact(ConditionShape shape) {
+        List<String> redacted = new ArrayList<>(shape.getParameters().size());
+        for (ConditionParameter parameter : shape.getParameters()) {
+            String description = parameter.getKey() + " " + parameter.getOperator();
+            Object value = parameter.getValue();
+            if (value instanceof Collection<?> values) {
+                description += " <" + values.size() + " values>";
+            } else if (value instanceof Object[] values) {
+                description += " <" + values.length + " values>";
+            } else if (value != null) {
+                description += " <" + value.getClass().getSimpleName() + ">";
+            }
+            redacted.add(description);
+        }
+        return redacted;
+    }
+
+    /**
+     * Shape keys by their tag, to look up which condition a tag stands for
+     */
+    public Map<String, String> getShapes() {
+        return Collections.unmodifiableMap(new TreeMap<>(shapes));
+    }
+
+    /**
+     * Explain the statements of new and slow shapes with the explainer, null stops explaining. Returns the previous
+     * explainer, which the caller closes.
+     */
+    public QueryExplainer setExplainer(QueryExplainer explainer) {
+        QueryExplainer previous = this.explainer;
+        this.explainer = explainer;
+        return previous;
+    }
+
+    /**
+     * Explainer of the new and slow shapes, null when plans are not captured
+     */
+    public QueryExplainer getExplainer() {
+        return explainer;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public ObservationRegistry getRegistry() {
+        return registry;
+    }
+
+    public QueryMetricsOptions getOptions() {
+        return options;
+    }
+
+    private void record(QueryObservationContext context, ConditionShape shape, Throwable error) {
+        String key = context.getOperation() + ' ' + context.getShape();
+        statistics.computeIfAbsent(key, ignored -> new ShapeStatistics(entity, context.getOperation(), context.getShape(),
+                        shapes.getOrDefault(context.getShape(), OTHER_SHAPE)))
+                .record(context.getDurationNanos(), context.getQueries(), context.getRows());
+        if (context.getDurationNanos() >= options.getSlowQueryThreshold().toNanos()) {
+            slowQueries.add(new SlowQuery(Instant.now(), entity, context.getOperation(), shape.shapeId(), context.getCaller(),
+                    redact(shape), context.getDurationNanos(), context.getExecutionNanos(), context.getQueries(),
+                    context.getRows(), error == null ? null : error.getClass().getName()));
+        }
+    }
+
+    /**
+     * Class and method of the first frame outside the library, usually the service method which started the operation
+     */
+    private static String caller() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> !frame.getClassName().startsWith(LIBRARY_PACKAGE))
+                .findFirst()
+                .map(frame -> frame.getClassName().substring(frame.getClassName().lastIndexOf('.') + 1) + "." + frame.getMethodName())
+                .orElse("unknown"));
+    }
+
+    /**
+     * The id of the shape while less than max shapes are known, {@link #OTHER_SHAPE} afterward
+     */
+    private String shapeTag(ConditionShape shape) {
+        String id = shape.shapeId();
+        if (shapes.containsKey(id)) {
+            return id;
+        }
+        if (shapes.size() >= options.getMaxShapes()) {
+            return OTHER_SHAPE;
+        }
+        shapes.putIfAbsent(id, shape.getKey());
+        return id;
+    }
+}
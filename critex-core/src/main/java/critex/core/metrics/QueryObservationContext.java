@@ -0,0 +1,126 @@
+package critex.core.metrics;
+
+import io.micrometer.observation.Observation;
+
+import java.util.List;
+
+/**
+ * Context of the observation of one service operation. Besides its tags it carries the numbers which are not bounded
+ * enough to be tags: the rows returned, the statements executed and the time spent executing them, so an
+ * {@code ObservationHandler} can record them as distributions.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class QueryObservationContext extends Observation.Context {
+
+    private final String entity;
+    private final String operation;
+    private final String shape;
+    private final String caller;
+    private final String comment;
+    private final QueryMetrics metrics;
+    private final List<CapturedStatement> statements;
+    private Observation observation;
+    private int rows = -1;
+    private int queries;
+    private long executionNanos;
+    private long durationNanos;
+
+    QueryObservationContext(QueryMetrics metrics, String entity, String operation, String shape, String caller, String comment,
+                            List<CapturedStatement> statements) {
+        this.metrics = metrics;
+        this.statements = statements;
+        this.entity = entity;
+        this.operation = operation;
+        this.shape = shape;
+        this.caller = caller;
+        this.comment = comment;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Shape id of the condition (see {@link critex.core.query.ConditionShape#shapeId()}) or {@code other}
+     */
+    public String getShape() {
+        return shape;
+    }
+
+    /**
+     * Simple class name and method of the code which called the operation
+     */
+    public String getCaller() {
+        return caller;
+    }
+
+    /**
+     * Entities returned, 1 for counts and exists probes, -1 when the operation failed
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Statements executed, 0 when the result came from a cache
+     */
+    public int getQueries() {
+        return queries;
+    }
+
+    public long getExecutionNanos() {
+        return executionNanos;
+    }
+
+    /**
+     * Time spent outside the statements: normalizing the condition, building or looking up the plan and binding
+     */
+    public long getBuildNanos() {
+        return durationNanos - executionNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    Observation getObservation() {
+        return observation;
+    }
+
+    void setObservation(Observation observation) {
+        this.observation = observation;
+    }
+
+    String getComment() {
+        return comment;
+    }
+
+    /**
+     * Statements captured for the explainer, null when the operation does not capture
+     */
+    List<CapturedStatement> getStatements() {
+        return statements;
+    }
+
+    QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    void addExecution(long nanos) {
+        queries++;
+        executionNanos += nanos;
+    }
+
+    void setDurationNanos(long durationNanos) {
+        this.durationNanos = durationNanos;
+    }
+}
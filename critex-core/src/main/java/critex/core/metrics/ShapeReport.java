@@ -0,0 +1,15 @@
+package critex.core.metrics;
+
+/**
+ * Totals of one operation of one condition shape since the metrics were enabled, durations in nanos
+ *
+ * @param shape     shape id, see {@link critex.core.query.ConditionShape#shapeId()}
+ * @param shapeKey  keys, operators and joins of the shape, without values
+ * @param p99Nanos  99th percentile of the call durations, see {@link LatencyHistogram}
+ * @param queries   statements executed by all calls
+ * @param rows      entities returned by all calls
+ * @author Ahmad Reza Mokhtari
+ */
+public record ShapeReport(String entity, String operation, String shape, String shapeKey, long calls, long totalNanos,
+                          long meanNanos, long p99Nanos, long maxNanos, long queries, long rows) {
+}
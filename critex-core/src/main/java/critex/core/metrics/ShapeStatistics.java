@@ -0,0 +1,46 @@
+package critex.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the calls of one operation and shape
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+final class ShapeStatistics {
+
+    private final String entity;
+    private final String operation;
+    private final String shape;
+    private final String shapeKey;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    ShapeStatistics(String entity, String operation, String shape, String shapeKey) {
+        this.entity = entity;
+        this.operation = operation;
+        this.shape = shape;
+        this.shapeKey = shapeKey;
+    }
+
+    void record(long nanos, int callQueries, int callRows) {
+        calls.increment();
+        totalNanos.add(nanos);
+        queries.add(callQueries);
+        rows.add(Math.max(0, callRows));
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        histogram.record(nanos);
+    }
+
+    ShapeReport report() {
+        long count = calls.sum();
+        long total = totalNanos.sum();
+        return new ShapeReport(entity, operation, shape, shapeKey, count, total, count == 0 ? 0 : total / count,
+                histogram.percentile(0.99), maxNanos.get(), queries.sum(), rows.sum());
+    }
+}
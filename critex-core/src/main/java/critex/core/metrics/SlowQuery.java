@@ -0,0 +1,16 @@
+package critex.core.metrics;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * One call which took longer than the slow query threshold. The parameters of the condition are redacted to their
+ * key, operator and value type, see {@link QueryMetrics#redact(critex.core.query.ConditionShape)}.
+ *
+ * @param caller first method outside the library on the stack, usually the service method
+ * @param error  class of the exception the call failed with, null when it succeeded
+ * @author Ahmad Reza Mokhtari
+ */
+public record SlowQuery(Instant time, String entity, String operation, String shape, String caller, List<String> parameters,
+                        long durationNanos, long executionNanos, int queries, int rows, String error) {
+}
@@ -0,0 +1,38 @@
+package critex.core.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring buffer of the latest slow calls, the oldest entry is overwritten when it is full
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+final class SlowQueryLog {
+
+    private final SlowQuery[] entries;
+    private long added;
+
+    SlowQueryLog(int size) {
+        this.entries = new SlowQuery[size];
+    }
+
+    synchronized void add(SlowQuery entry) {
+        if (entries.length == 0) {
+            return;
+        }
+        entries[(int) (added++ % entries.length)] = entry;
+    }
+
+    /**
+     * Entries from the newest to the oldest
+     */
+    synchronized List<SlowQuery> entries() {
+        int size = (int) Math.min(added, entries.length);
+        List<SlowQuery> newestFirst = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            newestFirst.add(entries[(int) ((added - i) % entries.length)]);
+        }
+        return newestFirst;
+    }
+}
@@ -43,4 +43,11 @@ public class AggregationField {
     public static AggregationField min(String fieldName) {
         return new AggregationField(fieldName, AggregationType.MIN, "min");
     }
+
+    /**
+     * Name of the aggregated value in results and having filters, the alias or e.g. {@code sum_amount}
+     */
+    public String resultName() {
+        return alias != null ? alias : aggregationType.name().toLowerCase() + "_" + fieldName;
+    }
 }
\ No newline at end of file
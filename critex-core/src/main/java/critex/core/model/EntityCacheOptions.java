@@ -0,0 +1,42 @@
+package critex.core.model;
+
+import lombok.*;
+
+import java.time.Duration;
+
+/**
+ * Options of the entity cache of a service: number of entries and time to live of found and missing entities
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class EntityCacheOptions {
+
+    /**
+     * Maximum number of cached (id, joins) entries
+     */
+    @Builder.Default
+    private int maximumSize = 10_000;
+
+    /**
+     * Time to live of found entities, bounds the staleness after changes which bypass hibernate
+     */
+    @Builder.Default
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * Time to live of missing ids, zero does not cache missing ids
+     */
+    @Builder.Default
+    private Duration negativeTtl = Duration.ofSeconds(30);
+
+    public static EntityCacheOptions defaults() {
+        return builder().build();
+    }
+
+    public static EntityCacheOptions of(int maximumSize) {
+        return builder().maximumSize(maximumSize).build();
+    }
+}
@@ -0,0 +1,61 @@
+package critex.core.model;
+
+import lombok.*;
+
+import java.time.Duration;
+
+/**
+ * Options of the explain plans of a service: when a shape is explained again, how many shapes and statements are
+ * explained and how long the background explain may take
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ExplainOptions {
+
+    /**
+     * A call taking at least this long explains its shape again
+     */
+    @Builder.Default
+    private Duration slowThreshold = Duration.ofSeconds(1);
+
+    /**
+     * A shape is explained again at most once per interval, however slow its calls are
+     */
+    @Builder.Default
+    private Duration minInterval = Duration.ofMinutes(10);
+
+    /**
+     * Distinct shapes explained per service, new shapes after the limit are not explained
+     */
+    @Builder.Default
+    private int maxShapes = 100;
+
+    /**
+     * Statements of one call which are captured and explained
+     */
+    @Builder.Default
+    private int maxStatements = 4;
+
+    /**
+     * Explains waiting for the background thread, further ones are dropped
+     */
+    @Builder.Default
+    private int queueSize = 32;
+
+    /**
+     * Query timeout of one explain statement
+     */
+    @Builder.Default
+    private Duration timeout = Duration.ofSeconds(10);
+
+    public static ExplainOptions defaults() {
+        return builder().build();
+    }
+
+    public static ExplainOptions of(Duration slowThreshold) {
+        return builder().slowThreshold(slowThreshold).build();
+    }
+}
@@ -0,0 +1,9 @@
+package critex.core.model;
+
+/**
+ * Why a shape was explained
+ */
+public enum ExplainTrigger {
+    FIRST_SEEN,
+    SLOW
+}
@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -27,13 +28,13 @@ public class JoinReport {
         this.fetch = fetch;
         this.innerJoin = innerJoin;
 
-        String[] newJoins = key.split("\\.");
-        this.key = newJoins[0];
-        if (newJoins.length > 1) {
-            JoinReport joinReport = JoinReport.of(newJoins[1]);
+        List<String> newJoins = PathUtils.split(key);
+        this.key = newJoins.getFirst();
+        if (newJoins.size() > 1) {
+            JoinReport joinReport = JoinReport.of(newJoins.get(1));
             this.addJoin(joinReport);
-            for (int i = 2; i < newJoins.length; i++) {
-                JoinReport newJoin = JoinReport.of(newJoins[i]);
+            for (int i = 2; i < newJoins.size(); i++) {
+                JoinReport newJoin = JoinReport.of(newJoins.get(i));
                 joinReport.addJoin(newJoin);
                 joinReport = newJoin;
             }
@@ -0,0 +1,30 @@
+package critex.core.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Result of a keyset (seek) page, the cursors are opaque and only valid for the same sort
+ */
+@Getter
+@AllArgsConstructor
+public class KeysetSlice<T> {
+    private final List<T> content;
+    private final String nextCursor;
+    private final String previousCursor;
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public boolean hasPrevious() {
+        return previousCursor != null;
+    }
+
+    public <U> KeysetSlice<U> map(Function<? super T, ? extends U> converter) {
+        return new KeysetSlice<>(content.stream().<U>map(converter).toList(), nextCursor, previousCursor);
+    }
+}
@@ -20,6 +20,7 @@ public class PaginationUtils {
                 : Sort.Direction.ASC;
             sort = Sort.by(direction, pageRequestParam.getSortBy());
         }
+        sort = sort.and(createSort(pageRequestParam.getSortFields()));
         
         return PageRequest.of(pageRequestParam.getPageNumber(), pageRequestParam.getPageSize(), sort);
     }
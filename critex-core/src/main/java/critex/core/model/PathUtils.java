@@ -0,0 +1,50 @@
+package critex.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Helpers of dotted property paths
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class PathUtils {
+
+    private static final int SPLIT_CACHE_SIZE = 4096;
+    private static final ConcurrentMap<String, List<String>> SPLIT_CACHE = new ConcurrentHashMap<>();
+
+    private PathUtils() {
+    }
+
+    /**
+     * Split a dotted path (parent.child.child) into its keys without regex,
+     * results are cached since the same keys are used on every request, so the list is unmodifiable
+     */
+    public static List<String> split(String path) {
+        List<String> keys = SPLIT_CACHE.get(path);
+        if (keys != null) {
+            return keys;
+        }
+        keys = doSplit(path);
+        if (SPLIT_CACHE.size() < SPLIT_CACHE_SIZE) {
+            SPLIT_CACHE.putIfAbsent(path, keys);
+        }
+        return keys;
+    }
+
+    private static List<String> doSplit(String path) {
+        if (path.indexOf('.') < 0) {
+            return List.of(path);
+        }
+        List<String> keys = new ArrayList<>(4);
+        int start = 0;
+        for (int i = path.indexOf('.'); i >= 0; i = path.indexOf('.', start)) {
+            keys.add(path.substring(start, i));
+            start = i + 1;
+        }
+        keys.add(path.substring(start));
+        return List.copyOf(keys);
+    }
+}
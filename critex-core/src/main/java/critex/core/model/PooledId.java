@@ -0,0 +1,63 @@
+package critex.core.model;
+
+import critex.core.repo.PooledIdGenerator;
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Id generated from a database sequence which hands out blocks of allocationSize ids, so new entities get their ids
+ * in memory and their inserts can be sent in jdbc batches. Identity columns do not allow that: hibernate has to run
+ * every insert on its own to read the generated id. Use it instead of {@code @GeneratedValue}, e.g.
+ * {@code @Id @PooledId(sequence = "comments_seq") private Long id;}
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+@IdGeneratorType(PooledIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface PooledId {
+
+    /**
+     * Name of the sequence, the table name with a {@code _seq} suffix when empty
+     */
+    String sequence() default "";
+
+    /**
+     * Ids taken from the sequence per database round trip, the increment of the sequence
+     */
+    int allocationSize() default 50;
+
+    Allocation allocation() default Allocation.POOLED_LO;
+
+    /**
+     * How the values of the sequence are turned into ids, see the hibernate optimizers of the same names
+     */
+    enum Allocation {
+        /**
+         * The sequence value is the highest id of the block, other applications may use the sequence directly
+         */
+        POOLED("pooled"),
+        /**
+         * The sequence value is the lowest id of the block, other applications may use the sequence directly
+         */
+        POOLED_LO("pooled-lo"),
+        /**
+         * Ids are sequence value * allocationSize + n, other applications must use the same algorithm
+         */
+        HILO("hilo");
+
+        private final String optimizer;
+
+        Allocation(String optimizer) {
+            this.optimizer = optimizer;
+        }
+
+        public String getOptimizer() {
+            return optimizer;
+        }
+    }
+}
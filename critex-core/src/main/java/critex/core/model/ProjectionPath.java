@@ -0,0 +1,18 @@
+package critex.core.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Path of the entity a DTO constructor parameter (or the field with the same name) is projected from,
+ * relative to the path of the DTO itself, e.g. {@code @ProjectionPath("user.username") String author}
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.PARAMETER, ElementType.FIELD})
+public @interface ProjectionPath {
+    String value();
+}
@@ -0,0 +1,55 @@
+package critex.core.model;
+
+import lombok.*;
+
+import java.time.Duration;
+
+/**
+ * Options of the query metrics of a service: how many condition shapes get their own tag, whether every executed
+ * statement is observed too, the slow query log and the SQL comments
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class QueryMetricsOptions {
+
+    /**
+     * Distinct shape tags per service, the shapes seen after the limit share the tag {@code other}
+     */
+    @Builder.Default
+    private int maxShapes = 100;
+
+    /**
+     * Observe every statement as a child observation, its timer separates the execution time from the build time
+     */
+    @Builder.Default
+    private boolean observeStatements = true;
+
+    /**
+     * Calls taking at least this long are kept in the slow query log
+     */
+    @Builder.Default
+    private Duration slowQueryThreshold = Duration.ofMillis(500);
+
+    /**
+     * Slow calls kept, the oldest is dropped when the log is full
+     */
+    @Builder.Default
+    private int slowQueryLogSize = 100;
+
+    /**
+     * Prefix the statements with a comment naming the entity, operation, shape id and calling method
+     */
+    @Builder.Default
+    private boolean sqlComments = true;
+
+    public static QueryMetricsOptions defaults() {
+        return builder().build();
+    }
+
+    public static QueryMetricsOptions of(int maxShapes) {
+        return builder().maxShapes(maxShapes).build();
+    }
+}
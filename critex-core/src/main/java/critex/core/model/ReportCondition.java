@@ -190,12 +190,12 @@ public class ReportCondition {
     }
 
     public JoinReport addJoinReport(String key, JoinType join) {
-        String[] newJoins = key.split("\\.");
-        JoinReport main = JoinReport.of(newJoins[0], join);
+        List<String> newJoins = PathUtils.split(key);
+        JoinReport main = JoinReport.of(newJoins.getFirst(), join);
         List<JoinReport> joins = new ArrayList<>();
         joins.add(main);
-        for (int i = 1; i < newJoins.length; i++) {
-            JoinReport innerJoin = JoinReport.of(newJoins[i], join);
+        for (int i = 1; i < newJoins.size(); i++) {
+            JoinReport innerJoin = JoinReport.of(newJoins.get(i), join);
             main.addJoin(innerJoin);
             main = innerJoin;
         }
@@ -0,0 +1,56 @@
+package critex.core.model;
+
+import lombok.*;
+
+import java.time.Duration;
+
+/**
+ * Options of the result cache of a service: off heap memory budget, time to live and refresh ahead of hot entries
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ResultCacheOptions {
+
+    /**
+     * Off heap bytes of all entries, least recently used entries are evicted above it
+     */
+    @Builder.Default
+    private long maxBytes = 64L * 1024 * 1024;
+
+    /**
+     * Larger results are not cached
+     */
+    @Builder.Default
+    private int maxEntryBytes = 1024 * 1024;
+
+    /**
+     * Time to live of page contents and projected rows
+     */
+    @Builder.Default
+    private Duration ttl = Duration.ofMinutes(1);
+
+    /**
+     * Time to live of counts, they are only invalidated by changes of the filtered properties
+     */
+    @Builder.Default
+    private Duration countTtl = Duration.ofMinutes(5);
+
+    /**
+     * Fraction of the time to live after which a hot entry is reloaded in the background, 0 disables refresh ahead
+     */
+    @Builder.Default
+    private double refreshAhead = 0.8;
+
+    /**
+     * Hits after which an entry is hot
+     */
+    @Builder.Default
+    private int hotHits = 3;
+
+    public static ResultCacheOptions defaults() {
+        return builder().build();
+    }
+}
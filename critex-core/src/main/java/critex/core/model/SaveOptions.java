@@ -0,0 +1,34 @@
+package critex.core.model;
+
+import lombok.*;
+
+/**
+ * Options of a batched save: entities per jdbc batch and whether the persistence context is cleared after each batch
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SaveOptions {
+
+    /**
+     * Statements sent to the database per jdbc batch, the persistence context is flushed after this many entities
+     */
+    @Builder.Default
+    private int batchSize = 50;
+
+    /**
+     * Clear the persistence context after each flushed batch so memory stays bounded, this detaches the saved entities
+     */
+    @Builder.Default
+    private boolean clear = true;
+
+    public static SaveOptions defaults() {
+        return builder().build();
+    }
+
+    public static SaveOptions of(int batchSize) {
+        return builder().batchSize(batchSize).build();
+    }
+}
@@ -0,0 +1,47 @@
+package critex.core.model;
+
+import lombok.*;
+
+/**
+ * Options of the in memory search index of a service: prefix matching of the query terms and the fetch size of the scan
+ * which builds the index
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SearchIndexOptions {
+
+    /**
+     * Whether a query term also matches the tokens it is a prefix of, exact matches rank higher
+     */
+    @Builder.Default
+    private boolean prefix = true;
+
+    /**
+     * Shorter query terms only match whole tokens, so one letter does not expand to most of the vocabulary
+     */
+    @Builder.Default
+    private int minPrefixLength = 2;
+
+    /**
+     * Rows fetched per round trip while the index is built
+     */
+    @Builder.Default
+    private int fetchSize = 1000;
+
+    /**
+     * Sorted searches with more matches run as LIKE search, the sort values of every match are read to sort them
+     */
+    @Builder.Default
+    private int maxSortedMatches = 5000;
+
+    public static SearchIndexOptions defaults() {
+        return builder().build();
+    }
+
+    public static SearchIndexOptions of(boolean prefix) {
+        return builder().prefix(prefix).build();
+    }
+}
@@ -0,0 +1,10 @@
+package critex.core.model;
+
+/**
+ * Order of the query shape report, the largest first
+ */
+public enum ShapeOrder {
+    TOTAL_TIME,
+    P99,
+    CALLS
+}
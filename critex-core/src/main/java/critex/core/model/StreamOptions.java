@@ -0,0 +1,59 @@
+package critex.core.model;
+
+import lombok.*;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+/**
+ * Options of a streamed read: jdbc fetch size, how often the persistence context is cleared and the row order
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class StreamOptions {
+
+    /**
+     * Rows fetched from the database per round trip
+     */
+    @Builder.Default
+    private int fetchSize = 500;
+
+    /**
+     * Clear the persistence context after this many entities, 0 never clears
+     */
+    @Builder.Default
+    private int clearEvery = 1000;
+
+    /**
+     * Load the entities read only, so hibernate keeps no snapshot for dirty checking
+     */
+    @Builder.Default
+    private boolean readOnly = true;
+
+    /**
+     * Maximum number of entities, 0 reads all of them
+     */
+    private int maxRows;
+
+    private List<SortField> sortFields;
+
+    public static StreamOptions defaults() {
+        return builder().build();
+    }
+
+    public static StreamOptions of(int fetchSize) {
+        return builder().fetchSize(fetchSize).build();
+    }
+
+    public StreamOptions withSortFields(List<SortField> sortFields) {
+        this.sortFields = sortFields;
+        return this;
+    }
+
+    public Sort toSort() {
+        return PaginationUtils.createSort(sortFields);
+    }
+}
@@ -0,0 +1,49 @@
+package critex.core.model;
+
+import lombok.*;
+
+import java.time.Duration;
+
+/**
+ * Options of a write-behind queue: capacity, batch size and delay thresholds of the flusher and how long a full queue
+ * blocks a caller
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class WriteBehindOptions {
+
+    /**
+     * Maximum number of queued entities which are not written yet
+     */
+    @Builder.Default
+    private int capacity = 10_000;
+
+    /**
+     * Entities written per transaction, a full batch is flushed right away
+     */
+    @Builder.Default
+    private int batchSize = 100;
+
+    /**
+     * Time a batch which is not full waits for more entities before it is flushed
+     */
+    @Builder.Default
+    private Duration maxDelay = Duration.ofMillis(20);
+
+    /**
+     * Time a caller blocks on a full queue before the write is rejected
+     */
+    @Builder.Default
+    private Duration offerTimeout = Duration.ofSeconds(1);
+
+    public static WriteBehindOptions defaults() {
+        return builder().build();
+    }
+
+    public static WriteBehindOptions of(int batchSize, Duration maxDelay) {
+        return builder().batchSize(batchSize).maxDelay(maxDelay).build();
+    }
+}
@@ -0,0 +1,202 @@
+package critex.core.query;
+
+import critex.core.metrics.QueryMetrics;
+import critex.core.model.JoinReport;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.*;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.PluralAttribute;
+import org.hibernate.Hibernate;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Loads the fetched collections of a join tree with one query per collection instead of joining them all into the
+ * root query, which multiplies the rows of sibling collections and fails on more than one {@code List} bag.
+ * The root query keeps the to-one fetches; each collection is then fetched on its parents with
+ * {@code where parent.id in (...)}, together with the to-one fetches below it, and the collections below it are loaded
+ * the same way on the loaded elements. The queries run in the persistence context of the roots, so hibernate puts the
+ * loaded elements into the collections of the managed parents.
+ * Only fetch only joins (see {@link FetchGraphs}) are loaded this way, joins with filters stay in the root query.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class CollectionQueries {
+
+    private final PathRegistry pathRegistry;
+    private final ConcurrentMap<String, BranchQuery> queries = new ConcurrentHashMap<>();
+
+    public CollectionQueries(PathRegistry pathRegistry) {
+        this.pathRegistry = pathRegistry;
+    }
+
+    /**
+     * Split the joins of the type into the joins of the root query and the collection branches loaded afterward
+     */
+    public Split split(Class<?> type, Collection<JoinReport> joins) {
+        Set<JoinReport> rootJoins = new HashSet<>();
+        List<Branch> branches = new ArrayList<>();
+        for (JoinReport join : joins) {
+            if (!FetchGraphs.isGraphJoin(join)) {
+                rootJoins.add(join);
+                continue;
+            }
+            JoinReport rootJoin = cut(type, join, List.of(), type, branches);
+            if (rootJoin != null) {
+                rootJoins.add(rootJoin);
+            }
+        }
+        return new Split(rootJoins, branches);
+    }
+
+    /**
+     * Load the collection branches of the loaded roots, in chunks of at most chunkSize parent ids
+     */
+    public void load(EntityManager entityManager, Collection<?> roots, List<Branch> branches, int chunkSize) {
+        for (Branch branch : branches) {
+            Set<Object> parents = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Object root : roots) {
+                addTargets(root, branch.parentPath(), 0, parents);
+            }
+            if (!parents.isEmpty()) {
+                loadBranch(entityManager, branch, parents, chunkSize);
+            }
+        }
+    }
+
+    public int size() {
+        return queries.size();
+    }
+
+    private void loadBranch(EntityManager entityManager, Branch branch, Set<Object> parents, int chunkSize) {
+        PluralAttribute<?, ?, ?> attribute = (PluralAttribute<?, ?, ?>) pathRegistry.resolve(branch.parentType(), branch.collection().getKey()).last();
+        Class<?> elementType = attribute.getElementType().getJavaType();
+        Split inner = split(elementType, branch.collection().getInnerJoin() != null ? branch.collection().getInnerJoin() : Set.of());
+        BranchQuery branchQuery = queries.computeIfAbsent(branch.parentType().getName() + '|' + branch.collection().getKey() + FetchGraphs.paths(inner.rootJoins()),
+                key -> compile(entityManager, branch.parentType(), branch.collection().getKey(), inner.rootJoins()));
+
+        PersistenceUnitUtil unitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        boolean padded = InLists.isPadded(entityManager.getEntityManagerFactory());
+        List<Object> ids = parents.stream().map(unitUtil::getIdentifier).distinct().toList();
+        for (List<Object> chunk : InLists.chunks(ids, Math.max(1, chunkSize))) {
+            TypedQuery<Object> query = entityManager.createQuery(branchQuery.criteria());
+            query.setParameter(branchQuery.ids(), padded ? InLists.pad(chunk) : chunk);
+            query.unwrap(org.hibernate.query.Query.class).setQueryPlanCacheable(true);
+            QueryMetrics.tag(query);
+            QueryMetrics.execute(query::getResultList);
+        }
+        if (!inner.branches().isEmpty()) {
+            List<Object> elements = new ArrayList<>();
+            for (Object parent : parents) {
+                Object collection = value(parent, attribute);
+                if (collection instanceof Map<?, ?> map) {
+                    elements.addAll(map.values());
+                } else if (collection != null) {
+                    elements.addAll((Collection<?>) collection);
+                }
+            }
+            load(entityManager, elements, inner.branches(), chunkSize);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private BranchQuery compile(EntityManager entityManager, Class<?> parentType, String collection, Collection<JoinReport> toOneJoins) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object> query = criteriaBuilder.createQuery((Class<Object>) parentType);
+        Root<Object> root = query.from((Class<Object>) parentType);
+        Fetch<Object, Object> fetch = root.fetch(collection, JoinType.LEFT);
+        addFetches(fetch, toOneJoins);
+        ParameterExpression<Collection> ids = criteriaBuilder.parameter(Collection.class);
+        String idName = entityManager.getMetamodel().entity(parentType).getId(entityManager.getMetamodel().entity(parentType).getIdType().getJavaType()).getName();
+        query.select(root).where(root.get(idName).in(ids));
+        return new BranchQuery(query, ids);
+    }
+
+    private static void addFetches(FetchParent<?, ?> parent, Collection<JoinReport> joins) {
+        for (JoinReport join : joins) {
+            Fetch<?, ?> fetch = parent.fetch(join.getKey(), JoinType.LEFT);
+            if (join.getInnerJoin() != null) {
+                addFetches(fetch, join.getInnerJoin());
+            }
+        }
+    }
+
+    /**
+     * Copy of the join without the collections below it, which are added to the branches. Null if the join is a collection.
+     */
+    private JoinReport cut(Class<?> type, JoinReport join, List<String> parentPath, Class<?> parentType, List<Branch> branches) {
+        PathRegistry.AttributePath path = pathRegistry.resolve(type, join.getKey());
+        if (path.isCollection()) {
+            branches.add(new Branch(parentPath, parentType, join));
+            return null;
+        }
+        JoinReport copy = JoinReport.of(join.getKey());
+        if (join.getInnerJoin() != null && path.isAssociation()) {
+            Class<?> targetType = path.associationTypes().getLast();
+            List<String> innerPath = new ArrayList<>(parentPath);
+            innerPath.add(join.getKey());
+            for (JoinReport innerJoin : join.getInnerJoin()) {
+                JoinReport innerCopy = cut(targetType, innerJoin, List.copyOf(innerPath), targetType, branches);
+                if (innerCopy != null) {
+                    copy.addJoin(innerCopy);
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Add the entities reached from the source by the to-one path
+     */
+    private void addTargets(Object source, List<String> path, int index, Set<Object> targets) {
+        if (source == null) {
+            return;
+        }
+        Object entity = Hibernate.unproxy(source);
+        if (index == path.size()) {
+            targets.add(entity);
+            return;
+        }
+        Attribute<?, ?> attribute = pathRegistry.resolve(entity.getClass(), path.get(index)).last();
+        addTargets(value(entity, attribute), path, index + 1, targets);
+    }
+
+    private static Object value(Object entity, Attribute<?, ?> attribute) {
+        Member member = attribute.getJavaMember();
+        try {
+            if (member instanceof Method method) {
+                method.setAccessible(true);
+                return method.invoke(entity);
+            }
+            Field field = (Field) member;
+            field.setAccessible(true);
+            return field.get(entity);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("can not read " + attribute.getName() + " of " + entity.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Joins of the root query and the collection branches to load after it
+     */
+    public record Split(Set<JoinReport> rootJoins, List<Branch> branches) {
+    }
+
+    /**
+     * Collection join below the to-one path from the root, parentType is the entity type at the end of the path
+     */
+    public record Branch(List<String> parentPath, Class<?> parentType, JoinReport collection) {
+    }
+
+    @SuppressWarnings("rawtypes")
+    private record BranchQuery(CriteriaQuery<Object> criteria, ParameterExpression<Collection> ids) {
+    }
+}
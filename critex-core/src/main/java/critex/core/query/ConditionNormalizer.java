@@ -0,0 +1,325 @@
+package critex.core.query;
+
+import critex.core.model.*;
+
+import java.util.*;
+
+/**
+ * Rewrites a {@link ReportCondition} into a simpler equivalent one before predicates are generated:
+ * parameters without value are dropped, duplicates are removed, a min and a max of the same key become one BETWEEN,
+ * IN and NOT IN lists with one value become (not) equal and parameters are ordered by key and operator, so equivalent
+ * conditions share one {@link ConditionShape}. Conditions which can not match anything (an empty IN list, two different
+ * equal values, a range with min above max, NULL and NOT NULL of one key) are detected so no query has to run.
+ * The given condition is never modified, it is returned as it is when there is nothing to rewrite.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public final class ConditionNormalizer {
+
+    private static final Comparator<ConditionParameter> PARAMETER_ORDER = Comparator.comparing(ConditionParameter::getKey)
+            .thenComparing(ConditionParameter::getOperator);
+    private static final ReportFilter FALSE = new ReportFilter();
+
+    private ConditionNormalizer() {
+    }
+
+    /**
+     * Normalized condition, empty when the condition can not match any entity
+     */
+    public static Optional<ReportCondition> normalize(ReportCondition condition) {
+        ReportFilter filter = normalizeFilter(condition.getFilter());
+        if (filter == FALSE) {
+            return Optional.empty();
+        }
+        Set<JoinReport> joins = normalizeJoins(condition.getJoins());
+        if (joins == null) {
+            return Optional.empty();
+        }
+        if (filter == condition.getFilter() && joins == condition.getJoins()) {
+            return Optional.of(condition);
+        }
+        return Optional.of(new ReportCondition(filter, joins, condition.isDistinct(), condition.isDeActiveFetch()));
+    }
+
+    /**
+     * Filter whose parameters are combined with AND and with its OR group, FALSE when it can not match
+     */
+    private static ReportFilter normalizeFilter(ReportFilter filter) {
+        if (filter == null) {
+            return null;
+        }
+        List<ConditionParameter> parameters = normalizeParameters(filter.getParameters(), true);
+        if (parameters == null) {
+            return FALSE;
+        }
+        ReportFilter orFilter = filter.getOrFilter();
+        if (orFilter != null) {
+            List<ConditionParameter> orParameters = normalizeParameters(orFilter.getParameters(), false);
+            if (orParameters == null) {
+                return FALSE;
+            }
+            if (orParameters != orFilter.getParameters()) {
+                orFilter = orParameters.isEmpty() ? null : copy(orParameters, null);
+            }
+        }
+        if (parameters == filter.getParameters() && orFilter == filter.getOrFilter()) {
+            return filter;
+        }
+        return copy(parameters, orFilter);
+    }
+
+    /**
+     * Joins with normalized filters, the same set when nothing changed and null when a join filter can not match.
+     * The AND filter of a join is part of the where clause, the OR filters of all joins are combined with each other,
+     * so only the AND filters can make the whole condition false.
+     */
+    private static Set<JoinReport> normalizeJoins(Set<JoinReport> joins) {
+        if (joins == null || joins.isEmpty()) {
+            return joins;
+        }
+        Set<JoinReport> normalized = new HashSet<>();
+        boolean changed = false;
+        for (JoinReport join : joins) {
+            JoinReport normalizedJoin = normalizeJoin(join);
+            if (normalizedJoin == null) {
+                return null;
+            }
+            changed |= normalizedJoin != join;
+            normalized.add(normalizedJoin);
+        }
+        return changed ? normalized : joins;
+    }
+
+    private static JoinReport normalizeJoin(JoinReport join) {
+        ReportFilter filter = join.getFilter();
+        if (filter != null) {
+            List<ConditionParameter> parameters = normalizeParameters(filter.getParameters(), true);
+            if (parameters == null) {
+                return null;
+            }
+            ReportFilter orFilter = filter.getOrFilter();
+            if (orFilter != null) {
+                List<ConditionParameter> orParameters = rewriteParameters(orFilter.getParameters());
+                orFilter = orParameters == orFilter.getParameters() ? orFilter : copy(orParameters, null);
+            }
+            filter = parameters == filter.getParameters() && orFilter == filter.getOrFilter() ? filter : copy(parameters, orFilter);
+        }
+        Set<JoinReport> innerJoins = normalizeJoins(join.getInnerJoin());
+        if (join.getInnerJoin() != null && innerJoins == null) {
+            return null;
+        }
+        if (filter == join.getFilter() && innerJoins == join.getInnerJoin()) {
+            return join;
+        }
+        return new JoinReport(join.getKey(), join.getJoinType(), filter, innerJoins, join.isFetch());
+    }
+
+    /**
+     * Normalized parameters of an AND or an OR group, the same list when nothing changed and null when the group is
+     * false. Parameters which are always false are dropped from an OR group, an OR group with a parameter which is always
+     * true is returned empty.
+     */
+    private static List<ConditionParameter> normalizeParameters(List<ConditionParameter> parameters, boolean and) {
+        List<ConditionParameter> result = new ArrayList<>(parameters.size());
+        boolean changed = false;
+        for (ConditionParameter parameter : parameters) {
+            if (!ConditionShape.isApplicable(parameter)) {
+                changed = true;
+                continue;
+            }
+            ConditionParameter rewritten = rewrite(parameter);
+            changed |= rewritten != parameter;
+            if (rewritten == null) {
+                if (and) {
+                    return null;
+                }
+                continue;
+            }
+            if (rewritten.getValue() == Boolean.TRUE && rewritten.getOperator() == null) {
+                if (!and) {
+                    return List.of();
+                }
+                continue;
+            }
+            if (contains(result, rewritten)) {
+                changed = true;
+                continue;
+            }
+            result.add(rewritten);
+        }
+        if (and) {
+            if (isContradiction(result)) {
+                return null;
+            }
+            List<ConditionParameter> merged = mergeRanges(result);
+            if (merged == null) {
+                return null;
+            }
+            changed |= merged != result;
+            result = merged;
+        }
+        if (!and && result.isEmpty() && hasApplicable(parameters)) {
+            return null;
+        }
+        changed |= sort(result);
+        return changed ? result : parameters;
+    }
+
+    /**
+     * Single value rewrites without dropping or merging parameters
+     */
+    private static List<ConditionParameter> rewriteParameters(List<ConditionParameter> parameters) {
+        List<ConditionParameter> result = new ArrayList<>(parameters.size());
+        boolean changed = false;
+        for (ConditionParameter parameter : parameters) {
+            ConditionParameter rewritten = ConditionShape.isApplicable(parameter) ? rewrite(parameter) : parameter;
+            if (rewritten == null || rewritten.getOperator() == null) {
+                rewritten = parameter;
+            }
+            changed |= rewritten != parameter;
+            result.add(rewritten);
+        }
+        return changed ? result : parameters;
+    }
+
+    /**
+     * Rewritten parameter, null when it is always false and a parameter without operator when it is always true
+     */
+    private static ConditionParameter rewrite(ConditionParameter parameter) {
+        if (!(parameter.getValue() instanceof Collection<?> values)) {
+            return parameter;
+        }
+        if (parameter.getOperator() == Operator.IN || parameter.getOperator() == Operator.NOT_IN) {
+            boolean in = parameter.getOperator() == Operator.IN;
+            if (values.isEmpty()) {
+                return in ? null : ConditionParameter.of(parameter.getKey(), Boolean.TRUE, null);
+            }
+            Set<Object> distinct = new LinkedHashSet<>(values);
+            if (distinct.size() == 1 && distinct.iterator().next() != null) {
+                return ConditionParameter.of(parameter.getKey(), distinct.iterator().next(), in ? Operator.EQUALS : Operator.NOT_EQUALS);
+            }
+            if (distinct.size() < values.size()) {
+                return ConditionParameter.of(parameter.getKey(), new ArrayList<>(distinct), parameter.getOperator());
+            }
+        }
+        return parameter;
+    }
+
+    /**
+     * Whether an AND group has two different equal values, or NULL next to NOT NULL or an equal value, for one key
+     */
+    private static boolean isContradiction(List<ConditionParameter> parameters) {
+        Map<String, Object> equals = new HashMap<>();
+        Set<String> nulls = new HashSet<>();
+        Set<String> notNulls = new HashSet<>();
+        for (ConditionParameter parameter : parameters) {
+            switch (parameter.getOperator()) {
+                case EQUALS -> {
+                    Object previous = equals.putIfAbsent(parameter.getKey(), parameter.getValue());
+                    if (previous != null && !previous.equals(parameter.getValue()) && previous.getClass() == parameter.getValue().getClass()) {
+                        return true;
+                    }
+                    notNulls.add(parameter.getKey());
+                }
+                case NULL -> nulls.add(parameter.getKey());
+                case NOT_NULL -> notNulls.add(parameter.getKey());
+                default -> {
+                }
+            }
+        }
+        for (String key : nulls) {
+            if (notNulls.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merge the only min and max of a key into BETWEEN, null when min is above max
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<ConditionParameter> mergeRanges(List<ConditionParameter> parameters) {
+        Map<String, ConditionParameter[]> ranges = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (ConditionParameter parameter : parameters) {
+            int bound = bound(parameter.getOperator());
+            if (bound >= 0) {
+                ranges.computeIfAbsent(parameter.getKey() + '|' + isTime(parameter.getOperator()), key -> new ConditionParameter[2])[bound] = parameter;
+                counts.merge(parameter.getKey(), 1, Integer::sum);
+            }
+        }
+        List<ConditionParameter> merged = null;
+        for (ConditionParameter[] range : ranges.values()) {
+            ConditionParameter min = range[0];
+            ConditionParameter max = range[1];
+            if (min == null || max == null || counts.get(min.getKey()) != 2 || min.getValue().getClass() != max.getValue().getClass()
+                    || !(min.getValue() instanceof Comparable minValue)) {
+                continue;
+            }
+            if (minValue.compareTo(max.getValue()) > 0) {
+                return null;
+            }
+            if (merged == null) {
+                merged = new ArrayList<>(parameters);
+            }
+            merged.set(merged.indexOf(min), ConditionParameter.of(min.getKey(), new Object[]{min.getValue(), max.getValue()}, Operator.BETWEEN));
+            merged.remove(max);
+        }
+        return merged != null ? merged : parameters;
+    }
+
+    /**
+     * 0 for a min, 1 for a max, -1 for other operators
+     */
+    private static int bound(Operator operator) {
+        return switch (operator) {
+            case GREATER_EQUALS, GREATER_EQUALS_TIME -> 0;
+            case LESS_EQUALS, LESS_EQUALS_TIME -> 1;
+            default -> -1;
+        };
+    }
+
+    private static boolean isTime(Operator operator) {
+        return operator == Operator.GREATER_EQUALS_TIME || operator == Operator.LESS_EQUALS_TIME;
+    }
+
+    private static boolean contains(List<ConditionParameter> parameters, ConditionParameter parameter) {
+        for (ConditionParameter each : parameters) {
+            if (each.getKey().equals(parameter.getKey()) && each.getOperator() == parameter.getOperator()
+                    && Objects.deepEquals(each.getValue(), parameter.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasApplicable(List<ConditionParameter> parameters) {
+        for (ConditionParameter parameter : parameters) {
+            if (ConditionShape.isApplicable(parameter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sort the parameters by key and operator, true if the order changed
+     */
+    private static boolean sort(List<ConditionParameter> parameters) {
+        for (int i = 1; i < parameters.size(); i++) {
+            if (PARAMETER_ORDER.compare(parameters.get(i - 1), parameters.get(i)) > 0) {
+                parameters.sort(PARAMETER_ORDER);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ReportFilter copy(List<ConditionParameter> parameters, ReportFilter orFilter) {
+        ReportFilter filter = new ReportFilter();
+        filter.setParameters(parameters);
+        filter.setOrFilter(orFilter);
+        return filter;
+    }
+}
@@ -0,0 +1,244 @@
+package critex.core.query;
+
+import critex.core.model.*;
+
+import java.util.*;
+
+/**
+ * Canonical shape of a {@link ReportCondition}: keys, operators, value types, join tree and flags.
+ * Two conditions with the same shape generate the same SQL and only differ in their bound values,
+ * so the shape key is used to cache compiled query plans.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public final class ConditionShape {
+
+    private static final Comparator<JoinReport> JOIN_ORDER = Comparator.comparing(JoinReport::getKey)
+            .thenComparing(join -> join.getJoinType().name());
+
+    private final ReportCondition condition;
+    private final ReportFilter having;
+    private final String key;
+    private final List<ConditionParameter> parameters;
+
+    private ConditionShape(ReportCondition condition, ReportFilter having, String key, List<ConditionParameter> parameters) {
+        this.condition = condition;
+        this.having = having;
+        this.key = key;
+        this.parameters = parameters;
+    }
+
+    public static ConditionShape of(ReportCondition condition) {
+        return of(condition, null);
+    }
+
+    /**
+     * Shape of an aggregation, the keys of the having filter are aggregation names
+     */
+    public static ConditionShape of(ReportCondition condition, ReportFilter having) {
+        StringBuilder key = new StringBuilder(128);
+        List<ConditionParameter> parameters = new ArrayList<>();
+        key.append(condition.isDistinct() ? 'D' : 'd').append(condition.isDeActiveFetch() ? 'N' : 'F');
+        appendFilter(key, parameters, condition.getFilter());
+        appendJoins(key, parameters, condition.getJoins());
+        if (having != null) {
+            appendFilter(key.append('h'), parameters, having);
+        }
+        return new ConditionShape(condition, having, key.toString(), parameters);
+    }
+
+    /**
+     * Parameters without value are skipped by the generator, except the ones which do not need a value
+     */
+    public static boolean isApplicable(ConditionParameter parameter) {
+        return parameter.getValue() != null || parameter.getOperator() == Operator.NULL || parameter.getOperator() == Operator.NOT_NULL;
+    }
+
+    /**
+     * Whether the operator binds the parameter value into the query
+     */
+    public static boolean isValueBound(Operator operator) {
+        return switch (operator) {
+            case NULL, NOT_NULL, IS_EMPTY, IS_NOT_EMPTY -> false;
+            default -> true;
+        };
+    }
+
+    /**
+     * Canonical fingerprint of the condition with its values. Parameters of a filter, joins and the values of
+     * IN lists are ordered, so conditions which only differ in these orders have the same fingerprint.
+     */
+    public String fingerprint() {
+        StringBuilder fingerprint = new StringBuilder(key.length() * 2);
+        fingerprint.append(condition.isDistinct() ? 'D' : 'd').append(condition.isDeActiveFetch() ? 'N' : 'F');
+        fingerprint.append(canonicalFilter(condition.getFilter())).append(canonicalJoins(condition.getJoins()));
+        if (having != null) {
+            fingerprint.append('h').append(canonicalFilter(having));
+        }
+        return fingerprint.toString();
+    }
+
+    public ReportCondition getCondition() {
+        return condition;
+    }
+
+    public ReportFilter getHaving() {
+        return having;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Short id of the shape key, the same in every JVM: 16 hex digits of its 64 bit FNV-1a hash
+     */
+    public String shapeId() {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        String hex = Long.toHexString(hash);
+        return "0".repeat(16 - hex.length()) + hex;
+    }
+
+    /**
+     * Applicable parameters in canonical order
+     */
+    public List<ConditionParameter> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Index of the given parameter instance in {@link #getParameters()}, -1 if it is not part of the shape
+     */
+    public int indexOf(ConditionParameter parameter) {
+        for (int i = 0; i < parameters.size(); i++) {
+            if (parameters.get(i) == parameter) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void appendFilter(StringBuilder key, List<ConditionParameter> parameters, ReportFilter filter) {
+        if (filter == null) {
+            return;
+        }
+        appendParameters(key.append("p["), parameters, filter.getParameters());
+        key.append(']');
+        if (filter.getOrFilter() != null) {
+            appendParameters(key.append("o["), parameters, filter.getOrFilter().getParameters());
+            key.append(']');
+        }
+    }
+
+    private static void appendParameters(StringBuilder key, List<ConditionParameter> parameters, List<ConditionParameter> filterParameters) {
+        for (ConditionParameter parameter : filterParameters) {
+            if (!isApplicable(parameter)) {
+                continue;
+            }
+            parameters.add(parameter);
+            key.append(parameter.getKey()).append('~').append(parameter.getOperator().name());
+            if (isValueBound(parameter.getOperator())) {
+                key.append('~');
+                appendValueType(key, parameter.getValue());
+            }
+            key.append(';');
+        }
+    }
+
+    private static void appendValueType(StringBuilder key, Object value) {
+        if (value instanceof Collection<?>) {
+            key.append('*');
+        } else if (value instanceof Object[] values) {
+            for (Object each : values) {
+                key.append(each == null ? "null" : valueType(each).getName()).append(',');
+            }
+        } else {
+            key.append(valueType(value).getName());
+        }
+    }
+
+    static Class<?> valueType(Object value) {
+        return value instanceof Enum<?> constant ? constant.getDeclaringClass() : value.getClass();
+    }
+
+    private static String canonicalFilter(ReportFilter filter) {
+        if (filter == null) {
+            return "";
+        }
+        String parameters = "p" + canonicalParameters(filter.getParameters());
+        return filter.getOrFilter() == null ? parameters : parameters + "o" + canonicalParameters(filter.getOrFilter().getParameters());
+    }
+
+    private static String canonicalParameters(List<ConditionParameter> filterParameters) {
+        List<String> canonical = new ArrayList<>();
+        for (ConditionParameter parameter : filterParameters) {
+            if (!isApplicable(parameter)) {
+                continue;
+            }
+            StringBuilder value = new StringBuilder(parameter.getKey()).append('~').append(parameter.getOperator().name());
+            if (isValueBound(parameter.getOperator())) {
+                appendValue(value, parameter.getValue());
+            }
+            canonical.add(value.toString());
+        }
+        Collections.sort(canonical);
+        return canonical.toString();
+    }
+
+    /**
+     * Values are prefixed by their type and length, so no value can be confused with the separators
+     */
+    private static void appendValue(StringBuilder fingerprint, Object value) {
+        if (value instanceof Collection<?> values) {
+            List<String> elements = new ArrayList<>(values.size());
+            for (Object element : values) {
+                StringBuilder canonical = new StringBuilder();
+                appendValue(canonical, element);
+                elements.add(canonical.toString());
+            }
+            Collections.sort(elements);
+            elements.forEach(fingerprint::append);
+        } else if (value instanceof Object[] values) {
+            for (Object element : values) {
+                appendValue(fingerprint, element);
+            }
+        } else if (value == null) {
+            fingerprint.append("~null");
+        } else {
+            String text = value.toString();
+            fingerprint.append('~').append(valueType(value).getName()).append(':').append(text.length()).append(':').append(text);
+        }
+    }
+
+    private static String canonicalJoins(Collection<JoinReport> joins) {
+        if (joins == null || joins.isEmpty()) {
+            return "";
+        }
+        List<String> canonical = new ArrayList<>(joins.size());
+        for (JoinReport join : joins) {
+            canonical.add(join.getKey() + '~' + join.getJoinType().name() + (join.isFetch() ? "~F" : "~J")
+                    + canonicalFilter(join.getFilter()) + canonicalJoins(join.getInnerJoin()));
+        }
+        Collections.sort(canonical);
+        return "j" + canonical;
+    }
+
+    private static void appendJoins(StringBuilder key, List<ConditionParameter> parameters, Collection<JoinReport> joins) {
+        if (joins == null || joins.isEmpty()) {
+            return;
+        }
+        List<JoinReport> ordered = new ArrayList<>(joins);
+        ordered.sort(JOIN_ORDER);
+        key.append("j[");
+        for (JoinReport join : ordered) {
+            key.append(join.getKey()).append('~').append(join.getJoinType().name()).append(join.isFetch() ? "~F" : "~J");
+            appendFilter(key, parameters, join.getFilter());
+            appendJoins(key, parameters, join.getInnerJoin());
+            key.append(';');
+        }
+        key.append(']');
+    }
+}
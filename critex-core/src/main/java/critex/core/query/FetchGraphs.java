@@ -0,0 +1,155 @@
+package critex.core.query;
+
+import critex.core.model.ConditionParameter;
+import critex.core.model.JoinReport;
+import critex.core.model.ReportCondition;
+import critex.core.model.ReportFilter;
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Subgraph;
+import jakarta.persistence.criteria.JoinType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named entity graphs of the fetch only joins of one entity. A fetch only join is a left fetch join without filter whose
+ * inner joins are fetch only too: it does not change which rows match, so it is removed from the criteria and loaded
+ * through a fetch graph hint instead. Count and id queries just drop it, joins with filters stay in the criteria.
+ * Graphs are built once per set of join paths and registered on the entity manager factory by name.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class FetchGraphs<T> {
+
+    private final Class<T> entityClass;
+    private final ConcurrentMap<String, EntityGraph<T>> graphs = new ConcurrentHashMap<>();
+
+    public FetchGraphs(Class<T> entityClass) {
+        this.entityClass = entityClass;
+    }
+
+    /**
+     * Graph fetching the given joins, null when there is nothing to fetch
+     */
+    public EntityGraph<T> graph(EntityManager entityManager, Collection<JoinReport> joins) {
+        if (joins.isEmpty()) {
+            return null;
+        }
+        String name = entityClass.getSimpleName() + paths(joins);
+        return graphs.computeIfAbsent(name, key -> build(entityManager, key, joins));
+    }
+
+    /**
+     * Graph of the fetch only joins of the condition, null when fetching is deactivated or there are none
+     */
+    public EntityGraph<T> graph(EntityManager entityManager, ReportCondition condition) {
+        return condition.isDeActiveFetch() ? null : graph(entityManager, graphJoins(condition));
+    }
+
+    /**
+     * Graph of dotted join paths like user.posts, used to build the graphs of common join sets at startup
+     */
+    public EntityGraph<T> register(EntityManager entityManager, Collection<String> paths) {
+        ReportCondition condition = new ReportCondition();
+        paths.forEach(condition::addJoinReport);
+        return graph(entityManager, condition.getJoins());
+    }
+
+    public int size() {
+        return graphs.size();
+    }
+
+    /**
+     * Fetch only joins of the condition
+     */
+    public static List<JoinReport> graphJoins(ReportCondition condition) {
+        return condition.getJoins().stream().filter(FetchGraphs::isGraphJoin).toList();
+    }
+
+    /**
+     * Shape of the condition without its fetch only joins, the same shape if it has none
+     */
+    public static ConditionShape withoutGraphJoins(ConditionShape shape) {
+        ReportCondition condition = shape.getCondition();
+        Set<JoinReport> joins = new HashSet<>();
+        for (JoinReport join : condition.getJoins()) {
+            if (!isGraphJoin(join)) {
+                joins.add(join);
+            }
+        }
+        if (joins.size() == condition.getJoins().size()) {
+            return shape;
+        }
+        return ConditionShape.of(new ReportCondition(condition.getFilter(), joins, condition.isDistinct(), condition.isDeActiveFetch()),
+                shape.getHaving());
+    }
+
+    static boolean isGraphJoin(JoinReport join) {
+        if (!join.isFetch() || join.getJoinType() != JoinType.LEFT || hasFilter(join.getFilter())) {
+            return false;
+        }
+        if (join.getInnerJoin() != null) {
+            for (JoinReport innerJoin : join.getInnerJoin()) {
+                if (!isGraphJoin(innerJoin)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasFilter(ReportFilter filter) {
+        if (filter == null) {
+            return false;
+        }
+        for (ConditionParameter parameter : filter.getParameters()) {
+            if (ConditionShape.isApplicable(parameter)) {
+                return true;
+            }
+        }
+        return hasFilter(filter.getOrFilter());
+    }
+
+    private EntityGraph<T> build(EntityManager entityManager, String name, Collection<JoinReport> joins) {
+        EntityGraph<T> graph = entityManager.createEntityGraph(entityClass);
+        for (JoinReport join : joins) {
+            graph.addAttributeNodes(join.getKey());
+            if (join.getInnerJoin() != null && !join.getInnerJoin().isEmpty()) {
+                addSubgraph(graph.addSubgraph(join.getKey()), join.getInnerJoin());
+            }
+        }
+        entityManager.getEntityManagerFactory().addNamedEntityGraph(name, graph);
+        return graph;
+    }
+
+    private static void addSubgraph(Subgraph<?> subgraph, Collection<JoinReport> joins) {
+        for (JoinReport join : joins) {
+            subgraph.addAttributeNodes(join.getKey());
+            if (join.getInnerJoin() != null && !join.getInnerJoin().isEmpty()) {
+                addSubgraph(subgraph.addSubgraph(join.getKey()), join.getInnerJoin());
+            }
+        }
+    }
+
+    /**
+     * Sorted dotted paths of the joins, equal for the same joins in any order
+     */
+    static List<String> paths(Collection<JoinReport> joins) {
+        List<String> paths = new ArrayList<>();
+        addPaths(joins, "", paths);
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static void addPaths(Collection<JoinReport> joins, String prefix, List<String> paths) {
+        for (JoinReport join : joins) {
+            String path = prefix + join.getKey();
+            paths.add(path);
+            if (join.getInnerJoin() != null) {
+                addPaths(join.getInnerJoin(), path + ".", paths);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package critex.core.query;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Helpers for IN lists. Every list size renders its own sql string, so lists are padded to size buckets
+ * (powers of two, then multiples of {@link #MAX_BUCKET}) by repeating their last value, which does not change the result.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public final class InLists {
+
+    public static final int MAX_BUCKET = 512;
+
+    private InLists() {
+    }
+
+    /**
+     * Size of the bucket the given list size is padded to
+     */
+    public static int bucket(int size) {
+        if (size <= 1) {
+            return size;
+        }
+        if (size > MAX_BUCKET) {
+            return (size + MAX_BUCKET - 1) / MAX_BUCKET * MAX_BUCKET;
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     * Whether IN lists should be padded, dialects which bind IN lists as one array parameter need no padding
+     */
+    public static boolean isPadded(EntityManagerFactory entityManagerFactory) {
+        return !entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect().useArrayForMultiValuedParameters();
+    }
+
+    /**
+     * Copy of the values padded to their bucket size
+     */
+    public static List<Object> pad(Collection<?> values) {
+        int bucket = bucket(values.size());
+        List<Object> padded = new ArrayList<>(bucket);
+        padded.addAll(values);
+        Object last = padded.isEmpty() ? null : padded.getLast();
+        while (padded.size() < bucket) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    /**
+     * Split the values in consecutive chunks of at most size values
+     */
+    public static <E> List<List<E>> chunks(List<E> values, int size) {
+        List<List<E>> chunks = new ArrayList<>((values.size() + size - 1) / size);
+        for (int from = 0; from < values.size(); from += size) {
+            chunks.add(values.subList(from, Math.min(values.size(), from + size)));
+        }
+        return chunks;
+    }
+}
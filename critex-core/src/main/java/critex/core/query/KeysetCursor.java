@@ -0,0 +1,88 @@
+package critex.core.query;
+
+import critex.core.utility.CustomError;
+import critex.core.utility.CustomException;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import java.lang.reflect.Method;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.TemporalAccessor;
+import java.util.Base64;
+
+/**
+ * Position of a keyset page: the sort values of the boundary row and the navigation direction.
+ * Encoded as an opaque url safe string, values are written as text and parsed back with the type of their sort path,
+ * so a cursor never deserializes arbitrary objects.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public final class KeysetCursor {
+
+    private static final String NULL = "~";
+
+    private final boolean backward;
+    private final Object[] values;
+
+    public KeysetCursor(boolean backward, Object[] values) {
+        this.backward = backward;
+        this.values = values;
+    }
+
+    public boolean isBackward() {
+        return backward;
+    }
+
+    public Object[] getValues() {
+        return values;
+    }
+
+    /**
+     * Encode the cursor, signature identifies the sort the values belong to
+     */
+    public String encode(String signature) {
+        StringBuilder text = new StringBuilder(backward ? "b" : "f").append('|').append(Integer.toHexString(signature.hashCode()));
+        for (Object value : values) {
+            text.append('|').append(value == null ? NULL : URLEncoder.encode(value.toString(), StandardCharsets.UTF_8));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor created for the same signature, values are converted to the given types
+     */
+    public static KeysetCursor decode(String cursor, String signature, Class<?>[] types) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", -1);
+        } catch (IllegalArgumentException e) {
+            throw invalidCursor();
+        }
+        if (parts.length != types.length + 2 || !parts[1].equals(Integer.toHexString(signature.hashCode()))) {
+            throw invalidCursor();
+        }
+        Object[] values = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            String text = parts[i + 2];
+            values[i] = NULL.equals(text) ? null : convert(URLDecoder.decode(text, StandardCharsets.UTF_8), types[i]);
+        }
+        return new KeysetCursor("b".equals(parts[0]), values);
+    }
+
+    private static Object convert(String text, Class<?> type) {
+        try {
+            if (TemporalAccessor.class.isAssignableFrom(type)) {
+                Method parse = type.getMethod("parse", CharSequence.class);
+                return parse.invoke(null, text);
+            }
+            return DefaultConversionService.getSharedInstance().convert(text, type);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw invalidCursor();
+        }
+    }
+
+    private static CustomException invalidCursor() {
+        return new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "invalid cursor", CustomError.ILLEGAL_ARGUMENT);
+    }
+}
@@ -0,0 +1,15 @@
+package critex.core.query;
+
+import jakarta.persistence.criteria.ParameterExpression;
+
+import java.util.function.Function;
+
+/**
+ * Binds the value of the shape parameter at {@code index} to a compiled query parameter
+ */
+record ParameterBinding(ParameterExpression<?> parameter, int index, Function<Object, Object> converter) {
+
+    Object valueOf(ConditionShape shape) {
+        return converter.apply(shape.getParameters().get(index).getValue());
+    }
+}
@@ -0,0 +1,141 @@
+package critex.core.query;
+
+import critex.core.model.PathUtils;
+import critex.core.utility.CustomError;
+import critex.core.utility.CustomException;
+import jakarta.persistence.metamodel.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of dotted property paths (e.g. {@code user.username}, {@code posts.comments}) resolved against the JPA
+ * {@link Metamodel}. Paths are resolved once per entity class into attribute chains, so generating a query does not
+ * split keys again, and unknown paths are rejected when they are registered instead of failing at query time.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class PathRegistry {
+
+    private static final Map<Metamodel, PathRegistry> REGISTRIES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Metamodel metamodel;
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, AttributePath>> paths = new ConcurrentHashMap<>();
+
+    public PathRegistry(Metamodel metamodel) {
+        this.metamodel = metamodel;
+    }
+
+    /**
+     * Shared registry of the given metamodel
+     */
+    public static PathRegistry of(Metamodel metamodel) {
+        return REGISTRIES.computeIfAbsent(metamodel, PathRegistry::new);
+    }
+
+    /**
+     * Register all paths of an entity, throws if one of them does not exist in the metamodel
+     */
+    public void register(Class<?> entityClass, Collection<String> entityPaths) {
+        for (String path : entityPaths) {
+            resolve(entityClass, path);
+        }
+    }
+
+    /**
+     * Resolve the path against the entity class, the result is cached per entity class
+     */
+    public AttributePath resolve(Class<?> entityClass, String path) {
+        ConcurrentMap<String, AttributePath> entityPaths = paths.computeIfAbsent(entityClass, key -> new ConcurrentHashMap<>());
+        AttributePath attributePath = entityPaths.get(path);
+        if (attributePath == null) {
+            attributePath = doResolve(entityClass, path);
+            entityPaths.putIfAbsent(path, attributePath);
+        }
+        return attributePath;
+    }
+
+    /**
+     * Whether the path exists on the entity class
+     */
+    public boolean exists(Class<?> entityClass, String path) {
+        try {
+            resolve(entityClass, path);
+            return true;
+        } catch (CustomException e) {
+            return false;
+        }
+    }
+
+    private AttributePath doResolve(Class<?> entityClass, String path) {
+        List<String> keys = PathUtils.split(path);
+        List<Attribute<?, ?>> attributes = new ArrayList<>(keys.size());
+        ManagedType<?> type = managedType(entityClass, path);
+        for (int i = 0; i < keys.size(); i++) {
+            if (type == null) {
+                throw unknownPath(entityClass, path);
+            }
+            Attribute<?, ?> attribute;
+            try {
+                attribute = type.getAttribute(keys.get(i));
+            } catch (IllegalArgumentException e) {
+                throw unknownPath(entityClass, path);
+            }
+            attributes.add(attribute);
+            type = i < keys.size() - 1 ? targetType(attribute) : null;
+        }
+        return new AttributePath(entityClass, path, keys, List.copyOf(attributes));
+    }
+
+    private ManagedType<?> managedType(Class<?> entityClass, String path) {
+        try {
+            return metamodel.managedType(entityClass);
+        } catch (IllegalArgumentException e) {
+            throw unknownPath(entityClass, path);
+        }
+    }
+
+    private static ManagedType<?> targetType(Attribute<?, ?> attribute) {
+        Type<?> type = attribute instanceof PluralAttribute<?, ?, ?> plural
+                ? plural.getElementType()
+                : ((SingularAttribute<?, ?>) attribute).getType();
+        return type instanceof ManagedType<?> managedType ? managedType : null;
+    }
+
+    private static CustomException unknownPath(Class<?> entityClass, String path) {
+        return new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(),
+                "unknown path '" + path + "' for " + entityClass.getSimpleName(), CustomError.ILLEGAL_ARGUMENT);
+    }
+
+    /**
+     * Resolved attribute chain of a dotted path
+     */
+    public record AttributePath(Class<?> entityClass, String path, List<String> keys, List<Attribute<?, ?>> attributes) {
+
+        public Attribute<?, ?> last() {
+            return attributes.getLast();
+        }
+
+        public boolean isCollection() {
+            return attributes.stream().anyMatch(Attribute::isCollection);
+        }
+
+        public boolean isAssociation() {
+            return last().isAssociation();
+        }
+
+        /**
+         * Entity types reached by the associations of the path
+         */
+        public List<Class<?>> associationTypes() {
+            List<Class<?>> types = new ArrayList<>();
+            for (Attribute<?, ?> attribute : attributes) {
+                if (attribute.isAssociation()) {
+                    types.add(attribute instanceof PluralAttribute<?, ?, ?> plural ? plural.getElementType().getJavaType() : attribute.getJavaType());
+                }
+            }
+            return types;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package critex.core.query;
+
+import critex.core.model.*;
+import critex.core.repo.SpecificationGenerator;
+import critex.core.utility.CustomError;
+import critex.core.utility.CustomException;
+import jakarta.persistence.criteria.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Specification generator which emits query parameters instead of literal values.
+ * Every parameter is recorded as a {@link ParameterBinding} so the compiled criteria can be re-bound later.
+ */
+class PlanCompiler<T> extends SpecificationGenerator<T> {
+
+    private final ConditionShape shape;
+    private final PathRegistry pathRegistry;
+    private final Function<Object, Object> inList;
+    private final List<ParameterBinding> bindings = new ArrayList<>();
+
+    PlanCompiler(ConditionShape shape, PathRegistry pathRegistry, boolean padInLists) {
+        this.shape = shape;
+        this.pathRegistry = pathRegistry;
+        this.inList = padInLists ? value -> InLists.pad((Collection<?>) value) : Function.identity();
+    }
+
+    @Override
+    protected PathRegistry getPathRegistry() {
+        return pathRegistry;
+    }
+
+    /**
+     * The shape is built from the normalized condition, its parameters must stay the ones the bindings refer to
+     */
+    @Override
+    protected Optional<ReportCondition> normalize(ReportCondition condition) {
+        return Optional.of(condition);
+    }
+
+    List<ParameterBinding> getBindings() {
+        return bindings;
+    }
+
+    Predicate compile(ReportCondition condition, Root<T> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder) {
+        return toPredicate(condition).toPredicate(root, query, criteriaBuilder);
+    }
+
+    /**
+     * Predicate of the filter of the condition alone, on a root which may belong to a subquery
+     */
+    Predicate compileFilter(ReportFilter filter, Root<T> root, CriteriaBuilder criteriaBuilder) {
+        if (filter == null) {
+            return null;
+        }
+        Predicate predicate = generatePredicate(filter, root, criteriaBuilder, true);
+        if (filter.getOrFilter() != null) {
+            Predicate orPredicate = generatePredicate(filter.getOrFilter(), root, criteriaBuilder, false);
+            if (orPredicate != null) {
+                return predicate != null ? criteriaBuilder.and(predicate, orPredicate) : orPredicate;
+            }
+        }
+        return predicate;
+    }
+
+    /**
+     * Joins on the root with the predicates of their filters, never fetched. Null if the joins have no filter.
+     */
+    Predicate compileJoins(Collection<JoinReport> joins, Root<T> root, CriteriaBuilder criteriaBuilder) {
+        Map<Predicate, Boolean> predicates = new HashMap<>();
+        for (JoinReport join : joins) {
+            generateJoin(root, criteriaBuilder, predicates, join);
+        }
+        return predicates.isEmpty() ? null : applyInnerPredicate(criteriaBuilder, predicates, null);
+    }
+
+    /**
+     * Having predicate of an aggregation, the keys of the filter are aggregation names
+     */
+    Predicate compileHaving(ReportFilter having, Map<String, Expression<?>> aggregates, CriteriaBuilder criteriaBuilder) {
+        Predicate predicate = havingPredicate(having, aggregates, criteriaBuilder, true);
+        if (having.getOrFilter() != null) {
+            Predicate orPredicate = havingPredicate(having.getOrFilter(), aggregates, criteriaBuilder, false);
+            if (orPredicate != null) {
+                return predicate != null ? criteriaBuilder.and(predicate, orPredicate) : orPredicate;
+            }
+        }
+        return predicate;
+    }
+
+    private Predicate havingPredicate(ReportFilter filter, Map<String, Expression<?>> aggregates, CriteriaBuilder criteriaBuilder, boolean and) {
+        List<Predicate> predicates = new ArrayList<>();
+        for (ConditionParameter eachParam : filter.getParameters()) {
+            if (!ConditionShape.isApplicable(eachParam)) {
+                continue;
+            }
+            Expression<?> aggregate = aggregates.get(eachParam.getKey());
+            if (aggregate == null) {
+                throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(),
+                        "unknown aggregation '" + eachParam.getKey() + "' in having", CustomError.ILLEGAL_ARGUMENT);
+            }
+            predicates.add(getParameterizedPredicate(criteriaBuilder, eachParam, aggregate, shape.indexOf(eachParam)));
+        }
+        if (predicates.isEmpty()) {
+            return null;
+        }
+        Predicate[] array = predicates.toArray(new Predicate[0]);
+        return and ? criteriaBuilder.and(array) : criteriaBuilder.or(array);
+    }
+
+    /**
+     * Path of a group or aggregated key, associations on the way are joined: joins of the condition are reused, others are left joined
+     */
+    Expression<?> getJoinedPath(From<?, ?> from, String key) {
+        List<String> keys = pathRegistry.resolve(from.getJavaType(), key).keys();
+        From<?, ?> current = from;
+        for (int i = 0; i < keys.size() - 1; i++) {
+            current = joinOf(current, keys.get(i));
+        }
+        return current.get(keys.getLast());
+    }
+
+    private static From<?, ?> joinOf(From<?, ?> from, String attribute) {
+        for (Join<?, ?> join : from.getJoins()) {
+            if (join.getAttribute().getName().equals(attribute)) {
+                return join;
+            }
+        }
+        return from.join(attribute, JoinType.LEFT);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Expression<?> aggregate(Root<T> root, CriteriaBuilder criteriaBuilder, AggregationField field) {
+        boolean all = field.getFieldName() == null || "*".equals(field.getFieldName());
+        Expression path = all ? root : getJoinedPath(root, field.getFieldName());
+        return switch (field.getAggregationType()) {
+            case COUNT -> criteriaBuilder.count(path);
+            case COUNT_DISTINCT -> criteriaBuilder.countDistinct(path);
+            case SUM -> criteriaBuilder.sum(path);
+            case AVG -> criteriaBuilder.avg(path);
+            case MAX -> criteriaBuilder.greatest(path);
+            case MIN -> criteriaBuilder.least(path);
+        };
+    }
+
+    @Override
+    protected Predicate toCorrespondingPredicate(CriteriaBuilder criteriaBuilder, ConditionParameter eachConditionParameter, Path path) {
+        int index = shape.indexOf(eachConditionParameter);
+        if (index < 0) {
+            return super.toCorrespondingPredicate(criteriaBuilder, eachConditionParameter, path);
+        }
+        return getParameterizedPredicate(criteriaBuilder, eachConditionParameter, path, index);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected Predicate getParameterizedPredicate(CriteriaBuilder criteriaBuilder, ConditionParameter eachConditionParameter, Expression path, int index) {
+        Object value = eachConditionParameter.getValue();
+        Predicate predicate = null;
+        switch (eachConditionParameter.getOperator()) {
+            case LIKE, CONTAINS -> predicate = criteriaBuilder.like(path, bind(criteriaBuilder, String.class, index, v -> "%" + v + "%"));
+            case LIKE_IGNORE_CASE, CONTAINS_IGNORE_CASE ->
+                    predicate = criteriaBuilder.like(criteriaBuilder.lower(path), bind(criteriaBuilder, String.class, index, v -> "%" + v.toString().toLowerCase() + "%"));
+            case EQUALS -> predicate = criteriaBuilder.equal(path, bind(criteriaBuilder, ConditionShape.valueType(value), index, Function.identity()));
+            case NOT_EQUALS -> predicate = criteriaBuilder.notEqual(path, bind(criteriaBuilder, ConditionShape.valueType(value), index, Function.identity()));
+            case LESS_EQUALS -> predicate = criteriaBuilder.le(path, (Expression<Number>) bind(criteriaBuilder, value.getClass(), index, Function.identity()));
+            case GREATER_EQUALS -> predicate = criteriaBuilder.ge(path, (Expression<Number>) bind(criteriaBuilder, value.getClass(), index, Function.identity()));
+            case LESS_EQUALS_TIME ->
+                    predicate = criteriaBuilder.lessThanOrEqualTo(path, (Expression<Comparable>) bind(criteriaBuilder, value.getClass(), index, Function.identity()));
+            case GREATER_EQUALS_TIME ->
+                    predicate = criteriaBuilder.greaterThanOrEqualTo(path, (Expression<Comparable>) bind(criteriaBuilder, value.getClass(), index, Function.identity()));
+            case GREATER_THAN -> predicate = criteriaBuilder.gt(path, (Expression<Number>) bind(criteriaBuilder, value.getClass(), index, Function.identity()));
+            case GREATER_THAN_TIME ->
+                    predicate = criteriaBuilder.greaterThan(path, (Expression<Comparable>) bind(criteriaBuilder, value.getClass(), index, Function.identity()));
+            case LESS_THAN -> predicate = criteriaBuilder.lt(path, (Expression<Number>) bind(criteriaBuilder, value.getClass(), index, Function.identity()));
+            case LESS_THAN_TIME ->
+                    predicate = criteriaBuilder.lessThan(path, (Expression<Comparable>) bind(criteriaBuilder, value.getClass(), index, Function.identity()));
+            case IN -> predicate = path.in(bind(criteriaBuilder, Collection.class, index, inList));
+            case NOT_IN -> predicate = criteriaBuilder.not(path.in(bind(criteriaBuilder, Collection.class, index, inList)));
+            case NULL -> predicate = criteriaBuilder.isNull(path);
+            case NOT_NULL -> predicate = criteriaBuilder.isNotNull(path);
+            case BETWEEN -> predicate = criteriaBuilder.between(path, bindBound(criteriaBuilder, value, index, 0), bindBound(criteriaBuilder, value, index, 1));
+            case NOT_BETWEEN ->
+                    predicate = criteriaBuilder.not(criteriaBuilder.between(path, bindBound(criteriaBuilder, value, index, 0), bindBound(criteriaBuilder, value, index, 1)));
+            case STARTS_WITH -> predicate = criteriaBuilder.like(path, bind(criteriaBuilder, String.class, index, v -> v + "%"));
+            case ENDS_WITH -> predicate = criteriaBuilder.like(path, bind(criteriaBuilder, String.class, index, v -> "%" + v));
+            case NOT_CONTAINS -> predicate = criteriaBuilder.not(criteriaBuilder.like(path, bind(criteriaBuilder, String.class, index, v -> "%" + v + "%")));
+            case STARTS_WITH_IGNORE_CASE ->
+                    predicate = criteriaBuilder.like(criteriaBuilder.lower(path), bind(criteriaBuilder, String.class, index, v -> v.toString().toLowerCase() + "%"));
+            case ENDS_WITH_IGNORE_CASE ->
+                    predicate = criteriaBuilder.like(criteriaBuilder.lower(path), bind(criteriaBuilder, String.class, index, v -> "%" + v.toString().toLowerCase()));
+            case NOT_CONTAINS_IGNORE_CASE ->
+                    predicate = criteriaBuilder.not(criteriaBuilder.like(criteriaBuilder.lower(path), bind(criteriaBuilder, String.class, index, v -> "%" + v.toString().toLowerCase() + "%")));
+            case IS_EMPTY -> predicate = criteriaBuilder.isEmpty(path);
+            case IS_NOT_EMPTY -> predicate = criteriaBuilder.isNotEmpty(path);
+            case SIZE_EQUALS -> predicate = criteriaBuilder.equal(criteriaBuilder.size(path), bind(criteriaBuilder, Integer.class, index, Function.identity()));
+            case SIZE_GREATER_THAN -> predicate = criteriaBuilder.gt(criteriaBuilder.size(path), bind(criteriaBuilder, Integer.class, index, Function.identity()));
+            case SIZE_LESS_THAN -> predicate = criteriaBuilder.lt(criteriaBuilder.size(path), bind(criteriaBuilder, Integer.class, index, Function.identity()));
+            case SIZE_GREATER_EQUALS -> predicate = criteriaBuilder.ge(criteriaBuilder.size(path), bind(criteriaBuilder, Integer.class, index, Function.identity()));
+            case SIZE_LESS_EQUALS -> predicate = criteriaBuilder.le(criteriaBuilder.size(path), bind(criteriaBuilder, Integer.class, index, Function.identity()));
+        }
+        return predicate;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Expression<Comparable> bindBound(CriteriaBuilder criteriaBuilder, Object value, int index, int position) {
+        Object bound = ((Object[]) value)[position];
+        Class type = bound == null ? Object.class : ConditionShape.valueType(bound);
+        return (Expression<Comparable>) bind(criteriaBuilder, type, index, v -> ((Object[]) v)[position]);
+    }
+
+    private <P> ParameterExpression<P> bind(CriteriaBuilder criteriaBuilder, Class<P> type, int index, Function<Object, Object> converter) {
+        ParameterExpression<P> parameter = criteriaBuilder.parameter(type);
+        bindings.add(new ParameterBinding(parameter, index, converter));
+        return parameter;
+    }
+}
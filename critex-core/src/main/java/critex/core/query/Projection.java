@@ -0,0 +1,213 @@
+package critex.core.query;
+
+import critex.core.model.ProjectionPath;
+import critex.core.utility.CustomError;
+import critex.core.utility.CustomException;
+import jakarta.persistence.Entity;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.RecordComponent;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Compiled constructor projection of an entity into a record or DTO class. The constructor parameters are matched to
+ * entity paths by name or {@link ProjectionPath}, only these columns are selected and the instances are created with a
+ * precompiled constructor {@link MethodHandle}, so no entity is hydrated. Parameters typed as another DTO are projected
+ * from the association of the same name, collection parameters are left null.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public final class Projection<D> {
+
+    private final Class<D> type;
+    private final List<String> paths;
+    private final Node node;
+
+    private Projection(Class<D> type, List<String> paths, Node node) {
+        this.type = type;
+        this.paths = List.copyOf(paths);
+        this.node = node;
+    }
+
+    /**
+     * Compile the projection of the entity class into the given type
+     */
+    public static <D> Projection<D> compile(Class<D> type, Class<?> entityClass, PathRegistry pathRegistry) {
+        Map<String, Integer> columns = new LinkedHashMap<>();
+        Node node = new Compiler(entityClass, pathRegistry, columns).node(type, "");
+        return new Projection<>(type, new ArrayList<>(columns.keySet()), node);
+    }
+
+    public Class<D> getType() {
+        return type;
+    }
+
+    /**
+     * Selected entity paths, in the order of the row values
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    /**
+     * Create the instance of a selected row
+     */
+    public D create(Object[] row) {
+        return type.cast(node.create(row));
+    }
+
+    /**
+     * Constructor of one DTO type with the source of each argument
+     */
+    private record Node(MethodHandle factory, Source[] sources, int[] columns) {
+
+        Object create(Object[] row) {
+            Object[] arguments = new Object[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                arguments[i] = sources[i].value(row);
+            }
+            try {
+                return (Object) factory.invokeExact(arguments);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * A nested DTO whose columns are all null comes from a missing association
+         */
+        Object createNullable(Object[] row) {
+            for (int column : columns) {
+                if (row[column] != null) {
+                    return create(row);
+                }
+            }
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Source {
+        Object value(Object[] row);
+    }
+
+    private record Compiler(Class<?> entityClass, PathRegistry pathRegistry, Map<String, Integer> columns) {
+
+        Node node(Class<?> type, String prefix) {
+            return node(type, prefix, new HashSet<>(), new ArrayList<>());
+        }
+
+        private Node node(Class<?> type, String prefix, Set<Class<?>> parents, List<Integer> used) {
+            if (!parents.add(type)) {
+                throw invalid(type, "cyclic projection at '" + prefix + "'");
+            }
+            Constructor<?> constructor = constructor(type);
+            Parameter[] parameters = constructor.getParameters();
+            Source[] sources = new Source[parameters.length];
+            List<Integer> nodeColumns = new ArrayList<>();
+            for (int i = 0; i < parameters.length; i++) {
+                sources[i] = source(type, parameters[i], prefix, parents, nodeColumns);
+            }
+            parents.remove(type);
+            used.addAll(nodeColumns);
+            return new Node(factory(constructor), sources, nodeColumns.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private Source source(Class<?> type, Parameter parameter, String prefix, Set<Class<?>> parents, List<Integer> used) {
+            String name = pathOf(type, parameter);
+            String path = prefix.isEmpty() ? name : prefix + "." + name;
+            PathRegistry.AttributePath attributePath = pathRegistry.resolve(entityClass, path);
+            Class<?> parameterType = parameter.getType();
+            Object empty = parameterType.isPrimitive() ? Array.get(Array.newInstance(parameterType, 1), 0) : null;
+            if (attributePath.isCollection()) {
+                return row -> empty;
+            }
+            if (attributePath.isAssociation()) {
+                if (parameterType.isAnnotationPresent(Entity.class)) {
+                    throw invalid(type, "entity parameter '" + parameter.getName() + "' can not be projected");
+                }
+                Node nested = node(parameterType, path, parents, used);
+                return nested::createNullable;
+            }
+            int column = columns.computeIfAbsent(path, key -> columns.size());
+            used.add(column);
+            Class<?> boxed = ClassUtils.resolvePrimitiveIfNecessary(parameterType);
+            Function<Object, Object> converter = boxed.isAssignableFrom(ClassUtils.resolvePrimitiveIfNecessary(attributePath.last().getJavaType()))
+                    ? Function.identity()
+                    : value -> DefaultConversionService.getSharedInstance().convert(value, boxed);
+            return row -> row[column] == null ? empty : converter.apply(row[column]);
+        }
+
+        private static String pathOf(Class<?> type, Parameter parameter) {
+            ProjectionPath annotation = parameter.getAnnotation(ProjectionPath.class);
+            if (annotation == null && parameter.isNamePresent()) {
+                Field field = fieldOf(type, parameter.getName());
+                annotation = field == null ? null : field.getAnnotation(ProjectionPath.class);
+            }
+            if (annotation != null) {
+                return annotation.value();
+            }
+            if (!parameter.isNamePresent()) {
+                throw invalid(type, "compile with -parameters or annotate the constructor parameters with @ProjectionPath");
+            }
+            return parameter.getName();
+        }
+
+        private static Field fieldOf(Class<?> type, String name) {
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                try {
+                    return current.getDeclaredField(name);
+                } catch (NoSuchFieldException e) {
+                    // look in the super class
+                }
+            }
+            return null;
+        }
+
+        /**
+         * The canonical constructor of records, otherwise the constructor with most parameters which takes no entity
+         */
+        private static Constructor<?> constructor(Class<?> type) {
+            if (type.isRecord()) {
+                Class<?>[] types = Arrays.stream(type.getRecordComponents()).map(RecordComponent::getType).toArray(Class<?>[]::new);
+                try {
+                    return type.getDeclaredConstructor(types);
+                } catch (NoSuchMethodException e) {
+                    throw invalid(type, "no canonical constructor");
+                }
+            }
+            return Arrays.stream(type.getConstructors())
+                    .filter(constructor -> constructor.getParameterCount() > 0)
+                    .filter(constructor -> Arrays.stream(constructor.getParameterTypes()).noneMatch(parameter -> parameter.isAnnotationPresent(Entity.class)))
+                    .max(Comparator.comparingInt(Constructor::getParameterCount))
+                    .orElseThrow(() -> invalid(type, "no public constructor with parameters"));
+        }
+
+        private static MethodHandle factory(Constructor<?> constructor) {
+            try {
+                constructor.trySetAccessible();
+                MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+                return handle.asSpreader(Object[].class, constructor.getParameterCount())
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (IllegalAccessException e) {
+                throw invalid(constructor.getDeclaringClass(), "constructor is not accessible");
+            }
+        }
+
+        private static CustomException invalid(Class<?> type, String message) {
+            return new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(),
+                    "invalid projection " + type.getSimpleName() + ": " + message, CustomError.ILLEGAL_ARGUMENT);
+        }
+    }
+}
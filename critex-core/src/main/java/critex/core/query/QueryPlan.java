@@ -0,0 +1,93 @@
+package critex.core.query;
+
+import critex.core.metrics.QueryMetrics;
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Parameter;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaQuery;
+import org.hibernate.jpa.SpecHints;
+
+import java.util.List;
+
+/**
+ * Compiled criteria query of a {@link ConditionShape}, values are bound on every execution.
+ * The same criteria instance is reused so hibernate can reuse its interpretation of the query.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class QueryPlan<R> {
+
+    private final CriteriaQuery<R> criteria;
+    private final List<ParameterBinding> bindings;
+    /**
+     * Bindings of each shape of a plan compiled over several shapes, empty for a plan of one shape
+     */
+    private final List<List<ParameterBinding>> shapeBindings;
+
+    QueryPlan(CriteriaQuery<R> criteria, List<ParameterBinding> bindings) {
+        this(criteria, bindings, List.of());
+    }
+
+    private QueryPlan(CriteriaQuery<R> criteria, List<ParameterBinding> bindings, List<List<ParameterBinding>> shapeBindings) {
+        this.criteria = criteria;
+        this.bindings = List.copyOf(bindings);
+        this.shapeBindings = shapeBindings.stream().map(List::copyOf).toList();
+    }
+
+    /**
+     * Plan of one query over several shapes, the bindings are given per shape in the order of the shapes
+     */
+    static <R> QueryPlan<R> ofShapes(CriteriaQuery<R> criteria, List<List<ParameterBinding>> shapeBindings) {
+        return new QueryPlan<>(criteria, List.of(), shapeBindings);
+    }
+
+    public CriteriaQuery<R> getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Create a query of this plan with the values of the given shape
+     */
+    public TypedQuery<R> createQuery(EntityManager entityManager, ConditionShape shape) {
+        TypedQuery<R> query = entityManager.createQuery(criteria);
+        bind(query, bindings, shape);
+        query.unwrap(org.hibernate.query.Query.class).setQueryPlanCacheable(true);
+        QueryMetrics.tag(query);
+        return query;
+    }
+
+    /**
+     * Create a query of a plan over several shapes with the values of each shape, in the order the plan was compiled
+     */
+    public TypedQuery<R> createQuery(EntityManager entityManager, List<ConditionShape> shapes) {
+        if (shapes.size() != shapeBindings.size()) {
+            throw new IllegalArgumentException("plan is compiled for " + shapeBindings.size() + " shapes, not " + shapes.size());
+        }
+        TypedQuery<R> query = entityManager.createQuery(criteria);
+        for (int i = 0; i < shapes.size(); i++) {
+            bind(query, shapeBindings.get(i), shapes.get(i));
+        }
+        query.unwrap(org.hibernate.query.Query.class).setQueryPlanCacheable(true);
+        QueryMetrics.tag(query);
+        return query;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void bind(TypedQuery<?> query, List<ParameterBinding> bindings, ConditionShape shape) {
+        for (ParameterBinding binding : bindings) {
+            query.setParameter((Parameter<Object>) binding.parameter(), binding.valueOf(shape));
+        }
+    }
+
+    /**
+     * Create a query of this plan which loads the given fetch graph, see {@link FetchGraphs}
+     */
+    public TypedQuery<R> createQuery(EntityManager entityManager, ConditionShape shape, EntityGraph<?> fetchGraph) {
+        TypedQuery<R> query = createQuery(entityManager, shape);
+        if (fetchGraph != null) {
+            query.setHint(SpecHints.HINT_SPEC_FETCH_GRAPH, fetchGraph);
+        }
+        return query;
+    }
+}
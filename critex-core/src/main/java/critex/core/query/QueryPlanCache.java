@@ -0,0 +1,296 @@
+package critex.core.query;
+
+import critex.core.model.AggregationField;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.*;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache of compiled {@link QueryPlan}s of one entity, keyed by query kind and {@link ConditionShape}.
+ * A plan is compiled on the first use of a shape, next conditions with the same shape only bind their values.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class QueryPlanCache<T> {
+
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private final Class<T> entityClass;
+    private final int maxSize;
+    private final ConcurrentMap<String, QueryPlan<?>> plans = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, Projection<?>> projections = new ConcurrentHashMap<>();
+    private final FetchGraphs<T> fetchGraphs;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    /**
+     * Dialects which bind IN lists as one array parameter need no padding
+     */
+    private volatile Boolean padInLists;
+
+    public QueryPlanCache(Class<T> entityClass) {
+        this(entityClass, DEFAULT_MAX_SIZE);
+    }
+
+    public QueryPlanCache(Class<T> entityClass, int maxSize) {
+        this.entityClass = entityClass;
+        this.maxSize = maxSize;
+        this.fetchGraphs = new FetchGraphs<>(entityClass);
+    }
+
+    /**
+     * Plan selecting the entities of the shape ordered by sort
+     */
+    public QueryPlan<T> select(EntityManager entityManager, ConditionShape shape, Sort sort) {
+        return plan("select|" + sort, entityManager, shape, entityClass, (root, query, criteriaBuilder) -> {
+            query.select(root);
+            if (sort.isSorted()) {
+                query.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
+            }
+        });
+    }
+
+    /**
+     * Plan counting the entities of the shape
+     */
+    public QueryPlan<Long> count(EntityManager entityManager, ConditionShape shape) {
+        return plan("count", entityManager, shape, Long.class, (root, query, criteriaBuilder) -> {
+            query.select(query.isDistinct() ? criteriaBuilder.countDistinct(root) : criteriaBuilder.count(root));
+            query.orderBy();
+        });
+    }
+
+    /**
+     * Plan probing whether an entity of the shape exists, meant to be read with at most one row. The filter of the
+     * root stays in the where clause, the joins move into one correlated EXISTS subquery, so joined rows never
+     * multiply the root and the database can stop at the first match. The shape must not have fetch only joins.
+     */
+    public QueryPlan<Integer> exists(EntityManager entityManager, ConditionShape shape) {
+        return plan("exists", shape, () -> {
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Integer> query = criteriaBuilder.createQuery(Integer.class);
+            Root<T> root = query.from(entityClass);
+            PlanCompiler<T> compiler = newCompiler(entityManager, shape);
+            Predicate predicate = compiler.compileFilter(shape.getCondition().getFilter(), root, criteriaBuilder);
+            if (!shape.getCondition().getJoins().isEmpty()) {
+                Subquery<Integer> semiJoin = query.subquery(Integer.class);
+                Predicate joinPredicate = compiler.compileJoins(shape.getCondition().getJoins(), semiJoin.correlate(root), criteriaBuilder);
+                semiJoin.select(criteriaBuilder.literal(1));
+                if (joinPredicate != null) {
+                    semiJoin.where(joinPredicate);
+                }
+                predicate = and(criteriaBuilder, predicate, criteriaBuilder.exists(semiJoin));
+            }
+            if (predicate != null) {
+                query.where(predicate);
+            }
+            query.select(criteriaBuilder.literal(1));
+            return new QueryPlan<>(query, compiler.getBindings());
+        });
+    }
+
+    /**
+     * Plan answering one EXISTS probe per shape in a single row, 1 when an entity of the shape exists and 0 otherwise.
+     * The probes are uncorrelated subqueries selected from a one row read of the entity table, so the query returns no
+     * row when the table is empty. The shapes must not have fetch only joins.
+     */
+    public QueryPlan<Object[]> existsEach(EntityManager entityManager, List<ConditionShape> shapes) {
+        StringBuilder key = new StringBuilder("existsEach");
+        shapes.forEach(shape -> key.append('|').append(shape.getKey()));
+        return plan(key.toString(), () -> {
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+            query.from(entityClass);
+            List<Selection<?>> selections = new ArrayList<>();
+            List<List<ParameterBinding>> bindings = new ArrayList<>();
+            for (ConditionShape shape : shapes) {
+                Subquery<Integer> probe = query.subquery(Integer.class);
+                Root<T> root = probe.from(entityClass);
+                PlanCompiler<T> compiler = newCompiler(entityManager, shape);
+                Predicate predicate = and(criteriaBuilder, compiler.compileFilter(shape.getCondition().getFilter(), root, criteriaBuilder),
+                        compiler.compileJoins(shape.getCondition().getJoins(), root, criteriaBuilder));
+                probe.select(criteriaBuilder.literal(1));
+                if (predicate != null) {
+                    probe.where(predicate);
+                }
+                selections.add(criteriaBuilder.<Integer>selectCase().when(criteriaBuilder.exists(probe), 1).otherwise(0));
+                bindings.add(compiler.getBindings());
+            }
+            query.multiselect(selections);
+            return QueryPlan.ofShapes(query, bindings);
+        });
+    }
+
+    /**
+     * Plan of grouped aggregates, the tuple holds the group values followed by the aggregates.
+     * Rows are ordered by the group values, the having filter of the shape is applied on the aggregation names.
+     */
+    public QueryPlan<Tuple> aggregate(EntityManager entityManager, ConditionShape shape, List<String> groupBy, List<AggregationField> aggregations) {
+        StringBuilder kind = new StringBuilder("aggregate|").append(groupBy).append('|');
+        aggregations.forEach(field -> kind.append(field.getAggregationType()).append('(').append(field.getFieldName()).append(')')
+                .append(field.resultName()).append(';'));
+        return plan(kind.toString(), shape, () -> compileAggregate(entityManager, shape, groupBy, aggregations));
+    }
+
+    /**
+     * Compiled projection of the entity into the given record or DTO class
+     */
+    @SuppressWarnings("unchecked")
+    public <D> Projection<D> projection(EntityManager entityManager, Class<D> type) {
+        return (Projection<D>) projections.computeIfAbsent(type, key -> Projection.compile(type, entityClass, PathRegistry.of(entityManager.getMetamodel())));
+    }
+
+    /**
+     * Plan selecting only the columns of the projection, ordered by sort
+     */
+    public QueryPlan<Object[]> project(EntityManager entityManager, ConditionShape shape, Projection<?> projection, Sort sort) {
+        return plan("project|" + projection.getType().getName() + "|" + sort, shape, () -> {
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+            Root<T> root = query.from(entityClass);
+            PlanCompiler<T> compiler = newCompiler(entityManager, shape);
+            Predicate predicate = compiler.compile(shape.getCondition(), root, query, criteriaBuilder);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+            List<Selection<?>> selections = new ArrayList<>();
+            for (String path : projection.getPaths()) {
+                selections.add(compiler.getJoinedPath(root, path));
+            }
+            query.multiselect(selections);
+            if (sort.isSorted()) {
+                query.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
+            }
+            return new QueryPlan<>(query, compiler.getBindings());
+        });
+    }
+
+    /**
+     * Find or compile the plan of the given kind and shape, the customizer completes the query after the where clause is applied
+     */
+    public <R> QueryPlan<R> plan(String kind, EntityManager entityManager, ConditionShape shape, Class<R> resultType, PlanCustomizer<T, R> customizer) {
+        return plan(kind, shape, () -> compile(entityManager, shape, resultType, customizer));
+    }
+
+    private <R> QueryPlan<R> plan(String kind, ConditionShape shape, Supplier<QueryPlan<R>> compiler) {
+        return plan(kind + '|' + shape.getKey(), compiler);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> QueryPlan<R> plan(String key, Supplier<QueryPlan<R>> compiler) {
+        QueryPlan<R> plan = (QueryPlan<R>) plans.get(key);
+        if (plan != null) {
+            hits.increment();
+            return plan;
+        }
+        misses.increment();
+        plan = compiler.get();
+        if (plans.size() < maxSize) {
+            QueryPlan<R> previous = (QueryPlan<R>) plans.putIfAbsent(key, plan);
+            return previous != null ? previous : plan;
+        }
+        return plan;
+    }
+
+    protected <R> QueryPlan<R> compile(EntityManager entityManager, ConditionShape shape, Class<R> resultType, PlanCustomizer<T, R> customizer) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<R> query = criteriaBuilder.createQuery(resultType);
+        Root<T> root = query.from(entityClass);
+        PlanCompiler<T> compiler = newCompiler(entityManager, shape);
+        Predicate predicate = compiler.compile(shape.getCondition(), root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        customizer.customize(root, query, criteriaBuilder);
+        return new QueryPlan<>(query, compiler.getBindings());
+    }
+
+    protected QueryPlan<Tuple> compileAggregate(EntityManager entityManager, ConditionShape shape, List<String> groupBy, List<AggregationField> aggregations) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<T> root = query.from(entityClass);
+        PlanCompiler<T> compiler = newCompiler(entityManager, shape);
+        Predicate predicate = compiler.compile(shape.getCondition(), root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        List<Selection<?>> selections = new ArrayList<>();
+        List<Expression<?>> groups = new ArrayList<>();
+        for (String path : groupBy) {
+            Expression<?> group = compiler.getJoinedPath(root, path);
+            groups.add(group);
+            selections.add(group);
+        }
+        Map<String, Expression<?>> aggregates = new LinkedHashMap<>();
+        for (AggregationField field : aggregations) {
+            Expression<?> aggregate = compiler.aggregate(root, criteriaBuilder, field);
+            aggregates.put(field.resultName(), aggregate);
+            selections.add(aggregate);
+        }
+        query.multiselect(selections).groupBy(groups).orderBy(groups.stream().map(criteriaBuilder::asc).toList());
+        if (shape.getHaving() != null) {
+            Predicate having = compiler.compileHaving(shape.getHaving(), aggregates, criteriaBuilder);
+            if (having != null) {
+                query.having(having);
+            }
+        }
+        return new QueryPlan<>(query, compiler.getBindings());
+    }
+
+    private static Predicate and(CriteriaBuilder criteriaBuilder, Predicate first, Predicate second) {
+        if (first == null || second == null) {
+            return first != null ? first : second;
+        }
+        return criteriaBuilder.and(first, second);
+    }
+
+    private PlanCompiler<T> newCompiler(EntityManager entityManager, ConditionShape shape) {
+        if (padInLists == null) {
+            padInLists = InLists.isPadded(entityManager.getEntityManagerFactory());
+        }
+        return new PlanCompiler<>(shape, PathRegistry.of(entityManager.getMetamodel()), padInLists);
+    }
+
+    /**
+     * Entity graphs of the fetch only joins, plans of a condition are compiled without them
+     */
+    public FetchGraphs<T> getFetchGraphs() {
+        return fetchGraphs;
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public void clear() {
+        plans.clear();
+        projections.clear();
+    }
+
+    @FunctionalInterface
+    public interface PlanCustomizer<T, R> {
+        void customize(Root<T> root, CriteriaQuery<R> query, CriteriaBuilder criteriaBuilder);
+    }
+}
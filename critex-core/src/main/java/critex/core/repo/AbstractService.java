@@ -1,10 +1,83 @@
 package critex.core.repo;
 
+import critex.core.cache.CacheDependencies;
+import critex.core.cache.EntityCache;
+import critex.core.cache.ResultCache;
+import critex.core.cache.EntityChangeListener;
+import critex.core.cache.EntityChangeSubscriber;
+import critex.core.metrics.ExplainDataSource;
+import critex.core.metrics.QueryExplainer;
+import critex.core.metrics.QueryMetrics;
 import critex.core.model.*;
+import critex.core.query.CollectionQueries;
+import critex.core.query.ConditionNormalizer;
+import critex.core.query.ConditionShape;
+import critex.core.query.FetchGraphs;
+import critex.core.query.KeysetCursor;
+import critex.core.query.InLists;
+import critex.core.query.PathRegistry;
+import critex.core.query.Projection;
+import critex.core.query.QueryPlan;
+import critex.core.query.QueryPlanCache;
+import critex.core.search.SearchIndex;
+import critex.core.utility.CustomError;
+import critex.core.view.AggregateView;
+import critex.core.utility.CustomException;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.*;
+import jakarta.persistence.metamodel.EntityType;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.Session;
+import org.hibernate.ScrollableResults;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.EntityManagerProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.RecordComponent;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Abstract service class that provides basic CRUD operations without generateReport methods.
@@ -14,8 +87,45 @@ import java.util.*;
  */
 public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>> extends SpecificationGenerator<T> {
 
+    private static final String SEEK_PARAMETER = "critexSeek";
+
+    private static final Executor ASYNC_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
     protected R repository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final QueryPlanCache<T> planCache = new QueryPlanCache<>(getClazz());
+
+    private boolean planCacheEnabled = true;
+
+    private PathRegistry pathRegistry;
+
+    private String idAttributeName;
+
+    private final Map<String, AggregateView> views = new ConcurrentHashMap<>();
+
+    private int inChunkSize = InLists.MAX_BUCKET;
+
+    private boolean parallelInChunks;
+
+    private boolean multiQueryCollections;
+
+    private CollectionQueries collectionQueries;
+
+    private volatile ResultCache resultCache;
+
+    private volatile EntityCache<T> entityCache;
+
+    private volatile WriteBehindQueue<T> writeBehind;
+
+    private volatile SearchIndex searchIndex;
+
+    private volatile QueryMetrics queryMetrics;
+
+    private Executor asyncExecutor = ASYNC_EXECUTOR;
+
     protected AbstractService(R repository) {
         this.repository = repository;
     }
@@ -27,20 +137,99 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         return repository;
     }
 
+    protected EntityManager getEntityManager() {
+        return entityManager;
+    }
+
+    public void setEntityManager(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Compiled query plans of this service, exposes hit and miss counters
+     */
+    protected QueryPlanCache<T> getPlanCache() {
+        return planCache;
+    }
+
+    /**
+     * Enable or disable execution through cached query plans, when disabled every query goes through the repository
+     */
+    protected void setPlanCacheEnabled(boolean planCacheEnabled) {
+        this.planCacheEnabled = planCacheEnabled;
+    }
+
+    protected boolean isPlanCacheEnabled() {
+        return planCacheEnabled && entityManager != null && getClazz() != null;
+    }
+
+    @Override
+    protected PathRegistry getPathRegistry() {
+        if (pathRegistry == null && entityManager != null) {
+            pathRegistry = PathRegistry.of(entityManager.getMetamodel());
+        }
+        return pathRegistry;
+    }
+
+    /**
+     * Paths used by this service (filter keys, joins, sort and search fields) like user.username,
+     * they are resolved against the metamodel at startup and unknown paths fail the startup
+     */
+    protected Collection<String> declaredPaths() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Common join sets like List.of("replies", "user"), their fetch graphs are built at startup
+     */
+    protected Collection<Collection<String>> declaredFetchGraphs() {
+        return Collections.emptyList();
+    }
+
+    @PostConstruct
+    protected void registerPaths() {
+        PathRegistry registry = getPathRegistry();
+        if (registry != null && getClazz() != null) {
+            registry.register(getClazz(), declaredPaths());
+            declaredFetchGraphs().forEach(paths -> {
+                registry.register(getClazz(), paths);
+                getPlanCache().getFetchGraphs().register(entityManager, paths);
+            });
+        }
+    }
+
     // ============= FILTERABLE METHODS (getAll APIs with generateReport) =============
 
     /**
      * Find all entities with filter and pagination
      */
     protected List<T> findAll(ReportCondition condition, PageRequestParam pageRequest) {
-        return getRepository().findAll(toPredicate(condition), PaginationUtils.getPageRequest(pageRequest)).toList();
+        return observe("findAll", condition, () -> readList(condition, PaginationUtils.getPageRequest(pageRequest)), List::size);
     }
 
     /**
      * Find all dto with filter
      */
     protected <DTO> List<DTO> findAllDto(ReportCondition condition, Class<DTO> clazz) {
-        return getRepository().findBy(toPredicate(condition), q -> q.as(clazz).all());
+        return observe("findAllDto", condition, () -> {
+            if (clazz.isInterface() || !isPlanCacheEnabled()) {
+                return QueryMetrics.execute(() -> getRepository().findBy(toPredicate(condition), q -> q.as(clazz).all()));
+            }
+            return readProjection(condition, Pageable.unpaged(), clazz);
+        }, List::size);
+    }
+
+    /**
+     * Find a page of DTOs with filter, records and DTO classes are built from the selected columns only (see {@link Projection})
+     */
+    protected <DTO> List<DTO> findAllDto(ReportCondition condition, PageRequestParam pageRequest, Class<DTO> clazz) {
+        Pageable pageable = PaginationUtils.getPageRequest(pageRequest);
+        return observe("findAllDto", condition, () -> {
+            if (clazz.isInterface() || !isPlanCacheEnabled()) {
+                return QueryMetrics.execute(() -> getRepository().findBy(toPredicate(condition), q -> q.as(clazz).page(pageable)).getContent());
+            }
+            return readProjection(condition, pageable, clazz);
+        }, List::size);
     }
 
     /**
@@ -48,7 +237,8 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
      */
     protected List<Object> findAllId(ReportCondition condition) {
         condition.setDeActiveFetch(true);
-        return getRepository().findBy(toPredicate(condition), q -> q.as(IdDto.class).all()).stream().map(IdDto::id).toList();
+        return observe("findAllId", condition, () -> QueryMetrics.execute(() -> getRepository().findBy(toPredicate(condition), q -> q.as(IdDto.class).all()))
+                .stream().map(IdDto::id).toList(), List::size);
     }
 
     /**
@@ -58,9 +248,7 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         if (joins != null) {
             joins.forEach(condition::addJoinReport);
         }
-        return getRepository()
-                .findAll(toPredicate(condition), PaginationUtils.getPageRequest(pageRequest))
-                .toList();
+        return observe("findAll", condition, () -> readList(condition, PaginationUtils.getPageRequest(pageRequest)), List::size);
     }
 
     /**
@@ -70,14 +258,427 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         if (joins != null) {
             joins.forEach(condition::addJoinReport);
         }
-        return getRepository().findAll(toPredicate(condition), PaginationUtils.getPageRequest(pageRequest));
+        return observe("findAllPage", condition, () -> readPage(condition, PaginationUtils.getPageRequest(pageRequest)), Page::getNumberOfElements);
     }
 
     /**
      * Find all entities as page with condition and pagination
      */
     protected Page<T> findAllPage(ReportCondition condition, PageRequestParam pageRequest) {
-        return getRepository().findAll(toPredicate(condition), PaginationUtils.getPageRequest(pageRequest));
+        return observe("findAllPage", condition, () -> readPage(condition, PaginationUtils.getPageRequest(pageRequest)), Page::getNumberOfElements);
+    }
+
+    /**
+     * Find all entities as slice with condition and pagination, one extra row is read to know
+     * whether a next slice exists so no count query is executed
+     */
+    protected Slice<T> findAllSlice(ReportCondition condition, PageRequestParam pageRequest) {
+        return observe("findAllSlice", condition, () -> readSlice(condition, PaginationUtils.getPageRequest(pageRequest)), Slice::getNumberOfElements);
+    }
+
+    /**
+     * Find all entities as slice with filter, pagination and joins
+     */
+    protected Slice<T> findAllSlice(ReportCondition condition, PageRequestParam pageRequest, Collection<String> joins) {
+        if (joins != null) {
+            joins.forEach(condition::addJoinReport);
+        }
+        return observe("findAllSlice", condition, () -> readSlice(condition, PaginationUtils.getPageRequest(pageRequest)), Slice::getNumberOfElements);
+    }
+
+    // ============= KEYSET METHODS =============
+
+    /**
+     * Find a keyset (seek) page after or before the cursor position, the first page is read with a null cursor.
+     * Rows are ordered by the sort of the page request followed by the id as unique tie-breaker,
+     * so the latency does not depend on the depth of the page. Sort fields should not be nullable and not be collection
+     * paths. The seek query reads the ids and sort keys of the page only, the entities are then loaded by id with their
+     * joins, so fetch joined collections do not multiply the limited rows.
+     */
+    protected KeysetSlice<T> findAllKeyset(ReportCondition condition, PageRequestParam pageRequest, String cursor) {
+        requirePlanExecution("keyset pagination");
+        return observe("findAllKeyset", condition, () -> readKeyset(condition, pageRequest, cursor), slice -> slice.getContent().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private KeysetSlice<T> readKeyset(ReportCondition condition, PageRequestParam pageRequest, String cursor) {
+        Pageable pageable = PaginationUtils.getPageRequest(pageRequest);
+        List<Sort.Order> orders = keysetOrders(pageable.getSort());
+        String signature = orders.toString();
+        KeysetCursor position = cursor == null || cursor.isEmpty() ? null : KeysetCursor.decode(cursor, signature, keysetTypes(orders));
+        boolean backward = position != null && position.isBackward();
+        Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+        if (normalized.isEmpty()) {
+            return new KeysetSlice<>(new ArrayList<>(), null, null);
+        }
+
+        ConditionShape shape = idShape(normalized.get());
+        String id = getIdAttributeName();
+        String kind = "keyset|" + signature + "|" + (position == null ? "first" : backward ? "backward" : "forward");
+        QueryPlan<Tuple> plan = getPlanCache().plan(kind, getEntityManager(), shape, Tuple.class, (root, query, criteriaBuilder) -> {
+            List<Expression<?>> keys = new ArrayList<>();
+            List<Selection<?>> selections = new ArrayList<>();
+            selections.add(root.get(id));
+            for (Sort.Order order : orders) {
+                Expression<?> key = getPath(root, order.getProperty());
+                keys.add(order.isIgnoreCase() ? criteriaBuilder.lower((Expression<String>) key) : key);
+            }
+            selections.addAll(keys);
+            query.multiselect(selections);
+            if (position != null) {
+                Predicate seek = seekPredicate(criteriaBuilder, keys, orders, backward);
+                query.where(query.getRestriction() == null ? seek : criteriaBuilder.and(query.getRestriction(), seek));
+            }
+            List<jakarta.persistence.criteria.Order> orderBy = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                boolean ascending = orders.get(i).isAscending() != backward;
+                orderBy.add(ascending ? criteriaBuilder.asc(keys.get(i)) : criteriaBuilder.desc(keys.get(i)));
+            }
+            query.orderBy(orderBy);
+        });
+
+        TypedQuery<Tuple> query = plan.createQuery(getEntityManager(), shape);
+        if (position != null) {
+            for (int i = 0; i < position.getValues().length; i++) {
+                query.setParameter(SEEK_PARAMETER + i, position.getValues()[i]);
+            }
+        }
+        query.setMaxResults(pageable.getPageSize() + 1);
+        List<Tuple> rows = new ArrayList<>(QueryMetrics.execute(query::getResultList));
+        boolean more = rows.size() > pageable.getPageSize();
+        if (more) {
+            rows.remove(rows.size() - 1);
+        }
+        if (backward) {
+            Collections.reverse(rows);
+        }
+        List<Object> ids = rows.stream().map(row -> row.get(0)).toList();
+        List<T> content = readWithCollections(getEntityManager(), ConditionShape.of(normalized.get()),
+                rootShape -> readByIds(rootShape.getCondition(), ids));
+        if (rows.isEmpty()) {
+            return new KeysetSlice<>(content, null, null);
+        }
+        String next = backward || more ? keysetCursor(rows.getLast(), orders.size(), false, signature) : null;
+        String previous = backward ? (more ? keysetCursor(rows.getFirst(), orders.size(), true, signature) : null)
+                : (position != null ? keysetCursor(rows.getFirst(), orders.size(), true, signature) : null);
+        return new KeysetSlice<>(content, next, previous);
+    }
+
+    /**
+     * Rows after the boundary: (k1 > v1) or (k1 = v1 and k2 > v2) or ... with the comparison flipped for descending keys
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate seekPredicate(CriteriaBuilder criteriaBuilder, List<Expression<?>> keys, List<Sort.Order> orders, boolean backward) {
+        List<ParameterExpression<?>> values = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            values.add(criteriaBuilder.parameter(keys.get(i).getJavaType(), SEEK_PARAMETER + i));
+        }
+        List<Predicate> alternatives = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            List<Predicate> predicates = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                predicates.add(criteriaBuilder.equal(keys.get(j), values.get(j)));
+            }
+            Expression key = keys.get(i);
+            Expression value = values.get(i);
+            boolean after = orders.get(i).isAscending() != backward;
+            predicates.add(after ? criteriaBuilder.greaterThan(key, value) : criteriaBuilder.lessThan(key, value));
+            alternatives.add(criteriaBuilder.and(predicates.toArray(new Predicate[0])));
+        }
+        return criteriaBuilder.or(alternatives.toArray(new Predicate[0]));
+    }
+
+    private List<Sort.Order> keysetOrders(Sort sort) {
+        String id = getIdAttributeName();
+        List<Sort.Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            if (isCollectionPath(order.getProperty())) {
+                throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(),
+                        "keyset pagination can not sort by the collection path " + order.getProperty(), CustomError.ILLEGAL_ARGUMENT);
+            }
+            orders.add(order);
+        }
+        if (orders.stream().noneMatch(order -> order.getProperty().equals(id))) {
+            orders.add(Sort.Order.asc(id));
+        }
+        return orders;
+    }
+
+    private Class<?>[] keysetTypes(List<Sort.Order> orders) {
+        Class<?>[] types = new Class<?>[orders.size()];
+        for (int i = 0; i < orders.size(); i++) {
+            types[i] = orders.get(i).isIgnoreCase() ? String.class
+                    : getPathRegistry().resolve(getClazz(), orders.get(i).getProperty()).last().getJavaType();
+        }
+        return types;
+    }
+
+    private static String keysetCursor(Tuple row, int size, boolean backward, String signature) {
+        Object[] values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = row.get(i + 1);
+        }
+        return new KeysetCursor(backward, values).encode(signature);
+    }
+
+    /**
+     * Name of the id attribute of the entity, used as unique tie-breaker
+     */
+    protected String getIdAttributeName() {
+        if (idAttributeName == null) {
+            EntityType<T> entityType = getEntityManager().getMetamodel().entity(getClazz());
+            idAttributeName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+        }
+        return idAttributeName;
+    }
+
+    protected void requirePlanExecution(String feature) {
+        if (!isPlanCacheEnabled()) {
+            throw new CustomException(CustomError.ILLEGAL_REQUEST.getStatusCode(),
+                    feature + " needs an entity manager and enabled query plans", CustomError.ILLEGAL_REQUEST);
+        }
+    }
+
+    // ============= STREAMING METHODS =============
+
+    /**
+     * Stream the entities of the condition from a forward-only scrollable result, the persistence context is cleared
+     * every {@link StreamOptions#getClearEvery()} entities so memory stays bounded. When a collection is fetch joined
+     * the ids are scrolled instead and the entities are loaded in chunks of the fetch size.
+     * Must run inside a transaction and the stream must be closed, e.g. with try-with-resources.
+     * Cleared entities are detached, associations that are not fetched can not be loaded lazily anymore.
+     */
+    @SuppressWarnings("unchecked")
+    protected Stream<T> stream(ReportCondition condition, StreamOptions options) {
+        requirePlanExecution("streaming");
+        Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+        if (normalized.isEmpty()) {
+            return Stream.empty();
+        }
+        condition = normalized.get();
+        ConditionShape shape = ConditionShape.of(condition);
+        Sort sort = options.toSort();
+        boolean byIds = hasCollectionFetch(condition);
+        org.hibernate.query.Query<?> query;
+        if (byIds) {
+            ConditionShape idShape = idShape(condition);
+            query = idPlan(idShape, sort).createQuery(getEntityManager(), idShape).unwrap(org.hibernate.query.Query.class);
+        } else {
+            query = selectQuery(getEntityManager(), shape, sort).unwrap(org.hibernate.query.Query.class);
+        }
+        query.setFetchSize(options.getFetchSize());
+        query.setReadOnly(options.isReadOnly());
+        if (options.getMaxRows() > 0) {
+            query.setMaxResults(options.getMaxRows());
+        }
+        ScrollableResults<?> results = query.scroll(ScrollMode.FORWARD_ONLY);
+        Supplier<T> reader = byIds
+                ? new ChunkReader(condition, (ScrollableResults<Tuple>) results, Math.max(1, options.getFetchSize()), options.isReadOnly())
+                : () -> results.next() ? (T) results.get() : null;
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private long count;
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (done) {
+                    return false;
+                }
+                if (options.getClearEvery() > 0 && count > 0 && count % options.getClearEvery() == 0) {
+                    getEntityManager().clear();
+                }
+                T entity = reader.get();
+                if (entity == null) {
+                    done = true;
+                    results.close();
+                    return false;
+                }
+                count++;
+                action.accept(entity);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(results::close);
+    }
+
+    /**
+     * Stream all entities of the condition with the default options
+     */
+    protected Stream<T> stream(ReportCondition condition) {
+        return stream(condition, StreamOptions.defaults());
+    }
+
+    /**
+     * Pass the entities of the condition to the consumer in batches of batchSize. After each batch the changes are
+     * flushed and the persistence context is cleared. Must run inside a transaction, the cursor is closed when the
+     * consumer finishes or throws.
+     */
+    protected void forEachBatch(ReportCondition condition, int batchSize, Consumer<List<T>> consumer) {
+        if (batchSize < 1) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "batch size must be at least 1", CustomError.ILLEGAL_ARGUMENT);
+        }
+        StreamOptions options = StreamOptions.builder().fetchSize(batchSize).clearEvery(0).readOnly(false).build();
+        List<T> batch = new ArrayList<>(batchSize);
+        try (Stream<T> entities = stream(condition, options)) {
+            Iterator<T> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize || !iterator.hasNext()) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                    getEntityManager().flush();
+                    getEntityManager().clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the scrolled ids in chunks and loads the entities of each chunk with their fetch joins
+     */
+    private class ChunkReader implements Supplier<T> {
+        private final ReportCondition condition;
+        private final ScrollableResults<Tuple> ids;
+        private final int chunkSize;
+        private final boolean readOnly;
+        private final Deque<T> buffer = new ArrayDeque<>();
+        private Object lastId;
+
+        private ChunkReader(ReportCondition condition, ScrollableResults<Tuple> ids, int chunkSize, boolean readOnly) {
+            this.condition = condition;
+            this.ids = ids;
+            this.chunkSize = chunkSize;
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public T get() {
+            while (buffer.isEmpty()) {
+                List<Object> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && ids.next()) {
+                    Object id = ids.get().get(0);
+                    if (!id.equals(lastId)) {
+                        chunk.add(id);
+                        lastId = id;
+                    }
+                }
+                if (chunk.isEmpty()) {
+                    return null;
+                }
+                buffer.addAll(readByIds(condition, chunk, readOnly));
+            }
+            return buffer.poll();
+        }
+    }
+
+    // ============= ASYNC METHODS =============
+
+    /**
+     * Read the page on the async executor, the content and the count query run concurrently, each in its own read only
+     * transaction, so the page takes as long as the slower of both. The count is cancelled when the content shows the
+     * total. Entities are detached, associations which are not joined can not be loaded lazily.
+     * Cancelling the future cancels the running statements.
+     */
+    protected CompletableFuture<Page<T>> findAllPageAsync(ReportCondition condition, PageRequestParam pageRequest) {
+        Pageable pageable = PaginationUtils.getPageRequest(pageRequest);
+        CompletableFuture<List<T>> content = readAsync(() -> readList(condition, pageable));
+        CompletableFuture<Long> total = readAsync(() -> count(condition));
+        CompletableFuture<Page<T>> page = content.thenCompose(rows -> {
+            boolean[] counted = {false};
+            Page<T> known = PageableExecutionUtils.getPage(rows, pageable, () -> {
+                counted[0] = true;
+                return 0;
+            });
+            if (!counted[0]) {
+                total.cancel(true);
+                return CompletableFuture.completedFuture(known);
+            }
+            return total.thenApply(count -> new PageImpl<>(rows, pageable, count));
+        });
+        page.whenComplete((value, failure) -> {
+            if (failure != null) {
+                content.cancel(true);
+                total.cancel(true);
+            }
+        });
+        return page;
+    }
+
+    /**
+     * Read the rows of the page on the async executor in a read only transaction, without count query
+     */
+    protected CompletableFuture<List<T>> findAllAsync(ReportCondition condition, PageRequestParam pageRequest) {
+        return readAsync(() -> findAll(condition, pageRequest));
+    }
+
+    /**
+     * Count the entities on the async executor in a read only transaction
+     */
+    protected CompletableFuture<Long> countAsync(ReportCondition condition) {
+        return readAsync(() -> count(condition));
+    }
+
+    /**
+     * Executor of the async methods, a new virtual thread per query by default
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Run the reader on the async executor with its own entity manager in a read only transaction. The entity manager
+     * is bound to the thread, so the reader uses it through {@link #getEntityManager()}. Cancelling the future cancels
+     * the statement the reader is running.
+     */
+    private <V> CompletableFuture<V> readAsync(Supplier<V> reader) {
+        requirePlanExecution("async queries");
+        EntityManagerFactory entityManagerFactory = getEntityManager().getEntityManagerFactory();
+        AtomicReference<SessionImplementor> running = new AtomicReference<>();
+        CompletableFuture<V> future = new CompletableFuture<>();
+        future.whenComplete((value, failure) -> {
+            SessionImplementor session = running.get();
+            if (future.isCancelled() && session != null) {
+                session.getJdbcCoordinator().cancelLastQuery();
+            }
+        });
+        asyncExecutor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(readInTransaction(entityManagerFactory, future, running, reader));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private <V> V readInTransaction(EntityManagerFactory entityManagerFactory, CompletableFuture<V> future,
+                                    AtomicReference<SessionImplementor> running, Supplier<V> reader) {
+        try (EntityManager entityManager = entityManagerFactory.createEntityManager()) {
+            SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            EntityTransaction transaction = entityManager.getTransaction();
+            TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+            running.set(session);
+            try {
+                if (future.isCancelled()) {
+                    throw new CancellationException();
+                }
+                transaction.begin();
+                V value = reader.get();
+                transaction.commit();
+                return value;
+            } finally {
+                running.set(null);
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            }
+        }
     }
 
     // ============= AGGREGATION METHODS WITH FILTER =============
@@ -86,7 +687,158 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
      * Count entities with filter
      */
     protected long count(ReportCondition condition) {
-        return getRepository().count(toPredicate(condition));
+        return observe("count", condition, () -> {
+            if (!isPlanCacheEnabled()) {
+                return QueryMetrics.execute(() -> getRepository().count(toPredicate(condition)));
+            }
+            Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+            return normalized.isEmpty() ? 0L : executeCount(ConditionShape.of(normalized.get()));
+        }, total -> 1);
+    }
+
+    /**
+     * Aggregate the entities of the condition in the database, grouped by root or joined paths.
+     * Each row maps the group paths and the aggregation names ({@link AggregationField#resultName()}) to their values.
+     */
+    protected List<Map<String, Object>> aggregate(ReportCondition condition, List<String> groupBy, List<AggregationField> aggregations) {
+        return aggregate(condition, groupBy, aggregations, (ReportFilter) null);
+    }
+
+    /**
+     * Aggregate with a having filter, the keys of the having filter are aggregation names
+     */
+    protected List<Map<String, Object>> aggregate(ReportCondition condition, List<String> groupBy, List<AggregationField> aggregations, ReportFilter having) {
+        List<String> names = new ArrayList<>(groupBy == null ? List.of() : groupBy);
+        aggregations.forEach(field -> names.add(field.resultName()));
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Tuple row : aggregateRows(condition, groupBy, aggregations, having)) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                values.put(names.get(i), row.get(i));
+            }
+            result.add(values);
+        }
+        return result;
+    }
+
+    /**
+     * Aggregate into records, the record components are the group paths followed by the aggregations in the same order
+     */
+    protected <R extends Record> List<R> aggregate(ReportCondition condition, List<String> groupBy, List<AggregationField> aggregations,
+                                                   ReportFilter having, Class<R> resultType) {
+        RecordComponent[] components = resultType.getRecordComponents();
+        int size = (groupBy == null ? 0 : groupBy.size()) + aggregations.size();
+        if (components.length != size) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(),
+                    resultType.getSimpleName() + " needs " + size + " components", CustomError.ILLEGAL_ARGUMENT);
+        }
+        Constructor<R> constructor;
+        try {
+            constructor = resultType.getDeclaredConstructor(Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new));
+            constructor.setAccessible(true);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "invalid result type " + resultType.getSimpleName(), CustomError.ILLEGAL_ARGUMENT);
+        }
+        ConversionService conversionService = DefaultConversionService.getSharedInstance();
+        List<R> result = new ArrayList<>();
+        for (Tuple row : aggregateRows(condition, groupBy, aggregations, having)) {
+            Object[] arguments = new Object[components.length];
+            for (int i = 0; i < components.length; i++) {
+                arguments[i] = conversionService.convert(row.get(i), components[i].getType());
+            }
+            try {
+                result.add(constructor.newInstance(arguments));
+            } catch (ReflectiveOperationException e) {
+                throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "invalid result type " + resultType.getSimpleName(), CustomError.ILLEGAL_ARGUMENT);
+            }
+        }
+        return result;
+    }
+
+    private List<Tuple> aggregateRows(ReportCondition condition, List<String> groupBy, List<AggregationField> aggregations, ReportFilter having) {
+        requirePlanExecution("aggregation");
+        return observe("aggregate", condition, () -> readAggregateRows(condition, groupBy, aggregations, having), List::size);
+    }
+
+    private List<Tuple> readAggregateRows(ReportCondition condition, List<String> groupBy, List<AggregationField> aggregations, ReportFilter having) {
+        if (aggregations == null || aggregations.isEmpty()) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "at least one aggregation is required", CustomError.ILLEGAL_ARGUMENT);
+        }
+        Optional<ReportCondition> where = ConditionNormalizer.normalize(new ReportCondition(condition.getFilter(), condition.getJoins(), false, true));
+        if (where.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ConditionShape shape = ConditionShape.of(where.get(), having);
+        TypedQuery<Tuple> query = getPlanCache().aggregate(getEntityManager(), shape, groupBy == null ? List.of() : groupBy, aggregations)
+                .createQuery(getEntityManager(), shape);
+        return QueryMetrics.execute(query::getResultList);
+    }
+
+    // ============= AGGREGATE VIEWS =============
+
+    /**
+     * Register an in memory view of the aggregates of the condition grouped by an integral property (or null for a single group).
+     * The view is computed once and then updated from committed changes of the entity, reads are map lookups.
+     * Filters, group and aggregated properties must be basic properties of the entity, aggregations COUNT, SUM or AVG.
+     */
+    protected AggregateView registerView(String name, ReportCondition condition, String groupBy, List<AggregationField> aggregations) {
+        requirePlanExecution("aggregate views");
+        if (!condition.getJoins().isEmpty()) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "aggregate views support filters on the root entity only", CustomError.ILLEGAL_ARGUMENT);
+        }
+        for (ReportFilter filter = condition.getFilter(); filter != null; filter = filter.getOrFilter()) {
+            filter.getParameters().forEach(parameter -> requireBasicProperty("aggregate views", parameter.getKey()));
+        }
+        if (groupBy != null) {
+            Class<?> groupType = ClassUtils.resolvePrimitiveIfNecessary(requireBasicProperty("aggregate views", groupBy));
+            if (!List.of(Long.class, Integer.class, Short.class, Byte.class).contains(groupType)) {
+                throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "aggregate views group by integral properties only", CustomError.ILLEGAL_ARGUMENT);
+            }
+        }
+        boolean[] floating = new boolean[aggregations.size()];
+        for (int i = 0; i < aggregations.size(); i++) {
+            AggregationField field = aggregations.get(i);
+            if (!List.of(AggregationType.COUNT, AggregationType.SUM, AggregationType.AVG).contains(field.getAggregationType())) {
+                throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(),
+                        field.getAggregationType() + " can not be maintained incrementally", CustomError.ILLEGAL_ARGUMENT);
+            }
+            if (field.getFieldName() != null && !"*".equals(field.getFieldName())) {
+                Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(requireBasicProperty("aggregate views", field.getFieldName()));
+                floating[i] = !List.of(Long.class, Integer.class, Short.class, Byte.class).contains(type);
+            }
+        }
+        ReportCondition where = new ReportCondition(condition.getFilter(), condition.getJoins(), false, true);
+        List<String> groups = groupBy == null ? List.of() : List.of(groupBy);
+        AggregateView view = new AggregateView(name, getClazz(), condition.getFilter(), groupBy, aggregations, floating,
+                fields -> aggregate(where, groups, fields));
+        view.reconcile();
+        AggregateView previous = views.put(name, view);
+        if (previous != null) {
+            previous.close();
+            EntityChangeListener.unregister(getEntityManager().getEntityManagerFactory(), previous);
+        }
+        EntityChangeListener.register(getEntityManager().getEntityManagerFactory(), view);
+        return view;
+    }
+
+    /**
+     * View registered with the given name
+     */
+    protected AggregateView getView(String name) {
+        AggregateView view = views.get(name);
+        if (view == null) {
+            throw new CustomException(CustomError.NOT_FOUND.getStatusCode(), "view " + name + " is not registered", CustomError.NOT_FOUND);
+        }
+        return view;
+    }
+
+    private Class<?> requireBasicProperty(String feature, String key) {
+        PathRegistry.AttributePath path = getPathRegistry().resolve(getClazz(), key);
+        if (path.keys().size() != 1 || path.isAssociation() || path.isCollection()) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(),
+                    feature + " support basic properties only, not '" + key + "'", CustomError.ILLEGAL_ARGUMENT);
+        }
+        return path.last().getJavaType();
     }
 
     // ============= SINGLE RESULT METHODS WITH FILTER =============
@@ -96,31 +848,48 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
                 .pageNumber(0)
                 .pageSize(1)
                 .build();
-        List<T> results = findAll(condition, pageRequest);
+        List<T> results = observe("findFirst", condition, () -> readList(condition, PaginationUtils.getPageRequest(pageRequest)), List::size);
         return results.isEmpty() ? Optional.empty() : Optional.of(results.getFirst());
     }
 
     // ============= SEARCH METHODS =============
 
     /**
-     * Search entities with text in multiple fields
+     * Search entities with text in multiple fields. When the fields are covered by the search index (see
+     * {@link #enableSearchIndex(List, SearchIndexOptions)}) the entities matching the terms of the text are read from the
+     * index, otherwise the fields are searched for the text with {@code LIKE}.
      */
     protected List<T> search(String searchText, List<String> searchFields, PageRequestParam pageRequest) {
-        ReportCondition condition = new ReportCondition();
-        ReportFilter orFilter = new ReportFilter();
-
-        for (String field : searchFields) {
-            orFilter.addContainsIgnoreCase(field, searchText);
-        }
-
-        condition.setOrFilter(orFilter);
-        return findAll(condition, pageRequest);
+        ReportCondition condition = searchCondition(searchText, searchFields);
+        return observe("search", condition, () -> {
+            SearchIndex index = searchIndexFor(searchText, searchFields);
+            if (index != null) {
+                return indexedSearch(index, searchText, searchFields, PaginationUtils.getPageRequest(pageRequest),
+                        () -> new PageImpl<>(findAll(condition, pageRequest))).getContent();
+            }
+            return findAll(condition, pageRequest);
+        }, List::size);
     }
 
     /**
      * Search entities with text in multiple fields and return as page
      */
     protected Page<T> searchPage(String searchText, List<String> searchFields, PageRequestParam pageRequest) {
+        ReportCondition condition = searchCondition(searchText, searchFields);
+        return observe("searchPage", condition, () -> {
+            SearchIndex index = searchIndexFor(searchText, searchFields);
+            if (index != null) {
+                return indexedSearch(index, searchText, searchFields, PaginationUtils.getPageRequest(pageRequest),
+                        () -> findAllPage(condition, pageRequest));
+            }
+            return findAllPage(condition, pageRequest);
+        }, Page::getNumberOfElements);
+    }
+
+    /**
+     * Condition of a search without index, any of the fields contains the text
+     */
+    private ReportCondition searchCondition(String searchText, List<String> searchFields) {
         ReportCondition condition = new ReportCondition();
         ReportFilter orFilter = new ReportFilter();
 
@@ -129,7 +898,7 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         }
 
         condition.setOrFilter(orFilter);
-        return findAllPage(condition, pageRequest);
+        return condition;
     }
 
     /**
@@ -139,11 +908,37 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         if (id == null) {
             return null;
         }
-        List<JoinReport> joinReports = joins != null ? joins.stream().map(JoinReport::of).toList() : new ArrayList<>();
-        List<T> result = repository.findAll(getById(id, joinReports));
+        return observe("getEntityById", () -> ConditionShape.of(idCondition(id, joinReports(joins))), () -> {
+            EntityCache<T> cache = entityCache;
+            if (cache != null) {
+                return cache.get(id, joins != null ? joins : List.of(), () -> loadEntityById(id, joins));
+            }
+            return loadEntityById(id, joins);
+        }, entity -> entity == null ? 0 : 1);
+    }
+
+    private T loadEntityById(Object id, Collection<String> joins) {
+        List<JoinReport> joinReports = joinReports(joins);
+        if (!isPlanCacheEnabled()) {
+            List<T> result = QueryMetrics.execute(() -> repository.findAll(getById(id, joinReports)));
+            return result.isEmpty() ? null : result.getFirst();
+        }
+        List<T> result = readWithCollections(getEntityManager(), ConditionShape.of(idCondition(id, joinReports)),
+                shape -> QueryMetrics.execute(selectQuery(getEntityManager(), shape, Sort.unsorted())::getResultList));
         return result.isEmpty() ? null : result.getFirst();
     }
 
+    private static List<JoinReport> joinReports(Collection<String> joins) {
+        return joins != null ? joins.stream().map(JoinReport::of).toList() : new ArrayList<>();
+    }
+
+    private ReportCondition idCondition(Object id, Collection<JoinReport> joins) {
+        ReportCondition condition = new ReportCondition();
+        condition.addEqual(isPlanCacheEnabled() ? getIdAttributeName() : "id", id);
+        joins.forEach(condition::addJoinReport);
+        return condition;
+    }
+
     /**
      * Find entity by ID with inner joins
      */
@@ -151,7 +946,8 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         if (id == null) {
             return null;
         }
-        List<T> result = repository.findAll(getById(id, joins));
+        List<T> result = observe("getEntityById", () -> ConditionShape.of(idCondition(id, joins != null ? joins : List.of())),
+                () -> QueryMetrics.execute(() -> repository.findAll(getById(id, joins))), List::size);
         return result.isEmpty() ? null : result.getFirst();
     }
 
@@ -171,7 +967,7 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         ReportCondition reportCondition = new ReportCondition();
         conditions.forEach(reportCondition::addEqual);
         joinReports.forEach(reportCondition::addJoinReport);
-        return repository.findAll(toPredicate(reportCondition));
+        return findAllWithRepository(reportCondition);
     }
 
     /**
@@ -183,7 +979,7 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         if (joins != null) {
             joins.forEach(reportCondition::addJoinReport);
         }
-        return repository.findAll(toPredicate(reportCondition));
+        return findAllWithRepository(reportCondition);
     }
 
     /**
@@ -193,7 +989,11 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         if (joins != null) {
             joins.forEach(mainCondition::addJoinReport);
         }
-        return repository.findAll(toPredicate(mainCondition));
+        return findAllWithRepository(mainCondition);
+    }
+
+    private List<T> findAllWithRepository(ReportCondition condition) {
+        return observe("findAll", condition, () -> QueryMetrics.execute(() -> repository.findAll(toPredicate(condition))), List::size);
     }
 
     /**
@@ -214,10 +1014,17 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
 
 
     /**
-     * Check if entity exists by condition
+     * Check if entity exists by condition. Runs a probe which reads at most one row instead of counting: fetch joins
+     * are dropped and the other joins become an EXISTS subquery, so the database stops at the first match.
      */
     protected boolean exists(ReportCondition condition) {
-        return repository.count(toPredicate(condition)) > 0;
+        return observe("exists", condition, () -> {
+            if (!isPlanCacheEnabled()) {
+                return QueryMetrics.execute(() -> repository.exists(toPredicate(withoutFetch(condition))));
+            }
+            Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+            return normalized.isPresent() && executeExists(probeShape(normalized.get()));
+        }, found -> found ? 1 : 0);
     }
 
     /**
@@ -229,51 +1036,1154 @@ public abstract class AbstractService<T, R extends JpaSpecificationExecutor<T>>
         return exists(condition);
     }
 
+    /**
+     * Check for each condition if an entity exists, in the order of the conditions. All probes are answered by one
+     * query, conditions which can not match anything are answered without query.
+     */
+    protected List<Boolean> existsEach(List<ReportCondition> conditions) {
+        return observe("existsEach", conditions.isEmpty() ? new ReportCondition() : conditions.getFirst(), () -> probeEach(conditions),
+                result -> (int) result.stream().filter(Boolean::booleanValue).count());
+    }
+
+    private List<Boolean> probeEach(List<ReportCondition> conditions) {
+        if (!isPlanCacheEnabled()) {
+            return conditions.stream().map(this::exists).toList();
+        }
+        List<Boolean> result = new ArrayList<>(Collections.nCopies(conditions.size(), false));
+        List<ConditionShape> shapes = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < conditions.size(); i++) {
+            Optional<ReportCondition> normalized = ConditionNormalizer.normalize(conditions.get(i));
+            if (normalized.isPresent()) {
+                shapes.add(probeShape(normalized.get()));
+                positions.add(i);
+            }
+        }
+        if (shapes.isEmpty()) {
+            return result;
+        }
+        EntityManager entityManager = getEntityManager();
+        TypedQuery<Object[]> query = getPlanCache().existsEach(entityManager, shapes).createQuery(entityManager, shapes);
+        query.setMaxResults(1);
+        List<Object[]> rows = QueryMetrics.execute(query::getResultList);
+        if (!rows.isEmpty()) {
+            Object[] row = rows.getFirst();
+            for (int i = 0; i < positions.size(); i++) {
+                result.set(positions.get(i), ((Number) row[i]).intValue() == 1);
+            }
+        }
+        return result;
+    }
+
     /**
      * Find entities by IDs
      */
     protected List<T> findAllByIds(List<Object> ids) {
-        return repository.findAll(getAllByIds(ids, new ArrayList<>()));
+        return findAllByIds(ids, null);
     }
 
     /**
-     * Find entities by IDs with joins
+     * Find entities by IDs with joins, in the order of the ids without duplicates. Lists longer than the IN chunk size
+     * are split in chunks, which run in parallel when {@link #setParallelInChunks(boolean)} is enabled.
      */
     protected List<T> findAllByIds(List<Object> ids, Collection<String> joins) {
         List<JoinReport> joinReports = joins != null ? joins.stream().map(JoinReport::of).toList() : new ArrayList<>();
-        return repository.findAll(getAllByIds(ids, joinReports));
+        List<Object> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        return observe("findAllByIds", () -> {
+            ReportCondition condition = new ReportCondition();
+            condition.addIn(isPlanCacheEnabled() ? getIdAttributeName() : "id", distinctIds);
+            joinReports.forEach(condition::addJoinReport);
+            return ConditionShape.of(condition);
+        }, () -> readAllByIds(distinctIds, joinReports), List::size);
+    }
+
+    private List<T> readAllByIds(List<Object> distinctIds, List<JoinReport> joinReports) {
+        List<List<Object>> chunks = InLists.chunks(distinctIds, inChunkSize);
+        if (!isPlanCacheEnabled()) {
+            List<T> entities = new ArrayList<>();
+            chunks.forEach(chunk -> entities.addAll(QueryMetrics.execute(() -> repository.findAll(getAllByIds(chunk, joinReports)))));
+            return orderByIds(entities, distinctIds);
+        }
+        if (chunks.size() > 1 && parallelInChunks) {
+            return orderByIds(readChunksInParallel(chunks, joinReports), distinctIds);
+        }
+        List<T> entities = new ArrayList<>();
+        for (List<Object> chunk : chunks) {
+            entities.addAll(readWithCollections(getEntityManager(), ConditionShape.of(idsCondition(chunk, joinReports)),
+                    shape -> QueryMetrics.execute(selectQuery(getEntityManager(), shape, Sort.unsorted())::getResultList)));
+        }
+        return orderByIds(entities, distinctIds);
     }
 
     /**
-     * Create new condition
+     * Every chunk runs on a virtual thread with its own read only entity manager, so the entities are detached
      */
-    protected ReportCondition newCondition() {
-        return new ReportCondition();
+    private List<T> readChunksInParallel(List<List<Object>> chunks, List<JoinReport> joins) {
+        EntityManagerFactory entityManagerFactory = getEntityManager().getEntityManagerFactory();
+        List<T> entities = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<T>>> futures = new ArrayList<>();
+            for (List<Object> chunk : chunks) {
+                futures.add(executor.submit(() -> {
+                    try (EntityManager entityManager = entityManagerFactory.createEntityManager()) {
+                        return readWithCollections(entityManager, ConditionShape.of(idsCondition(chunk, joins)), shape -> {
+                            TypedQuery<T> query = selectQuery(entityManager, shape, Sort.unsorted());
+                            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+                            return query.getResultList();
+                        });
+                    }
+                }));
+            }
+            for (Future<List<T>> future : futures) {
+                entities.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        return entities;
+    }
+
+    private ReportCondition idsCondition(List<Object> ids, Collection<JoinReport> joins) {
+        ReportCondition condition = new ReportCondition();
+        condition.addIn(getIdAttributeName(), ids);
+        joins.forEach(condition::addJoinReport);
+        return condition;
     }
 
     /**
-     * Create new filter
+     * Maximum number of values of one IN list of the id lookups, longer lists are split in chunks
      */
-    protected ReportFilter newFilter() {
-        return new ReportFilter();
+    public void setInChunkSize(int inChunkSize) {
+        this.inChunkSize = Math.max(1, inChunkSize);
     }
 
     /**
-     * Create join report
+     * Run the chunks of long id lists in parallel on virtual threads, the entities of parallel chunks are detached
      */
-    protected JoinReport join(String path) {
-        return JoinReport.of(path);
+    public void setParallelInChunks(boolean parallelInChunks) {
+        this.parallelInChunks = parallelInChunks;
     }
 
     /**
-     * Create multiple join reports
+     * Load fetched collections with one query per collection on the ids of their parents instead of joining them into
+     * the root query, so sibling collections do not multiply the rows. Chunks of long id lists, which run in parallel
+     * with {@link #setParallelInChunks(boolean)}, load their collections on their own thread.
      */
-    protected List<JoinReport> joins(String... paths) {
-        List<JoinReport> joinReports = new ArrayList<>();
-        for (String path : paths) {
-            joinReports.add(join(path));
+    public void setMultiQueryCollections(boolean multiQueryCollections) {
+        this.multiQueryCollections = multiQueryCollections;
+    }
+
+    /**
+     * Read the roots of the shape with the reader, with multi query collections the collection fetches are
+     * removed from the shape and loaded afterward in the same entity manager, see {@link CollectionQueries}.
+     * Outside a transaction or open entity manager the shared entity manager creates one per query, so the roots and
+     * their collections are read in one entity manager bound for the read.
+     */
+    private List<T> readWithCollections(EntityManager entityManager, ConditionShape shape, Function<ConditionShape, List<T>> reader) {
+        ReportCondition condition = shape.getCondition();
+        if (!multiQueryCollections || condition.isDeActiveFetch() || getPathRegistry() == null) {
+            return reader.apply(shape);
         }
-        return joinReports;
+        if (collectionQueries == null) {
+            collectionQueries = new CollectionQueries(getPathRegistry());
+        }
+        CollectionQueries.Split split = collectionQueries.split(getClazz(), condition.getJoins());
+        if (split.branches().isEmpty()) {
+            return reader.apply(shape);
+        }
+        EntityManagerFactory entityManagerFactory = entityManager.getEntityManagerFactory();
+        if (entityManager instanceof EntityManagerProxy && !TransactionSynchronizationManager.hasResource(entityManagerFactory)
+                && !TransactionSynchronizationManager.isSynchronizationActive()) {
+            try (EntityManager bound = entityManagerFactory.createEntityManager()) {
+                TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(bound));
+                try {
+                    return readWithCollections(bound, condition, shape, split, reader);
+                } finally {
+                    TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+                }
+            }
+        }
+        return readWithCollections(entityManager, condition, shape, split, reader);
+    }
+
+    private List<T> readWithCollections(EntityManager entityManager, ReportCondition condition, ConditionShape shape,
+                                        CollectionQueries.Split split, Function<ConditionShape, List<T>> reader) {
+        List<T> roots = reader.apply(ConditionShape.of(new ReportCondition(condition.getFilter(), split.rootJoins(), condition.isDistinct(), false),
+                shape.getHaving()));
+        collectionQueries.load(entityManager, roots, split.branches(), inChunkSize);
+        return roots;
+    }
+
+    /**
+     * Create new condition
+     */
+    protected ReportCondition newCondition() {
+        return new ReportCondition();
+    }
+
+    /**
+     * Create new filter
+     */
+    protected ReportFilter newFilter() {
+        return new ReportFilter();
+    }
+
+    /**
+     * Create join report
+     */
+    protected JoinReport join(String path) {
+        return JoinReport.of(path);
+    }
+
+    /**
+     * Create multiple join reports
+     */
+    protected List<JoinReport> joins(String... paths) {
+        List<JoinReport> joinReports = new ArrayList<>();
+        for (String path : paths) {
+            joinReports.add(join(path));
+        }
+        return joinReports;
+    }
+
+    // ============= BULK METHODS =============
+
+    /**
+     * Save the entities in jdbc batches of {@link SaveOptions#getBatchSize()}: new entities are persisted, the others
+     * merged, and the persistence context is flushed (and cleared) after every batch so memory stays bounded. Returns the
+     * saved instances, the given ones for new entities and the merged copies for the others, in the given order.
+     * Inserts are only batched when ids are assigned before the insert, e.g. by a {@link PooledId} sequence, identity
+     * columns send every insert on its own. Set {@code hibernate.order_inserts} when cascades insert several entity
+     * types. Must run inside a transaction, clearing detaches all entities of the persistence context.
+     */
+    protected List<T> saveAll(Collection<? extends T> entities, SaveOptions options) {
+        requirePlanExecution("batched save");
+        if (options.getBatchSize() < 1) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "batch size must be at least 1", CustomError.ILLEGAL_ARGUMENT);
+        }
+        JpaEntityInformation<T, ?> entityInformation = JpaEntityInformationSupport.getEntityInformation(getClazz(), getEntityManager());
+        Session session = getEntityManager().unwrap(Session.class);
+        Integer previousBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(options.getBatchSize());
+        List<T> saved = new ArrayList<>(entities.size());
+        try {
+            int pending = 0;
+            for (T entity : entities) {
+                if (entityInformation.isNew(entity)) {
+                    getEntityManager().persist(entity);
+                    saved.add(entity);
+                } else {
+                    saved.add(getEntityManager().merge(entity));
+                }
+                if (++pending == options.getBatchSize()) {
+                    flushBatch(options);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                flushBatch(options);
+            }
+        } finally {
+            session.setJdbcBatchSize(previousBatchSize);
+        }
+        return saved;
+    }
+
+    /**
+     * Save the entities in batches with the default options
+     */
+    protected List<T> saveAll(Collection<? extends T> entities) {
+        return saveAll(entities, SaveOptions.defaults());
+    }
+
+    private void flushBatch(SaveOptions options) {
+        getEntityManager().flush();
+        if (options.isClear()) {
+            getEntityManager().clear();
+        }
+    }
+
+    /**
+     * Set the given root properties on all entities of the condition with one update statement and return the number
+     * of updated rows. Filters on joined entities are applied through a subquery of the matching ids, fetch only joins
+     * are ignored. Pending changes are flushed before the statement, managed entities of this type are detached after it
+     * and the caches and views of the type are invalidated. Versions are not incremented. Must run inside a transaction.
+     */
+    protected int updateWhere(ReportCondition condition, Map<String, Object> assignments) {
+        requirePlanExecution("bulk update");
+        if (assignments.isEmpty()) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "bulk update needs at least one assignment", CustomError.ILLEGAL_ARGUMENT);
+        }
+        Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+        if (normalized.isEmpty()) {
+            return 0;
+        }
+        CriteriaBuilder criteriaBuilder = getEntityManager().getCriteriaBuilder();
+        CriteriaUpdate<T> update = criteriaBuilder.createCriteriaUpdate(getClazz());
+        Root<T> root = update.from(getClazz());
+        assignments.forEach((key, value) -> assign(update, root, criteriaBuilder, key, value));
+        Predicate predicate = bulkPredicate(normalized.get(), root, update, criteriaBuilder);
+        if (predicate != null) {
+            update.where(predicate);
+        }
+        int updated = getEntityManager().createQuery(update).executeUpdate();
+        afterBulkStatement(EntityChangeSubscriber.Change.UPDATE);
+        return updated;
+    }
+
+    /**
+     * Delete all entities of the condition with one delete statement and return the number of deleted rows, joined
+     * filters become a subquery of the matching ids. Cascades and orphan removal are not applied, rows referencing the
+     * deleted entities must be removed first. Must run inside a transaction.
+     */
+    protected int deleteWhere(ReportCondition condition) {
+        requirePlanExecution("bulk delete");
+        Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+        if (normalized.isEmpty()) {
+            return 0;
+        }
+        CriteriaBuilder criteriaBuilder = getEntityManager().getCriteriaBuilder();
+        CriteriaDelete<T> delete = criteriaBuilder.createCriteriaDelete(getClazz());
+        Root<T> root = delete.from(getClazz());
+        Predicate predicate = bulkPredicate(normalized.get(), root, delete, criteriaBuilder);
+        if (predicate != null) {
+            delete.where(predicate);
+        }
+        int deleted = getEntityManager().createQuery(delete).executeUpdate();
+        afterBulkStatement(EntityChangeSubscriber.Change.DELETE);
+        return deleted;
+    }
+
+    private void assign(CriteriaUpdate<T> update, Root<T> root, CriteriaBuilder criteriaBuilder, String key, Object value) {
+        PathRegistry.AttributePath path = getPathRegistry().resolve(getClazz(), key);
+        if (path.keys().size() != 1 || path.isCollection() || path.keys().getFirst().equals(getIdAttributeName())) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(),
+                    "bulk update can only set root properties, not '" + key + "'", CustomError.ILLEGAL_ARGUMENT);
+        }
+        Path<Object> attribute = root.get(path.keys().getFirst());
+        Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(path.last().getJavaType());
+        @SuppressWarnings("unchecked")
+        Expression<Object> expression = value == null ? (Expression<Object>) criteriaBuilder.nullLiteral(type)
+                : criteriaBuilder.literal(type.isInstance(value) ? value : DefaultConversionService.getSharedInstance().convert(value, type));
+        update.<Object>set(attribute, expression);
+    }
+
+    /**
+     * Where clause of a bulk statement, null when the condition does not restrict anything. Filters on root properties
+     * are applied directly, joins and paths through associations go into a subquery of the matching ids.
+     */
+    private Predicate bulkPredicate(ReportCondition condition, Root<T> root, CommonAbstractCriteria statement, CriteriaBuilder criteriaBuilder) {
+        ReportCondition where = FetchGraphs.withoutGraphJoins(ConditionShape.of(condition)).getCondition();
+        if (where.getJoins().isEmpty() && isRootFilter(where.getFilter())) {
+            return filterPredicate(where.getFilter(), root, criteriaBuilder);
+        }
+        @SuppressWarnings("unchecked")
+        Subquery<Object> ids = (Subquery<Object>) statement.subquery(getEntityManager().getMetamodel().entity(getClazz()).getIdType().getJavaType());
+        Root<T> idRoot = ids.from(getClazz());
+        Map<Predicate, Boolean> joinPredicates = new HashMap<>();
+        for (JoinReport join : where.getJoins()) {
+            generateJoin(idRoot, criteriaBuilder, joinPredicates, join);
+        }
+        Predicate predicate = filterPredicate(where.getFilter(), idRoot, criteriaBuilder);
+        if (!joinPredicates.isEmpty()) {
+            predicate = applyInnerPredicate(criteriaBuilder, joinPredicates, predicate);
+        }
+        ids.select(idRoot.get(getIdAttributeName()));
+        if (predicate != null) {
+            ids.where(predicate);
+        }
+        return root.get(getIdAttributeName()).in(ids);
+    }
+
+    private Predicate filterPredicate(ReportFilter filter, Root<T> root, CriteriaBuilder criteriaBuilder) {
+        if (filter == null) {
+            return null;
+        }
+        Predicate predicate = generatePredicate(filter, root, criteriaBuilder, true);
+        if (filter.getOrFilter() != null) {
+            Predicate orPredicate = generatePredicate(filter.getOrFilter(), root, criteriaBuilder, false);
+            if (orPredicate != null) {
+                predicate = predicate != null ? criteriaBuilder.and(predicate, orPredicate) : orPredicate;
+            }
+        }
+        return predicate;
+    }
+
+    private boolean isRootFilter(ReportFilter filter) {
+        for (ReportFilter current = filter; current != null; current = current.getOrFilter()) {
+            for (ConditionParameter parameter : current.getParameters()) {
+                if (ConditionShape.isApplicable(parameter) && getPathRegistry().resolve(getClazz(), parameter.getKey()).keys().size() != 1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bulk statements are not seen by the persistence context and by the entity events: the managed entities of this
+     * type are detached so they are reloaded, and the caches, views and search index of the type are invalidated right away and again
+     * when the transaction completes, entries read inside the transaction may hold its uncommitted state.
+     */
+    private void afterBulkStatement(EntityChangeSubscriber.Change change) {
+        SessionImplementor session = getEntityManager().unwrap(SessionImplementor.class);
+        for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContextInternal().reentrantSafeEntityEntries()) {
+            if (getClazz().isInstance(entry.getKey())) {
+                getEntityManager().detach(entry.getKey());
+            }
+        }
+        EntityManagerFactory entityManagerFactory = getEntityManager().getEntityManagerFactory();
+        Runnable invalidate = () -> EntityChangeListener.publishBulkChange(entityManagerFactory, change, getClazz());
+        invalidate.run();
+        session.getActionQueue().registerProcess((success, completedSession) -> invalidate.run());
+    }
+
+    // ============= WRITE-BEHIND =============
+
+    /**
+     * Queue the writes of {@link #saveBehind(Object)} and write them in batches on a background virtual thread (see
+     * {@link WriteBehindQueue}), each batch in its own transaction and entity manager. The queue is drained when it is
+     * disabled or the service is destroyed.
+     */
+    protected WriteBehindQueue<T> enableWriteBehind(WriteBehindOptions options) {
+        requirePlanExecution("write-behind");
+        EntityManagerFactory entityManagerFactory = getEntityManager().getEntityManagerFactory();
+        WriteBehindQueue<T> queue = new WriteBehindQueue<>(getClazz().getSimpleName(), options, entities -> writeBatch(entityManagerFactory, entities));
+        disableWriteBehind();
+        writeBehind = queue;
+        return queue;
+    }
+
+    @PreDestroy
+    protected void disableWriteBehind() {
+        WriteBehindQueue<T> queue = writeBehind;
+        if (queue != null) {
+            writeBehind = null;
+            queue.close();
+        }
+    }
+
+    /**
+     * Write-behind queue of this service, null when it is not enabled
+     */
+    protected WriteBehindQueue<T> getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Queue the entity to be saved by the write-behind queue, the future completes with its id after the commit or with
+     * the exception of its write. The entity must not be changed until then. Blocks while the queue is full.
+     */
+    protected CompletableFuture<Object> saveBehind(T entity) {
+        WriteBehindQueue<T> queue = writeBehind;
+        if (queue == null) {
+            throw new CustomException(CustomError.ILLEGAL_REQUEST.getStatusCode(), "write-behind is not enabled", CustomError.ILLEGAL_REQUEST);
+        }
+        return queue.submit(entity);
+    }
+
+    /**
+     * Persist the new and merge the other entities in one transaction, ids assigned to new entities are reset when it fails
+     */
+    private List<Object> writeBatch(EntityManagerFactory entityManagerFactory, List<T> entities) {
+        try (EntityManager entityManager = entityManagerFactory.createEntityManager()) {
+            JpaEntityInformation<T, ?> entityInformation = JpaEntityInformationSupport.getEntityInformation(getClazz(), entityManager);
+            entityManager.unwrap(Session.class).setJdbcBatchSize(entities.size());
+            EntityTransaction transaction = entityManager.getTransaction();
+            List<T> created = new ArrayList<>();
+            try {
+                transaction.begin();
+                List<T> saved = new ArrayList<>(entities.size());
+                for (T entity : entities) {
+                    if (entityInformation.isNew(entity)) {
+                        created.add(entity);
+                        entityManager.persist(entity);
+                        saved.add(entity);
+                    } else {
+                        saved.add(entityManager.merge(entity));
+                    }
+                }
+                transaction.commit();
+                PersistenceUnitUtil unitUtil = entityManagerFactory.getPersistenceUnitUtil();
+                return saved.stream().map(unitUtil::getIdentifier).toList();
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                created.forEach(this::resetId);
+                throw e;
+            }
+        }
+    }
+
+    private void resetId(T entity) {
+        EntityType<T> entityType = getEntityManager().getMetamodel().entity(getClazz());
+        Member member = entityType.getId(entityType.getIdType().getJavaType()).getJavaMember();
+        if (member instanceof Field field && !field.getType().isPrimitive()) {
+            try {
+                field.setAccessible(true);
+                field.set(entity, null);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("can not reset the id of " + getClazz().getSimpleName(), e);
+            }
+        }
+    }
+
+    // ============= RESULT CACHE =============
+
+    /**
+     * Cache the ids of read pages, the counts and the projected DTO rows of this service off heap (see {@link ResultCache}).
+     * Cached pages load their entities by id, so entities are never served stale. Entries are invalidated by the committed
+     * changes of the entity and of the joined entities, changes which bypass hibernate (bulk queries, other applications)
+     * are only seen after the time to live.
+     */
+    protected ResultCache enableResultCache(ResultCacheOptions options) {
+        requirePlanExecution("result cache");
+        ResultCache cache = new ResultCache(options);
+        disableResultCache();
+        EntityChangeListener.register(getEntityManager().getEntityManagerFactory(), cache);
+        resultCache = cache;
+        return cache;
+    }
+
+    protected void disableResultCache() {
+        ResultCache cache = resultCache;
+        if (cache != null) {
+            resultCache = null;
+            EntityChangeListener.unregister(getEntityManager().getEntityManagerFactory(), cache);
+            cache.clear();
+        }
+    }
+
+    /**
+     * Result cache of this service, null when it is not enabled
+     */
+    protected ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Cached result of the query, refreshes ahead run the query with their own entity manager
+     */
+    private <V> V cached(String key, Duration ttl, Supplier<CacheDependencies> dependencies, Function<EntityManager, V> query) {
+        EntityManagerFactory entityManagerFactory = getEntityManager().getEntityManagerFactory();
+        return resultCache.get(key, ttl, dependencies, () -> query.apply(getEntityManager()), () -> {
+            try (EntityManager entityManager = entityManagerFactory.createEntityManager()) {
+                return query.apply(entityManager);
+            }
+        });
+    }
+
+    /**
+     * Root properties and joined entity types used by the filters and joins of the condition and the given paths
+     */
+    private CacheDependencies cacheDependencies(ReportCondition condition, Collection<String> paths) {
+        List<String> allPaths = new ArrayList<>(paths);
+        addFilterPaths(condition.getFilter(), "", allPaths);
+        addJoinPaths(condition.getJoins(), "", allPaths);
+        Set<String> properties = new HashSet<>();
+        Set<Class<?>> joinedTypes = new HashSet<>();
+        for (String path : allPaths) {
+            PathRegistry.AttributePath attributePath = getPathRegistry().resolve(getClazz(), path);
+            properties.add(attributePath.keys().getFirst());
+            joinedTypes.addAll(attributePath.associationTypes());
+        }
+        return new CacheDependencies(getClazz(), properties, joinedTypes);
+    }
+
+    private static void addFilterPaths(ReportFilter filter, String prefix, List<String> paths) {
+        for (ReportFilter current = filter; current != null; current = current.getOrFilter()) {
+            for (ConditionParameter parameter : current.getParameters()) {
+                if (ConditionShape.isApplicable(parameter)) {
+                    paths.add(prefix + parameter.getKey());
+                }
+            }
+        }
+    }
+
+    private static void addJoinPaths(Collection<JoinReport> joins, String prefix, List<String> paths) {
+        if (joins == null) {
+            return;
+        }
+        for (JoinReport join : joins) {
+            String path = prefix + join.getKey();
+            paths.add(path);
+            addFilterPaths(join.getFilter(), path + ".", paths);
+            addJoinPaths(join.getInnerJoin(), path + ".", paths);
+        }
+    }
+
+    private static List<String> sortPaths(Sort sort) {
+        return sort.stream().map(Sort.Order::getProperty).toList();
+    }
+
+    // ============= ENTITY CACHE =============
+
+    /**
+     * Cache the entities read by {@link #getEntityById(Object, Collection)} per id and join set (see {@link EntityCache}).
+     * Reads then return detached copies in which only the joined associations are set, lazy loading is not possible.
+     * Entries are invalidated by the committed changes of the entities of their graph.
+     */
+    protected EntityCache<T> enableEntityCache(EntityCacheOptions options) {
+        requirePlanExecution("entity cache");
+        EntityCache<T> cache = new EntityCache<>(getClazz(), getEntityManager().getEntityManagerFactory(), options);
+        disableEntityCache();
+        EntityChangeListener.register(getEntityManager().getEntityManagerFactory(), cache);
+        entityCache = cache;
+        return cache;
+    }
+
+    protected void disableEntityCache() {
+        EntityCache<T> cache = entityCache;
+        if (cache != null) {
+            entityCache = null;
+            EntityChangeListener.unregister(getEntityManager().getEntityManagerFactory(), cache);
+            cache.clear();
+        }
+    }
+
+    /**
+     * Entity cache of this service, null when it is not enabled
+     */
+    protected EntityCache<T> getEntityCache() {
+        return entityCache;
+    }
+
+    // ============= SEARCH INDEX =============
+
+    /**
+     * Build an in memory inverted index of the tokens of the given text properties (see {@link SearchIndex}) with a
+     * forward only scan of all entities, kept current from committed changes. {@link #search} and {@link #searchPage}
+     * over indexed fields then match every term of the text against whole tokens and, with prefix matching, token
+     * prefixes, instead of searching each field for the whole text with {@code LIKE}. Unsorted results are ranked by
+     * relevance. Only the entities of the requested page are loaded, by id. The id must be integral.
+     */
+    protected SearchIndex enableSearchIndex(List<String> fields, SearchIndexOptions options) {
+        requirePlanExecution("search index");
+        Class<?> idType = ClassUtils.resolvePrimitiveIfNecessary(getEntityManager().getMetamodel().entity(getClazz()).getIdType().getJavaType());
+        if (!List.of(Long.class, Integer.class, Short.class, Byte.class).contains(idType)) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "search index supports integral ids only", CustomError.ILLEGAL_ARGUMENT);
+        }
+        fields.forEach(field -> requireBasicProperty("search index", field));
+        EntityManagerFactory entityManagerFactory = getEntityManager().getEntityManagerFactory();
+        SearchIndex index = new SearchIndex(getClazz(), fields, options,
+                sink -> scanSearchFields(entityManagerFactory, fields, options.getFetchSize(), sink));
+        disableSearchIndex();
+        EntityChangeListener.register(entityManagerFactory, index);
+        index.rebuild();
+        searchIndex = index;
+        return index;
+    }
+
+    protected SearchIndex enableSearchIndex(List<String> fields) {
+        return enableSearchIndex(fields, SearchIndexOptions.defaults());
+    }
+
+    protected void disableSearchIndex() {
+        SearchIndex index = searchIndex;
+        if (index != null) {
+            searchIndex = null;
+            EntityChangeListener.unregister(getEntityManager().getEntityManagerFactory(), index);
+        }
+    }
+
+    /**
+     * Search index of this service, null when it is not enabled
+     */
+    protected SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Index covering the search fields, null when there is none or the text has no terms
+     */
+    private SearchIndex searchIndexFor(String searchText, List<String> searchFields) {
+        SearchIndex index = searchIndex;
+        if (index == null || !index.getFields().containsAll(searchFields) || SearchIndex.tokens(searchText).isEmpty()) {
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * Page of the ranked matches of the index. A sort orders the matches by their sort values, which are read in chunks
+     * of the IN chunk size; above {@link SearchIndexOptions#getMaxSortedMatches()} matches the LIKE search runs instead.
+     * Only the entities of the page are loaded.
+     */
+    private Page<T> indexedSearch(SearchIndex index, String searchText, List<String> searchFields, Pageable pageable, Supplier<Page<T>> likeSearch) {
+        long[] ranked = index.search(searchText, searchFields);
+        if (ranked.length == 0) {
+            return new PageImpl<>(new ArrayList<>(), pageable, 0);
+        }
+        List<Object> ids;
+        if (pageable.getSort().isSorted()) {
+            if (ranked.length > index.getOptions().getMaxSortedMatches()) {
+                return likeSearch.get();
+            }
+            ids = sortIds(toIds(ranked, 0, ranked.length), pageable.getSort());
+        } else {
+            ids = toIds(ranked, 0, ranked.length);
+        }
+        int from = pageable.isPaged() ? (int) Math.min(pageable.getOffset(), ids.size()) : 0;
+        int to = pageable.isPaged() ? Math.min(from + pageable.getPageSize(), ids.size()) : ids.size();
+        return new PageImpl<>(findAllByIds(ids.subList(from, to)), pageable, ids.size());
+    }
+
+    /**
+     * The ids ordered by the sort, read as id and sort values per chunk and merged in memory. Ids with equal sort values
+     * keep their order.
+     */
+    private List<Object> sortIds(List<Object> ids, Sort sort) {
+        List<Object[]> rows = new ArrayList<>(ids.size());
+        for (List<Object> chunk : InLists.chunks(ids, inChunkSize)) {
+            ConditionShape idShape = idShape(idsCondition(chunk, List.of()));
+            TypedQuery<Tuple> query = idPlan(idShape, sort).createQuery(getEntityManager(), idShape);
+            QueryMetrics.execute(query::getResultList).forEach(row -> rows.add(row.toArray()));
+        }
+        Map<Object, Integer> positions = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            positions.putIfAbsent(ids.get(i), i);
+        }
+        rows.sort(sortValueOrder(sort).thenComparing(row -> positions.getOrDefault(row[0], Integer.MAX_VALUE)));
+        return rows.stream().map(row -> row[0]).distinct().toList();
+    }
+
+    /**
+     * Order of rows holding the id and then one value per order of the sort, nulls last
+     */
+    @SuppressWarnings("unchecked")
+    private static Comparator<Object[]> sortValueOrder(Sort sort) {
+        Comparator<Object[]> comparator = (first, second) -> 0;
+        int column = 1;
+        for (Sort.Order order : sort) {
+            int index = column++;
+            Comparator<Object> values = order.isIgnoreCase()
+                    ? Comparator.comparing(value -> value.toString().toLowerCase(Locale.ROOT))
+                    : (first, second) -> ((Comparable<Object>) first).compareTo(second);
+            comparator = comparator.thenComparing(row -> row[index], Comparator.nullsLast(order.isAscending() ? values : values.reversed()));
+        }
+        return comparator;
+    }
+
+    private List<Object> toIds(long[] ids, int from, int to) {
+        Class<?> idType = getEntityManager().getMetamodel().entity(getClazz()).getIdType().getJavaType();
+        ConversionService conversionService = DefaultConversionService.getSharedInstance();
+        List<Object> converted = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            converted.add(conversionService.convert(ids[i], idType));
+        }
+        return converted;
+    }
+
+    /**
+     * Scan the id and the fields of all entities with a forward only cursor, in a read only transaction of its own
+     */
+    private void scanSearchFields(EntityManagerFactory entityManagerFactory, List<String> fields, int fetchSize, BiConsumer<Object, Object[]> sink) {
+        try (EntityManager entityManager = entityManagerFactory.createEntityManager()) {
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+            Root<T> root = query.from(getClazz());
+            List<Selection<?>> selections = new ArrayList<>();
+            selections.add(root.get(getIdAttributeName()));
+            fields.forEach(field -> selections.add(root.get(field)));
+            query.multiselect(selections);
+            EntityTransaction transaction = entityManager.getTransaction();
+            try {
+                transaction.begin();
+                org.hibernate.query.Query<Object[]> scan = entityManager.createQuery(query).unwrap(org.hibernate.query.Query.class);
+                scan.setFetchSize(fetchSize);
+                scan.setReadOnly(true);
+                try (ScrollableResults<Object[]> rows = scan.scroll(ScrollMode.FORWARD_ONLY)) {
+                    while (rows.next()) {
+                        Object[] row = rows.get();
+                        sink.accept(row[0], Arrays.copyOfRange(row, 1, row.length));
+                    }
+                }
+                transaction.commit();
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        }
+    }
+
+    // ============= METRICS =============
+
+    /**
+     * Observe the reads of the service (findAll, findAllPage, findAllSlice, findAllKeyset, findAllDto, findAllId,
+     * findAllByIds, findFirst, count, exists, existsEach, aggregate, getEntityById, search and searchPage) with the registry,
+     * see {@link QueryMetrics}. With Spring Boot actuator the observations become timers tagged by entity, operation
+     * and condition shape. Every operation also feeds the top shapes report and the slow query log of the metrics and
+     * tags its statements with an SQL comment naming the calling method. When disabled an operation only pays a null
+     * check; enabled, finding the caller costs a short stack walk per operation.
+     */
+    public QueryMetrics enableQueryMetrics(ObservationRegistry registry, QueryMetricsOptions options) {
+        QueryMetrics metrics = new QueryMetrics(registry, getClazz() != null ? getClazz().getSimpleName() : getClass().getSimpleName(), options);
+        QueryMetrics previous = queryMetrics;
+        queryMetrics = metrics;
+        closeExplainer(previous);
+        return metrics;
+    }
+
+    public QueryMetrics enableQueryMetrics(ObservationRegistry registry) {
+        return enableQueryMetrics(registry, QueryMetricsOptions.defaults());
+    }
+
+    public void disableQueryMetrics() {
+        QueryMetrics previous = queryMetrics;
+        queryMetrics = null;
+        closeExplainer(previous);
+    }
+
+    /**
+     * Explain the statements of every condition shape on a background thread when the shape is first seen and again
+     * when a call is slower than the threshold, see {@link QueryExplainer}. Needs enabled query metrics and an entity
+     * manager, and the data source of the entity manager must be an {@link ExplainDataSource} so the statements are
+     * captured with their bound parameters; without it nothing is explained.
+     */
+    public QueryExplainer enableExplainPlans(ExplainOptions options) {
+        QueryMetrics metrics = queryMetrics;
+        if (metrics == null || getEntityManager() == null) {
+            throw new CustomException(CustomError.ILLEGAL_REQUEST.getStatusCode(),
+                    "explain plans need an entity manager and enabled query metrics", CustomError.ILLEGAL_REQUEST);
+        }
+        SessionFactoryImplementor sessionFactory = getEntityManager().getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        QueryExplainer explainer = new QueryExplainer(metrics.getEntity(), sessionFactory, options);
+        QueryExplainer previous = metrics.setExplainer(explainer);
+        if (previous != null) {
+            previous.close();
+        }
+        return explainer;
+    }
+
+    public QueryExplainer enableExplainPlans() {
+        return enableExplainPlans(ExplainOptions.defaults());
+    }
+
+    public void disableExplainPlans() {
+        closeExplainer(queryMetrics);
+    }
+
+    /**
+     * Metrics of this service, null when disabled
+     */
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    private static void closeExplainer(QueryMetrics metrics) {
+        QueryExplainer explainer = metrics == null ? null : metrics.setExplainer(null);
+        if (explainer != null) {
+            explainer.close();
+        }
+    }
+
+    private <V> V observe(String operation, ReportCondition condition, Supplier<V> call, ToIntFunction<? super V> rows) {
+        return observe(operation, () -> ConditionShape.of(condition), call, rows);
+    }
+
+    private <V> V observe(String operation, Supplier<ConditionShape> shape, Supplier<V> call, ToIntFunction<? super V> rows) {
+        QueryMetrics metrics = queryMetrics;
+        return metrics == null ? call.get() : metrics.observe(operation, shape, call, rows);
+    }
+
+    // ============= PLAN EXECUTION =============
+
+    /**
+     * Read a page through the compiled plan of the condition shape, the count query only runs when it is needed
+     */
+    protected Page<T> readPage(ReportCondition condition, Pageable pageable) {
+        if (!isPlanCacheEnabled()) {
+            return QueryMetrics.execute(() -> getRepository().findAll(toPredicate(condition), pageable));
+        }
+        Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+        if (normalized.isEmpty()) {
+            return PageableExecutionUtils.getPage(new ArrayList<>(), pageable, () -> 0);
+        }
+        ConditionShape shape = ConditionShape.of(normalized.get());
+        List<T> content = readRows(shape, pageable, pageable.isPaged() ? pageable.getPageSize() : 0);
+        return PageableExecutionUtils.getPage(content, pageable, () -> executeCount(shape));
+    }
+
+    /**
+     * Read a slice through the compiled plan, pageSize + 1 rows are fetched to compute hasNext without counting
+     */
+    protected Slice<T> readSlice(ReportCondition condition, Pageable pageable) {
+        if (!isPlanCacheEnabled()) {
+            return QueryMetrics.execute(() -> getRepository().findBy(toPredicate(condition), q -> q.slice(pageable)));
+        }
+        Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+        if (normalized.isEmpty()) {
+            return new SliceImpl<>(new ArrayList<>(), pageable, false);
+        }
+        ConditionShape shape = ConditionShape.of(normalized.get());
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(readRows(shape, pageable, 0), pageable, false);
+        }
+        List<T> content = readRows(shape, pageable, pageable.getPageSize() + 1);
+        boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    /**
+     * Read the rows of the requested page only, without count query
+     */
+    protected List<T> readList(ReportCondition condition, Pageable pageable) {
+        if (!isPlanCacheEnabled()) {
+            return QueryMetrics.execute(() -> getRepository().findBy(toPredicate(condition), q -> q.slice(pageable)).getContent());
+        }
+        Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+        if (normalized.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return readRows(ConditionShape.of(normalized.get()), pageable, pageable.isPaged() ? pageable.getPageSize() : 0);
+    }
+
+    /**
+     * Read at most maxResults rows from the offset of the pageable. When a collection is fetch joined or sorted on
+     * the database can not limit the rows, so the page is read in two phases: first the distinct ids
+     * of the page, then the entities of these ids with their fetch joins. With multi query collections
+     * the collections are loaded after the page, so the database limits the rows directly.
+     */
+    protected List<T> readRows(ConditionShape shape, Pageable pageable, int maxResults) {
+        return readWithCollections(getEntityManager(), shape, rootShape -> readRootRows(rootShape, pageable, maxResults));
+    }
+
+    private List<T> readRootRows(ConditionShape shape, Pageable pageable, int maxResults) {
+        if (pageable.isPaged() && (resultCache != null || hasCollectionFetch(shape.getCondition())
+                || pageable.getSort().stream().anyMatch(order -> isCollectionPath(order.getProperty())))) {
+            return readRowsByIds(shape, pageable, maxResults);
+        }
+        TypedQuery<T> query = selectQuery(getEntityManager(), shape, pageable.getSort());
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(maxResults);
+        }
+        return QueryMetrics.execute(query::getResultList);
+    }
+
+    /**
+     * Select query of the shape, its fetch only joins are loaded through a fetch graph instead of fetch joins
+     */
+    private TypedQuery<T> selectQuery(EntityManager entityManager, ConditionShape shape, Sort sort) {
+        ConditionShape selectShape = FetchGraphs.withoutGraphJoins(shape);
+        EntityGraph<T> fetchGraph = getPlanCache().getFetchGraphs().graph(entityManager, shape.getCondition());
+        return getPlanCache().select(entityManager, selectShape, sort).createQuery(entityManager, selectShape, fetchGraph);
+    }
+
+    private List<T> readRowsByIds(ConditionShape shape, Pageable pageable, int maxResults) {
+        ConditionShape idShape = idShape(shape.getCondition());
+        Function<EntityManager, List<Object>> query = entityManager -> readIds(entityManager, idShape, pageable, maxResults);
+        List<Object> ids = resultCache == null
+                ? query.apply(getEntityManager())
+                : cached("ids|" + pageable.getSort() + "|" + pageable.getOffset() + "|" + maxResults + "|" + idShape.fingerprint(),
+                resultCache.getOptions().getTtl(), () -> cacheDependencies(idShape.getCondition(), sortPaths(pageable.getSort())), query);
+        return readByIds(shape.getCondition(), ids);
+    }
+
+    private List<Object> readIds(EntityManager entityManager, ConditionShape idShape, Pageable pageable, int maxResults) {
+        TypedQuery<Tuple> idQuery = idPlan(idShape, pageable.getSort()).createQuery(entityManager, idShape);
+        idQuery.setFirstResult((int) pageable.getOffset());
+        idQuery.setMaxResults(maxResults);
+        return QueryMetrics.execute(idQuery::getResultList).stream().map(row -> row.get(0)).distinct().toList();
+    }
+
+    /**
+     * Shape selecting the ids of the condition without fetching, fetch only joins are dropped
+     */
+    private ConditionShape idShape(ReportCondition condition) {
+        return FetchGraphs.withoutGraphJoins(ConditionShape.of(new ReportCondition(condition.getFilter(), condition.getJoins(), true, true)));
+    }
+
+    /**
+     * Plan of the distinct ids of a shape, the sort expressions are selected too so they can be used with distinct.
+     * A sort on a collection path has a value per element, so the ids are grouped and ordered by the least value of
+     * their elements ascending and the greatest descending, one row per id keeps the limit and offset on the ids.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private QueryPlan<Tuple> idPlan(ConditionShape idShape, Sort sort) {
+        String id = getIdAttributeName();
+        boolean grouped = sort.stream().anyMatch(order -> isCollectionPath(order.getProperty()));
+        return getPlanCache().plan("ids|" + sort, getEntityManager(), idShape, Tuple.class, (root, query, criteriaBuilder) -> {
+            List<Selection<?>> selections = new ArrayList<>();
+            selections.add(root.get(id));
+            List<jakarta.persistence.criteria.Order> orders = sort.isSorted() ? QueryUtils.toOrders(sort, root, criteriaBuilder) : List.of();
+            if (grouped) {
+                orders = orders.stream().map(order -> {
+                    Expression value = order.getExpression();
+                    return order.isAscending() ? criteriaBuilder.asc(criteriaBuilder.least(value)) : criteriaBuilder.desc(criteriaBuilder.greatest(value));
+                }).toList();
+                query.groupBy(root.get(id));
+            } else {
+                query.distinct(true);
+            }
+            orders.forEach(order -> selections.add(order.getExpression()));
+            query.multiselect(selections).orderBy(orders);
+        });
+    }
+
+    private boolean isCollectionPath(String path) {
+        return getPathRegistry() != null && getPathRegistry().resolve(getClazz(), path).isCollection();
+    }
+
+    /**
+     * Load the entities of the ids with the joins of the condition, in the order of the ids
+     */
+    private List<T> readByIds(ReportCondition condition, List<Object> ids) {
+        return readByIds(condition, ids, false);
+    }
+
+    private List<T> readByIds(ReportCondition condition, List<Object> ids, boolean readOnly) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ReportCondition fetchCondition = new ReportCondition(new ReportFilter(), condition.getJoins(), condition.isDistinct(), false);
+        fetchCondition.addIn(getIdAttributeName(), ids);
+        ConditionShape fetchShape = ConditionShape.of(fetchCondition);
+        TypedQuery<T> query = selectQuery(getEntityManager(), fetchShape, Sort.unsorted());
+        query.setHint(HibernateHints.HINT_READ_ONLY, readOnly);
+        List<T> entities = QueryMetrics.execute(query::getResultList);
+        return orderByIds(entities, ids);
+    }
+
+    /**
+     * Select the columns of the projection and construct the DTOs, fetch joins of the condition are not applied
+     */
+    protected <DTO> List<DTO> readProjection(ReportCondition condition, Pageable pageable, Class<DTO> clazz) {
+        Projection<DTO> projection = getPlanCache().projection(getEntityManager(), clazz);
+        Optional<ReportCondition> normalized = ConditionNormalizer.normalize(
+                new ReportCondition(condition.getFilter(), condition.getJoins(), condition.isDistinct(), true));
+        if (normalized.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ConditionShape shape = ConditionShape.of(normalized.get());
+        Function<EntityManager, List<Object[]>> query = entityManager -> {
+            TypedQuery<Object[]> rowQuery = getPlanCache().project(entityManager, shape, projection, pageable.getSort()).createQuery(entityManager, shape);
+            if (pageable.isPaged()) {
+                rowQuery.setFirstResult((int) pageable.getOffset());
+                rowQuery.setMaxResults(pageable.getPageSize());
+            }
+            return QueryMetrics.execute(rowQuery::getResultList);
+        };
+        List<Object[]> rows;
+        if (resultCache == null || pageable.isUnpaged()) {
+            rows = query.apply(getEntityManager());
+        } else {
+            List<String> paths = new ArrayList<>(projection.getPaths());
+            paths.addAll(sortPaths(pageable.getSort()));
+            rows = cached("dto|" + clazz.getName() + "|" + pageable.getSort() + "|" + pageable.getOffset() + "|" + pageable.getPageSize() + "|" + shape.fingerprint(),
+                    resultCache.getOptions().getTtl(), () -> cacheDependencies(shape.getCondition(), paths), query);
+        }
+        List<DTO> result = new ArrayList<>();
+        for (Object[] row : rows) {
+            result.add(projection.create(row));
+        }
+        return result;
+    }
+
+    /**
+     * Order the entities like the given ids, duplicates and missing ids are dropped
+     */
+    protected List<T> orderByIds(Collection<T> entities, List<Object> ids) {
+        Function<Object, Object> identifier;
+        if (getEntityManager() != null) {
+            identifier = getEntityManager().getEntityManagerFactory().getPersistenceUnitUtil()::getIdentifier;
+        } else {
+            identifier = entity -> PropertyAccessorFactory.forDirectFieldAccess(entity).getPropertyValue("id");
+        }
+        Map<Object, T> byId = new HashMap<>();
+        for (T entity : entities) {
+            byId.putIfAbsent(identifier.apply(entity), entity);
+        }
+        List<T> ordered = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            T entity = byId.remove(id);
+            if (entity != null) {
+                ordered.add(entity);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Whether the condition fetch joins a collection, inner joins of a fetch join are fetched too
+     */
+    protected boolean hasCollectionFetch(ReportCondition condition) {
+        if (condition.isDeActiveFetch() || getPathRegistry() == null) {
+            return false;
+        }
+        for (JoinReport join : condition.getJoins()) {
+            if (join.isFetch() && hasCollectionFetch(join, join.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasCollectionFetch(JoinReport join, String path) {
+        if (getPathRegistry().resolve(getClazz(), path).last().isCollection()) {
+            return true;
+        }
+        if (join.getInnerJoin() != null) {
+            for (JoinReport innerJoin : join.getInnerJoin()) {
+                if (hasCollectionFetch(innerJoin, path + "." + innerJoin.getKey())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the entities of the shape, fetch only joins do not change the count and are dropped
+     */
+    protected long executeCount(ConditionShape shape) {
+        return executeCountWithoutFetch(FetchGraphs.withoutGraphJoins(shape));
+    }
+
+    private long executeCountWithoutFetch(ConditionShape shape) {
+        if (resultCache == null) {
+            return countRows(getEntityManager(), shape);
+        }
+        return cached("count|" + shape.fingerprint(), resultCache.getOptions().getCountTtl(),
+                () -> cacheDependencies(shape.getCondition(), List.of()), entityManager -> countRows(entityManager, shape));
+    }
+
+    private long countRows(EntityManager entityManager, ConditionShape shape) {
+        List<Long> totals = QueryMetrics.execute(getPlanCache().count(entityManager, shape).createQuery(entityManager, shape)::getResultList);
+        long total = 0;
+        for (Long element : totals) {
+            total += element == null ? 0 : element;
+        }
+        return total;
+    }
+
+    /**
+     * Shape of an exists probe, without fetching and without the fetch only joins
+     */
+    private ConditionShape probeShape(ReportCondition condition) {
+        return FetchGraphs.withoutGraphJoins(ConditionShape.of(withoutFetch(condition)));
+    }
+
+    private static ReportCondition withoutFetch(ReportCondition condition) {
+        return new ReportCondition(condition.getFilter(), condition.getJoins(), false, true);
+    }
+
+    private boolean executeExists(ConditionShape shape) {
+        if (resultCache == null) {
+            return probe(getEntityManager(), shape);
+        }
+        return cached("exists|" + shape.fingerprint(), resultCache.getOptions().getCountTtl(),
+                () -> cacheDependencies(shape.getCondition(), List.of()), entityManager -> probe(entityManager, shape));
+    }
+
+    private boolean probe(EntityManager entityManager, ConditionShape shape) {
+        TypedQuery<Integer> query = getPlanCache().exists(entityManager, shape).createQuery(entityManager, shape).setMaxResults(1);
+        return !QueryMetrics.execute(query::getResultList).isEmpty();
     }
 
     protected record IdDto(Object id){}
@@ -0,0 +1,39 @@
+package critex.core.repo;
+
+import critex.core.model.PooledId;
+import org.hibernate.MappingException;
+import org.hibernate.id.OptimizableGenerator;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Sequence generator of {@link PooledId}, a hibernate {@link SequenceStyleGenerator} configured from the annotation.
+ * Hibernate creates and exports the sequence like the one of a {@code @SequenceGenerator}.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class PooledIdGenerator extends SequenceStyleGenerator {
+
+    private final PooledId config;
+
+    public PooledIdGenerator(PooledId config) {
+        this.config = config;
+    }
+
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) throws MappingException {
+        if (config.allocationSize() < 1) {
+            throw new MappingException("allocation size of a pooled id must be at least 1");
+        }
+        String sequence = config.sequence().isEmpty() ? parameters.getProperty(PersistentIdentifierGenerator.TABLE) + "_seq" : config.sequence();
+        parameters.setProperty(SEQUENCE_PARAM, sequence);
+        parameters.setProperty(OptimizableGenerator.INCREMENT_PARAM, String.valueOf(config.allocationSize()));
+        parameters.setProperty(OptimizableGenerator.INITIAL_PARAM, "1");
+        parameters.setProperty(OptimizableGenerator.OPT_PARAM, config.allocation().getOptimizer());
+        super.configure(type, parameters, serviceRegistry);
+    }
+}
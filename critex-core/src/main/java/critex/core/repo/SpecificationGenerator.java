@@ -1,6 +1,10 @@
 package critex.core.repo;
 
 import critex.core.model.*;
+import critex.core.query.ConditionNormalizer;
+import critex.core.query.ConditionShape;
+import critex.core.query.InLists;
+import critex.core.query.PathRegistry;
 import jakarta.persistence.criteria.*;
 import org.springframework.data.jpa.domain.Specification;
 
@@ -12,11 +16,11 @@ public abstract class SpecificationGenerator<T> extends Parameterized<T> {
         if (joins == null || joins.isEmpty()) return Collections.emptyList();
         Map<String, JoinReport> joinsReport = new HashMap<>();
         for (String eachJoin : joins) {
-            String[] split = eachJoin.split("\\.");
-            JoinReport joinReport = JoinReport.of(split[0]);
-            joinReport = checkDuplicateJoin(joinsReport, split[0], joinReport);
-            for (int i = 1; i < split.length; i++) {
-                JoinReport innerJoin = JoinReport.of(split[i]);
+            List<String> split = PathUtils.split(eachJoin);
+            JoinReport joinReport = JoinReport.of(split.getFirst());
+            joinReport = checkDuplicateJoin(joinsReport, split.getFirst(), joinReport);
+            for (int i = 1; i < split.size(); i++) {
+                JoinReport innerJoin = JoinReport.of(split.get(i));
                 joinReport.addJoin(innerJoin);
                 joinReport = innerJoin;
             }
@@ -47,7 +51,12 @@ public abstract class SpecificationGenerator<T> extends Parameterized<T> {
         return toPredicate(condition);
     }
 
-    protected Specification<T> toPredicate(ReportCondition report) {
+    protected Specification<T> toPredicate(ReportCondition condition) {
+        Optional<ReportCondition> normalized = normalize(condition);
+        if (normalized.isEmpty()) {
+            return (root, query, criteriaBuilder) -> criteriaBuilder.disjunction();
+        }
+        ReportCondition report = normalized.get();
         return (root, query, criteriaBuilder) -> {
             Predicate predicate = getPredicate(report, root, query, criteriaBuilder);
             Map<Predicate, Boolean> predicates = new HashMap<>();
@@ -59,6 +68,13 @@ public abstract class SpecificationGenerator<T> extends Parameterized<T> {
         };
     }
 
+    /**
+     * Simplified equivalent of the condition, empty when it can not match any entity (see {@link ConditionNormalizer})
+     */
+    protected Optional<ReportCondition> normalize(ReportCondition condition) {
+        return ConditionNormalizer.normalize(condition);
+    }
+
     protected static Predicate applyInnerPredicate(CriteriaBuilder criteriaBuilder, Map<Predicate, Boolean> predicates, Predicate predicate) {
         List<Predicate> andPredicates = predicates.entrySet().stream().filter(Map.Entry::getValue).map(Map.Entry::getKey).toList();
         List<Predicate> orPredicates = predicates.entrySet().stream().filter((item) -> Boolean.FALSE.equals(item.getValue())).map(Map.Entry::getKey).toList();
@@ -179,7 +195,7 @@ public abstract class SpecificationGenerator<T> extends Parameterized<T> {
     protected Predicate generatePredicate(ReportFilter filter, Root<T> root, CriteriaBuilder criteriaBuilder, boolean isAnd) {
         List<Predicate> predicates = new ArrayList<>();
         for (ConditionParameter eachConditionParameter : filter.getParameters()) {
-            if (eachConditionParameter.getValue() != null || List.of(Operator.NULL, Operator.NOT_NULL).contains(eachConditionParameter.getOperator())) {
+            if (ConditionShape.isApplicable(eachConditionParameter)) {
                 Predicate predicate = generatePredicate(root, criteriaBuilder, eachConditionParameter);
                 if (predicate != null) {
                     predicates.add(predicate);
@@ -201,8 +217,8 @@ public abstract class SpecificationGenerator<T> extends Parameterized<T> {
         List<Predicate> predicates = new ArrayList<>();
 
         for (ConditionParameter eachParam : filter.getParameters()) {
-            if (eachParam.getValue() != null || List.of(Operator.NULL, Operator.NOT_NULL).contains(eachParam.getOperator())) {
-                Predicate correspondingPredicate = getCorrespondingPredicate(criteriaBuilder, eachParam, join.get(eachParam.getKey()));
+            if (ConditionShape.isApplicable(eachParam)) {
+                Predicate correspondingPredicate = toCorrespondingPredicate(criteriaBuilder, eachParam, getPath(join, eachParam.getKey()));
                 if (correspondingPredicate != null) {
                     predicates.add(correspondingPredicate);
                 }
@@ -215,12 +231,33 @@ public abstract class SpecificationGenerator<T> extends Parameterized<T> {
     }
 
     protected Predicate generatePredicate(Root<T> root, CriteriaBuilder criteriaBuilder, ConditionParameter eachConditionParameter) {
-        String[] key = eachConditionParameter.getKey().split("\\.");
-        Path path = root.get(key[0]);
-        for (int i = 1; i < key.length; i++) {
-            String eachKey = key[i];
-            path = path.get(eachKey);
+        return toCorrespondingPredicate(criteriaBuilder, eachConditionParameter, getPath(root, eachConditionParameter.getKey()));
+    }
+
+    /**
+     * Metamodel paths of the entities, when null keys are only split and resolved by hibernate
+     */
+    protected PathRegistry getPathRegistry() {
+        return null;
+    }
+
+    /**
+     * Resolve a dotted key against the given root or join
+     */
+    protected Path getPath(From<?, ?> from, String key) {
+        PathRegistry pathRegistry = getPathRegistry();
+        List<String> keys = pathRegistry != null ? pathRegistry.resolve(from.getJavaType(), key).keys() : PathUtils.split(key);
+        Path path = from.get(keys.getFirst());
+        for (int i = 1; i < keys.size(); i++) {
+            path = path.get(keys.get(i));
         }
+        return path;
+    }
+
+    /**
+     * Builds the predicate of a single parameter, subclasses may bind the value differently (e.g. as query parameter)
+     */
+    protected Predicate toCorrespondingPredicate(CriteriaBuilder criteriaBuilder, ConditionParameter eachConditionParameter, Path path) {
         return getCorrespondingPredicate(criteriaBuilder, eachConditionParameter, path);
     }
 
@@ -244,8 +281,8 @@ public abstract class SpecificationGenerator<T> extends Parameterized<T> {
             case LESS_THAN -> predicate = criteriaBuilder.lt(path, (Number) eachConditionParameter.getValue());
             case LESS_THAN_TIME ->
                     predicate = criteriaBuilder.lessThan(path, (Comparable) eachConditionParameter.getValue());
-            case IN -> predicate = path.in((Collection<?>) eachConditionParameter.getValue());
-            case NOT_IN -> predicate = criteriaBuilder.not(path.in((Collection<?>) eachConditionParameter.getValue()));
+            case IN -> predicate = path.in(InLists.pad((Collection<?>) eachConditionParameter.getValue()));
+            case NOT_IN -> predicate = criteriaBuilder.not(path.in(InLists.pad((Collection<?>) eachConditionParameter.getValue())));
             case NULL -> predicate = criteriaBuilder.isNull(path);
             case NOT_NULL -> predicate = criteriaBuilder.isNotNull(path);
             case BETWEEN -> {
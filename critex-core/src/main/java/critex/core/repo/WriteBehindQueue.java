@@ -0,0 +1,191 @@
+package critex.core.repo;
+
+import critex.core.model.WriteBehindOptions;
+import critex.core.utility.CustomError;
+import critex.core.utility.CustomException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Bounded queue of entities which are written in batches by a background virtual thread. A batch is flushed when
+ * {@link WriteBehindOptions#getBatchSize()} entities are queued or {@link WriteBehindOptions#getMaxDelay()} after its
+ * first entity arrived. Every entity gets a future of its id, a failed batch is written again entity by entity so
+ * a failure is only reported to the entities which cause it. The queue itself is lock free, only a full queue blocks
+ * callers, up to {@link WriteBehindOptions#getOfferTimeout()}. Closing the queue writes the queued entities first.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class WriteBehindQueue<T> implements AutoCloseable {
+
+    private final WriteBehindOptions options;
+    private final Function<List<T>, List<Object>> writer;
+    private final ConcurrentLinkedQueue<Item<T>> items = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Semaphore capacity;
+    private final Thread flusher;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * @param writer writes the entities in one transaction and returns their ids in the same order, or throws
+     */
+    public WriteBehindQueue(String name, WriteBehindOptions options, Function<List<T>, List<Object>> writer) {
+        if (options.getCapacity() < 1 || options.getBatchSize() < 1) {
+            throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(), "capacity and batch size must be at least 1", CustomError.ILLEGAL_ARGUMENT);
+        }
+        this.options = options;
+        this.writer = writer;
+        this.capacity = new Semaphore(options.getCapacity());
+        this.flusher = Thread.ofVirtual().name("critex-write-behind-" + name).start(this::run);
+    }
+
+    /**
+     * Queue the entity, the future completes with its id once its batch is committed
+     */
+    public CompletableFuture<Object> submit(T entity) {
+        if (closed) {
+            throw closedException();
+        }
+        try {
+            if (!capacity.tryAcquire(options.getOfferTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new CustomException(CustomError.SERVER_ERROR.getStatusCode(), "write-behind queue is full", CustomError.SERVER_ERROR);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException(CustomError.SERVER_ERROR.getStatusCode(), "interrupted while waiting for the write-behind queue", CustomError.SERVER_ERROR);
+        }
+        Item<T> item = new Item<>(entity, new CompletableFuture<>());
+        items.add(item);
+        int count = pending.incrementAndGet();
+        // closed after the check above, the flusher and the drain of close may both be done already
+        if (closed && items.remove(item)) {
+            pending.decrementAndGet();
+            capacity.release();
+            throw closedException();
+        }
+        if (count == 1 || count >= options.getBatchSize()) {
+            LockSupport.unpark(flusher);
+        }
+        return item.future();
+    }
+
+    /**
+     * Stop accepting entities and wait until the queued ones are written
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        while (!items.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * Entities queued and not written yet
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Write transactions, including the retries of failed batches entity by entity
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    private void run() {
+        while (!closed || !items.isEmpty()) {
+            int count = pending.get();
+            if (count == 0) {
+                if (!closed) {
+                    LockSupport.park(this);
+                }
+                continue;
+            }
+            if (count < options.getBatchSize() && !closed) {
+                LockSupport.parkNanos(this, options.getMaxDelay().toNanos());
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Write one batch. Failures of the writer, including errors, fail the futures of the batch instead of
+     * ending the flusher thread
+     */
+    private void flush() {
+        List<Item<T>> batch = new ArrayList<>(options.getBatchSize());
+        Item<T> item;
+        while (batch.size() < options.getBatchSize() && (item = items.poll()) != null) {
+            batch.add(item);
+            pending.decrementAndGet();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            write(batch);
+        } catch (Throwable e) {
+            for (Item<T> each : batch) {
+                if (each.future().completeExceptionally(e)) {
+                    failed.increment();
+                }
+            }
+        } finally {
+            capacity.release(batch.size());
+        }
+    }
+
+    private void write(List<Item<T>> batch) {
+        batches.increment();
+        try {
+            List<Object> ids = writer.apply(batch.stream().map(Item::entity).toList());
+            written.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(ids.get(i));
+            }
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                failed.increment();
+                batch.getFirst().future().completeExceptionally(e);
+                return;
+            }
+            for (Item<T> each : batch) {
+                write(List.of(each));
+            }
+        }
+    }
+
+    private static CustomException closedException() {
+        return new CustomException(CustomError.ILLEGAL_REQUEST.getStatusCode(), "write-behind queue is closed", CustomError.ILLEGAL_REQUEST);
+    }
+
+    private record Item<T>(T entity, CompletableFuture<Object> future) {
+    }
+}
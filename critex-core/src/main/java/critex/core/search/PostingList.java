@@ -0,0 +1,119 @@
+package critex.core.search;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of entity ids stored as varint encoded gaps: the first id zigzag encoded, then the difference to the
+ * previous id. An id larger than the last one is appended in place, which is the common case of new entities, other
+ * changes decode and encode the list again. Not thread safe, guarded by its {@link SearchIndex}.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+final class PostingList {
+
+    private byte[] data = new byte[4];
+    private int length;
+    private int size;
+    private long last;
+
+    /**
+     * Add the id, false if it is already in the list
+     */
+    boolean add(long id) {
+        if (size == 0 || id > last) {
+            append(id);
+            return true;
+        }
+        long[] ids = toArray();
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return false;
+        }
+        int insertion = -index - 1;
+        long[] updated = new long[ids.length + 1];
+        System.arraycopy(ids, 0, updated, 0, insertion);
+        updated[insertion] = id;
+        System.arraycopy(ids, insertion, updated, insertion + 1, ids.length - insertion);
+        encode(updated);
+        return true;
+    }
+
+    /**
+     * Remove the id, false if it is not in the list
+     */
+    boolean remove(long id) {
+        if (size == 0 || id > last) {
+            return false;
+        }
+        long[] ids = toArray();
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return false;
+        }
+        long[] updated = new long[ids.length - 1];
+        System.arraycopy(ids, 0, updated, 0, index);
+        System.arraycopy(ids, index + 1, updated, index, ids.length - index - 1);
+        encode(updated);
+        return true;
+    }
+
+    /**
+     * Decoded ids in ascending order
+     */
+    long[] toArray() {
+        long[] ids = new long[size];
+        int position = 0;
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            long value = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = data[position++];
+                value |= (long) (current & 0x7F) << shift;
+                shift += 7;
+            } while (current < 0);
+            previous = i == 0 ? (value >>> 1) ^ -(value & 1) : previous + value;
+            ids[i] = previous;
+        }
+        return ids;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Bytes used by the encoded ids
+     */
+    int byteSize() {
+        return length;
+    }
+
+    private void encode(long[] ids) {
+        data = new byte[Math.max(4, ids.length * 2)];
+        length = 0;
+        size = 0;
+        for (long id : ids) {
+            append(id);
+        }
+    }
+
+    private void append(long id) {
+        long value = size == 0 ? (id << 1) ^ (id >> 63) : id - last;
+        if (length + 10 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10));
+        }
+        while ((value & ~0x7FL) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+        last = id;
+        size++;
+    }
+}
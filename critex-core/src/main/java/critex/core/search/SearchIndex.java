@@ -0,0 +1,431 @@
+package critex.core.search;
+
+import critex.core.cache.EntityChangeSubscriber;
+import critex.core.model.SearchIndexOptions;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * In memory inverted index of the tokens of some text properties of one entity. Every token maps to one
+ * {@link PostingList} of entity ids per property, tokens are kept sorted so a query term finds the tokens it is a prefix
+ * of with one range lookup. The index is built by a scan of all entities and then updated from committed inserts,
+ * updates and deletes (see {@link critex.core.cache.EntityChangeListener}); changes which bypass the persistence context
+ * mark it stale and the next search rebuilds it. Ids must be integral.
+ * A search returns the ids of the entities which match every term of the query in one of the searched properties,
+ * ranked by score: 2 per term matching a whole token, 1 per term matching a token prefix.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class SearchIndex implements EntityChangeSubscriber {
+
+    private static final long[] NO_IDS = new long[0];
+    private static final int EXACT = 2;
+    private static final int PREFIX = 1;
+
+    private final Class<?> entityClass;
+    private final List<String> fields;
+    private final SearchIndexOptions options;
+    private final Consumer<BiConsumer<Object, Object[]>> loader;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private TreeMap<String, PostingList[]> terms = new TreeMap<>();
+    /**
+     * Changes received while a rebuild scans the entities, replayed on the rebuilt terms
+     */
+    private List<Consumer<TreeMap<String, PostingList[]>>> pending;
+    private volatile boolean stale = true;
+    private volatile Instant builtAt;
+
+    /**
+     * @param loader scans all entities, passing the id and the values of the fields in their order
+     */
+    public SearchIndex(Class<?> entityClass, List<String> fields, SearchIndexOptions options, Consumer<BiConsumer<Object, Object[]>> loader) {
+        this.entityClass = entityClass;
+        this.fields = List.copyOf(fields);
+        this.options = options;
+        this.loader = loader;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public SearchIndexOptions getOptions() {
+        return options;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public Instant getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * Ranked ids of the entities matching all terms of the text in one of the fields
+     */
+    public long[] search(String text) {
+        return search(text, fields);
+    }
+
+    /**
+     * Ranked ids of the entities matching all terms of the text in one of the given fields, the best match first and
+     * equal scores by ascending id. Empty when the text has no terms.
+     */
+    public long[] search(String text, Collection<String> searchFields) {
+        List<String> queryTerms = tokens(text);
+        if (queryTerms.isEmpty()) {
+            return NO_IDS;
+        }
+        if (stale) {
+            rebuild();
+        }
+        int[] fieldIndexes = searchFields.stream().mapToInt(this::indexOf).toArray();
+        Matches matches = null;
+        lock.readLock().lock();
+        try {
+            for (String term : queryTerms) {
+                Matches termMatches = match(term, fieldIndexes);
+                matches = matches == null ? termMatches : matches.intersect(termMatches);
+                if (matches.ids.length == 0) {
+                    return NO_IDS;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches.ranked(queryTerms.size() * EXACT);
+    }
+
+    /**
+     * Scan all entities into a new index which replaces the current one. Changes received during the scan are applied
+     * to the new index too, so nothing committed after the scan started is lost.
+     */
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        TreeMap<String, PostingList[]> fresh = new TreeMap<>();
+        try {
+            loader.accept((id, values) -> apply(fresh, toId(id), values, true));
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+                stale = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            pending.forEach(change -> change.accept(fresh));
+            pending = null;
+            terms = fresh;
+            stale = false;
+            builtAt = Instant.now();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Number of distinct tokens
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes used by the encoded ids of all postings
+     */
+    public long getPostingBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (PostingList[] postings : terms.values()) {
+                for (PostingList posting : postings) {
+                    bytes += posting == null ? 0 : posting.byteSize();
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lower case tokens of the text split at every character which is not a letter or digit, without duplicates
+     */
+    public static List<String> tokens(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        Set<String> tokens = new LinkedHashSet<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean part = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (part && start < 0) {
+                start = i;
+            } else if (!part && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return List.copyOf(tokens);
+    }
+
+    /**
+     * Replace the indexed values of an entity, old values are null for inserts and new values null for deletes
+     */
+    void apply(Object id, Object[] oldValues, Object[] newValues) {
+        if (Arrays.equals(oldValues, newValues)) {
+            return;
+        }
+        long key = toId(id);
+        Consumer<TreeMap<String, PostingList[]>> change = target -> {
+            if (oldValues != null) {
+                apply(target, key, oldValues, false);
+            }
+            if (newValues != null) {
+                apply(target, key, newValues, true);
+            }
+        };
+        lock.writeLock().lock();
+        try {
+            change.accept(terms);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The change could not be applied incrementally, the next search rebuilds the index
+     */
+    void markStale() {
+        stale = true;
+    }
+
+    @Override
+    public void onChange(Change change, Class<?> type, Object id, Predicate<Set<String>> changed,
+                         Function<String, Object> oldState, Function<String, Object> newState) {
+        if (type != entityClass) {
+            return;
+        }
+        if (change != Change.INSERT && oldState == null) {
+            markStale();
+            return;
+        }
+        apply(id, values(oldState), values(newState));
+    }
+
+    /**
+     * Nothing was committed, the index is left as it is
+     */
+    @Override
+    public void onChangeFailed(Change change, Class<?> type, Object id) {
+    }
+
+    @Override
+    public void onBulkChange(Change change, Class<?> type) {
+        if (entityClass.isAssignableFrom(type) || type.isAssignableFrom(entityClass)) {
+            markStale();
+        }
+    }
+
+    /**
+     * Values of the indexed fields in the entity state, in the order of the fields
+     */
+    private Object[] values(Function<String, Object> state) {
+        if (state == null) {
+            return null;
+        }
+        Object[] values = new Object[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = state.apply(fields.get(i));
+        }
+        return values;
+    }
+
+    private void apply(TreeMap<String, PostingList[]> target, long id, Object[] values, boolean add) {
+        for (int field = 0; field < fields.size(); field++) {
+            if (values[field] == null) {
+                continue;
+            }
+            for (String token : tokens(values[field].toString())) {
+                PostingList[] postings = target.get(token);
+                if (add) {
+                    if (postings == null) {
+                        postings = new PostingList[fields.size()];
+                        target.put(token, postings);
+                    }
+                    if (postings[field] == null) {
+                        postings[field] = new PostingList();
+                    }
+                    postings[field].add(id);
+                } else if (postings != null && postings[field] != null) {
+                    postings[field].remove(id);
+                    if (postings[field].isEmpty()) {
+                        postings[field] = null;
+                        if (Arrays.stream(postings).allMatch(Objects::isNull)) {
+                            target.remove(token);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ids whose fields have the term as token (score 2) or as prefix of a token (score 1)
+     */
+    private Matches match(String term, int[] fieldIndexes) {
+        List<long[]> exact = new ArrayList<>();
+        List<long[]> prefixed = new ArrayList<>();
+        addPostings(terms.get(term), fieldIndexes, exact);
+        if (options.isPrefix() && term.length() >= options.getMinPrefixLength()) {
+            for (Map.Entry<String, PostingList[]> entry : terms.subMap(term, false, term + Character.MAX_VALUE, false).entrySet()) {
+                addPostings(entry.getValue(), fieldIndexes, prefixed);
+            }
+        }
+        return Matches.union(union(exact), union(prefixed));
+    }
+
+    private static void addPostings(PostingList[] postings, int[] fieldIndexes, List<long[]> target) {
+        if (postings == null) {
+            return;
+        }
+        for (int field : fieldIndexes) {
+            if (postings[field] != null) {
+                target.add(postings[field].toArray());
+            }
+        }
+    }
+
+    /**
+     * Sorted distinct ids of all lists
+     */
+    private static long[] union(List<long[]> lists) {
+        if (lists.isEmpty()) {
+            return NO_IDS;
+        }
+        if (lists.size() == 1) {
+            return lists.getFirst();
+        }
+        long[] all = new long[lists.stream().mapToInt(list -> list.length).sum()];
+        int position = 0;
+        for (long[] list : lists) {
+            System.arraycopy(list, 0, all, position, list.length);
+            position += list.length;
+        }
+        Arrays.sort(all);
+        int distinct = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (i == 0 || all[i] != all[i - 1]) {
+                all[distinct++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, distinct);
+    }
+
+    private int indexOf(String field) {
+        int index = fields.indexOf(field);
+        if (index < 0) {
+            throw new IllegalArgumentException(field + " is not indexed for " + entityClass.getSimpleName());
+        }
+        return index;
+    }
+
+    private static long toId(Object id) {
+        return ((Number) id).longValue();
+    }
+
+    /**
+     * Ids in ascending order with their scores
+     */
+    private record Matches(long[] ids, int[] scores) {
+
+        /**
+         * Union of exact and prefix ids, an id in both keeps the exact score
+         */
+        static Matches union(long[] exact, long[] prefixed) {
+            long[] ids = new long[exact.length + prefixed.length];
+            int[] scores = new int[ids.length];
+            int i = 0, j = 0, size = 0;
+            while (i < exact.length || j < prefixed.length) {
+                if (j == prefixed.length || i < exact.length && exact[i] <= prefixed[j]) {
+                    if (j < prefixed.length && exact[i] == prefixed[j]) {
+                        j++;
+                    }
+                    ids[size] = exact[i++];
+                    scores[size++] = EXACT;
+                } else {
+                    ids[size] = prefixed[j++];
+                    scores[size++] = PREFIX;
+                }
+            }
+            return new Matches(Arrays.copyOf(ids, size), Arrays.copyOf(scores, size));
+        }
+
+        /**
+         * Ids in both, with the sum of their scores
+         */
+        Matches intersect(Matches other) {
+            long[] common = new long[Math.min(ids.length, other.ids.length)];
+            int[] sums = new int[common.length];
+            int i = 0, j = 0, size = 0;
+            while (i < ids.length && j < other.ids.length) {
+                if (ids[i] < other.ids[j]) {
+                    i++;
+                } else if (ids[i] > other.ids[j]) {
+                    j++;
+                } else {
+                    common[size] = ids[i];
+                    sums[size++] = scores[i++] + other.scores[j++];
+                }
+            }
+            return new Matches(Arrays.copyOf(common, size), Arrays.copyOf(sums, size));
+        }
+
+        /**
+         * Ids by descending score, the ids of one score stay ascending
+         */
+        long[] ranked(int maxScore) {
+            int[] counts = new int[maxScore + 2];
+            for (int score : scores) {
+                counts[maxScore - score + 1]++;
+            }
+            for (int i = 1; i < counts.length; i++) {
+                counts[i] += counts[i - 1];
+            }
+            long[] ranked = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                ranked[counts[maxScore - scores[i]]++] = ids[i];
+            }
+            return ranked;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package critex.core.view;
+
+import critex.core.cache.EntityChangeSubscriber;
+import critex.core.model.AggregationField;
+import critex.core.model.AggregationType;
+import critex.core.model.ReportFilter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Aggregates of one entity grouped by a numeric key, kept in memory and updated incrementally from committed
+ * inserts, updates and deletes (see {@link critex.core.cache.EntityChangeListener}). Only {@code COUNT}, {@code SUM} and {@code AVG} can be maintained this way.
+ * Changes which bypass the persistence context (bulk queries, other applications) are caught by {@link #reconcile()},
+ * which recomputes the view in the database and can be scheduled with {@link #reconcileEvery(Duration)}.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+public class AggregateView implements EntityChangeSubscriber {
+
+    /**
+     * Key of the group of entities whose group value is null
+     */
+    public static final long NULL_KEY = Long.MIN_VALUE;
+
+    private static final String ROWS = "rows";
+    private static final int RECONCILE_ATTEMPTS = 3;
+
+    private final String name;
+    private final Class<?> entityClass;
+    private final ReportFilter filter;
+    private final String groupBy;
+    private final List<AggregationField> aggregations;
+    private final boolean[] floating;
+    private final Function<List<AggregationField>, List<Map<String, Object>>> loader;
+    private final int width;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile LongStateMap groups;
+    /**
+     * Number of changes applied, a reconcile only replaces the groups when no change arrived while it loaded them
+     */
+    private final AtomicLong changes = new AtomicLong();
+    private volatile boolean stale;
+    private volatile Instant reconciledAt;
+    private ScheduledFuture<?> schedule;
+
+    /**
+     * @param floating   per aggregation, whether the summed property is a floating point type
+     * @param loader     runs the given aggregations in the database grouped by groupBy, rows are keyed by result names
+     */
+    public AggregateView(String name, Class<?> entityClass, ReportFilter filter, String groupBy, List<AggregationField> aggregations,
+                         boolean[] floating, Function<List<AggregationField>, List<Map<String, Object>>> loader) {
+        StateFilter.validate(filter);
+        this.name = name;
+        this.entityClass = entityClass;
+        this.filter = filter;
+        this.groupBy = groupBy;
+        this.aggregations = List.copyOf(aggregations);
+        this.floating = floating.clone();
+        this.loader = loader;
+        this.width = 1 + 2 * aggregations.size();
+        this.groups = new LongStateMap(width);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getGroupBy() {
+        return groupBy;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public Instant getReconciledAt() {
+        return reconciledAt;
+    }
+
+    /**
+     * Aggregates of the group, keyed by aggregation names. Counts of an empty group are 0, sums and averages null
+     */
+    public Map<String, Object> get(long key) {
+        if (stale) {
+            reconcile();
+        }
+        return toValues(groups.get(key));
+    }
+
+    /**
+     * Aggregates of a view without group by
+     */
+    public Map<String, Object> get() {
+        return get(NULL_KEY);
+    }
+
+    public Object getValue(long key, String aggregation) {
+        return get(key).get(aggregation);
+    }
+
+    /**
+     * Copy of all non empty groups
+     */
+    public Map<Long, Map<String, Object>> snapshot() {
+        Map<Long, Map<String, Object>> snapshot = new HashMap<>();
+        groups.forEach((key, cells) -> snapshot.put(key, toValues(cells)));
+        return snapshot;
+    }
+
+    /**
+     * Number of non empty groups
+     */
+    public int size() {
+        return groups.size();
+    }
+
+    /**
+     * Recompute all groups in the database and replace the current state. Changes are applied after their commit, so
+     * one arriving while the groups load may or may not be part of them: the loaded groups are then dropped and the
+     * load runs again, up to {@value #RECONCILE_ATTEMPTS} times. Without a quiet load the incrementally maintained
+     * groups are kept and the view stays as stale as it was.
+     */
+    public synchronized void reconcile() {
+        List<AggregationField> fields = new ArrayList<>();
+        fields.add(AggregationField.of("*", AggregationType.COUNT, ROWS));
+        for (int i = 0; i < aggregations.size(); i++) {
+            AggregationField field = aggregations.get(i);
+            fields.add(AggregationField.of(field.getFieldName(), AggregationType.COUNT, "c" + i));
+            if (isSummed(field)) {
+                fields.add(AggregationField.of(field.getFieldName(), AggregationType.SUM, "s" + i));
+            }
+        }
+        for (int attempt = 0; attempt < RECONCILE_ATTEMPTS; attempt++) {
+            long applied = changes.get();
+            LongStateMap fresh = load(fields);
+            lock.writeLock().lock();
+            try {
+                if (changes.get() == applied) {
+                    groups = fresh;
+                    stale = false;
+                    reconciledAt = Instant.now();
+                    return;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private LongStateMap load(List<AggregationField> fields) {
+        LongStateMap fresh = new LongStateMap(width);
+        for (Map<String, Object> row : loader.apply(fields)) {
+            fresh.update(toKey(groupBy == null ? null : row.get(groupBy)), cells -> {
+                cells[0] = ((Number) row.get(ROWS)).longValue();
+                for (int i = 0; i < aggregations.size(); i++) {
+                    cells[1 + 2 * i] = ((Number) row.get("c" + i)).longValue();
+                    Number sum = (Number) row.get("s" + i);
+                    if (sum != null) {
+                        cells[2 + 2 * i] = floating[i] ? Double.doubleToRawLongBits(sum.doubleValue()) : sum.longValue();
+                    }
+                }
+            });
+        }
+        return fresh;
+    }
+
+    /**
+     * Reconcile periodically on a shared daemon thread, a failed run marks the view stale so the next read retries it
+     */
+    public synchronized AggregateView reconcileEvery(Duration interval) {
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+        schedule = Scheduler.EXECUTOR.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                stale = true;
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Stop the periodic reconciliation
+     */
+    public synchronized void close() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+    }
+
+    /**
+     * Add (sign 1) or remove (sign -1) an entity state, states which do not match the filter are ignored
+     */
+    void apply(Function<String, Object> state, int sign) {
+        if (!StateFilter.matches(filter, state)) {
+            return;
+        }
+        Object[] values = new Object[aggregations.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = isStar(aggregations.get(i)) ? Boolean.TRUE : state.apply(aggregations.get(i).getFieldName());
+        }
+        long key = toKey(groupBy == null ? null : state.apply(groupBy));
+        lock.readLock().lock();
+        try {
+            groups.update(key, cells -> {
+                cells[0] += sign;
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] == null) {
+                        continue;
+                    }
+                    cells[1 + 2 * i] += sign;
+                    if (isSummed(aggregations.get(i))) {
+                        Number value = (Number) values[i];
+                        cells[2 + 2 * i] = floating[i]
+                                ? Double.doubleToRawLongBits(Double.longBitsToDouble(cells[2 + 2 * i]) + sign * value.doubleValue())
+                                : cells[2 + 2 * i] + sign * value.longValue();
+                    }
+                }
+            });
+            changes.incrementAndGet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The change could not be applied incrementally, the next read reconciles the view
+     */
+    void markStale() {
+        stale = true;
+    }
+
+    @Override
+    public void onChange(Change change, Class<?> type, Object id, Predicate<Set<String>> changed,
+                         Function<String, Object> oldState, Function<String, Object> newState) {
+        if (type != entityClass) {
+            return;
+        }
+        if (change != Change.INSERT && oldState == null) {
+            markStale();
+            return;
+        }
+        if (oldState != null) {
+            apply(oldState, -1);
+        }
+        if (newState != null) {
+            apply(newState, 1);
+        }
+    }
+
+    /**
+     * Nothing was committed, the view is left as it is
+     */
+    @Override
+    public void onChangeFailed(Change change, Class<?> type, Object id) {
+    }
+
+    @Override
+    public void onBulkChange(Change change, Class<?> type) {
+        if (entityClass.isAssignableFrom(type) || type.isAssignableFrom(entityClass)) {
+            markStale();
+        }
+    }
+
+    private Map<String, Object> toValues(long[] cells) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < aggregations.size(); i++) {
+            AggregationField field = aggregations.get(i);
+            long count = cells == null ? 0 : cells[1 + 2 * i];
+            long sum = cells == null ? 0 : cells[2 + 2 * i];
+            Object value = switch (field.getAggregationType()) {
+                case SUM -> count == 0 ? null : floating[i] ? (Object) Double.longBitsToDouble(sum) : (Object) sum;
+                case AVG -> count == 0 ? null : (floating[i] ? Double.longBitsToDouble(sum) : (double) sum) / count;
+                default -> count;
+            };
+            values.put(field.resultName(), value);
+        }
+        return values;
+    }
+
+    private static long toKey(Object value) {
+        return value == null ? NULL_KEY : ((Number) value).longValue();
+    }
+
+    private static boolean isStar(AggregationField field) {
+        return field.getFieldName() == null || "*".equals(field.getFieldName());
+    }
+
+    private static boolean isSummed(AggregationField field) {
+        return field.getAggregationType() == AggregationType.SUM || field.getAggregationType() == AggregationType.AVG;
+    }
+
+    private static final class Scheduler {
+        private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "critex-view-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,154 @@
+package critex.core.view;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Concurrent map from primitive long keys to fixed width long cells, split in lock striped open addressing tables.
+ * Cell 0 holds the number of rows of a key, a key is removed when it drops to zero rows.
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+final class LongStateMap {
+
+    private static final int STRIPES = 16;
+
+    private final int width;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    LongStateMap(int width) {
+        this.width = width;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Copy of the cells of the key, null when the key has no rows
+     */
+    long[] get(long key) {
+        long hash = mix(key);
+        Stripe stripe = stripes[(int) (hash >>> 60)];
+        synchronized (stripe) {
+            int slot = stripe.find(key, hash);
+            return slot < 0 ? null : stripe.values[slot].clone();
+        }
+    }
+
+    /**
+     * Apply the update to the cells of the key, cells are created with zeros
+     */
+    void update(long key, CellUpdate update) {
+        long hash = mix(key);
+        Stripe stripe = stripes[(int) (hash >>> 60)];
+        synchronized (stripe) {
+            int slot = stripe.find(key, hash);
+            long[] cells = slot < 0 ? new long[width] : stripe.values[slot];
+            update.apply(cells);
+            if (cells[0] <= 0) {
+                if (slot >= 0) {
+                    stripe.remove(slot);
+                }
+            } else if (slot < 0) {
+                stripe.insert(key, hash, cells);
+            }
+        }
+    }
+
+    void forEach(BiConsumer<Long, long[]> consumer) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.values.length; i++) {
+                    if (stripe.values[i] != null) {
+                        consumer.accept(stripe.keys[i], stripe.values[i].clone());
+                    }
+                }
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    private static long mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    @FunctionalInterface
+    interface CellUpdate {
+        void apply(long[] cells);
+    }
+
+    /**
+     * Linear probing table guarded by its own monitor
+     */
+    private static final class Stripe {
+        private long[] keys = new long[16];
+        private long[][] values = new long[16][];
+        private int size;
+
+        private int find(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long key, long hash, long[] cells) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = cells;
+            size++;
+        }
+
+        /**
+         * Backward shift deletion, keeps probe chains intact without tombstones
+         */
+        private void remove(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            int i = (slot + 1) & mask;
+            while (values[i] != null) {
+                int home = (int) mix(keys[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+                i = (i + 1) & mask;
+            }
+            values[hole] = null;
+            size--;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[][] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2][];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    insert(oldKeys[i], mix(oldKeys[i]), oldValues[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package critex.core.view;
+
+import critex.core.model.ConditionParameter;
+import critex.core.model.Operator;
+import critex.core.model.ReportFilter;
+import critex.core.query.ConditionShape;
+import critex.core.utility.CustomError;
+import critex.core.utility.CustomException;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * Evaluates a {@link ReportFilter} on the property values of an entity state, with the null semantics of sql
+ *
+ * @author Ahmad Reza Mokhtari
+ */
+final class StateFilter {
+
+    private StateFilter() {
+    }
+
+    /**
+     * Throws if the filter uses an operator which can not be evaluated on the entity state
+     */
+    static void validate(ReportFilter filter) {
+        if (filter == null) {
+            return;
+        }
+        for (ConditionParameter parameter : filter.getParameters()) {
+            switch (parameter.getOperator()) {
+                case IS_EMPTY, IS_NOT_EMPTY, SIZE_EQUALS, SIZE_GREATER_THAN, SIZE_LESS_THAN, SIZE_GREATER_EQUALS, SIZE_LESS_EQUALS ->
+                        throw new CustomException(CustomError.ILLEGAL_ARGUMENT.getStatusCode(),
+                                parameter.getOperator() + " is not supported in aggregate views", CustomError.ILLEGAL_ARGUMENT);
+                default -> {
+                }
+            }
+        }
+        validate(filter.getOrFilter());
+    }
+
+    static boolean matches(ReportFilter filter, Function<String, Object> state) {
+        if (filter == null) {
+            return true;
+        }
+        for (ConditionParameter parameter : filter.getParameters()) {
+            if (ConditionShape.isApplicable(parameter) && !matches(parameter, state.apply(parameter.getKey()))) {
+                return false;
+            }
+        }
+        ReportFilter orFilter = filter.getOrFilter();
+        if (orFilter == null) {
+            return true;
+        }
+        boolean applicable = false;
+        for (ConditionParameter parameter : orFilter.getParameters()) {
+            if (ConditionShape.isApplicable(parameter)) {
+                applicable = true;
+                if (matches(parameter, state.apply(parameter.getKey()))) {
+                    return true;
+                }
+            }
+        }
+        return !applicable;
+    }
+
+    static boolean matches(ConditionParameter parameter, Object actual) {
+        Operator operator = parameter.getOperator();
+        if (operator == Operator.NULL) {
+            return actual == null;
+        }
+        if (actual == null) {
+            return false;
+        }
+        Object value = parameter.getValue();
+        return switch (operator) {
+            case EQUALS -> compare(actual, value) == 0;
+            case NOT_EQUALS -> compare(actual, value) != 0;
+            case GREATER_THAN, GREATER_THAN_TIME -> compare(actual, value) > 0;
+            case GREATER_EQUALS, GREATER_EQUALS_TIME -> compare(actual, value) >= 0;
+            case LESS_THAN, LESS_THAN_TIME -> compare(actual, value) < 0;
+            case LESS_EQUALS, LESS_EQUALS_TIME -> compare(actual, value) <= 0;
+            case IN -> contains((Collection<?>) value, actual);
+            case NOT_IN -> !contains((Collection<?>) value, actual);
+            case NOT_NULL -> true;
+            case BETWEEN -> between(actual, (Object[]) value);
+            case NOT_BETWEEN -> !between(actual, (Object[]) value);
+            case LIKE, CONTAINS -> actual.toString().contains(value.toString());
+            case NOT_CONTAINS -> !actual.toString().contains(value.toString());
+            case STARTS_WITH -> actual.toString().startsWith(value.toString());
+            case ENDS_WITH -> actual.toString().endsWith(value.toString());
+            case LIKE_IGNORE_CASE, CONTAINS_IGNORE_CASE -> lower(actual).contains(lower(value));
+            case NOT_CONTAINS_IGNORE_CASE -> !lower(actual).contains(lower(value));
+            case STARTS_WITH_IGNORE_CASE -> lower(actual).startsWith(lower(value));
+            case ENDS_WITH_IGNORE_CASE -> lower(actual).endsWith(lower(value));
+            default -> false;
+        };
+    }
+
+    private static boolean contains(Collection<?> values, Object actual) {
+        for (Object value : values) {
+            if (value != null && compare(actual, value) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean between(Object actual, Object[] bounds) {
+        return bounds[0] != null && bounds[1] != null && compare(actual, bounds[0]) >= 0 && compare(actual, bounds[1]) <= 0;
+    }
+
+    private static String lower(Object value) {
+        return value.toString().toLowerCase();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object actual, Object value) {
+        if (actual instanceof Number number && value instanceof Number other) {
+            if (isIntegral(number) && isIntegral(other)) {
+                return Long.compare(number.longValue(), other.longValue());
+            }
+            return Double.compare(number.doubleValue(), other.doubleValue());
+        }
+        if (actual instanceof Comparable comparable && actual.getClass().isInstance(value)) {
+            return comparable.compareTo(value);
+        }
+        return actual.equals(value) ? 0 : actual.toString().compareTo(value.toString());
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+}
@@ -0,0 +1,38 @@
+package critex.core.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify FrequencySketch estimates and aging
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void testFrequentKeysHaveHigherEstimates() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("hot");
+        }
+        sketch.increment("cold");
+
+        assertEquals(10, sketch.frequency("hot"));
+        assertEquals(1, sketch.frequency("cold"));
+        assertEquals(0, sketch.frequency("unknown"));
+    }
+
+    @Test
+    public void testCountersSaturateAndAge() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("hot");
+        }
+        assertTrue(sketch.frequency("hot") <= 15);
+
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment(i);
+        }
+        assertTrue(sketch.frequency("hot") < 15);
+    }
+}
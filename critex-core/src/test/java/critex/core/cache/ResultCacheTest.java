@@ -0,0 +1,139 @@
+package critex.core.cache;
+
+import critex.core.model.ResultCacheOptions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify ResultCache loading, eviction and invalidation
+ */
+public class ResultCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(1);
+
+    @Test
+    public void testCachedValuesAreDecoded() {
+        ResultCache cache = new ResultCache(ResultCacheOptions.defaults());
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<List<Object>> loader = () -> {
+            loads.incrementAndGet();
+            return List.of(3L, 1L, 2L);
+        };
+
+        assertEquals(List.of(3L, 1L, 2L), cache.get("ids", TTL, () -> dependencies("content"), loader, loader));
+        assertEquals(List.of(3L, 1L, 2L), cache.get("ids", TTL, () -> dependencies("content"), loader, loader));
+        assertEquals(List.of("a", 1), cache.get("rows", TTL, () -> dependencies("content"), () -> List.of("a", 1), () -> null));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        ResultCache cache = new ResultCache(ResultCacheOptions.builder().maxBytes(20).build());
+        cache.get("first", TTL, () -> dependencies("content"), () -> 1L, () -> 1L);
+        cache.get("second", TTL, () -> dependencies("content"), () -> 2L, () -> 2L);
+        cache.get("first", TTL, () -> dependencies("content"), () -> 1L, () -> 1L);
+        cache.get("third", TTL, () -> dependencies("content"), () -> 3L, () -> 3L);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(18, cache.getUsedBytes());
+        assertEquals(2L, cache.<Long>get("second", TTL, () -> dependencies("content"), () -> 2L, () -> 2L));
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testUpdatesOnlyInvalidateEntriesUsingChangedProperties() {
+        ResultCache cache = new ResultCache(ResultCacheOptions.defaults());
+        cache.get("byContent", TTL, () -> dependencies("content"), () -> 1L, () -> 1L);
+        cache.get("byPost", TTL, () -> dependencies("postId"), () -> 2L, () -> 2L);
+
+        cache.invalidate(Entity.class, properties -> properties.contains("content"));
+        assertEquals(1, cache.size());
+
+        cache.invalidate(Joined.class, properties -> false);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testResultLoadedDuringChangeIsNotStored() {
+        ResultCache cache = new ResultCache(ResultCacheOptions.defaults());
+        cache.get("warm", TTL, () -> dependencies("content"), () -> 0L, () -> 0L);
+        cache.get("racing", TTL, () -> dependencies("content"), () -> {
+            cache.invalidate(Entity.class);
+            return 1L;
+        }, () -> 1L);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testResultLoadedDuringChangeOfOtherTypeIsStored() {
+        ResultCache cache = new ResultCache(ResultCacheOptions.defaults());
+        cache.get("other", TTL, () -> new CacheDependencies(Other.class, Set.of("content"), Set.of()), () -> 0L, () -> 0L);
+        cache.get("loaded", TTL, () -> dependencies("content"), () -> {
+            cache.invalidate(Other.class);
+            return 1L;
+        }, () -> 1L);
+
+        assertEquals(1, cache.size());
+        assertEquals(1L, cache.<Long>get("loaded", TTL, () -> dependencies("content"), () -> 2L, () -> 2L));
+    }
+
+    @Test
+    public void testDroppedRefreshIsRetried() throws InterruptedException {
+        ResultCache cache = new ResultCache(ResultCacheOptions.builder().refreshAhead(0.1).hotHits(1).build());
+        Duration ttl = Duration.ofSeconds(2);
+        AtomicInteger refreshes = new AtomicInteger();
+        Supplier<Long> refresher = () -> {
+            if (refreshes.incrementAndGet() == 1) {
+                cache.invalidate(Entity.class, properties -> false);
+            }
+            return 2L;
+        };
+        cache.get("hot", ttl, () -> dependencies("content"), () -> 1L, refresher);
+        Thread.sleep(300);
+
+        for (int i = 0; i < 100 && cache.<Long>get("hot", ttl, () -> dependencies("content"), () -> 1L, refresher) != 2L; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2L, cache.<Long>get("hot", ttl, () -> dependencies("content"), () -> 1L, refresher));
+        assertEquals(2, refreshes.get());
+    }
+
+    @Test
+    public void testHotEntriesAreRefreshedAhead() throws InterruptedException {
+        ResultCache cache = new ResultCache(ResultCacheOptions.builder().refreshAhead(0.1).hotHits(1).build());
+        Duration ttl = Duration.ofSeconds(10);
+        cache.get("hot", ttl, () -> dependencies("content"), () -> 1L, () -> 2L);
+        Thread.sleep(1100);
+
+        assertEquals(1L, cache.<Long>get("hot", ttl, () -> dependencies("content"), () -> 1L, () -> 2L));
+        assertEquals(1, cache.getRefreshCount());
+        for (int i = 0; i < 100 && cache.<Long>get("hot", ttl, () -> dependencies("content"), () -> 1L, () -> 2L) != 2L; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2L, cache.<Long>get("hot", ttl, () -> dependencies("content"), () -> 1L, () -> 2L));
+    }
+
+    private static CacheDependencies dependencies(String property) {
+        return new CacheDependencies(Entity.class, Set.of(property), Set.of(Joined.class));
+    }
+
+    private static class Entity {
+    }
+
+    private static class Joined {
+    }
+
+    private static class Other {
+    }
+}
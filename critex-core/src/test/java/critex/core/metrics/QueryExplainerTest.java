@@ -0,0 +1,165 @@
+package critex.core.metrics;
+
+import critex.core.model.ExplainOptions;
+import critex.core.model.ExplainTrigger;
+import critex.core.model.QueryMetricsOptions;
+import critex.core.model.ReportCondition;
+import critex.core.query.ConditionShape;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.sql.*;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class to verify QueryExplainer triggers, the replay of bound parameters and the plan flags of every dialect
+ */
+public class QueryExplainerTest {
+
+    private static final String H2_SCAN = """
+            SELECT
+                COUNT("P1_0"."ID")
+            FROM "PUBLIC"."POSTS" "P1_0"
+                /* PUBLIC.POSTS.tableScan */
+            WHERE LOWER("P1_0"."CONTENT") LIKE ?1""";
+
+    @Test
+    public void testDialectsFlagFullScansAndFilteredScans() {
+        assertFlags(ExplainDialect.H2, H2_SCAN, true, true);
+        assertFlags(ExplainDialect.H2, """
+                SELECT
+                    "P1_0"."ID"
+                FROM "PUBLIC"."POSTS" "P1_0"
+                    /* PUBLIC.POSTS.tableScan */
+                INNER JOIN "PUBLIC"."USERS" "U1_0"
+                    /* PUBLIC.PRIMARY_KEY_4D: ID = P1_0.USER_ID */
+                    ON 1=1
+                WHERE "U1_0"."ID" = "P1_0"."USER_ID\"""", true, false);
+        assertFlags(ExplainDialect.H2, "FROM \"PUBLIC\".\"POSTS\" \"P1_0\"\n    /* PUBLIC.PRIMARY_KEY_4: ID = ?1 */\nWHERE \"P1_0\".\"ID\" = ?1", false, false);
+        assertFlags(ExplainDialect.POSTGRESQL, """
+                Hash Join  (cost=1.09..2.21 rows=3 width=40)
+                  ->  Seq Scan on posts p1_0  (cost=0.00..1.06 rows=3 width=40)
+                        Filter: (lower(content) ~~ '%a%'::text)
+                  ->  Hash  (cost=1.04..1.04 rows=4 width=8)""", true, true);
+        assertFlags(ExplainDialect.POSTGRESQL, """
+                Nested Loop  (cost=0.15..16.34 rows=1 width=40)
+                  ->  Seq Scan on users u1_0  (cost=0.00..1.04 rows=4 width=8)
+                  ->  Index Scan using posts_pkey on posts p1_0  (cost=0.15..8.17 rows=1 width=40)
+                        Filter: (user_id = u1_0.id)""", true, false);
+        assertFlags(ExplainDialect.MYSQL, "id=1 select_type=SIMPLE table=p1_0 type=ALL possible_keys=null key=null rows=1000 Extra=Using where", true, true);
+        assertFlags(ExplainDialect.MYSQL, "id=1 select_type=SIMPLE table=p1_0 type=ref possible_keys=idx key=idx rows=1 Extra=Using where", false, false);
+        assertFlags(ExplainDialect.ORACLE, "|*  2 |   TABLE ACCESS FULL | POSTS |     3 |   120 |     2   (0)| 00:00:01 |", true, true);
+        assertFlags(ExplainDialect.SQL_SERVER, "  |--Clustered Index Scan(OBJECT:([db].[dbo].[posts].[PK]), WHERE:([posts].[title] like [@P0]))", true, true);
+        assertFlags(ExplainDialect.GENERIC, "FULL TABLE SCAN on posts\nfilter: title", true, false);
+    }
+
+    @Test
+    public void testNumberedParametersSkipLiterals() {
+        assertEquals("select 1 from posts where title = :1 and content like '?%' and id in (:2, :3)",
+                ExplainDialect.numberedParameters("select 1 from posts where title = ? and content like '?%' and id in (?, ?)"));
+        assertEquals(QueryExplainer.structure("Seq Scan on posts (cost=0.00..1.06 rows=3)"), QueryExplainer.structure("Seq Scan on posts (cost=4.50..9.10 rows=250)"));
+    }
+
+    @Test
+    public void testExplainsNewShapesOnceAndSlowCallsAgainWithTheBoundParameters() throws Exception {
+        PreparedStatement explain = explainStatement();
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(startsWith("EXPLAIN "))).thenReturn(explain);
+        QueryExplainer.Connections connections = mock(QueryExplainer.Connections.class);
+        when(connections.open()).thenReturn(connection);
+        QueryMetrics metrics = new QueryMetrics(ObservationRegistry.NOOP, "Post", QueryMetricsOptions.defaults());
+        QueryExplainer explainer = new QueryExplainer("Post", ExplainDialect.H2, connections,
+                ExplainOptions.builder().slowThreshold(Duration.ofMillis(20)).minInterval(Duration.ZERO).build());
+        metrics.setExplainer(explainer);
+        ConditionShape shape = shape();
+        try {
+            call(metrics, shape, 0);
+            List<ExplainPlan> first = await(explainer, shape, 1);
+            assertEquals(ExplainTrigger.FIRST_SEEN, first.getFirst().trigger());
+            assertEquals("select count(id) from posts where content like ?", first.getFirst().sql());
+            assertTrue(first.getFirst().fullScan() && first.getFirst().missingIndex());
+            verify(explain).setString(1, "%critex%");
+            verify(connections).close(connection);
+
+            call(metrics, shape, 0);
+            call(metrics, shape, 25);
+            List<ExplainPlan> slow = await(explainer, shape, 2);
+            assertEquals(ExplainTrigger.SLOW, slow.getFirst().trigger());
+            assertFalse(slow.getFirst().changed());
+            assertEquals(2, explainer.getExplainedCount());
+            assertEquals(List.of(slow.getFirst()), explainer.getFullScans());
+        } finally {
+            explainer.close();
+        }
+        assertFalse(QueryMetrics.isCapturing());
+    }
+
+    @Test
+    public void testFailedExplainsAreKeptWithTheirError() throws Exception {
+        QueryExplainer.Connections connections = mock(QueryExplainer.Connections.class);
+        when(connections.open()).thenThrow(new SQLException("no connection"));
+        QueryMetrics metrics = new QueryMetrics(ObservationRegistry.NOOP, "Post", QueryMetricsOptions.defaults());
+        try (QueryExplainer explainer = new QueryExplainer("Post", ExplainDialect.GENERIC, connections, ExplainOptions.defaults())) {
+            metrics.setExplainer(explainer);
+            call(metrics, shape(), 0);
+            ExplainPlan failed = await(explainer, shape(), 1).getFirst();
+            assertEquals("no connection", failed.error());
+            assertFalse(failed.fullScan());
+        }
+    }
+
+    private static void assertFlags(ExplainDialect dialect, String plan, boolean fullScan, boolean missingIndex) {
+        List<String> lines = plan.lines().toList();
+        assertEquals(fullScan, dialect.isFullScan(lines), plan);
+        assertEquals(missingIndex, dialect.isMissingIndex(lines), plan);
+    }
+
+    private static void call(QueryMetrics metrics, ConditionShape shape, long millis) throws Exception {
+        CapturedStatement.Binding binding = new CapturedStatement.Binding(
+                PreparedStatement.class.getMethod("setString", int.class, String.class), new Object[]{1, "%critex%"});
+        metrics.observe("count", () -> shape, () -> {
+            assertTrue(QueryMetrics.isCapturing());
+            QueryMetrics.capture(new CapturedStatement("select count(id) from posts where content like ?", List.of(binding)));
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1L;
+        }, total -> 1);
+    }
+
+    private static List<ExplainPlan> await(QueryExplainer explainer, ConditionShape shape, long explained) throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && explainer.getExplainedCount() < explained; attempt++) {
+            Thread.sleep(20);
+        }
+        assertEquals(explained, explainer.getExplainedCount());
+        return explainer.getPlans(shape.shapeId());
+    }
+
+    private static PreparedStatement explainStatement() throws SQLException {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.execute()).thenReturn(true);
+        when(statement.getUpdateCount()).thenReturn(-1);
+        when(statement.getResultSet()).thenAnswer(invocation -> {
+            ResultSet resultSet = mock(ResultSet.class);
+            when(resultSet.getMetaData()).thenReturn(metaData);
+            when(resultSet.next()).thenReturn(true, false);
+            when(resultSet.getString(1)).thenReturn(H2_SCAN);
+            return resultSet;
+        });
+        return statement;
+    }
+
+    private static ConditionShape shape() {
+        ReportCondition condition = new ReportCondition();
+        condition.addContainsIgnoreCase("content", "critex");
+        return ConditionShape.of(condition);
+    }
+}
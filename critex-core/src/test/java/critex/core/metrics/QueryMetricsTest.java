@@ -0,0 +1,236 @@
+package critex.core.metrics;
+
+import critex.core.model.QueryMetricsOptions;
+import critex.core.model.ReportCondition;
+import critex.core.model.ShapeOrder;
+import critex.core.query.ConditionShape;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class to verify QueryMetrics observations, statement counting, nesting, the bounded shape tags, the shape
+ * statistics, the slow query log and the SQL comments
+ */
+public class QueryMetricsTest {
+
+    private final List<Observation.Context> stopped = new ArrayList<>();
+
+    @Test
+    public void testObservesOperationWithTagsRowsAndStatements() {
+        QueryMetrics metrics = new QueryMetrics(registry(), "Post", QueryMetricsOptions.defaults());
+        ConditionShape shape = shape("title");
+
+        List<String> result = metrics.observe("findAll", () -> shape, () -> {
+            QueryMetrics.execute(() -> 1);
+            QueryMetrics.execute(() -> 2);
+            return List.of("a", "b", "c");
+        }, List::size);
+
+        assertEquals(3, result.size());
+        assertEquals(List.of(QueryMetrics.STATEMENT, QueryMetrics.STATEMENT, QueryMetrics.OPERATION), stopped.stream().map(Observation.Context::getName).toList());
+        QueryObservationContext context = (QueryObservationContext) stopped.get(2);
+        assertEquals("Post", context.getLowCardinalityKeyValue("entity").getValue());
+        assertEquals("findAll", context.getLowCardinalityKeyValue("operation").getValue());
+        assertEquals(shape.shapeId(), context.getLowCardinalityKeyValue("shape").getValue());
+        assertEquals("3", context.getHighCardinalityKeyValue("rows").getValue());
+        assertEquals(2, context.getQueries());
+        assertTrue(context.getExecutionNanos() <= context.getDurationNanos());
+        assertTrue(context.getBuildNanos() >= 0);
+        assertEquals(shape.getKey(), metrics.getShapes().get(shape.shapeId()));
+        assertSame(context, stopped.getFirst().getParentObservation().getContextView());
+        assertEquals(shape.shapeId(), stopped.getFirst().getLowCardinalityKeyValue("shape").getValue());
+    }
+
+    @Test
+    public void testNestedOperationsArePartOfTheOuterOne() {
+        QueryMetrics metrics = new QueryMetrics(registry(), "Post", QueryMetricsOptions.builder().observeStatements(false).build());
+
+        int rows = metrics.observe("searchPage", () -> shape("title"),
+                () -> metrics.observe("findAllPage", () -> shape("content"), () -> QueryMetrics.execute(() -> 4), value -> value),
+                value -> value);
+
+        assertEquals(4, rows);
+        assertEquals(1, stopped.size());
+        QueryObservationContext context = (QueryObservationContext) stopped.getFirst();
+        assertEquals("searchPage", context.getOperation());
+        assertEquals(1, context.getQueries());
+        assertEquals(4, context.getRows());
+        assertEquals(1, metrics.getShapes().size());
+    }
+
+    @Test
+    public void testShapesBeyondTheLimitShareOneTag() {
+        QueryMetrics metrics = new QueryMetrics(registry(), "Post", QueryMetricsOptions.of(1));
+
+        metrics.observe("count", () -> shape("title"), () -> 1L, total -> 1);
+        metrics.observe("count", () -> shape("content"), () -> 1L, total -> 1);
+        metrics.observe("count", () -> shape("title"), () -> 1L, total -> 1);
+
+        assertEquals(List.of(shape("title").shapeId(), QueryMetrics.OTHER_SHAPE, shape("title").shapeId()),
+                stopped.stream().map(context -> ((QueryObservationContext) context).getShape()).toList());
+        assertEquals(1, metrics.getShapes().size());
+    }
+
+    @Test
+    public void testFailuresAreRecorded() {
+        QueryMetrics metrics = new QueryMetrics(registry(), "Post", QueryMetricsOptions.defaults());
+
+        assertThrows(IllegalStateException.class, () -> metrics.observe("exists", () -> shape("title"),
+                () -> QueryMetrics.execute(() -> {
+                    throw new IllegalStateException("broken");
+                }), found -> 1));
+
+        assertEquals(2, stopped.size());
+        assertInstanceOf(IllegalStateException.class, stopped.get(0).getError());
+        QueryObservationContext context = (QueryObservationContext) stopped.get(1);
+        assertInstanceOf(IllegalStateException.class, context.getError());
+        assertEquals(-1, context.getRows());
+        assertEquals(1, context.getQueries());
+    }
+
+    @Test
+    public void testNoopRegistryStillRecordsStatisticsAndStatementsOutsideOperationsRunPlainly() {
+        QueryMetrics metrics = new QueryMetrics(ObservationRegistry.NOOP, "Post", QueryMetricsOptions.defaults());
+
+        assertEquals(7, metrics.observe("count", () -> shape("title"), () -> QueryMetrics.execute(() -> 7), value -> 1));
+        assertEquals(8, QueryMetrics.execute(() -> 8));
+        ShapeReport report = metrics.topShapes(ShapeOrder.CALLS, 10).getFirst();
+        assertEquals(1, report.calls());
+        assertEquals(1, report.queries());
+    }
+
+    @Test
+    public void testTopShapesAreOrderedByTotalTimeP99AndCalls() {
+        QueryMetrics metrics = new QueryMetrics(registry(), "Post", QueryMetricsOptions.defaults());
+        for (int i = 0; i < 5; i++) {
+            metrics.observe("findAll", () -> shape("title"), () -> List.of("a", "b"), List::size);
+        }
+        metrics.observe("findAll", () -> shape("content"), () -> sleep(20), value -> 0);
+        metrics.observe("count", () -> shape("title"), () -> 1L, total -> 1);
+
+        List<ShapeReport> byCalls = metrics.topShapes(ShapeOrder.CALLS, 10);
+        assertEquals(3, byCalls.size());
+        ShapeReport frequent = byCalls.getFirst();
+        assertEquals("findAll", frequent.operation());
+        assertEquals(shape("title").shapeId(), frequent.shape());
+        assertEquals(shape("title").getKey(), frequent.shapeKey());
+        assertEquals(5, frequent.calls());
+        assertEquals(10, frequent.rows());
+        assertTrue(frequent.meanNanos() <= frequent.p99Nanos() * 2 && frequent.maxNanos() >= frequent.meanNanos());
+
+        ShapeReport slowest = metrics.topShapes(ShapeOrder.TOTAL_TIME, 1).getFirst();
+        assertEquals(shape("content").shapeId(), slowest.shape());
+        assertTrue(slowest.totalNanos() >= Duration.ofMillis(20).toNanos());
+        assertEquals(slowest, metrics.topShapes(ShapeOrder.P99, 1).getFirst());
+        assertEquals(1, QueryMetrics.topShapes(List.of(metrics, new QueryMetrics(registry(), "User", QueryMetricsOptions.defaults())), ShapeOrder.CALLS, 1).size());
+    }
+
+    @Test
+    public void testSlowCallsAreLoggedWithRedactedParameters() {
+        QueryMetrics metrics = new QueryMetrics(registry(), "Post", QueryMetricsOptions.builder()
+                .slowQueryThreshold(Duration.ofMillis(10)).slowQueryLogSize(2).build());
+        ReportCondition condition = new ReportCondition();
+        condition.addEqual("title", "secret title");
+        condition.addIn("userId", List.of(1L, 2L, 3L));
+        ConditionShape secret = ConditionShape.of(condition);
+
+        metrics.observe("findAll", () -> shape("title"), () -> 0, value -> value);
+        metrics.observe("findAll", () -> shape("title"), () -> sleep(10), value -> value);
+        metrics.observe("findAllPage", () -> secret, () -> QueryMetrics.execute(() -> sleep(10)), value -> value);
+        assertThrows(IllegalStateException.class, () -> metrics.observe("count", () -> shape("title"), () -> {
+            sleep(10);
+            throw new IllegalStateException("timeout");
+        }, value -> 1));
+
+        List<SlowQuery> slow = metrics.getSlowQueries();
+        assertEquals(List.of("count", "findAllPage"), slow.stream().map(SlowQuery::operation).toList());
+        assertEquals(IllegalStateException.class.getName(), slow.get(0).error());
+        SlowQuery page = slow.get(1);
+        assertNull(page.error());
+        assertEquals(secret.shapeId(), page.shape());
+        assertEquals(1, page.queries());
+        assertTrue(page.durationNanos() >= Duration.ofMillis(10).toNanos() && page.executionNanos() <= page.durationNanos());
+        assertTrue(page.parameters().containsAll(List.of("title EQUALS <String>", "userId IN <3 values>")));
+        assertFalse(page.parameters().toString().contains("secret"));
+        assertNotNull(page.caller());
+    }
+
+    @Test
+    public void testStatementsOfAnOperationGetTheSqlComment() {
+        QueryMetrics metrics = new QueryMetrics(registry(), "Post", QueryMetricsOptions.defaults());
+        Query query = mock(Query.class);
+        org.hibernate.query.Query<?> hibernateQuery = mock(org.hibernate.query.Query.class);
+        when(query.unwrap(org.hibernate.query.Query.class)).thenReturn(hibernateQuery);
+
+        QueryMetrics.tag(query);
+        metrics.observe("findAll", () -> shape("title"), () -> {
+            QueryMetrics.tag(query);
+            return 0;
+        }, value -> value);
+        new QueryMetrics(registry(), "Post", QueryMetricsOptions.builder().sqlComments(false).build())
+                .observe("findAll", () -> shape("title"), () -> {
+                    QueryMetrics.tag(query);
+                    return 0;
+                }, value -> value);
+
+        verify(hibernateQuery, times(1)).setComment(startsWith("critex Post.findAll shape=" + shape("title").shapeId() + " caller="));
+        verify(hibernateQuery, times(1)).setComment(anyString());
+    }
+
+    @Test
+    public void testHistogramPercentilesAreWithinOneBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.99));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        long p99 = histogram.percentile(0.99);
+        long p50 = histogram.percentile(0.5);
+        assertTrue(p99 >= 990_000 && p99 <= 990_000 * 1.125, String.valueOf(p99));
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.125, String.valueOf(p50));
+        for (long value = 1; value < 100_000; value = value * 3 + 1) {
+            assertTrue(LatencyHistogram.upperBound(LatencyHistogram.index(value)) >= value);
+        }
+    }
+
+    private static int sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    private ObservationRegistry registry() {
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+
+            @Override
+            public void onStop(Observation.Context context) {
+                stopped.add(context);
+            }
+        });
+        return registry;
+    }
+
+    private static ConditionShape shape(String key) {
+        ReportCondition condition = new ReportCondition();
+        condition.addEqual(key, "value");
+        return ConditionShape.of(condition);
+    }
+}
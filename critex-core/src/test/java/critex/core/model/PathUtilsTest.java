@@ -0,0 +1,28 @@
+package critex.core.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify PathUtils splits dotted paths
+ */
+public class PathUtilsTest {
+
+    @Test
+    public void testSplitDottedPaths() {
+        assertEquals(List.of("user"), PathUtils.split("user"));
+        assertEquals(List.of("comments", "user", "username"), PathUtils.split("comments.user.username"));
+        assertEquals(List.of("a", "", "b"), PathUtils.split("a..b"));
+    }
+
+    @Test
+    public void testCachedKeysCanNotBeModified() {
+        List<String> keys = PathUtils.split("post.user");
+        assertThrows(UnsupportedOperationException.class, () -> keys.set(0, "comment"));
+        assertThrows(UnsupportedOperationException.class, () -> PathUtils.split("post").add("user"));
+        assertEquals(List.of("post", "user"), PathUtils.split("post.user"));
+    }
+}
@@ -0,0 +1,121 @@
+package critex.core.query;
+
+import critex.core.model.ConditionParameter;
+import critex.core.model.JoinReport;
+import critex.core.model.Operator;
+import critex.core.model.ReportCondition;
+import critex.core.model.ReportFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify the rewrites of ConditionNormalizer
+ */
+public class ConditionNormalizerTest {
+
+    @Test
+    public void testRangeBecomesBetween() {
+        ReportCondition condition = new ReportCondition();
+        condition.addNumericRange("views", 10, 20);
+        condition.addEqual("title", "post");
+
+        List<ConditionParameter> parameters = normalize(condition).getFilter().getParameters();
+
+        assertEquals(2, parameters.size());
+        assertEquals("title", parameters.get(0).getKey());
+        assertEquals(Operator.BETWEEN, parameters.get(1).getOperator());
+        assertArrayEquals(new Object[]{10, 20}, (Object[]) parameters.get(1).getValue());
+        assertEquals(3, condition.getFilter().getParameters().size());
+        assertEquals(Operator.GREATER_EQUALS, condition.getFilter().getParameters().get(0).getOperator());
+    }
+
+    @Test
+    public void testSingleValueInBecomesEqual() {
+        ReportCondition condition = new ReportCondition();
+        condition.addIn("userId", List.of(5L, 5L));
+        condition.addNotIn("postId", List.of(7L));
+
+        List<ConditionParameter> parameters = normalize(condition).getFilter().getParameters();
+
+        assertEquals(Operator.NOT_EQUALS, parameters.get(0).getOperator());
+        assertEquals(7L, parameters.get(0).getValue());
+        assertEquals(Operator.EQUALS, parameters.get(1).getOperator());
+        assertEquals(5L, parameters.get(1).getValue());
+    }
+
+    @Test
+    public void testDuplicatesAndEmptyValuesAreDropped() {
+        ReportCondition condition = new ReportCondition();
+        condition.addEqual("title", "post");
+        condition.addEqual("title", "post");
+        condition.addEqual("content", null);
+        condition.addNotIn("userId", List.of());
+
+        List<ConditionParameter> parameters = normalize(condition).getFilter().getParameters();
+
+        assertEquals(1, parameters.size());
+        assertEquals("title", parameters.getFirst().getKey());
+    }
+
+    @Test
+    public void testImpossibleConditionsAreDetected() {
+        assertTrue(ConditionNormalizer.normalize(new ReportCondition().addIn("id", List.of())).isEmpty());
+        assertTrue(ConditionNormalizer.normalize(new ReportCondition().addEqual("id", 1L).addEqual("id", 2L)).isEmpty());
+        assertTrue(ConditionNormalizer.normalize(new ReportCondition().addNull("userId").addNotNull("userId")).isEmpty());
+        assertTrue(ConditionNormalizer.normalize(new ReportCondition().addNumericRange("views", 20, 10)).isEmpty());
+
+        ReportCondition joined = new ReportCondition();
+        joined.addJoinReport(JoinReport.of("user")).getFilter().addIn("id", List.of());
+        assertTrue(ConditionNormalizer.normalize(joined).isEmpty());
+    }
+
+    @Test
+    public void testOrGroupWithFalseAndTrueParameters() {
+        ReportCondition onlyFalse = new ReportCondition();
+        ReportFilter falseGroup = new ReportFilter();
+        falseGroup.addIn("id", List.of());
+        onlyFalse.setOrFilter(falseGroup);
+        assertTrue(ConditionNormalizer.normalize(onlyFalse).isEmpty());
+
+        ReportCondition alwaysTrue = new ReportCondition();
+        alwaysTrue.addEqual("title", "post");
+        ReportFilter trueGroup = new ReportFilter();
+        trueGroup.addEqual("content", "text");
+        trueGroup.addNotIn("id", List.of());
+        alwaysTrue.setOrFilter(trueGroup);
+        assertNull(normalize(alwaysTrue).getFilter().getOrFilter());
+
+        ReportCondition partlyFalse = new ReportCondition();
+        ReportFilter partlyFalseGroup = new ReportFilter();
+        partlyFalseGroup.addIn("id", List.of());
+        partlyFalseGroup.addEqual("content", "text");
+        partlyFalse.setOrFilter(partlyFalseGroup);
+        assertEquals(1, normalize(partlyFalse).getFilter().getOrFilter().getParameters().size());
+    }
+
+    @Test
+    public void testEquivalentConditionsShareShape() {
+        ReportCondition first = new ReportCondition().addEqual("title", "a").addIn("userId", List.of(1L));
+        ReportCondition second = new ReportCondition().addEqual("userId", 2L).addEqual("title", "b");
+
+        assertEquals(ConditionShape.of(normalize(first)).getKey(), ConditionShape.of(normalize(second)).getKey());
+    }
+
+    @Test
+    public void testNormalConditionIsReturnedAsItIs() {
+        ReportCondition condition = new ReportCondition().addEqual("title", "a").addEqual("userId", 1L);
+        condition.addJoinReport("user");
+
+        assertSame(condition, normalize(condition));
+    }
+
+    private static ReportCondition normalize(ReportCondition condition) {
+        Optional<ReportCondition> normalized = ConditionNormalizer.normalize(condition);
+        assertTrue(normalized.isPresent());
+        return normalized.get();
+    }
+}
@@ -0,0 +1,99 @@
+package critex.core.query;
+
+import critex.core.model.JoinReport;
+import critex.core.model.ReportCondition;
+import critex.core.model.ReportFilter;
+import jakarta.persistence.criteria.JoinType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify ConditionShape keys
+ */
+public class ConditionShapeTest {
+
+    @Test
+    public void testSameShapeWithDifferentValues() {
+        ConditionShape first = ConditionShape.of(condition("first", 1L, List.of(1L, 2L)));
+        ConditionShape second = ConditionShape.of(condition("second", 2L, List.of(3L, 4L, 5L)));
+
+        assertEquals(first.getKey(), second.getKey());
+        assertEquals(3, first.getParameters().size());
+        assertEquals("second", second.getParameters().getFirst().getValue());
+    }
+
+    @Test
+    public void testNullValuesAreNotPartOfShape() {
+        ConditionShape withValue = ConditionShape.of(condition("text", 1L, List.of(1L)));
+        ConditionShape withoutValue = ConditionShape.of(condition(null, 1L, List.of(1L)));
+
+        assertNotEquals(withValue.getKey(), withoutValue.getKey());
+        assertEquals(2, withoutValue.getParameters().size());
+    }
+
+    @Test
+    public void testJoinOrderDoesNotChangeShape() {
+        ReportCondition first = new ReportCondition();
+        first.addJoinReport("user");
+        first.addJoinReport(JoinReport.of("replies", JoinType.INNER, false));
+
+        ReportCondition second = new ReportCondition();
+        second.addJoinReport(JoinReport.of("replies", JoinType.INNER, false));
+        second.addJoinReport("user");
+
+        assertEquals(ConditionShape.of(first).getKey(), ConditionShape.of(second).getKey());
+
+        second.setDistinct(true);
+        assertNotEquals(ConditionShape.of(first).getKey(), ConditionShape.of(second).getKey());
+    }
+
+    @Test
+    public void testShapeIdIsStableAndIgnoresValues() {
+        ConditionShape first = ConditionShape.of(condition("first", 1L, List.of(1L, 2L)));
+        ConditionShape second = ConditionShape.of(condition("second", 2L, List.of(3L)));
+        ConditionShape other = ConditionShape.of(condition(null, 2L, List.of(3L)));
+
+        assertEquals(first.shapeId(), second.shapeId());
+        assertNotEquals(first.shapeId(), other.shapeId());
+        assertTrue(first.shapeId().matches("[0-9a-f]{16}"));
+        assertEquals("dFp[]", ConditionShape.of(new ReportCondition()).getKey());
+        assertEquals("5292417c1db8428d", ConditionShape.of(new ReportCondition()).shapeId());
+    }
+
+    @Test
+    public void testHavingIsPartOfShape() {
+        ReportCondition condition = condition("text", 1L, List.of(1L));
+        ReportFilter having = new ReportFilter();
+        having.addGreaterEquals("count", 2L);
+
+        ConditionShape withHaving = ConditionShape.of(condition, having);
+
+        assertNotEquals(ConditionShape.of(condition).getKey(), withHaving.getKey());
+        assertEquals(4, withHaving.getParameters().size());
+        assertEquals(3, withHaving.indexOf(having.getParameters().getFirst()));
+    }
+
+    @Test
+    public void testFingerprintIgnoresParameterAndInListOrder() {
+        ReportCondition first = condition("text", 1L, List.of(1L, 2L));
+        ReportCondition second = new ReportCondition();
+        second.addIn("id", List.of(2L, 1L));
+        second.addEqual("userId", 1L);
+        second.addContainsIgnoreCase("content", "text");
+
+        assertEquals(ConditionShape.of(first).fingerprint(), ConditionShape.of(second).fingerprint());
+        assertNotEquals(ConditionShape.of(first).fingerprint(), ConditionShape.of(condition("text", 2L, List.of(1L, 2L))).fingerprint());
+        assertNotEquals(ConditionShape.of(condition("1", 1L, List.of(1L))).fingerprint(), ConditionShape.of(condition("1", 1L, List.of(11L))).fingerprint());
+    }
+
+    private ReportCondition condition(String content, Long userId, List<Long> ids) {
+        ReportCondition condition = new ReportCondition();
+        condition.addContainsIgnoreCase("content", content);
+        condition.addEqual("userId", userId);
+        condition.addIn("id", ids);
+        return condition;
+    }
+}
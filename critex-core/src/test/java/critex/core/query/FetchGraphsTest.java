@@ -0,0 +1,58 @@
+package critex.core.query;
+
+import critex.core.model.JoinReport;
+import critex.core.model.ReportCondition;
+import jakarta.persistence.criteria.JoinType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify which joins FetchGraphs moves out of the criteria
+ */
+public class FetchGraphsTest {
+
+    @Test
+    public void testPlainLeftFetchJoinsAreGraphJoins() {
+        ReportCondition condition = new ReportCondition();
+        condition.addJoinReport("user.posts");
+        condition.addJoinReport("replies", JoinType.INNER);
+        condition.addJoinReport(JoinReport.of("post", JoinType.LEFT, false));
+
+        List<JoinReport> graphJoins = FetchGraphs.graphJoins(condition);
+
+        assertEquals(1, graphJoins.size());
+        assertEquals("user", graphJoins.getFirst().getKey());
+    }
+
+    @Test
+    public void testFilteredJoinsStayInCriteria() {
+        ReportCondition condition = new ReportCondition();
+        condition.addEqual("content", "text");
+        condition.addJoinReport("user");
+        JoinReport replies = condition.addJoinReport("replies");
+        replies.getFilter().addEqual("content", "reply");
+        JoinReport post = condition.addJoinReport("post");
+        post.addJoin(JoinReport.of("user", JoinType.INNER));
+
+        ConditionShape shape = ConditionShape.of(condition);
+        ConditionShape withoutGraphJoins = FetchGraphs.withoutGraphJoins(shape);
+
+        assertEquals(2, withoutGraphJoins.getCondition().getJoins().size());
+        assertTrue(withoutGraphJoins.getCondition().getJoins().stream().noneMatch(join -> join.getKey().equals("user")));
+        assertEquals(shape.getParameters().size(), withoutGraphJoins.getParameters().size());
+    }
+
+    @Test
+    public void testFilterWithoutValuesIsNoFilter() {
+        ReportCondition condition = new ReportCondition();
+        JoinReport user = condition.addJoinReport("user");
+        user.getFilter().addEqual("username", null);
+
+        assertEquals(1, FetchGraphs.graphJoins(condition).size());
+        ConditionShape shape = ConditionShape.of(new ReportCondition());
+        assertSame(shape, FetchGraphs.withoutGraphJoins(shape));
+    }
+}
@@ -0,0 +1,38 @@
+package critex.core.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify IN list padding and chunking
+ */
+public class InListsTest {
+
+    @Test
+    public void testBucketSizes() {
+        assertEquals(0, InLists.bucket(0));
+        assertEquals(1, InLists.bucket(1));
+        assertEquals(2, InLists.bucket(2));
+        assertEquals(4, InLists.bucket(3));
+        assertEquals(8, InLists.bucket(5));
+        assertEquals(512, InLists.bucket(300));
+        assertEquals(512, InLists.bucket(512));
+        assertEquals(1024, InLists.bucket(513));
+    }
+
+    @Test
+    public void testPadRepeatsLastValue() {
+        assertEquals(List.of(1L, 2L, 3L, 3L), InLists.pad(List.of(1L, 2L, 3L)));
+        assertEquals(List.of(), InLists.pad(List.of()));
+    }
+
+    @Test
+    public void testChunks() {
+        List<List<Integer>> chunks = InLists.chunks(List.of(1, 2, 3, 4, 5), 2);
+        assertEquals(List.of(List.of(1, 2), List.of(3, 4), List.of(5)), chunks);
+        assertTrue(InLists.chunks(List.of(), 2).isEmpty());
+    }
+}
@@ -0,0 +1,125 @@
+package critex.core.query;
+
+import critex.core.utility.CustomError;
+import critex.core.utility.CustomException;
+import jakarta.persistence.metamodel.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class to verify PathRegistry resolves nested, collection and join filter paths against the metamodel
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class PathRegistryTest {
+
+    static class Post {
+    }
+
+    static class Comment {
+    }
+
+    static class User {
+    }
+
+    private Metamodel metamodel;
+    private PathRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        EntityType user = entityType(User.class);
+        attribute(user, "username", basic(), false, false);
+
+        EntityType comment = entityType(Comment.class);
+        attribute(comment, "content", basic(), false, false);
+        SingularAttribute commentUser = (SingularAttribute) attribute(comment, "user", null, true, false);
+        when(commentUser.getType()).thenReturn(user);
+
+        EntityType post = entityType(Post.class);
+        attribute(post, "title", basic(), false, false);
+        PluralAttribute comments = (PluralAttribute) attribute(post, "comments", null, true, true);
+        when(comments.getElementType()).thenReturn(comment);
+        SingularAttribute postUser = (SingularAttribute) attribute(post, "user", null, true, false);
+        when(postUser.getType()).thenReturn(user);
+
+        metamodel = mock(Metamodel.class);
+        when(metamodel.managedType(any())).thenThrow(new IllegalArgumentException("not managed"));
+        doReturn(post).when(metamodel).managedType(Post.class);
+        doReturn(comment).when(metamodel).managedType(Comment.class);
+        doReturn(user).when(metamodel).managedType(User.class);
+        registry = new PathRegistry(metamodel);
+    }
+
+    @Test
+    public void testResolveNestedPath() {
+        PathRegistry.AttributePath path = registry.resolve(Post.class, "user.username");
+
+        assertEquals(List.of("user", "username"), path.keys());
+        assertEquals("username", path.last().getName());
+        assertFalse(path.isCollection());
+        assertFalse(path.isAssociation());
+        assertSame(path, registry.resolve(Post.class, "user.username"));
+    }
+
+    @Test
+    public void testResolveCollectionPath() {
+        PathRegistry.AttributePath comments = registry.resolve(Post.class, "comments");
+        assertTrue(comments.isCollection());
+        assertTrue(comments.isAssociation());
+
+        PathRegistry.AttributePath content = registry.resolve(Post.class, "comments.content");
+        assertTrue(content.isCollection());
+        assertFalse(content.isAssociation());
+    }
+
+    @Test
+    public void testResolveDottedJoinFilterKey() {
+        PathRegistry.AttributePath path = registry.resolve(Post.class, "comments.user.username");
+
+        assertEquals(List.of("comments", "user", "username"), path.keys());
+        assertEquals(3, path.attributes().size());
+        assertTrue(path.isCollection());
+        assertTrue(registry.exists(Comment.class, "user.username"));
+    }
+
+    @Test
+    public void testUnknownPathThrows() {
+        CustomException unknownAttribute = assertThrows(CustomException.class, () -> registry.resolve(Post.class, "comments.missing"));
+        assertEquals(CustomError.ILLEGAL_ARGUMENT, unknownAttribute.getCode());
+        assertThrows(CustomException.class, () -> registry.resolve(Post.class, "title.length"));
+        assertThrows(CustomException.class, () -> registry.register(Post.class, List.of("title", "user.missing")));
+        assertThrows(CustomException.class, () -> registry.resolve(String.class, "value"));
+        assertFalse(registry.exists(Post.class, "missing"));
+    }
+
+    private static EntityType entityType(Class<?> javaType) {
+        EntityType type = mock(EntityType.class);
+        when(type.getJavaType()).thenReturn(javaType);
+        when(type.getAttribute(anyString())).thenThrow(new IllegalArgumentException("unknown attribute"));
+        return type;
+    }
+
+    private static Type basic() {
+        BasicType type = mock(BasicType.class);
+        when(type.getPersistenceType()).thenReturn(Type.PersistenceType.BASIC);
+        return type;
+    }
+
+    private static Attribute attribute(EntityType owner, String name, Type type, boolean association, boolean collection) {
+        Attribute attribute = collection ? mock(PluralAttribute.class) : mock(SingularAttribute.class);
+        when(attribute.getName()).thenReturn(name);
+        when(attribute.isAssociation()).thenReturn(association);
+        when(attribute.isCollection()).thenReturn(collection);
+        if (type != null) {
+            when(((SingularAttribute) attribute).getType()).thenReturn(type);
+        }
+        doReturn(attribute).when(owner).getAttribute(name);
+        return attribute;
+    }
+}
@@ -1,8 +1,15 @@
 package critex.core.repo;
 
+import critex.core.metrics.QueryMetrics;
+import critex.core.metrics.QueryObservationContext;
 import critex.core.model.*;
+import critex.core.utility.CustomException;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
@@ -82,12 +89,125 @@ public class AbstractServiceTest {
         ReportCondition condition = new ReportCondition();
         PageRequestParam pageRequest = PageRequestParam.of(0, 10);
         
+        when(mockRepo.findBy(any(Specification.class), any()))
+                .thenReturn(new SliceImpl<>(Collections.emptyList()));
+
+        service.findAll(condition, pageRequest);
+        // list methods must not trigger the count query of a page
+        verify(mockRepo).findBy(any(Specification.class), any());
+        verify(mockRepo, never()).findAll(any(Specification.class), any(org.springframework.data.domain.Pageable.class));
+    }
+
+    @Test
+    public void testFindAllPageWithMockRepo() {
+        TestRepository mockRepo = mock(TestRepository.class);
+        TestAbstractService service = new TestAbstractService(mockRepo);
+
         Page<TestEntity> mockPage = mock(Page.class);
-        when(mockPage.toList()).thenReturn(Collections.emptyList());
         when(mockRepo.findAll(any(Specification.class), any(org.springframework.data.domain.Pageable.class)))
                 .thenReturn(mockPage);
 
-        service.findAll(condition, pageRequest);
+        assertEquals(mockPage, service.findAllPage(new ReportCondition(), PageRequestParam.of(0, 10)));
         verify(mockRepo).findAll(any(Specification.class), any(org.springframework.data.domain.Pageable.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testOperationsAreObservedWithMetrics() {
+        TestRepository mockRepo = mock(TestRepository.class);
+        TestAbstractService service = new TestAbstractService(mockRepo);
+        List<Observation.Context> stopped = new ArrayList<>();
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+
+            @Override
+            public void onStop(Observation.Context context) {
+                stopped.add(context);
+            }
+        });
+        when(mockRepo.count(any(Specification.class))).thenReturn(5L);
+
+        service.enableQueryMetrics(registry);
+        ReportCondition condition = new ReportCondition();
+        condition.addEqual("name", "critex");
+        assertEquals(5L, service.count(condition));
+
+        assertEquals(List.of(QueryMetrics.STATEMENT, QueryMetrics.OPERATION), stopped.stream().map(Observation.Context::getName).toList());
+        QueryObservationContext context = (QueryObservationContext) stopped.get(1);
+        assertEquals("TestEntity", context.getEntity());
+        assertEquals("count", context.getOperation());
+        assertEquals(1, context.getQueries());
+
+        service.disableQueryMetrics();
+        service.count(condition);
+        assertEquals(2, stopped.size());
+    }
+
+    @Test
+    public void testListReadsAreObservedWithTheirStatements() {
+        TestRepository mockRepo = mock(TestRepository.class);
+        TestAbstractService service = new TestAbstractService(mockRepo);
+        List<QueryObservationContext> operations = new ArrayList<>();
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return context instanceof QueryObservationContext;
+            }
+
+            @Override
+            public void onStop(Observation.Context context) {
+                operations.add((QueryObservationContext) context);
+            }
+        });
+        TestEntity entity = new TestEntity(1L, "critex");
+        when(mockRepo.findBy(any(Specification.class), any())).thenReturn(new SliceImpl<>(List.of(entity)));
+        when(mockRepo.findAll(any(Specification.class))).thenReturn(List.of(entity));
+        when(mockRepo.exists(any(Specification.class))).thenReturn(true);
+        service.enableQueryMetrics(registry);
+
+        service.findAllSlice(new ReportCondition(), PageRequestParam.of(0, 10));
+        service.findFirst(new ReportCondition());
+        service.findAllByIds(List.of(1L));
+        service.existsEach(List.of(new ReportCondition(), new ReportCondition()));
+
+        assertEquals(List.of("findAllSlice", "findFirst", "findAllByIds", "existsEach"),
+                operations.stream().map(QueryObservationContext::getOperation).toList());
+        assertEquals(List.of(1, 1, 1, 2), operations.stream().map(QueryObservationContext::getQueries).toList());
+        assertEquals(List.of(1, 1, 1, 2), operations.stream().map(QueryObservationContext::getRows).toList());
+        service.disableQueryMetrics();
+    }
+
+    @Test
+    public void testExplainPlansNeedMetricsAndAnEntityManager() {
+        TestAbstractService service = new TestAbstractService(mock(TestRepository.class));
+
+        assertThrows(CustomException.class, () -> service.enableExplainPlans());
+        service.enableQueryMetrics(ObservationRegistry.NOOP);
+        assertThrows(CustomException.class, () -> service.enableExplainPlans());
+        assertNull(service.getQueryMetrics().getExplainer());
+        service.disableExplainPlans();
+        service.disableQueryMetrics();
+    }
+
+    @Test
+    public void testFindAllByIdsWithRepositoryKeepsIdOrder() {
+        TestRepository mockRepo = mock(TestRepository.class);
+        TestAbstractService service = new TestAbstractService(mockRepo);
+        service.setInChunkSize(2);
+        TestEntity first = new TestEntity(1L, "first");
+        TestEntity second = new TestEntity(2L, "second");
+        TestEntity third = new TestEntity(3L, "third");
+        when(mockRepo.findAll(any(Specification.class)))
+                .thenReturn(List.of(third, first, first))
+                .thenReturn(List.of(second));
+
+        List<TestEntity> entities = service.findAllByIds(Arrays.asList(3L, 1L, null, 3L, 4L, 2L));
+
+        assertEquals(List.of(third, first, second), entities);
+        verify(mockRepo, times(2)).findAll(any(Specification.class));
+    }
+}
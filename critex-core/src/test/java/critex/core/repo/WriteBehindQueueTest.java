@@ -0,0 +1,169 @@
+package critex.core.repo;
+
+import critex.core.model.WriteBehindOptions;
+import critex.core.utility.CustomException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify WriteBehindQueue batching, per item failures, backpressure and draining on close
+ */
+public class WriteBehindQueueTest {
+
+    @Test
+    public void testWritesFullBatchesAndCompletesIds() throws Exception {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        WriteBehindOptions options = WriteBehindOptions.of(10, Duration.ofSeconds(10));
+        try (WriteBehindQueue<String> queue = new WriteBehindQueue<>("test", options, entities -> {
+            batchSizes.add(entities.size());
+            return entities.stream().<Object>map(entity -> "id-" + entity).toList();
+        })) {
+            List<CompletableFuture<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(queue.submit("e" + i));
+            }
+
+            for (int i = 0; i < 20; i++) {
+                assertEquals("id-e" + i, futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(List.of(10, 10), batchSizes);
+            assertEquals(20, queue.getWrittenCount());
+            assertEquals(0, queue.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testFlushesPartialBatchAfterMaxDelay() throws Exception {
+        try (WriteBehindQueue<String> queue = new WriteBehindQueue<>("test", WriteBehindOptions.of(100, Duration.ofMillis(10)),
+                entities -> new ArrayList<>(entities))) {
+            assertEquals("single", queue.submit("single").get(5, TimeUnit.SECONDS));
+            assertEquals(1, queue.getBatchCount());
+        }
+    }
+
+    @Test
+    public void testReportsFailuresPerItem() throws Exception {
+        WriteBehindOptions options = WriteBehindOptions.of(3, Duration.ofSeconds(10));
+        try (WriteBehindQueue<String> queue = new WriteBehindQueue<>("test", options, entities -> {
+            if (entities.contains("bad")) {
+                throw new IllegalStateException("bad entity");
+            }
+            return new ArrayList<>(entities);
+        })) {
+            CompletableFuture<Object> first = queue.submit("a");
+            CompletableFuture<Object> bad = queue.submit("bad");
+            CompletableFuture<Object> last = queue.submit("b");
+
+            assertEquals("a", first.get(5, TimeUnit.SECONDS));
+            assertEquals("b", last.get(5, TimeUnit.SECONDS));
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+            assertEquals(2, queue.getWrittenCount());
+            assertEquals(1, queue.getFailedCount());
+        }
+    }
+
+    @Test
+    public void testBlocksAndRejectsWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WriteBehindOptions options = WriteBehindOptions.builder().capacity(2).batchSize(1).maxDelay(Duration.ZERO)
+                .offerTimeout(Duration.ofMillis(50)).build();
+        try (WriteBehindQueue<String> queue = new WriteBehindQueue<>("test", options, entities -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ArrayList<>(entities);
+        })) {
+            queue.submit("a");
+            queue.submit("b");
+
+            assertThrows(CustomException.class, () -> queue.submit("c"));
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testCloseDrainsQueuedItems() {
+        AtomicInteger written = new AtomicInteger();
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>("test", WriteBehindOptions.of(1000, Duration.ofHours(1)), entities -> {
+            written.addAndGet(entities.size());
+            return new ArrayList<>(entities);
+        });
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(queue.submit("e" + i));
+        }
+
+        queue.close();
+
+        assertEquals(5, written.get());
+        assertTrue(futures.stream().allMatch(CompletableFuture::isDone));
+        assertThrows(CustomException.class, () -> queue.submit("late"));
+    }
+
+    @Test
+    public void testErrorOfWriterFailsBatchAndKeepsFlushing() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        try (WriteBehindQueue<String> queue = new WriteBehindQueue<>("test", WriteBehindOptions.of(10, Duration.ofMillis(10)), entities -> {
+            if (calls.getAndIncrement() == 0) {
+                throw new AssertionError("writer error");
+            }
+            return new ArrayList<>(entities);
+        })) {
+            CompletableFuture<Object> first = queue.submit("a");
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(AssertionError.class, failure.getCause());
+
+            assertEquals("b", queue.submit("b").get(5, TimeUnit.SECONDS));
+            assertEquals(1, queue.getFailedCount());
+            assertEquals(1, queue.getWrittenCount());
+        }
+    }
+
+    @Test
+    public void testSubmitRacingCloseIsWrittenOrRejected() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test", WriteBehindOptions.of(4, Duration.ofMillis(1)),
+                    entities -> new ArrayList<>(entities));
+            List<CompletableFuture<Object>> futures = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch started = new CountDownLatch(4);
+            List<Thread> submitters = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                submitters.add(Thread.ofVirtual().start(() -> {
+                    started.countDown();
+                    for (int i = 0; i < 1000; i++) {
+                        try {
+                            futures.add(queue.submit(i));
+                        } catch (CustomException e) {
+                            return;
+                        }
+                    }
+                }));
+            }
+            started.await();
+            queue.close();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+
+            for (CompletableFuture<Object> future : futures) {
+                assertNotNull(future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(futures.size(), queue.getWrittenCount());
+            assertEquals(0, queue.getPendingCount());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package critex.core.search;
+
+import critex.core.cache.EntityChangeSubscriber.Change;
+import critex.core.model.SearchIndexOptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify SearchIndex tokens, ranking, prefix matching, incremental changes and rebuilds
+ */
+public class SearchIndexTest {
+
+    private final Map<Long, Object[]> rows = new LinkedHashMap<>();
+
+    @Test
+    public void testTokensAreLowerCaseAndDistinct() {
+        assertEquals(List.of("hello", "world", "2024"), SearchIndex.tokens("Hello, WORLD! hello-2024"));
+        assertEquals(List.of(), SearchIndex.tokens("  --  "));
+        assertEquals(List.of(), SearchIndex.tokens(null));
+    }
+
+    @Test
+    public void testRanksExactMatchesBeforePrefixMatches() {
+        rows.put(1L, new Object[]{"spring boot starter", null});
+        rows.put(2L, new Object[]{"spring", "boot"});
+        rows.put(3L, new Object[]{"springfield boots", null});
+        rows.put(4L, new Object[]{"summer", "boot"});
+        SearchIndex index = index(SearchIndexOptions.defaults());
+
+        assertArrayEquals(new long[]{1, 2, 3}, index.search("spring boot"));
+        assertArrayEquals(new long[]{1, 2, 4, 3}, index.search("BOOT"));
+        assertArrayEquals(new long[]{1, 2, 3}, index.search("spr"));
+        assertArrayEquals(new long[0], index.search("spring winter"));
+        assertArrayEquals(new long[0], index.search("!!"));
+    }
+
+    @Test
+    public void testSearchesOnlyTheGivenFields() {
+        rows.put(1L, new Object[]{"title", "body"});
+        rows.put(2L, new Object[]{"body", "title"});
+        SearchIndex index = index(SearchIndexOptions.defaults());
+
+        assertArrayEquals(new long[]{1}, index.search("title", List.of("title")));
+        assertArrayEquals(new long[]{2}, index.search("title", List.of("content")));
+        assertThrows(IllegalArgumentException.class, () -> index.search("title", List.of("unknown")));
+    }
+
+    @Test
+    public void testShortTermsAndDisabledPrefixMatchWholeTokens() {
+        rows.put(1L, new Object[]{"a apple", null});
+        rows.put(2L, new Object[]{"apple", null});
+
+        assertArrayEquals(new long[]{1}, index(SearchIndexOptions.defaults()).search("a"));
+        assertArrayEquals(new long[0], index(SearchIndexOptions.of(false)).search("app"));
+    }
+
+    @Test
+    public void testAppliesInsertsUpdatesAndDeletes() {
+        rows.put(1L, new Object[]{"first post", null});
+        SearchIndex index = index(SearchIndexOptions.defaults());
+
+        index.apply(2L, null, new Object[]{"second post", null});
+        assertArrayEquals(new long[]{1, 2}, index.search("post"));
+
+        index.apply(1L, new Object[]{"first post", null}, new Object[]{"first draft", null});
+        assertArrayEquals(new long[]{2}, index.search("post"));
+        assertArrayEquals(new long[]{1}, index.search("draft"));
+
+        index.apply(2L, new Object[]{"second post", null}, null);
+        assertArrayEquals(new long[0], index.search("post"));
+        assertArrayEquals(new long[0], index.search("second"));
+        assertEquals(2, index.getTermCount());
+    }
+
+    @Test
+    public void testSubscribesToCommittedChangesOfItsEntity() {
+        rows.put(1L, new Object[]{"first post", null});
+        SearchIndex index = index(SearchIndexOptions.defaults());
+
+        index.onChange(Change.INSERT, Object.class, 2L, properties -> true, null, Map.<String, Object>of("title", "second post")::get);
+        index.onChange(Change.UPDATE, Object.class, 1L, properties -> true,
+                Map.<String, Object>of("title", "first post")::get, Map.<String, Object>of("title", "first draft")::get);
+        index.onChange(Change.INSERT, String.class, 3L, properties -> true, null, Map.<String, Object>of("title", "third post")::get);
+        index.onChangeFailed(Change.DELETE, Object.class, 2L);
+        assertArrayEquals(new long[]{2}, index.search("post"));
+        assertArrayEquals(new long[]{1}, index.search("draft"));
+        assertFalse(index.isStale());
+
+        index.onChange(Change.DELETE, Object.class, 2L, properties -> true, null, null);
+        assertTrue(index.isStale());
+    }
+
+    @Test
+    public void testRebuildKeepsChangesReceivedDuringTheScan() {
+        rows.put(1L, new Object[]{"old", null});
+        List<SearchIndex> holder = new ArrayList<>();
+        SearchIndex index = new SearchIndex(Object.class, List.of("title", "content"), SearchIndexOptions.defaults(), sink -> {
+            rows.forEach(sink);
+            if (holder.isEmpty()) {
+                return;
+            }
+            holder.getFirst().apply(2L, null, new Object[]{"during scan", null});
+        });
+        index.rebuild();
+        holder.add(index);
+        index.markStale();
+
+        assertArrayEquals(new long[]{2}, index.search("scan"));
+        assertArrayEquals(new long[]{1}, index.search("old"));
+        assertFalse(index.isStale());
+    }
+
+    @Test
+    public void testPostingListsStayEqualToASortedSet() {
+        Random random = new Random(7);
+        PostingList postings = new PostingList();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 5000; i++) {
+            long id = random.nextInt(2000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id), postings.remove(id));
+            } else {
+                assertEquals(expected.add(id), postings.add(id));
+            }
+        }
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), postings.toArray());
+        assertEquals(expected.size(), postings.size());
+    }
+
+    @Test
+    public void testAppendedIdsUseOneBytePerSmallGap() {
+        PostingList postings = new PostingList();
+        for (long id = 1_000_000; id < 1_000_100; id++) {
+            postings.add(id);
+        }
+        assertEquals(100, postings.size());
+        assertEquals(3 + 99, postings.byteSize());
+    }
+
+    private SearchIndex index(SearchIndexOptions options) {
+        Consumer<BiConsumer<Object, Object[]>> loader = sink -> rows.forEach(sink);
+        SearchIndex index = new SearchIndex(Object.class, List.of("title", "content"), options, loader);
+        index.rebuild();
+        return index;
+    }
+}
@@ -0,0 +1,141 @@
+package critex.core.view;
+
+import critex.core.cache.EntityChangeSubscriber.Change;
+import critex.core.model.AggregationField;
+import critex.core.model.AggregationType;
+import critex.core.model.ReportFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify AggregateView incremental changes and reconciliation
+ */
+public class AggregateViewTest {
+
+    private static final List<AggregationField> AGGREGATIONS = List.of(
+            AggregationField.of("*", AggregationType.COUNT, "count"), AggregationField.of("amount", AggregationType.SUM, "total"));
+
+    @Test
+    public void testApplyAndReconcile() {
+        AggregateView view = new AggregateView("orders", Object.class, new ReportFilter(), "customerId", AGGREGATIONS, new boolean[2],
+                fields -> List.of(Map.of("customerId", 1L, "rows", 2L, "c0", 2L, "c1", 2L, "s1", 30L)));
+        view.apply(state(1L, 10L), 1);
+        view.apply(state(2L, 5L), 1);
+        view.apply(state(2L, 5L), -1);
+        assertEquals(Map.of("count", 1L, "total", 10L), view.get(1L));
+        assertEquals(0L, view.get(2L).get("count"));
+        assertNull(view.get(2L).get("total"));
+
+        view.reconcile();
+        assertEquals(Map.of("count", 2L, "total", 30L), view.get(1L));
+        assertEquals(1, view.size());
+    }
+
+    @Test
+    public void testSubscribesToCommittedChangesOfItsEntity() {
+        AggregateView view = new AggregateView("orders", Object.class, new ReportFilter(), "customerId", AGGREGATIONS, new boolean[2],
+                fields -> List.of());
+        view.onChange(Change.INSERT, Object.class, 1L, properties -> true, null, state(1L, 10L));
+        view.onChange(Change.UPDATE, Object.class, 1L, properties -> true, state(1L, 10L), state(1L, 15L));
+        view.onChange(Change.INSERT, String.class, 2L, properties -> true, null, state(1L, 5L));
+        view.onChangeFailed(Change.DELETE, Object.class, 1L);
+        assertEquals(Map.of("count", 1L, "total", 15L), view.get(1L));
+        assertFalse(view.isStale());
+
+        view.onChange(Change.UPDATE, Object.class, 1L, properties -> true, null, state(1L, 20L));
+        assertTrue(view.isStale());
+    }
+
+    @Test
+    public void testChangeVisibleToLoadAndAppliedDuringItIsCountedOnce() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch applied = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        AggregateView view = new AggregateView("orders", Object.class, new ReportFilter(), "customerId", AGGREGATIONS, new boolean[2],
+                fields -> {
+                    if (loads.getAndIncrement() == 0) {
+                        loading.countDown();
+                        await(applied);
+                    }
+                    // the change committed before the select, its listener runs while the rows load
+                    return List.of(Map.of("customerId", 1L, "rows", 2L, "c0", 2L, "c1", 2L, "s1", 17L));
+                });
+        CompletableFuture<Void> reconcile = CompletableFuture.runAsync(view::reconcile);
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        view.apply(state(1L, 7L), 1);
+        applied.countDown();
+        reconcile.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, loads.get());
+        assertEquals(Map.of("count", 2L, "total", 17L), view.get(1L));
+        assertNotNull(view.getReconciledAt());
+    }
+
+    @Test
+    public void testChangeCommittedAfterLoadIsKept() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch applied = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        AggregateView view = new AggregateView("orders", Object.class, new ReportFilter(), "customerId", AGGREGATIONS, new boolean[2],
+                fields -> {
+                    if (loads.getAndIncrement() == 0) {
+                        loading.countDown();
+                        await(applied);
+                        return List.of(Map.of("customerId", 1L, "rows", 1L, "c0", 1L, "c1", 1L, "s1", 10L));
+                    }
+                    return List.of(Map.of("customerId", 1L, "rows", 2L, "c0", 2L, "c1", 2L, "s1", 17L),
+                            Map.of("customerId", 3L, "rows", 1L, "c0", 1L, "c1", 1L, "s1", 4L));
+                });
+        CompletableFuture<Void> reconcile = CompletableFuture.runAsync(view::reconcile);
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        view.apply(state(1L, 7L), 1);
+        view.apply(state(3L, 4L), 1);
+        applied.countDown();
+        reconcile.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Map.of("count", 2L, "total", 17L), view.get(1L));
+        assertEquals(Map.of("count", 1L, "total", 4L), view.get(3L));
+    }
+
+    @Test
+    public void testKeepsIncrementalGroupsWhenEveryLoadRaces() {
+        AggregateView[] holder = new AggregateView[1];
+        AtomicInteger loads = new AtomicInteger();
+        holder[0] = new AggregateView("orders", Object.class, new ReportFilter(), "customerId", AGGREGATIONS, new boolean[2],
+                fields -> {
+                    loads.incrementAndGet();
+                    holder[0].apply(state(1L, 1L), 1);
+                    return List.of();
+                });
+        AggregateView view = holder[0];
+        view.apply(state(1L, 5L), 1);
+
+        view.reconcile();
+
+        assertEquals(3, loads.get());
+        assertEquals(Map.of("count", 4L, "total", 8L), view.get(1L));
+        assertNull(view.getReconciledAt());
+        assertFalse(view.isStale());
+    }
+
+    private static Function<String, Object> state(Long customerId, Long amount) {
+        return Map.<String, Object>of("customerId", customerId, "amount", amount)::get;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package critex.core.view;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to verify LongStateMap updates and removals
+ */
+public class LongStateMapTest {
+
+    @Test
+    public void testUpdateAndRemoveManyKeys() {
+        LongStateMap map = new LongStateMap(2);
+        for (long key = -500; key < 500; key++) {
+            long value = key;
+            map.update(key, cells -> {
+                cells[0]++;
+                cells[1] += value;
+            });
+        }
+        assertEquals(1000, map.size());
+
+        for (long key = -500; key < 500; key += 2) {
+            map.update(key, cells -> cells[0]--);
+        }
+        assertEquals(500, map.size());
+        for (long key = -499; key < 500; key += 2) {
+            assertArrayEquals(new long[]{1, key}, map.get(key));
+        }
+        assertNull(map.get(-500));
+
+        Map<Long, long[]> all = new HashMap<>();
+        map.forEach(all::put);
+        assertEquals(500, all.size());
+    }
+
+    @Test
+    public void testGetReturnsCopy() {
+        LongStateMap map = new LongStateMap(1);
+        map.update(Long.MIN_VALUE, cells -> cells[0] = 3);
+        map.get(Long.MIN_VALUE)[0] = 10;
+
+        assertEquals(3, map.get(Long.MIN_VALUE)[0]);
+    }
+}
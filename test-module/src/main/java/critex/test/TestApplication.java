@@ -1,11 +1,38 @@
 package critex.test;
 
+import critex.core.metrics.ExplainDataSource;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
 
 @SpringBootApplication
 public class TestApplication {
     public static void main(String[] args) {
         SpringApplication.run(TestApplication.class, args);
     }
+
+    /**
+     * Registry of the query metrics, provided by spring boot actuator in applications which use it
+     */
+    @Bean
+    public ObservationRegistry observationRegistry() {
+        return ObservationRegistry.create();
+    }
+
+    /**
+     * Decorate the data source so the explain plans of the services see the statements with their parameters
+     */
+    @Bean
+    public static BeanPostProcessor explainDataSource() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource dataSource && !(bean instanceof ExplainDataSource) ? new ExplainDataSource(dataSource) : bean;
+            }
+        };
+    }
 }
@@ -1,18 +1,23 @@
 package critex.test.controller;
 
+import critex.core.model.KeysetSlice;
 import critex.core.model.PageRequestParam;
 import critex.test.dto.filter.CommentFilter;
 import critex.test.dto.request.CommentRequest;
 import critex.test.dto.response.CommentResponse;
+import critex.test.dto.response.UserCommentStats;
 import critex.test.entity.Comment;
 import critex.test.entity.Post;
 import critex.test.service.CommentService;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springdoc.core.annotations.ParameterObject;
-import org.springframework.data.domain.Page;
+import org.springframework.data.web.PagedModel;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/comments")
@@ -28,16 +33,73 @@ public class CommentController {
         return new CommentResponse(comment);
     }
 
+    @PostMapping("/batch")
+    public int createAll(@RequestBody List<CommentRequest> requests) {
+        return commentService.saveAll(requests.stream().map(CommentRequest::toEntity).toList());
+    }
+
     @GetMapping("/{id}")
     public CommentResponse getById(@PathVariable Long id) {
         Comment comment = commentService.findById(id);
         return new CommentResponse(comment);
     }
 
+    @GetMapping("/ids")
+    public List<CommentResponse> getByIds(@RequestParam List<Long> ids) {
+        return commentService.findByIds(ids).stream().map(CommentResponse::new).toList();
+    }
+
     @GetMapping
     public List<CommentResponse> list(@ParameterObject CommentFilter filter, @ParameterObject PageRequestParam pageRequest) {
-        Page<Comment> page = commentService.getAll(commentService.generateReport(filter), pageRequest);
-        return page.map(CommentResponse::new).getContent();
+        return commentService.getAllResponses(commentService.generateReport(filter), pageRequest);
+    }
+
+    @GetMapping("/threads")
+    public PagedModel<CommentResponse> threads(@ParameterObject CommentFilter filter, @ParameterObject PageRequestParam pageRequest) {
+        return new PagedModel<>(commentService.getThreads(commentService.generateReport(filter), pageRequest).map(CommentResponse::new));
+    }
+
+    @GetMapping("/search")
+    public PagedModel<CommentResponse> search(@RequestParam String text, @ParameterObject PageRequestParam pageRequest) {
+        return new PagedModel<>(commentService.searchContent(text, pageRequest).map(CommentResponse::new));
+    }
+
+    @GetMapping("/seek")
+    public KeysetSlice<CommentResponse> seek(@ParameterObject CommentFilter filter, @ParameterObject PageRequestParam pageRequest,
+                                             @RequestParam(required = false) String cursor) {
+        return commentService.getAllKeyset(commentService.generateReport(filter), pageRequest, cursor).map(CommentResponse::new);
+    }
+
+    @GetMapping("/threads/seek")
+    public KeysetSlice<CommentResponse> seekThreads(@ParameterObject CommentFilter filter, @ParameterObject PageRequestParam pageRequest,
+                                                    @RequestParam(required = false) String cursor) {
+        return commentService.getThreadsKeyset(commentService.generateReport(filter), pageRequest, cursor).map(CommentResponse::new);
+    }
+
+    @GetMapping("/stats")
+    public List<UserCommentStats> stats(@ParameterObject CommentFilter filter, @RequestParam(required = false) Long minComments) {
+        return commentService.getStatsPerUser(commentService.generateReport(filter), minComments);
+    }
+
+    @GetMapping("/stats/posts/{postId}")
+    public Map<String, Object> postStats(@PathVariable Long postId) {
+        return commentService.getPostStats(postId);
+    }
+
+    @GetMapping("/export")
+    public void export(@ParameterObject CommentFilter filter, HttpServletResponse response) throws IOException {
+        response.setContentType("text/csv");
+        commentService.export(commentService.generateReport(filter), response.getWriter());
+    }
+
+    @PutMapping("/move")
+    public int move(@ParameterObject CommentFilter filter, @RequestParam Long targetPostId) {
+        return commentService.moveToPost(commentService.generateReport(filter), targetPostId);
+    }
+
+    @DeleteMapping
+    public int deleteByUsername(@RequestParam String username) {
+        return commentService.deleteByUsername(username);
     }
 
     @DeleteMapping("/{id}")
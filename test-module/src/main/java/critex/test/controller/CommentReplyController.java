@@ -9,7 +9,7 @@ import critex.test.entity.CommentReply;
 import critex.test.service.CommentReplyService;
 import lombok.RequiredArgsConstructor;
 import org.springdoc.core.annotations.ParameterObject;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -24,7 +24,7 @@ public class CommentReplyController {
     @PostMapping
     public CommentReplyResponse create(@RequestBody CommentReplyRequest request) {
         CommentReply commentReply = request.toEntity();
-        commentReply = commentReplyService.save(commentReply);
+        commentReply = commentReplyService.saveBuffered(commentReply).join();
         return new CommentReplyResponse(commentReply);
     }
 
@@ -36,7 +36,7 @@ public class CommentReplyController {
 
     @GetMapping
     public List<CommentReplyResponse> list(@ParameterObject CommentReplyFilter filter, @ParameterObject PageRequestParam pageRequest) {
-        Page<CommentReply> page = commentReplyService.getAll(commentReplyService.generateReport(filter), pageRequest);
+        Slice<CommentReply> page = commentReplyService.getAll(commentReplyService.generateReport(filter), pageRequest);
         return page.map(CommentReplyResponse::new).getContent();
     }
 
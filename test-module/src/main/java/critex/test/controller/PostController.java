@@ -9,10 +9,12 @@ import critex.test.entity.User;
 import critex.test.service.PostService;
 import lombok.RequiredArgsConstructor;
 import org.springdoc.core.annotations.ParameterObject;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.web.PagedModel;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/posts")
@@ -34,12 +36,38 @@ public class PostController {
         return new PostResponse(post);
     }
 
+    @GetMapping("/{id}/detail")
+    public PostResponse getDetail(@PathVariable Long id) {
+        return new PostResponse(postService.findDetail(id));
+    }
+
+    @GetMapping("/search")
+    public PagedModel<PostResponse> search(@RequestParam String text, @ParameterObject PageRequestParam pageRequest) {
+        return new PagedModel<>(postService.searchTitle(text, pageRequest).map(PostResponse::new));
+    }
+
+    @GetMapping("/{id}/commented")
+    public boolean isCommentedBy(@PathVariable Long id, @RequestParam String username) {
+        return postService.isCommentedBy(id, username);
+    }
+
     @GetMapping
     public List<PostResponse> list(@ParameterObject PostFilter filter, @ParameterObject PageRequestParam pageRequest) {
-        Page<Post> page = postService.getAll(postService.generateReport(filter), pageRequest);
+        Slice<Post> page = postService.getAll(postService.generateReport(filter), pageRequest);
         return page.map(PostResponse::new).getContent();
     }
 
+    @GetMapping("/count")
+    public long count(@ParameterObject PostFilter filter) {
+        return postService.countPosts(postService.generateReport(filter));
+    }
+
+    @GetMapping("/page")
+    public CompletableFuture<PagedModel<PostResponse>> page(@ParameterObject PostFilter filter, @ParameterObject PageRequestParam pageRequest) {
+        return postService.getPageAsync(postService.generateReport(filter), pageRequest)
+                .thenApply(page -> new PagedModel<>(page.map(PostResponse::new)));
+    }
+
     @DeleteMapping("/{id}")
     public void delete(@PathVariable Long id) {
         postService.deleteById(id);
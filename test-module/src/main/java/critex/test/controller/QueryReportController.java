@@ -0,0 +1,51 @@
+package critex.test.controller;
+
+import critex.core.metrics.ExplainPlan;
+import critex.core.metrics.QueryMetrics;
+import critex.core.metrics.ShapeReport;
+import critex.core.metrics.SlowQuery;
+import critex.core.model.ShapeOrder;
+import critex.core.repo.AbstractService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+@RestController
+@RequestMapping("/queries")
+@RequiredArgsConstructor
+public class QueryReportController {
+
+    private final List<AbstractService<?, ?>> services;
+
+    @GetMapping("/top")
+    public List<ShapeReport> top(@RequestParam(defaultValue = "TOTAL_TIME") ShapeOrder order, @RequestParam(defaultValue = "10") int limit) {
+        return QueryMetrics.topShapes(metrics(), order, limit);
+    }
+
+    @GetMapping("/slow")
+    public List<SlowQuery> slow() {
+        return metrics().stream()
+                .flatMap(metrics -> metrics.getSlowQueries().stream())
+                .sorted(Comparator.comparing(SlowQuery::time).reversed())
+                .toList();
+    }
+
+    @GetMapping("/plans")
+    public List<ExplainPlan> plans(@RequestParam(defaultValue = "false") boolean fullScans) {
+        return metrics().stream()
+                .map(QueryMetrics::getExplainer)
+                .filter(Objects::nonNull)
+                .flatMap(explainer -> fullScans ? explainer.getFullScans().stream() : explainer.getPlans().values().stream().flatMap(List::stream))
+                .toList();
+    }
+
+    private List<QueryMetrics> metrics() {
+        return services.stream().map(AbstractService::getQueryMetrics).filter(Objects::nonNull).toList();
+    }
+}
@@ -8,10 +8,11 @@ import critex.test.entity.User;
 import critex.test.service.UserService;
 import lombok.RequiredArgsConstructor;
 import org.springdoc.core.annotations.ParameterObject;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/users")
@@ -27,6 +28,16 @@ public class UserController {
         return new UserResponse(user);
     }
 
+    @GetMapping("/search")
+    public List<UserResponse> search(@RequestParam String text, @ParameterObject PageRequestParam pageRequest) {
+        return userService.searchUsername(text, pageRequest).stream().map(UserResponse::new).toList();
+    }
+
+    @GetMapping("/taken")
+    public Map<String, Boolean> taken(@RequestParam String username, @RequestParam String email) {
+        return userService.taken(username, email);
+    }
+
     @GetMapping("/{id}")
     public UserResponse getById(@PathVariable Long id) {
         User user = userService.findById(id);
@@ -35,7 +46,7 @@ public class UserController {
 
     @GetMapping
     public List<UserResponse> list(@ParameterObject UserFilter filter, @ParameterObject PageRequestParam pageRequest) {
-        Page<User> page = userService.getAll(userService.generateReport(filter), pageRequest);
+        Slice<User> page = userService.getAll(userService.generateReport(filter), pageRequest);
         return page.map(UserResponse::new).getContent();
     }
 
@@ -5,6 +5,9 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.Hibernate;
+
+import java.util.List;
 
 @Data
 @Builder
@@ -15,11 +18,15 @@ public class PostResponse {
     private String title;
     private String content;
     private Long userId;
+    private List<CommentResponse> comments;
 
     public PostResponse(Post post) {
         this.id = post.getId();
         this.title = post.getTitle();
         this.content = post.getContent();
         this.userId = post.getUserId();
+        if (post.getComments() != null && Hibernate.isInitialized(post.getComments())) {
+            this.comments = post.getComments().stream().map(CommentResponse::new).toList();
+        }
     }
 }
@@ -0,0 +1,4 @@
+package critex.test.dto.response;
+
+public record UserCommentStats(String username, Long comments, Long posts) {
+}
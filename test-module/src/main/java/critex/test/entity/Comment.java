@@ -1,5 +1,6 @@
 package critex.test.entity;
 
+import critex.core.model.PooledId;
 import jakarta.persistence.*;
 import lombok.*;
 import java.util.List;
@@ -13,7 +14,7 @@ import java.util.List;
 @Builder
 public class Comment {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledId(sequence = "comments_seq")
     private Long id;
 
     private String content;
@@ -1,5 +1,6 @@
 package critex.test.entity;
 
+import critex.core.model.PooledId;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -12,7 +13,7 @@ import lombok.*;
 @Builder
 public class CommentReply {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledId(sequence = "comment_replies_seq")
     private Long id;
 
     private String content;
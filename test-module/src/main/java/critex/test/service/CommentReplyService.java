@@ -2,14 +2,18 @@ package critex.test.service;
 
 import critex.core.model.PageRequestParam;
 import critex.core.model.ReportCondition;
+import critex.core.model.WriteBehindOptions;
 import critex.core.repo.AbstractService;
 import critex.test.dto.filter.CommentReplyFilter;
 import critex.test.entity.CommentReply;
 import critex.test.repository.CommentReplyRepository;
-import org.springframework.data.domain.Page;
+import jakarta.annotation.PostConstruct;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class CommentReplyService extends AbstractService<CommentReply, CommentReplyRepository> {
@@ -18,6 +22,11 @@ public class CommentReplyService extends AbstractService<CommentReply, CommentRe
         super(repository);
     }
 
+    @Override
+    protected Collection<String> declaredPaths() {
+        return List.of("content", "commentId", "userId", "user");
+    }
+
     public ReportCondition generateReport(CommentReplyFilter filter) {
         ReportCondition condition = new ReportCondition();
         condition.addContainsIgnoreCase("content", filter.getContent());
@@ -32,14 +41,26 @@ public class CommentReplyService extends AbstractService<CommentReply, CommentRe
         return getEntityById(id, List.of("user"));
     }
 
-    public Page<CommentReply> getAll(ReportCondition condition, PageRequestParam pageRequest) {
-        return findAllPage(condition, pageRequest);
+    public Slice<CommentReply> getAll(ReportCondition condition, PageRequestParam pageRequest) {
+        return findAllSlice(condition, pageRequest);
+    }
+
+    @PostConstruct
+    public void init() {
+        enableWriteBehind(WriteBehindOptions.defaults());
     }
 
     public CommentReply save(CommentReply commentReply) {
         return repository.save(commentReply);
     }
 
+    /**
+     * Saves through the write-behind queue, concurrent replies are committed together in one batch
+     */
+    public CompletableFuture<CommentReply> saveBuffered(CommentReply commentReply) {
+        return saveBehind(commentReply).thenApply(id -> commentReply);
+    }
+
     public void deleteById(Long id) {
         repository.deleteById(id);
     }
@@ -1,23 +1,71 @@
 package critex.test.service;
 
+import critex.core.model.AggregationField;
+import critex.core.model.AggregationType;
+import critex.core.model.EntityCacheOptions;
+import critex.core.model.JoinReport;
+import critex.core.model.KeysetSlice;
 import critex.core.model.PageRequestParam;
 import critex.core.model.ReportCondition;
+import critex.core.model.ReportFilter;
+import critex.core.model.ResultCacheOptions;
+import critex.core.model.SaveOptions;
+import critex.core.model.SortField;
+import critex.core.model.StreamOptions;
 import critex.core.repo.AbstractService;
 import critex.test.dto.filter.CommentFilter;
+import critex.test.dto.response.CommentResponse;
+import critex.test.dto.response.UserCommentStats;
 import critex.test.entity.Comment;
 import critex.test.repository.CommentRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.criteria.JoinType;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.PrintWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 @Service
 public class CommentService extends AbstractService<Comment, CommentRepository> {
 
+    private static final String COMMENTS_PER_POST = "commentsPerPost";
+    private static final int BATCH_SIZE = 100;
+
     public CommentService(CommentRepository repository) {
         super(repository);
     }
 
+    @Override
+    protected Collection<String> declaredPaths() {
+        return List.of("content", "postId", "userId", "user", "replies");
+    }
+
+    @Override
+    protected Collection<Collection<String>> declaredFetchGraphs() {
+        return List.of(List.of("replies", "user"));
+    }
+
+    @PostConstruct
+    public void init() {
+        enableResultCache(ResultCacheOptions.defaults());
+        enableEntityCache(EntityCacheOptions.defaults());
+        registerView(COMMENTS_PER_POST, new ReportCondition(), "postId", List.of(AggregationField.of("*", AggregationType.COUNT, "comments")))
+                .reconcileEvery(Duration.ofMinutes(5));
+        enableSearchIndex(List.of("content"));
+    }
+
+    public Map<String, Object> getPostStats(Long postId) {
+        return getView(COMMENTS_PER_POST).get(postId);
+    }
+
     public ReportCondition generateReport(CommentFilter filter) {
         ReportCondition condition = new ReportCondition();
         condition.addContainsIgnoreCase("content", filter.getContent());
@@ -32,8 +80,68 @@ public class CommentService extends AbstractService<Comment, CommentRepository>
         return getEntityById(id, List.of("replies", "user"));
     }
 
-    public Page<Comment> getAll(ReportCondition condition, PageRequestParam pageRequest) {
-        return findAllPage(condition, pageRequest);
+    public List<Comment> findByIds(List<Long> ids) {
+        return findAllByIds(new ArrayList<>(ids), List.of("user"));
+    }
+
+    public Slice<Comment> getAll(ReportCondition condition, PageRequestParam pageRequest) {
+        return findAllSlice(condition, pageRequest);
+    }
+
+    public Page<Comment> getThreads(ReportCondition condition, PageRequestParam pageRequest) {
+        return findAllPage(condition, pageRequest, List.of("replies"));
+    }
+
+    public List<CommentResponse> getAllResponses(ReportCondition condition, PageRequestParam pageRequest) {
+        return findAllDto(condition, pageRequest, CommentResponse.class);
+    }
+
+    public KeysetSlice<Comment> getAllKeyset(ReportCondition condition, PageRequestParam pageRequest, String cursor) {
+        return findAllKeyset(condition, pageRequest, cursor);
+    }
+
+    public KeysetSlice<Comment> getThreadsKeyset(ReportCondition condition, PageRequestParam pageRequest, String cursor) {
+        condition.addJoinReport("replies");
+        return findAllKeyset(condition, pageRequest, cursor);
+    }
+
+    public List<UserCommentStats> getStatsPerUser(ReportCondition condition, Long minComments) {
+        ReportFilter having = new ReportFilter();
+        having.addGreaterEquals("comments", minComments);
+        return aggregate(condition, List.of("user.username"),
+                List.of(AggregationField.of("*", AggregationType.COUNT, "comments"), AggregationField.countDistinct("postId")),
+                having, UserCommentStats.class);
+    }
+
+    @Transactional(readOnly = true)
+    public void export(ReportCondition condition, PrintWriter writer) {
+        StreamOptions options = StreamOptions.defaults().withSortFields(List.of(SortField.asc("id")));
+        try (Stream<Comment> comments = stream(condition, options)) {
+            comments.forEach(comment -> writer.println(comment.getId() + "," + comment.getContent()));
+        }
+    }
+
+    @Transactional
+    public int moveToPost(ReportCondition condition, Long postId) {
+        return updateWhere(condition, Map.of("postId", postId));
+    }
+
+    @Transactional
+    public int deleteByUsername(String username) {
+        ReportCondition condition = new ReportCondition();
+        JoinReport userJoin = JoinReport.of("user", JoinType.INNER, false);
+        userJoin.getFilter().addEqual("username", username);
+        condition.addJoinReport(userJoin);
+        return deleteWhere(condition);
+    }
+
+    public Page<Comment> searchContent(String text, PageRequestParam pageRequest) {
+        return searchPage(text, List.of("content"), pageRequest);
+    }
+
+    @Transactional
+    public int saveAll(List<Comment> comments) {
+        return saveAll(comments, SaveOptions.of(BATCH_SIZE)).size();
     }
 
     public Comment save(Comment comment) {
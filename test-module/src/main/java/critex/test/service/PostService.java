@@ -1,21 +1,48 @@
 package critex.test.service;
 
+import critex.core.model.EntityCacheOptions;
+import critex.core.model.JoinReport;
 import critex.core.model.PageRequestParam;
 import critex.core.model.ReportCondition;
+import critex.core.model.ResultCacheOptions;
 import critex.core.repo.AbstractService;
 import critex.test.dto.filter.PostFilter;
 import critex.test.entity.Post;
 import critex.test.repository.PostRepository;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.criteria.JoinType;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class PostService extends AbstractService<Post, PostRepository> {
 
-    public PostService(PostRepository repository) {
+    private final ObservationRegistry observationRegistry;
+
+    public PostService(PostRepository repository, ObservationRegistry observationRegistry) {
         super(repository);
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    protected Collection<String> declaredPaths() {
+        return List.of("title", "content", "userId", "user");
+    }
+
+    @PostConstruct
+    public void init() {
+        enableResultCache(ResultCacheOptions.defaults());
+        enableEntityCache(EntityCacheOptions.defaults());
+        setMultiQueryCollections(true);
+        enableSearchIndex(List.of("title"));
+        enableQueryMetrics(observationRegistry);
+        enableExplainPlans();
     }
 
     public ReportCondition generateReport(PostFilter filter) {
@@ -31,8 +58,36 @@ public class PostService extends AbstractService<Post, PostRepository> {
         return getEntityById(id, List.of("user"));
     }
 
-    public Page<Post> getAll(ReportCondition condition, PageRequestParam pageRequest) {
-        return findAllPage(condition, pageRequest);
+    public Post findDetail(Long id) {
+        return getEntityById(id, List.of("user", "comments.user", "comments.replies"));
+    }
+
+    public Slice<Post> getAll(ReportCondition condition, PageRequestParam pageRequest) {
+        return findAllSlice(condition, pageRequest);
+    }
+
+    public CompletableFuture<Page<Post>> getPageAsync(ReportCondition condition, PageRequestParam pageRequest) {
+        return findAllPageAsync(condition, pageRequest);
+    }
+
+    public long countPosts(ReportCondition condition) {
+        return count(condition);
+    }
+
+    public Page<Post> searchTitle(String text, PageRequestParam pageRequest) {
+        return searchPage(text, List.of("title"), pageRequest);
+    }
+
+    /**
+     * Whether the user with the username has commented on the post
+     */
+    public boolean isCommentedBy(Long id, String username) {
+        ReportCondition condition = new ReportCondition();
+        condition.addEqual("id", id);
+        JoinReport userJoin = JoinReport.of("user", JoinType.INNER, false);
+        userJoin.getFilter().addEqual("username", username);
+        condition.addJoinReport(JoinReport.of("comments", JoinType.INNER, false).addJoin(userJoin));
+        return exists(condition);
     }
 
     public Post save(Post post) {
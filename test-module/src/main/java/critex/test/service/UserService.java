@@ -7,10 +7,15 @@ import critex.core.repo.AbstractService;
 import critex.test.dto.filter.UserFilter;
 import critex.test.entity.User;
 import critex.test.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.criteria.JoinType;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class UserService extends AbstractService<User, UserRepository> {
 
@@ -18,6 +23,16 @@ public class UserService extends AbstractService<User, UserRepository> {
         super(repository);
     }
 
+    @Override
+    protected Collection<String> declaredPaths() {
+        return List.of("username", "email", "posts", "posts.title");
+    }
+
+    @PostConstruct
+    public void init() {
+        enableSearchIndex(List.of("username"));
+    }
+
     public ReportCondition generateReport(UserFilter filter) {
         ReportCondition condition = new ReportCondition();
         condition.addContainsIgnoreCase("username", filter.getUsername());
@@ -34,8 +49,22 @@ public class UserService extends AbstractService<User, UserRepository> {
         return getEntityById(id, null);
     }
 
-    public Page<User> getAll(ReportCondition condition, PageRequestParam pageRequest) {
-        return findAllPage(condition, pageRequest);
+    public Slice<User> getAll(ReportCondition condition, PageRequestParam pageRequest) {
+        return findAllSlice(condition, pageRequest);
+    }
+
+    public List<User> searchUsername(String text, PageRequestParam pageRequest) {
+        return search(text, List.of("username"), pageRequest);
+    }
+
+    /**
+     * Whether the username and the email are already taken, both checked in one query
+     */
+    public Map<String, Boolean> taken(String username, String email) {
+        List<Boolean> taken = existsEach(List.of(
+                new ReportCondition().addEqual("username", username),
+                new ReportCondition().addEqual("email", email)));
+        return Map.of("username", taken.get(0), "email", taken.get(1));
     }
 
     public User save(User user) {
@@ -2,22 +2,40 @@ package critex.test.controller;
 
 import critex.test.dto.request.CommentRequest;
 import critex.test.entity.Comment;
+import critex.test.entity.CommentReply;
 import critex.test.entity.Post;
 import critex.test.entity.User;
+import critex.test.repository.CommentReplyRepository;
 import critex.test.repository.CommentRepository;
 import critex.test.repository.PostRepository;
 import critex.test.repository.UserRepository;
+import critex.test.service.CommentService;
+import critex.core.model.PageRequestParam;
+import critex.core.model.ReportCondition;
+import critex.core.query.InLists;
+import critex.core.utility.CustomException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -31,12 +49,18 @@ public class CommentControllerIT {
     @Autowired
     private CommentRepository commentRepository;
 
+    @Autowired
+    private CommentReplyRepository commentReplyRepository;
+
     @Autowired
     private PostRepository postRepository;
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CommentService commentService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -82,4 +106,359 @@ public class CommentControllerIT {
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[*].content", containsInAnyOrder("Comment 1", "Comment 2")));
     }
+
+    @Test
+    void shouldSeekCommentsForwardAndBackward() throws Exception {
+        for (String content : List.of("a", "b", "c", "d", "e")) {
+            commentRepository.save(Comment.builder().content(content).postId(testPost.getId()).userId(testUser.getId()).build());
+        }
+
+        String first = mockMvc.perform(get("/comments/seek")
+                .param("pageSize", "2")
+                .param("sortBy", "content")
+                .param("sortDirection", "desc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].content", contains("e", "d")))
+                .andExpect(jsonPath("$.previousCursor").doesNotExist())
+                .andReturn().getResponse().getContentAsString();
+
+        String second = mockMvc.perform(get("/comments/seek")
+                .param("pageSize", "2")
+                .param("sortBy", "content")
+                .param("sortDirection", "desc")
+                .param("cursor", objectMapper.readTree(first).get("nextCursor").asText()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].content", contains("c", "b")))
+                .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(get("/comments/seek")
+                .param("pageSize", "2")
+                .param("sortBy", "content")
+                .param("sortDirection", "desc")
+                .param("cursor", objectMapper.readTree(second).get("previousCursor").asText()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].content", contains("e", "d")))
+                .andExpect(jsonPath("$.previousCursor").doesNotExist());
+    }
+
+    @Test
+    void shouldSeekCommentsWithFetchedReplies() throws Exception {
+        String[][] replies = {{"m", "b"}, {"k"}, {"z", "a", "x"}, {"c", "n"}};
+        for (int i = 0; i < replies.length; i++) {
+            Comment comment = commentRepository.save(Comment.builder().content("Thread " + i).postId(testPost.getId()).userId(testUser.getId()).build());
+            for (String reply : replies[i]) {
+                commentReplyRepository.save(CommentReply.builder().content(reply).commentId(comment.getId()).userId(testUser.getId()).build());
+            }
+        }
+
+        String first = mockMvc.perform(get("/comments/threads/seek")
+                .param("pageSize", "2")
+                .param("sortBy", "content")
+                .param("sortDirection", "desc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].content", contains("Thread 3", "Thread 2")))
+                .andExpect(jsonPath("$.content[1].replies[*].content", containsInAnyOrder("z", "a", "x")))
+                .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(get("/comments/threads/seek")
+                .param("pageSize", "2")
+                .param("sortBy", "content")
+                .param("sortDirection", "desc")
+                .param("cursor", objectMapper.readTree(first).get("nextCursor").asText()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].content", contains("Thread 1", "Thread 0")))
+                .andExpect(jsonPath("$.content[1].replies[*].content", containsInAnyOrder("m", "b")))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+        PageRequestParam byReplies = PageRequestParam.builder().pageSize(2).sortBy("replies.content").build();
+        assertThrows(CustomException.class, () -> commentService.getThreadsKeyset(new ReportCondition(), byReplies, null));
+    }
+
+    @Test
+    void shouldExportCommentsAsStream() throws Exception {
+        Comment first = commentRepository.save(Comment.builder().content("first").postId(testPost.getId()).userId(testUser.getId()).build());
+        Comment second = commentRepository.save(Comment.builder().content("second").postId(testPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("other").postId(testPost.getId()).userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/comments/export").param("content", "s"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(first.getId() + ",first\n" + second.getId() + ",second\n"));
+    }
+
+    @Test
+    void shouldAggregateCommentsPerUser() throws Exception {
+        User other = userRepository.save(User.builder().username("other").build());
+        Post secondPost = postRepository.save(Post.builder().title("Second Post").userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("a").postId(testPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("b").postId(testPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("c").postId(secondPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("d").postId(testPost.getId()).userId(other.getId()).build());
+
+        mockMvc.perform(get("/comments/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].username").value("commenter"))
+                .andExpect(jsonPath("$[0].comments").value(3))
+                .andExpect(jsonPath("$[0].posts").value(2))
+                .andExpect(jsonPath("$[1].username").value("other"))
+                .andExpect(jsonPath("$[1].comments").value(1));
+
+        mockMvc.perform(get("/comments/stats").param("minComments", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].username").value("commenter"));
+    }
+
+    @Test
+    void shouldKeepCommentsPerPostViewCurrent() throws Exception {
+        Comment first = commentRepository.save(Comment.builder().content("a").postId(testPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("b").postId(testPost.getId()).userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/comments/stats/posts/{postId}", testPost.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.comments").value(2));
+
+        commentRepository.delete(first);
+
+        mockMvc.perform(get("/comments/stats/posts/{postId}", testPost.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.comments").value(1));
+    }
+
+    @Test
+    void shouldListCommentsWithProjectedUser() throws Exception {
+        commentRepository.save(Comment.builder().content("projected").postId(testPost.getId()).userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/comments").param("content", "projected"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].content").value("projected"))
+                .andExpect(jsonPath("$[0].user.id").value(testUser.getId()))
+                .andExpect(jsonPath("$[0].user.username").value("commenter"))
+                .andExpect(jsonPath("$[0].replies").doesNotExist());
+    }
+
+    @Test
+    void shouldInvalidateCachedCommentListOnChanges() throws Exception {
+        Comment first = commentRepository.save(Comment.builder().content("cached 1").postId(testPost.getId()).userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/comments").param("content", "cached"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        commentRepository.save(Comment.builder().content("cached 2").postId(testPost.getId()).userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/comments").param("content", "cached"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+
+        first.setContent("changed");
+        commentRepository.save(first);
+
+        mockMvc.perform(get("/comments").param("content", "cached"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].content").value("cached 2"));
+    }
+
+    @Test
+    void shouldMoveCommentsWithBulkUpdate() throws Exception {
+        Post target = postRepository.save(Post.builder().title("Target").userId(testUser.getId()).build());
+        Comment moved = commentRepository.save(Comment.builder().content("move me").postId(testPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("move me too").postId(testPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("stay").postId(testPost.getId()).userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/comments/{id}", moved.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.postId").value(testPost.getId()));
+        mockMvc.perform(get("/comments/stats/posts/{postId}", testPost.getId()))
+                .andExpect(jsonPath("$.comments").value(3));
+
+        mockMvc.perform(put("/comments/move")
+                .param("content", "move")
+                .param("targetPostId", target.getId().toString()))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+
+        mockMvc.perform(get("/comments/{id}", moved.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.postId").value(target.getId()));
+        mockMvc.perform(get("/comments").param("postId", target.getId().toString()))
+                .andExpect(jsonPath("$", hasSize(2)));
+        mockMvc.perform(get("/comments/stats/posts/{postId}", testPost.getId()))
+                .andExpect(jsonPath("$.comments").value(1));
+        mockMvc.perform(get("/comments/stats/posts/{postId}", target.getId()))
+                .andExpect(jsonPath("$.comments").value(2));
+    }
+
+    @Test
+    void shouldDeleteCommentsByJoinedFilterWithBulkDelete() throws Exception {
+        User other = userRepository.save(User.builder().username("other").build());
+        commentRepository.save(Comment.builder().content("a").postId(testPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("b").postId(testPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("c").postId(testPost.getId()).userId(other.getId()).build());
+
+        mockMvc.perform(get("/comments"))
+                .andExpect(jsonPath("$", hasSize(3)));
+
+        mockMvc.perform(delete("/comments").param("username", "commenter"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+
+        assertEquals(1, commentRepository.count());
+        mockMvc.perform(get("/comments"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].content").value("c"));
+        mockMvc.perform(delete("/comments").param("username", "nobody"))
+                .andExpect(content().string("0"));
+    }
+
+    @Test
+    void shouldSaveCommentsInBatches() throws Exception {
+        List<CommentRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            CommentRequest request = new CommentRequest();
+            request.setContent("backfill " + i);
+            request.setPostId(testPost.getId());
+            request.setUserId(testUser.getId());
+            requests.add(request);
+        }
+
+        mockMvc.perform(post("/comments/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(requests)))
+                .andExpect(status().isOk())
+                .andExpect(content().string("250"));
+
+        List<Comment> saved = commentRepository.findAll();
+        assertEquals(250, saved.size());
+        assertEquals(250, saved.stream().map(Comment::getId).distinct().count());
+        mockMvc.perform(get("/comments/stats/posts/{postId}", testPost.getId()))
+                .andExpect(jsonPath("$.comments").value(250));
+    }
+
+    @Test
+    void shouldSearchCommentsThroughIndexAfterBulkDelete() throws Exception {
+        User other = userRepository.save(User.builder().username("other").build());
+        commentRepository.save(Comment.builder().content("Great article, thanks").postId(testPost.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("Great question").postId(testPost.getId()).userId(other.getId()).build());
+
+        mockMvc.perform(get("/comments/search").param("text", "great"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(2)));
+
+        mockMvc.perform(delete("/comments").param("username", "other"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/comments/search").param("text", "great"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].content", contains("Great article, thanks")));
+        mockMvc.perform(get("/comments/search").param("text", "artic"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.page.totalElements").value(1));
+    }
+
+    @Test
+    void shouldSortIndexedSearchMatchesReadInChunks() throws Exception {
+        for (int i = 0; i < 11; i++) {
+            commentRepository.save(Comment.builder().content(String.format("Great %02d", (i * 7) % 11))
+                    .postId(testPost.getId()).userId(testUser.getId()).build());
+        }
+        commentRepository.save(Comment.builder().content("Fine").postId(testPost.getId()).userId(testUser.getId()).build());
+
+        commentService.setInChunkSize(3);
+        try {
+            mockMvc.perform(get("/comments/search")
+                    .param("text", "great")
+                    .param("sortBy", "content")
+                    .param("sortDirection", "desc")
+                    .param("pageSize", "4")
+                    .param("pageNumber", "1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content[*].content", contains("Great 06", "Great 05", "Great 04", "Great 03")))
+                    .andExpect(jsonPath("$.page.totalElements").value(11));
+            mockMvc.perform(get("/comments/search")
+                    .param("text", "great")
+                    .param("sortBy", "content")
+                    .param("pageSize", "4")
+                    .param("pageNumber", "2"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content[*].content", contains("Great 08", "Great 09", "Great 10")));
+        } finally {
+            commentService.setInChunkSize(InLists.MAX_BUCKET);
+        }
+    }
+
+    @Test
+    void shouldPageCommentsWithFetchedRepliesSortedOnReplies() throws Exception {
+        String[][] replies = {{"m", "b"}, {"k"}, {"z", "a", "x"}, {"c", "n"}, {"y"}};
+        for (int i = 0; i < replies.length; i++) {
+            Comment comment = commentRepository.save(Comment.builder().content("Thread " + i).postId(testPost.getId()).userId(testUser.getId()).build());
+            for (String reply : replies[i]) {
+                commentReplyRepository.save(CommentReply.builder().content(reply).commentId(comment.getId()).userId(testUser.getId()).build());
+            }
+        }
+
+        mockMvc.perform(get("/comments/threads")
+                .param("sortBy", "replies.content")
+                .param("pageSize", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].content", contains("Thread 2", "Thread 0")))
+                .andExpect(jsonPath("$.content[0].replies", hasSize(3)))
+                .andExpect(jsonPath("$.page.totalElements").value(5));
+        mockMvc.perform(get("/comments/threads")
+                .param("sortBy", "replies.content")
+                .param("pageSize", "2")
+                .param("pageNumber", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].content", contains("Thread 3", "Thread 1")));
+        mockMvc.perform(get("/comments/threads")
+                .param("sortBy", "replies.content")
+                .param("sortDirection", "desc")
+                .param("pageSize", "2")
+                .param("pageNumber", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].content", contains("Thread 3", "Thread 0")));
+        mockMvc.perform(get("/comments/threads")
+                .param("content", "thread")
+                .param("pageSize", "3")
+                .param("pageNumber", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(2)))
+                .andExpect(jsonPath("$.content[?(@.content == 'Thread 3')].replies[*].content", containsInAnyOrder("c", "n")));
+    }
+
+    @Test
+    @ExtendWith(OutputCaptureExtension.class)
+    void shouldReadCommentsByIdsInPaddedAndParallelChunks(CapturedOutput output) throws Exception {
+        List<Comment> comments = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            comments.add(commentRepository.save(Comment.builder().content("Comment " + i).postId(testPost.getId()).userId(testUser.getId()).build()));
+        }
+        Collections.reverse(comments);
+        List<String> requested = new ArrayList<>(comments.stream().map(comment -> String.valueOf(comment.getId())).toList());
+        requested.add(2, requested.getFirst());
+        requested.add(String.valueOf(comments.getFirst().getId() + 1000));
+        String[] expected = comments.stream().map(Comment::getContent).toArray(String[]::new);
+
+        LoggingSystem loggingSystem = LoggingSystem.get(getClass().getClassLoader());
+        loggingSystem.setLogLevel("org.hibernate.SQL", LogLevel.DEBUG);
+        commentService.setInChunkSize(5);
+        try {
+            mockMvc.perform(get("/comments/ids").param("ids", requested.toArray(String[]::new)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[*].content", contains(expected)))
+                    .andExpect(jsonPath("$[*].user.username", everyItem(is("commenter"))));
+            assertTrue(output.getOut().contains("in (?,?,?,?,?,?,?,?)"));
+
+            commentService.setParallelInChunks(true);
+            mockMvc.perform(get("/comments/ids").param("ids", requested.toArray(String[]::new)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[*].content", contains(expected)))
+                    .andExpect(jsonPath("$[*].user.username", everyItem(is("commenter"))));
+        } finally {
+            commentService.setParallelInChunks(false);
+            commentService.setInChunkSize(InLists.MAX_BUCKET);
+            loggingSystem.setLogLevel("org.hibernate.SQL", null);
+        }
+    }
 }
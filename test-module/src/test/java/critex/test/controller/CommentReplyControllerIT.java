@@ -18,6 +18,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -89,4 +97,30 @@ public class CommentReplyControllerIT {
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[*].content", containsInAnyOrder("Reply 1", "Reply 2")));
     }
+
+    @Test
+    void shouldCreateBurstOfRepliesThroughWriteBehind() throws Exception {
+        List<Future<String>> responses = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 30; i++) {
+                CommentReplyRequest request = new CommentReplyRequest();
+                request.setContent("burst " + i);
+                request.setCommentId(testComment.getId());
+                request.setUserId(testUser.getId());
+                String body = objectMapper.writeValueAsString(request);
+                responses.add(executor.submit(() -> mockMvc.perform(post("/comment-replies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                        .andExpect(status().isOk())
+                        .andReturn().getResponse().getContentAsString()));
+            }
+        }
+
+        Set<Long> ids = new HashSet<>();
+        for (Future<String> response : responses) {
+            ids.add(objectMapper.readTree(response.get()).get("id").asLong());
+        }
+        assertEquals(30, ids.size());
+        assertEquals(30, replyRepository.count());
+    }
 }
@@ -1,21 +1,44 @@
 package critex.test.controller;
 
+import critex.core.metrics.ExplainPlan;
+import critex.core.metrics.QueryExplainer;
+import critex.core.metrics.QueryObservationContext;
+import critex.core.model.ExplainTrigger;
 import critex.test.dto.request.PostRequest;
+import critex.test.entity.Comment;
+import critex.test.entity.CommentReply;
 import critex.test.entity.Post;
 import critex.test.entity.User;
+import critex.test.repository.CommentReplyRepository;
+import critex.test.repository.CommentRepository;
 import critex.test.repository.PostRepository;
 import critex.test.repository.UserRepository;
+import critex.test.service.PostService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
 
 import static org.hamcrest.Matchers.*;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -32,9 +55,25 @@ public class PostControllerIT {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private CommentReplyRepository commentReplyRepository;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    @Autowired
+    private PostService postService;
+
+    private static final List<QueryObservationContext> observed = new CopyOnWriteArrayList<>();
+
+    private static ObservationRegistry observedRegistry;
+
     private User testUser;
 
     @BeforeEach
@@ -42,6 +81,21 @@ public class PostControllerIT {
         postRepository.deleteAll();
         userRepository.deleteAll();
         testUser = userRepository.save(User.builder().username("author").email("author@test.com").build());
+        if (observedRegistry != observationRegistry) {
+            observationRegistry.observationConfig().observationHandler(new ObservationHandler<QueryObservationContext>() {
+                @Override
+                public boolean supportsContext(Observation.Context context) {
+                    return context instanceof QueryObservationContext;
+                }
+
+                @Override
+                public void onStop(QueryObservationContext context) {
+                    observed.add(context);
+                }
+            });
+            observedRegistry = observationRegistry;
+        }
+        observed.clear();
     }
 
     @Test
@@ -88,4 +142,245 @@ public class PostControllerIT {
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[*].title", containsInAnyOrder("Post 1", "Post 2")));
     }
+
+    @Test
+    void shouldServeChangedPostAfterCachedRead() throws Exception {
+        Post post = postRepository.save(Post.builder().title("Cached").userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/posts/" + post.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Cached"));
+
+        post.setTitle("Changed");
+        postRepository.save(post);
+
+        mockMvc.perform(get("/posts/" + post.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Changed"));
+    }
+
+    @Test
+    void shouldLoadPostDetailWithNestedCollections() throws Exception {
+        Post post = postRepository.save(Post.builder().title("Detail").userId(testUser.getId()).build());
+        Comment first = commentRepository.save(Comment.builder().content("first").postId(post.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("second").postId(post.getId()).userId(testUser.getId()).build());
+        commentReplyRepository.save(CommentReply.builder().content("reply 1").commentId(first.getId()).userId(testUser.getId()).build());
+        commentReplyRepository.save(CommentReply.builder().content("reply 2").commentId(first.getId()).userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/posts/" + post.getId() + "/detail"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Detail"))
+                .andExpect(jsonPath("$.comments", hasSize(2)))
+                .andExpect(jsonPath("$.comments[*].user.username", everyItem(is("author"))))
+                .andExpect(jsonPath("$.comments[?(@.content == 'first')].replies[*].content", containsInAnyOrder("reply 1", "reply 2")))
+                .andExpect(jsonPath("$.comments[?(@.content == 'second')].replies[*]", empty()));
+    }
+
+    @Test
+    void shouldLoadPostDetailCollectionsOutsideTransaction() {
+        Post post = postRepository.save(Post.builder().title("Detached").userId(testUser.getId()).build());
+        Comment first = commentRepository.save(Comment.builder().content("first").postId(post.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("second").postId(post.getId()).userId(testUser.getId()).build());
+        commentReplyRepository.save(CommentReply.builder().content("reply").commentId(first.getId()).userId(testUser.getId()).build());
+
+        Post detail = postService.findDetail(post.getId());
+
+        assertEquals(2, detail.getComments().size());
+        for (Comment comment : detail.getComments()) {
+            assertEquals("author", comment.getUser().getUsername());
+            assertEquals(comment.getContent().equals("first") ? 1 : 0, comment.getReplies().size());
+        }
+    }
+
+    @Test
+    void shouldReadPageWithConcurrentContentAndCount() throws Exception {
+        for (int i = 1; i <= 5; i++) {
+            postRepository.save(Post.builder().title("Async " + i).userId(testUser.getId()).build());
+        }
+        postRepository.save(Post.builder().title("Other").userId(testUser.getId()).build());
+
+        MvcResult result = mockMvc.perform(get("/posts/page")
+                .param("title", "Async")
+                .param("pageSize", "2")
+                .param("sortBy", "title"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].title", contains("Async 1", "Async 2")))
+                .andExpect(jsonPath("$.page.totalElements").value(5))
+                .andExpect(jsonPath("$.page.totalPages").value(3));
+    }
+
+    @Test
+    void shouldCheckWhetherUserCommentedOnPost() throws Exception {
+        User reader = userRepository.save(User.builder().username("reader").email("reader@test.com").build());
+        Post post = postRepository.save(Post.builder().title("Probe").userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("by author").postId(post.getId()).userId(testUser.getId()).build());
+        commentRepository.save(Comment.builder().content("again").postId(post.getId()).userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/posts/" + post.getId() + "/commented").param("username", "author"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("true"));
+        mockMvc.perform(get("/posts/" + post.getId() + "/commented").param("username", "reader"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("false"));
+
+        commentRepository.save(Comment.builder().content("by reader").postId(post.getId()).userId(reader.getId()).build());
+
+        mockMvc.perform(get("/posts/" + post.getId() + "/commented").param("username", "reader"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("true"));
+    }
+
+    @Test
+    void shouldSearchTitlesThroughIndexRankedByRelevance() throws Exception {
+        Post exact = postRepository.save(Post.builder().title("Java streams").userId(testUser.getId()).build());
+        Post prefix = postRepository.save(Post.builder().title("Javascript streaming").userId(testUser.getId()).build());
+        Post partly = postRepository.save(Post.builder().title("Java records").userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/posts/search").param("text", "java stream"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].title", contains("Java streams", "Javascript streaming")))
+                .andExpect(jsonPath("$.page.totalElements").value(2));
+
+        mockMvc.perform(get("/posts/search").param("text", "java").param("pageSize", "1").param("pageNumber", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].title", contains("Java records")))
+                .andExpect(jsonPath("$.page.totalElements").value(3));
+
+        mockMvc.perform(get("/posts/search").param("text", "java").param("sortBy", "title").param("sortDirection", "desc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].title", contains("Javascript streaming", "Java streams", "Java records")));
+
+        partly.setTitle("Kotlin records");
+        postRepository.save(partly);
+        postRepository.deleteById(exact.getId());
+
+        mockMvc.perform(get("/posts/search").param("text", "java"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].id", contains(prefix.getId().intValue())));
+        mockMvc.perform(get("/posts/search").param("text", "kotlin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].id", contains(partly.getId().intValue())));
+    }
+
+    @Test
+    void shouldObservePostReadsByOperationAndShape() throws Exception {
+        Post post = postRepository.save(Post.builder().title("Observed post").userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/posts/" + post.getId())).andExpect(status().isOk());
+        mockMvc.perform(get("/posts/" + post.getId())).andExpect(status().isOk());
+        mockMvc.perform(get("/posts/" + post.getId() + "/commented").param("username", "author"))
+                .andExpect(content().string("false"));
+        mockMvc.perform(get("/posts/search").param("text", "observed"))
+                .andExpect(jsonPath("$.page.totalElements").value(1));
+
+        assertEquals(List.of("getEntityById", "getEntityById", "exists", "searchPage"), observed.stream().map(QueryObservationContext::getOperation).toList());
+        assertTrue(observed.stream().allMatch(context -> "Post".equals(context.getEntity())));
+
+        QueryObservationContext loaded = observed.get(0);
+        QueryObservationContext cached = observed.get(1);
+        assertEquals(1, loaded.getRows());
+        assertTrue(loaded.getQueries() >= 1);
+        assertTrue(loaded.getExecutionNanos() > 0 && loaded.getExecutionNanos() <= loaded.getDurationNanos());
+        assertEquals(0, cached.getQueries());
+        assertEquals(loaded.getShape(), cached.getShape());
+
+        assertEquals(0, observed.get(2).getRows());
+        assertEquals(1, observed.get(2).getQueries());
+        assertEquals(1, observed.get(3).getRows());
+        assertEquals(1, observed.get(3).getQueries());
+        assertTrue(postService.getQueryMetrics().getShapes().containsKey(loaded.getShape()));
+    }
+
+    @Test
+    @ExtendWith(OutputCaptureExtension.class)
+    void shouldReportTopShapesAndSlowQueriesAndTagTheirStatements(CapturedOutput output) throws Exception {
+        Post post = postRepository.save(Post.builder().title("Reported post").userId(testUser.getId()).build());
+        postService.getQueryMetrics().getOptions().setSlowQueryThreshold(Duration.ZERO);
+        LoggingSystem loggingSystem = LoggingSystem.get(getClass().getClassLoader());
+        loggingSystem.setLogLevel("org.hibernate.SQL", LogLevel.DEBUG);
+        try {
+            mockMvc.perform(get("/posts/" + post.getId() + "/commented").param("username", "author"))
+                    .andExpect(content().string("false"));
+            mockMvc.perform(get("/posts/search").param("text", "reported"))
+                    .andExpect(jsonPath("$.page.totalElements").value(1));
+
+            mockMvc.perform(get("/queries/slow"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].entity").value("Post"))
+                    .andExpect(jsonPath("$[0].operation").value("searchPage"))
+                    .andExpect(jsonPath("$[0].caller").value("PostService.searchTitle"))
+                    .andExpect(jsonPath("$[0].parameters[0]").value(not(containsString("reported"))))
+                    .andExpect(jsonPath("$[1].operation").value("exists"))
+                    .andExpect(jsonPath("$[1].caller").value("PostService.isCommentedBy"))
+                    .andExpect(jsonPath("$[1].parameters", hasItems("id EQUALS <Long>", "username EQUALS <String>")));
+            mockMvc.perform(get("/queries/top").param("order", "CALLS").param("limit", "100"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[?(@.operation == 'exists')].entity", hasItem("Post")))
+                    .andExpect(jsonPath("$[?(@.operation == 'searchPage')].calls", everyItem(greaterThanOrEqualTo(1))));
+
+            assertTrue(output.getOut().matches("(?s).*/\\* critex Post\\.exists shape=[0-9a-f]{16} caller=PostService\\.isCommentedBy \\*/ select.*"));
+        } finally {
+            loggingSystem.setLogLevel("org.hibernate.SQL", null);
+            postService.getQueryMetrics().getOptions().setSlowQueryThreshold(Duration.ofMillis(500));
+        }
+    }
+
+    @Test
+    void shouldExplainNewShapesWithTheirBoundParameters() throws Exception {
+        Post post = postRepository.save(Post.builder().title("Explained post").content("explained content").userId(testUser.getId()).build());
+
+        mockMvc.perform(get("/posts/count").param("content", "explained"))
+                .andExpect(content().string("1"));
+        mockMvc.perform(get("/posts/" + post.getId() + "/commented").param("username", "author"))
+                .andExpect(content().string("false"));
+
+        QueryExplainer explainer = postService.getQueryMetrics().getExplainer();
+        assertEquals("H2", explainer.getDialect());
+        String countShape = shapeOf("count");
+        ExplainPlan scan = awaitPlans(explainer, countShape, plans -> !plans.isEmpty()).getFirst();
+        assertNull(scan.error());
+        assertTrue(scan.sql().contains("like ?"));
+        assertTrue(scan.plan().contains("POSTS.tableScan"));
+        assertTrue(scan.fullScan() && scan.missingIndex());
+
+        String existsShape = shapeOf("exists");
+        ExplainPlan probe = awaitPlans(explainer, existsShape, plans -> !plans.isEmpty()).getFirst();
+        assertNull(probe.error());
+        assertTrue(probe.plan().contains("PRIMARY_KEY"));
+        assertFalse(probe.fullScan() || probe.missingIndex());
+
+        mockMvc.perform(get("/queries/plans").param("fullScans", "true"))
+                .andExpect(jsonPath("$[*].shape", hasItem(countShape)))
+                .andExpect(jsonPath("$[*].shape", not(hasItem(existsShape))));
+
+        explainer.getOptions().setSlowThreshold(Duration.ZERO);
+        explainer.getOptions().setMinInterval(Duration.ZERO);
+        try {
+            mockMvc.perform(get("/posts/" + post.getId() + "/commented").param("username", "reader"))
+                    .andExpect(content().string("false"));
+            ExplainPlan slow = awaitPlans(explainer, existsShape, plans -> plans.getFirst().trigger() == ExplainTrigger.SLOW).getFirst();
+            assertFalse(slow.changed());
+            assertEquals(probe.sql(), slow.sql());
+        } finally {
+            explainer.getOptions().setSlowThreshold(Duration.ofSeconds(1));
+            explainer.getOptions().setMinInterval(Duration.ofMinutes(10));
+        }
+    }
+
+    private static String shapeOf(String operation) {
+        return observed.stream().filter(context -> context.getOperation().equals(operation)).findFirst()
+                .orElseThrow(() -> new AssertionError(observed.stream().map(QueryObservationContext::getOperation).toList())).getShape();
+    }
+
+    private static List<ExplainPlan> awaitPlans(QueryExplainer explainer, String shape, Predicate<List<ExplainPlan>> done) throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && !done.test(explainer.getPlans(shape)); attempt++) {
+            Thread.sleep(50);
+        }
+        assertTrue(done.test(explainer.getPlans(shape)), explainer.getPlans(shape).toString());
+        return explainer.getPlans(shape);
+    }
 }
@@ -91,4 +91,23 @@ public class UserControllerIT {
 
         assertEquals(0, userRepository.count());
     }
+
+    @Test
+    void shouldCheckTakenUsernameAndEmailInOneQuery() throws Exception {
+        userRepository.save(User.builder().username("taken").email("taken@test.com").build());
+
+        mockMvc.perform(get("/users/taken")
+                .param("username", "taken")
+                .param("email", "free@test.com"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value(true))
+                .andExpect(jsonPath("$.email").value(false));
+
+        mockMvc.perform(get("/users/taken")
+                .param("username", "free")
+                .param("email", "taken@test.com"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value(false))
+                .andExpect(jsonPath("$.email").value(true));
+    }
 }